@@ -0,0 +1,181 @@
+/*
+ * Cooperative Systems
+ */
+package src.coop;
+
+import jade.content.abs.AbsObject;
+import jade.content.onto.BCMethodHandleIntrospector;
+import jade.content.onto.BCReflectiveIntrospector;
+import jade.content.onto.BasicOntology;
+import jade.content.onto.BeanOntology;
+import jade.content.onto.Introspector;
+import jade.content.onto.MethodHandleIntrospector;
+import jade.content.onto.Ontology;
+import jade.content.onto.OntologyException;
+import jade.content.onto.ReflectiveIntrospector;
+import jade.content.onto.SerializableOntology;
+import jade.core.AID;
+import jade.core.BenchmarkHarness;
+import jade.domain.FIPANames;
+import jade.domain.FIPAAgentManagement.DFAgentDescription;
+import jade.domain.FIPAAgentManagement.ExceptionOntology;
+import jade.domain.FIPAAgentManagement.FIPAManagementOntology;
+import jade.domain.FIPAAgentManagement.Property;
+import jade.domain.FIPAAgentManagement.Register;
+import jade.domain.FIPAAgentManagement.SearchConstraints;
+import jade.domain.FIPAAgentManagement.ServiceDescription;
+import jade.util.leap.ArrayList;
+import jade.util.leap.List;
+import jade.util.leap.Properties;
+
+/**
+ * Measure the throughput of the conversions between Java objects and
+ * abstract descriptors (<code>Ontology.fromObject()</code> followed by
+ * <code>Ontology.toObject()</code>) with the reflective introspectors, the
+ * method handle based introspectors and the bean introspector, using the
+ * BiFabOntology classes and the FIPAManagementOntology classes the DF deals with.
+ * Each ontology is rebuilt from the schemas of the original one with the
+ * introspector to measure. Before measuring, the benchmark checks that all
+ * introspectors produce the same abstract descriptors.
+ * Usage:
+ * <code>java src.coop.IntrospectorBenchmark [-t 3] [-warmup 2]</code>
+ * @see jade.core.BenchmarkHarness
+ */
+public class IntrospectorBenchmark {
+
+    // Prevent the JIT from discarding the results
+    private static long sink;
+
+    public static void main(String[] args) throws Exception {
+        Properties pp = BenchmarkHarness.parseArguments(args);
+        int duration = BenchmarkHarness.getDuration(pp);
+        int warmup = BenchmarkHarness.getWarmup(pp);
+
+        Ontology bifab = BiFabOntology.getInstance();
+        Ontology[] bifabBase = new Ontology[]{BasicOntology.getInstance()};
+        Ontology fipa = FIPAManagementOntology.getInstance();
+        Ontology[] fipaBase = new Ontology[]{ExceptionOntology.getInstance(), SerializableOntology.getInstance()};
+
+        BeanOntology beans = new BeanOntology("BiFabBeans");
+        beans.add(Resource.class);
+        beans.add(RequestResource.class);
+        beans.add(Deliver.class);
+
+        System.out.println("----------------------------------");
+        run("BiFabOntology", createBiFabObjects(true),
+                new String[]{"reflective", "method handle"},
+                new Ontology[]{copy(bifab, bifabBase, new ReflectiveIntrospector()), copy(bifab, bifabBase, new MethodHandleIntrospector())},
+                warmup, duration);
+        run("BiFabOntology beans", createBiFabObjects(false),
+                new String[]{"reflective", "method handle", "bean"},
+                new Ontology[]{copy(bifab, bifabBase, new ReflectiveIntrospector()), copy(bifab, bifabBase, new MethodHandleIntrospector()), beans},
+                warmup, duration);
+        run("FIPAManagementOntology", createFIPAObjects(),
+                new String[]{"reflective", "method handle"},
+                new Ontology[]{copy(fipa, fipaBase, new BCReflectiveIntrospector()), copy(fipa, fipaBase, new BCMethodHandleIntrospector())},
+                warmup, duration);
+        System.out.println("----------------------------------");
+    }
+
+    private static void run(String name, Object[] objects, String[] labels, Ontology[] ontologies, int warmup, int duration) throws Exception {
+        // Check that all introspectors produce the same abstract descriptors
+        // (bean ontologies use different type names) and that objects survive
+        // a round trip
+        for (int i = 0; i < objects.length; ++i) {
+            String expected = ontologies[0].fromObject(objects[i]).toString();
+            for (int j = 0; j < ontologies.length; ++j) {
+                AbsObject abs = ontologies[j].fromObject(objects[i]);
+                String actual = ontologies[j].fromObject(ontologies[j].toObject(abs)).toString();
+                boolean sameSchemas = ontologies[j].getName().equals(ontologies[0].getName());
+                if ((sameSchemas && !expected.equals(abs.toString())) || !abs.toString().equals(actual)) {
+                    System.out.println("ERROR: wrong conversion with the " + labels[j] + " introspector\n" + expected + "\n" + abs + "\n" + actual);
+                    System.exit(1);
+                }
+            }
+        }
+
+        System.out.println(name + " (" + objects.length + " objects)");
+        for (int j = 0; j < ontologies.length; ++j) {
+            measure(ontologies[j], objects, warmup);
+            long ops = measure(ontologies[j], objects, duration);
+            System.out.println("- " + BenchmarkHarness.pad(labels[j], 14) + ": " + (ops / duration) + " conversions/s");
+        }
+    }
+
+    private static long measure(Ontology onto, Object[] objects, int duration) throws Exception {
+        long end = System.currentTimeMillis() + duration * 1000L;
+        long cnt = 0;
+        while (System.currentTimeMillis() < end) {
+            // Check the time every 100 operations only
+            for (int i = 0; i < 100; ++i) {
+                AbsObject abs = onto.fromObject(objects[i % objects.length]);
+                sink += onto.toObject(abs).hashCode();
+            }
+            cnt += 100;
+        }
+        return cnt;
+    }
+
+    /**
+     * Create an ontology equivalent to a given one, but using a given introspector
+     */
+    private static Ontology copy(Ontology src, Ontology[] base, Introspector introspector) throws OntologyException {
+        Ontology onto = new Ontology(src.getName(), base, introspector);
+        java.util.List[] names = new java.util.List[]{src.getConceptNames(), src.getActionNames(), src.getPredicateNames()};
+        for (int i = 0; i < names.length; ++i) {
+            java.util.Iterator it = names[i].iterator();
+            while (it.hasNext()) {
+                String name = (String) it.next();
+                Class c = src.getClassForElement(name);
+                if (c != null) {
+                    onto.add(src.getSchema(name), c);
+                } else {
+                    onto.add(src.getSchema(name));
+                }
+            }
+        }
+        return onto;
+    }
+
+    /**
+     * @param all if false only bean-compliant classes (i.e. no aggregates of
+     * unspecified type) are used
+     */
+    private static Object[] createBiFabObjects(boolean all) {
+        AID requester = new AID("workplace1@bifab", AID.ISGUID);
+        requester.addAddresses("http://host.domain.com:7778/acc");
+        AID storage = new AID("storage@bifab", AID.ISGUID);
+        RequestResource request = new RequestResource("screw", new Integer(12));
+        request.setRequester(requester);
+        Deliver deliver = new Deliver("screw", storage, requester, 12);
+        if (!all) {
+            return new Object[]{new Resource("screw", new Integer(12)), request, deliver};
+        }
+        List resources = new ArrayList();
+        resources.add(new Resource("screw", new Integer(12)));
+        resources.add(new Resource("plate", new Integer(2)));
+        resources.add(new Resource("motor", new Integer(1)));
+        return new Object[]{new ProductionPlan("robot", resources, 5), request, deliver};
+    }
+
+    private static Object[] createFIPAObjects() {
+        DFAgentDescription dfd = new DFAgentDescription();
+        AID id = new AID("forecaster@benchmark", AID.ISGUID);
+        id.addAddresses("http://host.domain.com:7778/acc");
+        dfd.setName(id);
+        dfd.addLanguages(FIPANames.ContentLanguage.FIPA_SL);
+        dfd.addOntologies("weather-ontology");
+        dfd.addProtocols(FIPANames.InteractionProtocol.FIPA_REQUEST);
+        ServiceDescription sd = new ServiceDescription();
+        sd.setType("weather-forecast");
+        sd.setName("Forecaster");
+        sd.addProperties(new Property("area", "Europe"));
+        sd.addProperties(new Property("horizon", new Long(7)));
+        dfd.addServices(sd);
+        Register register = new Register();
+        register.setDescription(dfd);
+        SearchConstraints sc = new SearchConstraints();
+        sc.setMaxResults(new Long(100));
+        return new Object[]{register, dfd, sc};
+    }
+}
@@ -341,7 +341,7 @@ public class ContentManager implements Serializable {
 	
 	private void encode(ACLMessage msg, AbsContentElement content, Codec codec, Ontology onto) throws CodecException, OntologyException { 
 		if (codec instanceof ByteArrayCodec)
-			msg.setByteSequenceContent(((ByteArrayCodec) codec).encode(onto, content));
+			msg.setByteSequenceContent(((ByteArrayCodec) codec).encode(onto, content, msg));
 		else if (codec instanceof StringCodec)
 			msg.setContent(((StringCodec) codec).encode(onto, content));
 		else
@@ -350,7 +350,7 @@ public class ContentManager implements Serializable {
 	
 	private AbsContentElement decode(ACLMessage msg, Codec codec, Ontology onto) throws CodecException, OntologyException { 
 		if (codec instanceof ByteArrayCodec)
-			return ((ByteArrayCodec) codec).decode(onto, msg.getByteSequenceContent());
+			return ((ByteArrayCodec) codec).decode(onto, msg.getByteSequenceContent(), msg);
 		else if (codec instanceof StringCodec)
 			return ((StringCodec) codec).decode(onto, msg.getContent());
 		else
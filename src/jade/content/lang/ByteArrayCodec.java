@@ -26,6 +26,7 @@ package jade.content.lang;
 
 import jade.content.onto.*;
 import jade.content.abs.*;
+import jade.lang.acl.ACLMessage;
 
 /**
  * Base class for content language codecs that transform 
@@ -79,5 +80,37 @@ public abstract class ByteArrayCodec extends Codec{
     public abstract AbsContentElement decode(Ontology ontology, byte[] content) 
             throws CodecException;
 
+    /**
+     * Encodes a content into a byte array that will be the content of a 
+     * given message. Codecs whose encoding depends on the receivers of the 
+     * message can redefine this method. This default implementation just
+     * calls <code>encode(ontology, content)</code>.
+     * @param ontology the ontology 
+     * @param content the content as an abstract descriptor.
+     * @param msg the message the content is for.
+     * @return the content as a byte array.
+     * @throws CodecException
+     */
+    public byte[] encode(Ontology ontology, AbsContentElement content, ACLMessage msg) 
+            throws CodecException {
+    	return encode(ontology, content);
+    }
+
+    /**
+     * Decodes the content of a given message to an abstract description. 
+     * Codecs whose decoding depends on the sender of the message can 
+     * redefine this method. This default implementation just calls
+     * <code>decode(ontology, content)</code>.
+     * @param ontology the ontology.
+     * @param content the content as a byte array.
+     * @param msg the message the content was taken from.
+     * @return the content as an abstract description.
+     * @throws CodecException
+     */
+    public AbsContentElement decode(Ontology ontology, byte[] content, ACLMessage msg) 
+            throws CodecException {
+    	return decode(ontology, content);
+    }
+
 }
 
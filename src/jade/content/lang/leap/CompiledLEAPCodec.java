@@ -0,0 +1,664 @@
+/*****************************************************************
+JADE - Java Agent DEvelopment Framework is a framework to develop 
+multi-agent systems in compliance with the FIPA specifications.
+Copyright (C) 2000 CSELT S.p.A. 
+
+GNU Lesser General Public License
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation, 
+version 2.1 of the License. 
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the
+Free Software Foundation, Inc., 59 Temple Place - Suite 330,
+Boston, MA  02111-1307, USA.
+*****************************************************************/
+
+package jade.content.lang.leap;
+
+//#J2ME_EXCLUDE_FILE
+
+import jade.content.abs.AbsAggregate;
+import jade.content.abs.AbsContentElement;
+import jade.content.abs.AbsContentElementList;
+import jade.content.abs.AbsHelper;
+import jade.content.abs.AbsObject;
+import jade.content.abs.AbsPrimitive;
+import jade.content.abs.AbsTerm;
+import jade.content.lang.ByteArrayCodec;
+import jade.content.onto.Ontology;
+import jade.content.onto.OntologyException;
+import jade.content.schema.ObjectSchema;
+import jade.core.AID;
+import jade.lang.acl.ACLMessage;
+import jade.util.leap.Iterator;
+
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/** 
+ * Compact binary content language codec. Unlike the <code>LEAPCodec</code>,
+ * that writes type and slot names as strings, this codec encodes them as 
+ * small integer ids taken from a table compiled from the ontology the content 
+ * refers to. Ids can only be decoded by peers sharing the same definition of 
+ * the ontology: each content carries the fingerprint of the table of the 
+ * encoding peer and the content of a message is encoded by ids only when 
+ * the fingerprint of each receiver is known to match, i.e. the last content 
+ * received from that receiver carried the same fingerprint, or if the 
+ * ontology was declared as shared by means of <code>declareShared()</code>. 
+ * Otherwise contents are encoded by name, so that peers using different 
+ * versions of the same ontology can still exchange them. Contents encoded 
+ * without a message (i.e. by means of <code>encode(Ontology, AbsContentElement)</code>)
+ * are encoded by ids only if the ontology was declared as shared.
+ * Types that are not part of the table (and slots not defined in their 
+ * schema) are always encoded by name as the <code>LEAPCodec</code> does. Numbers and 
+ * lengths are encoded as variable length integers and repeated strings are 
+ * encoded once per content.
+ * <p>
+ * The codec is reentrant. It can be used by registering it by means of 
+ * <code>ContentManager.registerLanguage(new CompiledLEAPCodec())</code>
+ * and setting the language of messages to <code>CompiledLEAPCodec.NAME</code>.
+ * <br>
+ * <b>NOT available in J2ME</b>
+ * <br>
+ * @see LEAPCodec
+ */
+public class CompiledLEAPCodec extends ByteArrayCodec {
+	public static final String NAME = "LEAP-compiled";
+
+	private static final byte FORMAT_VERSION = 2;
+
+	// How complex objects are encoded
+	private static final byte BY_NAME = 0;
+	private static final byte BY_ID = 1;
+	private static final String UTF8 = "UTF-8";
+
+	// Types
+	private static final byte STRING = 1;
+	private static final byte TRUE = 2;
+	private static final byte FALSE = 3;
+	private static final byte INTEGER = 4;
+	private static final byte LONG = 5;
+	private static final byte FLOAT = 6;
+	private static final byte DOUBLE = 7;
+	private static final byte DATE = 8;
+	private static final byte BYTE_SEQUENCE = 9;
+	private static final byte AGGREGATE = 10;
+	private static final byte CONTENT_ELEMENT_LIST = 11;
+	// A complex object whose type is part of the schema table
+	private static final byte OBJECT = 12;
+	// A complex object whose type is not part of the schema table
+	private static final byte NAMED_OBJECT = 13;
+
+	// Strings shorter than this are not worth a reference
+	private static final int MIN_REFERENCED_LENGTH = 2;
+
+	// Maps ontologies to their compiled schema tables
+	private transient Map<Ontology, SchemaTable> tables = new ConcurrentHashMap<Ontology, SchemaTable>();
+
+	private void readObject(java.io.ObjectInputStream oin) throws java.io.IOException, ClassNotFoundException {
+		oin.defaultReadObject();
+		tables = new ConcurrentHashMap<Ontology, SchemaTable>();
+	}
+
+	/**
+	 * Construct a CompiledLEAPCodec object
+	 */
+	public CompiledLEAPCodec() {
+		super(NAME);
+	}
+
+	/**
+	 * Declare that all peers share the same definition of an ontology so
+	 * that contents referring to it are encoded by ids straight away.
+	 * @param ontology the ontology
+	 * @throws CodecException if the ontology cannot be compiled
+	 */
+	public void declareShared(Ontology ontology) throws CodecException {
+		try {
+			getSchemaTable(ontology).setShared();
+		}
+		catch (OntologyException oe) {
+			throw new CodecException("Error compiling ontology "+ontology.getName(), oe);
+		}
+	}
+
+	/**
+	 * Encodes an abstract descriptor holding a content element
+	 * into a byte array. As no ontology is specified all types and 
+	 * slots are encoded by name.
+	 * @param content the content as an abstract descriptor.
+	 * @return the content as a byte array.
+	 * @throws CodecException
+	 */
+	public byte[] encode(AbsContentElement content) throws CodecException {
+		return encode(null, content);
+	}
+
+	/**
+	 * Encodes a content into a byte array.
+	 * @param ontology the ontology 
+	 * @param content the content as an abstract descriptor.
+	 * @return the content as a byte array.
+	 * @throws CodecException
+	 */
+	public byte[] encode(Ontology ontology, AbsContentElement content) throws CodecException {
+		return encode(ontology, content, null);
+	}
+
+	/**
+	 * Encodes a content into a byte array that will be the content of a 
+	 * given message. Types and slots are encoded by ids only if all receivers
+	 * of the message are known to share the same definition of the ontology.
+	 * @param ontology the ontology 
+	 * @param content the content as an abstract descriptor.
+	 * @param msg the message the content is for.
+	 * @return the content as a byte array.
+	 * @throws CodecException
+	 */
+	public byte[] encode(Ontology ontology, AbsContentElement content, ACLMessage msg) throws CodecException {
+		try {
+			SchemaTable table = getSchemaTable(ontology);
+			boolean byId = table != null && isShared(table, msg);
+			Encoder encoder = new Encoder(byId ? table : null);
+			encoder.writeByte(FORMAT_VERSION);
+			// Always let the peer know our fingerprint so that it can use ids in its replies
+			encoder.writeInt(table != null ? table.getFingerprint() : 0);
+			encoder.writeByte(byId ? BY_ID : BY_NAME);
+			encoder.write(content);
+			return encoder.toByteArray();
+		}
+		catch (CodecException ce) {
+			throw ce;
+		}
+		catch (Throwable t) {
+			throw new CodecException("Error encoding content", t);
+		}
+	}
+
+	/**
+	 * Decodes the content to an abstract descriptor.
+	 * @param content the content as a byte array.
+	 * @return the content as an abstract description.
+	 * @throws CodecException
+	 */
+	public AbsContentElement decode(byte[] content) throws CodecException {
+		throw new CodecException("Not supported");
+	}
+
+	/**
+	 * Decodes the content to an abstract description.
+	 * @param ontology the ontology.
+	 * @param content the content as a byte array.
+	 * @return the content as an abstract description.
+	 * @throws CodecException if the content is malformed or was
+	 * encoded by ids using a different version of the ontology
+	 */
+	public AbsContentElement decode(Ontology ontology, byte[] content) throws CodecException {
+		return decode(ontology, content, null);
+	}
+
+	/**
+	 * Decodes the content of a given message to an abstract description. 
+	 * The codec records whether the sender of the message uses the same 
+	 * definition of the ontology, so that the contents of messages sent to 
+	 * it can be encoded by ids.
+	 * @param ontology the ontology.
+	 * @param content the content as a byte array.
+	 * @param msg the message the content was taken from.
+	 * @return the content as an abstract description.
+	 * @throws CodecException if the content is malformed or was
+	 * encoded by ids using a different version of the ontology
+	 */
+	public AbsContentElement decode(Ontology ontology, byte[] content, ACLMessage msg) throws CodecException {
+		if (content.length == 0) {
+			return null;
+		}
+		try {
+			Decoder decoder = new Decoder(content, ontology);
+			byte version = decoder.readByte();
+			if (version != FORMAT_VERSION) {
+				throw new CodecException("Unsupported format version "+version);
+			}
+			int fingerprint = decoder.readInt();
+			byte mode = decoder.readByte();
+			SchemaTable table = (fingerprint != 0 ? getSchemaTable(ontology) : null);
+			boolean match = table != null && table.getFingerprint() == fingerprint;
+			if (table != null && msg != null && msg.getSender() != null) {
+				table.setMatching(msg.getSender().getName(), match);
+			}
+			if (mode == BY_ID) {
+				if (!match) {
+					throw new CodecException("Content encoded with a different version of ontology "+(ontology != null ? ontology.getName() : null));
+				}
+				decoder.table = table;
+			}
+			return (AbsContentElement) decoder.read();
+		}
+		catch (CodecException ce) {
+			throw ce;
+		}
+		catch (Throwable t) {
+			throw new CodecException("Error decoding content", t);
+		}
+	}
+
+	/**
+	 * @return true if all receivers of a message are known to use a given table
+	 */
+	private boolean isShared(SchemaTable table, ACLMessage msg) {
+		if (table.isShared()) {
+			return true;
+		}
+		if (msg == null) {
+			return false;
+		}
+		Iterator it = msg.getAllReceiver();
+		if (!it.hasNext()) {
+			return false;
+		}
+		while (it.hasNext()) {
+			if (!table.isShared(((AID) it.next()).getName())) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private SchemaTable getSchemaTable(Ontology ontology) throws OntologyException {
+		if (ontology == null) {
+			return null;
+		}
+		SchemaTable table = tables.get(ontology);
+		if (table == null) {
+			// Concurrent threads may compile the same table twice: this is harmless
+			table = new SchemaTable(ontology);
+			tables.put(ontology, table);
+		}
+		return table;
+	}
+
+	/**
+	 * Inner class encoding a single content.
+	 */
+	private static class Encoder {
+		private byte[] buf = new byte[256];
+		private int size = 0;
+		private SchemaTable table;
+		private Map<String, Integer> stringReferences = new HashMap<String, Integer>();
+
+		Encoder(SchemaTable table) {
+			this.table = table;
+		}
+
+		void write(AbsObject abs) throws Throwable {
+			// PRIMITIVE
+			if (abs instanceof AbsPrimitive) {
+				Object obj = ((AbsPrimitive) abs).getObject();
+				if (obj instanceof String) {
+					writeByte(STRING);
+					writeString((String) obj);
+				}
+				else if (obj instanceof Boolean) {
+					writeByte(((Boolean) obj).booleanValue() ? TRUE : FALSE);
+				}
+				else if (obj instanceof Integer) {
+					writeByte(INTEGER);
+					writeVarLong(zigZag(((Integer) obj).intValue()));
+				}
+				else if (obj instanceof Long) {
+					writeByte(LONG);
+					writeVarLong(zigZag(((Long) obj).longValue()));
+				}
+				else if (obj instanceof Float) {
+					writeByte(FLOAT);
+					writeInt(Float.floatToIntBits(((Float) obj).floatValue()));
+				}
+				else if (obj instanceof Double) {
+					writeByte(DOUBLE);
+					long bits = Double.doubleToLongBits(((Double) obj).doubleValue());
+					writeInt((int) (bits >>> 32));
+					writeInt((int) bits);
+				}
+				else if (obj instanceof Date) {
+					writeByte(DATE);
+					writeVarLong(zigZag(((Date) obj).getTime()));
+				}
+				else if (obj instanceof byte[]) {
+					writeByte(BYTE_SEQUENCE);
+					byte[] b = (byte[]) obj;
+					writeVarLong(b.length);
+					writeBytes(b, 0, b.length);
+				}
+				else {
+					throw new CodecException("Unsupported primitive value "+obj);
+				}
+				return;
+			}
+
+			// AGGREGATE
+			if (abs instanceof AbsAggregate) {
+				AbsAggregate aggregate = (AbsAggregate) abs;
+				writeByte(AGGREGATE);
+				writeString(aggregate.getTypeName());
+				writeVarLong(aggregate.size());
+				for (int i = 0; i < aggregate.size(); i++) {
+					write(aggregate.get(i));
+				}
+				return;
+			}
+
+			// CONTENT_ELEMENT_LIST
+			if (abs instanceof AbsContentElementList) {
+				AbsContentElementList acel = (AbsContentElementList) abs;
+				writeByte(CONTENT_ELEMENT_LIST);
+				writeVarLong(acel.size());
+				for (int i = 0; i < acel.size(); i++) {
+					write(acel.get(i));
+				}
+				return;
+			}
+
+			// If we get here it must be a complex OBJECT
+			String[] names = abs.getNames();
+			SchemaTable.Entry entry = (table != null ? table.getEntry(abs.getTypeName()) : null);
+			if (entry != null) {
+				writeByte(OBJECT);
+				writeVarLong(entry.id);
+				writeVarLong(names.length);
+				for (int i = 0; i < names.length; i++) {
+					// Slot ids are shifted by one: 0 means "slot encoded by name"
+					int slotId = entry.getSlotId(names[i]);
+					writeVarLong(slotId + 1);
+					if (slotId < 0) {
+						writeString(names[i]);
+					}
+					write(abs.getAbsObject(names[i]));
+				}
+			}
+			else {
+				writeByte(NAMED_OBJECT);
+				writeString(abs.getTypeName());
+				writeVarLong(names.length);
+				for (int i = 0; i < names.length; i++) {
+					writeString(names[i]);
+					write(abs.getAbsObject(names[i]));
+				}
+			}
+		}
+
+		/**
+		 * Strings are encoded as a varint holding their length shifted 
+		 * left by one bit followed by their UTF-8 bytes, or as a varint 
+		 * holding (shifted left by one bit, with the lowest bit set) the 
+		 * index of an identical string previously encoded in the same content.
+		 */
+		private void writeString(String s) throws UnsupportedEncodingException {
+			Integer index = stringReferences.get(s);
+			if (index != null) {
+				writeVarLong((((long) index.intValue()) << 1) | 1);
+				return;
+			}
+			if (s.length() >= MIN_REFERENCED_LENGTH) {
+				stringReferences.put(s, new Integer(stringReferences.size()));
+			}
+
+			int length = s.length();
+			boolean ascii = true;
+			for (int i = 0; i < length; ++i) {
+				if (s.charAt(i) >= 0x80) {
+					ascii = false;
+					break;
+				}
+			}
+			if (ascii) {
+				writeVarLong(((long) length) << 1);
+				ensureCapacity(length);
+				for (int i = 0; i < length; ++i) {
+					buf[size++] = (byte) s.charAt(i);
+				}
+			}
+			else {
+				byte[] b = s.getBytes(UTF8);
+				writeVarLong(((long) b.length) << 1);
+				writeBytes(b, 0, b.length);
+			}
+		}
+
+		private static long zigZag(long v) {
+			return (v << 1) ^ (v >> 63);
+		}
+
+		private void writeVarLong(long v) {
+			ensureCapacity(10);
+			while ((v & ~0x7FL) != 0) {
+				buf[size++] = (byte) ((v & 0x7F) | 0x80);
+				v >>>= 7;
+			}
+			buf[size++] = (byte) v;
+		}
+
+		final void writeByte(int b) {
+			ensureCapacity(1);
+			buf[size++] = (byte) b;
+		}
+
+		final void writeInt(int v) {
+			ensureCapacity(4);
+			buf[size++] = (byte) (v >>> 24);
+			buf[size++] = (byte) (v >>> 16);
+			buf[size++] = (byte) (v >>> 8);
+			buf[size++] = (byte) v;
+		}
+
+		private void writeBytes(byte[] b, int off, int len) {
+			ensureCapacity(len);
+			System.arraycopy(b, off, buf, size, len);
+			size += len;
+		}
+
+		private void ensureCapacity(int n) {
+			if (size + n > buf.length) {
+				byte[] tmp = new byte[Math.max(buf.length * 2, size + n)];
+				System.arraycopy(buf, 0, tmp, 0, size);
+				buf = tmp;
+			}
+		}
+
+		final byte[] toByteArray() {
+			byte[] result = new byte[size];
+			System.arraycopy(buf, 0, result, 0, size);
+			return result;
+		}
+	}
+
+	/**
+	 * Inner class decoding a single content.
+	 */
+	private static class Decoder {
+		private byte[] buf;
+		private int pos = 0;
+		private Ontology ontology;
+		SchemaTable table;
+		private List<String> stringReferences = new ArrayList<String>();
+
+		Decoder(byte[] buf, Ontology ontology) {
+			this.buf = buf;
+			this.ontology = ontology;
+		}
+
+		AbsObject read() throws Throwable {
+			byte type = readByte();
+			switch (type) {
+			case STRING:
+				return AbsPrimitive.wrap(readString());
+			case TRUE:
+				return AbsPrimitive.wrap(true);
+			case FALSE:
+				return AbsPrimitive.wrap(false);
+			case INTEGER:
+				return AbsPrimitive.wrap((int) unZigZag(readVarLong()));
+			case LONG:
+				return AbsPrimitive.wrap(unZigZag(readVarLong()));
+			case FLOAT:
+				return AbsPrimitive.wrap(Float.intBitsToFloat(readInt()));
+			case DOUBLE:
+				long bits = (((long) readInt()) << 32) | (readInt() & 0xFFFFFFFFL);
+				return AbsPrimitive.wrap(Double.longBitsToDouble(bits));
+			case DATE:
+				return AbsPrimitive.wrap(new Date(unZigZag(readVarLong())));
+			case BYTE_SEQUENCE:
+				int length = readLength();
+				byte[] value = new byte[length];
+				System.arraycopy(buf, pos, value, 0, length);
+				pos += length;
+				return AbsPrimitive.wrap(value);
+			case AGGREGATE:
+				AbsAggregate aggregate = new AbsAggregate(readString());
+				int size = readLength();
+				for (int i = 0; i < size; ++i) {
+					try {
+						aggregate.add((AbsTerm) read());
+					}
+					catch (ClassCastException cce) {
+						throw new CodecException("Non term element in aggregate"); 
+					}
+				}
+				return aggregate;
+			case CONTENT_ELEMENT_LIST:
+				AbsContentElementList acel = new AbsContentElementList();
+				size = readLength();
+				for (int i = 0; i < size; ++i) {
+					try {
+						acel.add((AbsContentElement) read());
+					}
+					catch (ClassCastException cce) {
+						throw new CodecException("Non content-element element in content-element-list"); 
+					}
+				}
+				return acel;
+			case OBJECT:
+				int id = readId();
+				SchemaTable.Entry entry = (table != null ? table.getEntry(id) : null);
+				if (entry == null) {
+					throw new CodecException("Unknown type id "+id);
+				}
+				AbsObject abs = entry.schema.newInstance();
+				size = readLength();
+				for (int i = 0; i < size; ++i) {
+					int slotId = readId() - 1;
+					String slotName;
+					if (slotId < 0) {
+						slotName = readString();
+					}
+					else if (slotId < entry.slotNames.length) {
+						slotName = entry.slotNames[slotId];
+					}
+					else {
+						throw new CodecException("Unknown slot id "+slotId+" for type "+entry.typeName);
+					}
+					AbsHelper.setAttribute(abs, slotName, read());
+				}
+				return abs;
+			case NAMED_OBJECT:
+				String typeName = readString();
+				ObjectSchema schema = ontology.getSchema(typeName);
+				if (schema == null) {
+					throw new OntologyException("No schema found for type "+typeName);
+				}
+				abs = schema.newInstance();
+				size = readLength();
+				for (int i = 0; i < size; ++i) {
+					String slotName = readString();
+					AbsHelper.setAttribute(abs, slotName, read());
+				}
+				return abs;
+			default:
+				throw new CodecException("Unknown type "+type);
+			}
+		}
+
+		private String readString() throws Throwable {
+			long v = readVarLong();
+			if ((v & 1) != 0) {
+				int index = (int) (v >>> 1);
+				if (index >= stringReferences.size()) {
+					throw new CodecException("Wrong string reference "+index);
+				}
+				return stringReferences.get(index);
+			}
+			check(v >>> 1);
+			int length = (int) (v >>> 1);
+			String s = new String(buf, pos, length, UTF8);
+			pos += length;
+			if (s.length() >= MIN_REFERENCED_LENGTH) {
+				stringReferences.add(s);
+			}
+			return s;
+		}
+
+		private static long unZigZag(long v) {
+			return (v >>> 1) ^ -(v & 1);
+		}
+
+		private long readVarLong() throws CodecException {
+			long v = 0;
+			for (int shift = 0; shift < 64; shift += 7) {
+				byte b = readByte();
+				v |= ((long) (b & 0x7F)) << shift;
+				if ((b & 0x80) == 0) {
+					return v;
+				}
+			}
+			throw new CodecException("Malformed varint");
+		}
+
+		/**
+		 * Read the length of a byte sequence or the number of elements of
+		 * an aggregate (each taking at least one byte)
+		 */
+		private int readLength() throws CodecException {
+			long v = readVarLong();
+			check(v);
+			return (int) v;
+		}
+
+		private int readId() throws CodecException {
+			long v = readVarLong();
+			if (v < 0 || v > Integer.MAX_VALUE) {
+				throw new CodecException("Malformed id "+v);
+			}
+			return (int) v;
+		}
+
+		final byte readByte() throws CodecException {
+			check(1);
+			return buf[pos++];
+		}
+
+		final int readInt() throws CodecException {
+			check(4);
+			int v = ((buf[pos] & 0xFF) << 24) | ((buf[pos + 1] & 0xFF) << 16) | ((buf[pos + 2] & 0xFF) << 8) | (buf[pos + 3] & 0xFF);
+			pos += 4;
+			return v;
+		}
+
+		private void check(long n) throws CodecException {
+			if (n < 0 || n > buf.length - pos) {
+				throw new CodecException("Unexpected end of content");
+			}
+		}
+	}
+}
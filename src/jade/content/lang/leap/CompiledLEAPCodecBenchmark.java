@@ -0,0 +1,186 @@
+package jade.content.lang.leap;
+
+//#J2ME_EXCLUDE_FILE
+//#APIDOC_EXCLUDE_FILE
+
+import jade.content.abs.AbsContentElement;
+import jade.content.lang.Codec;
+import jade.content.lang.sl.SLCodec;
+import jade.content.onto.Ontology;
+import jade.content.onto.basic.Action;
+import jade.content.onto.basic.Result;
+import jade.core.AID;
+import jade.core.BenchmarkHarness;
+import jade.domain.FIPANames;
+import jade.domain.FIPAAgentManagement.DFAgentDescription;
+import jade.domain.FIPAAgentManagement.FIPAManagementOntology;
+import jade.domain.FIPAAgentManagement.Property;
+import jade.domain.FIPAAgentManagement.Register;
+import jade.domain.FIPAAgentManagement.Search;
+import jade.domain.FIPAAgentManagement.SearchConstraints;
+import jade.domain.FIPAAgentManagement.ServiceDescription;
+import jade.util.leap.ArrayList;
+import jade.util.leap.List;
+import jade.util.leap.Properties;
+
+/**
+ Compare the size of the encoded contents and the encoding and decoding
+ throughput of the <code>CompiledLEAPCodec</code>, the <code>LEAPCodec</code>
+ and the <code>SLCodec</code> on typical DF contents: a register request,
+ a search request and the result of a search returning a given number of
+ agent descriptions. Ontological conversions are not measured.
+ Before measuring, the benchmark checks that all codecs decode what they
+ encoded.
+ Usage:
+ <code>java jade.content.lang.leap.CompiledLEAPCodecBenchmark [-results 20] [-t 3] [-warmup 2]</code>
+ where
+ <ul>
+ <li><code>results</code> is the number of agent descriptions in the search result</li>
+ </ul>
+ @see jade.core.BenchmarkHarness
+ */
+public class CompiledLEAPCodecBenchmark {
+	private static final String RESULTS = "results";
+	private static final int DEFAULT_RESULTS = 20;
+
+	private static final String[] CONTENTS = new String[]{"register", "search", "search result"};
+
+	private static final AID df = new AID("df@benchmark", AID.ISGUID);
+
+	// Prevent the JIT from discarding the results
+	private static long sink;
+
+	public static void main(String[] args) throws Exception {
+		Properties pp = BenchmarkHarness.parseArguments(args);
+		int results = BenchmarkHarness.getIntProperty(pp, RESULTS, DEFAULT_RESULTS);
+		int duration = BenchmarkHarness.getDuration(pp);
+		int warmup = BenchmarkHarness.getWarmup(pp);
+
+		Ontology onto = FIPAManagementOntology.getInstance();
+		SLCodec sl = new SLCodec();
+		CompiledLEAPCodec compiled = new CompiledLEAPCodec();
+		// Measure the encoding by ids used once the peers know they share the ontology
+		compiled.declareShared(onto);
+		Codec[] codecs = new Codec[]{compiled, new LEAPCodec(), sl};
+		// The SL codec needs its inner ontology as the ContentManager does
+		Ontology[] ontologies = new Ontology[]{onto, onto, new Ontology(null, new Ontology[]{onto, sl.getInnerOntology()}, null)};
+
+		AbsContentElement[] contents = new AbsContentElement[]{
+				(AbsContentElement) onto.fromObject(createRegister()),
+				(AbsContentElement) onto.fromObject(createSearch()),
+				(AbsContentElement) onto.fromObject(createSearchResult(results))
+		};
+
+		System.out.println("----------------------------------");
+		for (int i = 0; i < contents.length; ++i) {
+			System.out.println(CONTENTS[i]);
+			for (int j = 0; j < codecs.length; ++j) {
+				Object encoded = encode(codecs[j], ontologies[j], contents[i]);
+				AbsContentElement decoded = decode(codecs[j], ontologies[j], encoded);
+				if (!contents[i].toString().equals(decoded.toString())) {
+					System.out.println("ERROR: wrong "+codecs[j].getName()+" round trip\n"+contents[i]+"\n"+decoded);
+					System.exit(1);
+				}
+
+				measureEncode(codecs[j], ontologies[j], contents[i], warmup);
+				long encodeOps = measureEncode(codecs[j], ontologies[j], contents[i], duration);
+				measureDecode(codecs[j], ontologies[j], encoded, warmup);
+				long decodeOps = measureDecode(codecs[j], ontologies[j], encoded, duration);
+				System.out.println("- "+BenchmarkHarness.pad(codecs[j].getName(), 14)+": "+BenchmarkHarness.pad(size(encoded)+" bytes", 12)+
+						"encode "+BenchmarkHarness.pad(String.valueOf(encodeOps / duration), 9)+"decode "+(decodeOps / duration)+" contents/s");
+			}
+		}
+		System.out.println("----------------------------------");
+	}
+
+	private static long measureEncode(Codec codec, Ontology onto, AbsContentElement content, int duration) throws Exception {
+		long end = System.currentTimeMillis() + duration * 1000L;
+		long cnt = 0;
+		while (System.currentTimeMillis() < end) {
+			// Check the time every 100 operations only
+			for (int i = 0; i < 100; ++i) {
+				sink += encode(codec, onto, content).hashCode();
+			}
+			cnt += 100;
+		}
+		return cnt;
+	}
+
+	private static long measureDecode(Codec codec, Ontology onto, Object encoded, int duration) throws Exception {
+		long end = System.currentTimeMillis() + duration * 1000L;
+		long cnt = 0;
+		while (System.currentTimeMillis() < end) {
+			// Check the time every 100 operations only
+			for (int i = 0; i < 100; ++i) {
+				sink += decode(codec, onto, encoded).getTypeName().length();
+			}
+			cnt += 100;
+		}
+		return cnt;
+	}
+
+	private static Object encode(Codec codec, Ontology onto, AbsContentElement content) throws Exception {
+		if (codec instanceof SLCodec) {
+			return ((SLCodec) codec).encode(onto, content);
+		}
+		return ((jade.content.lang.ByteArrayCodec) codec).encode(onto, content);
+	}
+
+	private static AbsContentElement decode(Codec codec, Ontology onto, Object encoded) throws Exception {
+		if (codec instanceof SLCodec) {
+			return ((SLCodec) codec).decode(onto, (String) encoded);
+		}
+		return ((jade.content.lang.ByteArrayCodec) codec).decode(onto, (byte[]) encoded);
+	}
+
+	private static int size(Object encoded) throws Exception {
+		if (encoded instanceof String) {
+			return ((String) encoded).getBytes("UTF-8").length;
+		}
+		return ((byte[]) encoded).length;
+	}
+
+	private static Action createRegister() {
+		Register r = new Register();
+		r.setDescription(createDescription(0));
+		return new Action(df, r);
+	}
+
+	private static Action createSearch() {
+		DFAgentDescription dfd = new DFAgentDescription();
+		ServiceDescription sd = new ServiceDescription();
+		sd.setType("weather-forecast");
+		dfd.addServices(sd);
+		SearchConstraints sc = new SearchConstraints();
+		sc.setMaxResults(new Long(100));
+		Search s = new Search();
+		s.setDescription(dfd);
+		s.setConstraints(sc);
+		return new Action(df, s);
+	}
+
+	private static Result createSearchResult(int n) {
+		List items = new ArrayList();
+		for (int i = 0; i < n; ++i) {
+			items.add(createDescription(i));
+		}
+		return new Result(createSearch(), items);
+	}
+
+	private static DFAgentDescription createDescription(int i) {
+		DFAgentDescription dfd = new DFAgentDescription();
+		AID id = new AID("forecaster"+i+"@benchmark", AID.ISGUID);
+		id.addAddresses("http://host.domain.com:7778/acc");
+		dfd.setName(id);
+		dfd.addLanguages(FIPANames.ContentLanguage.FIPA_SL);
+		dfd.addOntologies("weather-ontology");
+		dfd.addProtocols(FIPANames.InteractionProtocol.FIPA_REQUEST);
+		ServiceDescription sd = new ServiceDescription();
+		sd.setType("weather-forecast");
+		sd.setName("Forecaster "+i);
+		sd.addProperties(new Property("area", "Europe"));
+		sd.addProperties(new Property("horizon", new Long(7)));
+		dfd.addServices(sd);
+		return dfd;
+	}
+}
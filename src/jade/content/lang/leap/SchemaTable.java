@@ -0,0 +1,178 @@
+/*****************************************************************
+JADE - Java Agent DEvelopment Framework is a framework to develop 
+multi-agent systems in compliance with the FIPA specifications.
+Copyright (C) 2000 CSELT S.p.A. 
+
+GNU Lesser General Public License
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation, 
+version 2.1 of the License. 
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the
+Free Software Foundation, Inc., 59 Temple Place - Suite 330,
+Boston, MA  02111-1307, USA.
+*****************************************************************/
+
+package jade.content.lang.leap;
+
+//#J2ME_EXCLUDE_FILE
+//#APIDOC_EXCLUDE_FILE
+
+import jade.content.onto.BasicOntology;
+import jade.content.onto.Ontology;
+import jade.content.onto.OntologyException;
+import jade.content.schema.ObjectSchema;
+
+import java.io.UnsupportedEncodingException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+/**
+ The compiled form of an ontology used by the <code>CompiledLEAPCodec</code>.
+ All schemas of the ontology (including those of the extended ontologies
+ and of the <code>BasicOntology</code>) are sorted by type name and 
+ numbered, and so are the slots of each schema, in the order they are 
+ defined. Two peers sharing the same ontology definition therefore compile
+ the same table, whose fingerprint identifies the version of the ontology.
+ */
+class SchemaTable {
+	private Entry[] entries;
+	private Map<String, Entry> entriesByName = new HashMap<String, Entry>();
+	private int fingerprint;
+	// True when all peers are known to use the same table
+	private volatile boolean shared = false;
+	// The names of the peers known to use the same table
+	private Map<String, Boolean> matchingPeers = new ConcurrentHashMap<String, Boolean>();
+
+	static class Entry {
+		final int id;
+		final ObjectSchema schema;
+		final String typeName;
+		final String[] slotNames;
+		private final Map<String, Integer> slotIds = new HashMap<String, Integer>();
+
+		private Entry(int id, ObjectSchema schema) {
+			this.id = id;
+			this.schema = schema;
+			typeName = schema.getTypeName();
+			slotNames = schema.getNames();
+			for (int i = 0; i < slotNames.length; ++i) {
+				slotIds.put(slotNames[i], new Integer(i));
+			}
+		}
+
+		/**
+		 @return the id of a slot or -1 if the schema has no such slot
+		 */
+		final int getSlotId(String slotName) {
+			Integer id = slotIds.get(slotName);
+			return id != null ? id.intValue() : -1;
+		}
+	}
+
+	SchemaTable(Ontology onto) throws OntologyException {
+		TreeSet<String> names = new TreeSet<String>();
+		addAll(names, onto.getConceptNames());
+		addAll(names, onto.getActionNames());
+		addAll(names, onto.getPredicateNames());
+		Ontology basicOnto = BasicOntology.getInstance();
+		addAll(names, basicOnto.getOwnConceptNames());
+		addAll(names, basicOnto.getOwnPredicateNames());
+
+		CRC32 crc = new CRC32();
+		java.util.List<Entry> l = new java.util.ArrayList<Entry>();
+		Iterator<String> it = names.iterator();
+		while (it.hasNext()) {
+			ObjectSchema schema = onto.getSchema(it.next());
+			if (schema != null && !entriesByName.containsKey(schema.getTypeName())) {
+				Entry e = new Entry(l.size(), schema);
+				l.add(e);
+				entriesByName.put(e.typeName, e);
+				update(crc, e.typeName);
+				for (int i = 0; i < e.slotNames.length; ++i) {
+					update(crc, e.slotNames[i]);
+				}
+			}
+		}
+		entries = l.toArray(new Entry[l.size()]);
+		// 0 means "no table"
+		fingerprint = (int) crc.getValue();
+		if (fingerprint == 0) {
+			fingerprint = 1;
+		}
+	}
+
+	final int getFingerprint() {
+		return fingerprint;
+	}
+
+	final boolean isShared() {
+		return shared;
+	}
+
+	final void setShared() {
+		shared = true;
+	}
+
+	/**
+	 @return true if a peer is known to use the same table
+	 */
+	final boolean isShared(String peer) {
+		return shared || matchingPeers.containsKey(peer);
+	}
+
+	/**
+	 Record whether the last content received from a peer carried the 
+	 fingerprint of this table
+	 */
+	final void setMatching(String peer, boolean match) {
+		if (match) {
+			matchingPeers.put(peer, Boolean.TRUE);
+		}
+		else {
+			matchingPeers.remove(peer);
+		}
+	}
+
+	/**
+	 @return the entry for a given type or <code>null</code> if the type 
+	 is not part of the table
+	 */
+	final Entry getEntry(String typeName) {
+		return entriesByName.get(typeName);
+	}
+
+	final Entry getEntry(int id) {
+		return (id >= 0 && id < entries.length ? entries[id] : null);
+	}
+
+	private static void addAll(TreeSet<String> names, java.util.List l) {
+		for (int i = 0; i < l.size(); ++i) {
+			names.add((String) l.get(i));
+		}
+	}
+
+	private static void update(CRC32 crc, String name) {
+		try {
+			byte[] b = name.getBytes("UTF-8");
+			crc.update(b, 0, b.length);
+			// Separator
+			crc.update(0);
+		}
+		catch (UnsupportedEncodingException uee) {
+			// UTF-8 is always supported
+		}
+	}
+}
@@ -32,6 +32,8 @@ import jade.content.lang.StringCodec;
 //#MIDP_EXCLUDE_BEGIN
 import jade.lang.acl.ISO8601;
 import jade.util.leap.Iterator;
+import jade.util.leap.List;
+import jade.util.leap.ArrayList;
 import jade.domain.FIPANames;
 import jade.core.CaseInsensitiveString;
 
@@ -49,6 +51,9 @@ import java.io.InputStreamReader; // only for debugging purposes in the main
  * grammar.
  * By default the class implements full SL grammar, otherwise the proper
  * value must be used in the constructor.
+ * The codec is reentrant: the same instance can be used to encode and 
+ * decode contents concurrently by several threads (e.g. by threaded 
+ * behaviours sharing the ContentManager of their agent).
  * @author Fabio Bellifemine - TILAB 
  * @author Nicolas Lhuillier - Motorola (added support for byte[] primitive)
  * @version $Date: 2008-03-18 14:37:09 +0100 (mar, 18 mar 2008) $ $Revision: 6022 $
@@ -59,12 +64,15 @@ public class SLCodec extends SimpleSLCodec {
 //#MIDP_EXCLUDE_BEGIN
 public class SLCodec extends StringCodec {
 
-	private transient SLParser parser;
-	private transient ExtendedSLParser extendedParser;
+	// Maximum number of idle parsers kept for reuse
+	private static final int MAX_POOLED_PARSERS = 16;
+
+	/** The idle parsers (SLParser or ExtendedSLParser). A parser is
+	    taken from this pool for the duration of each decoding so that
+	    concurrent threads can use the same codec without blocking each other **/
+	private transient List parsers;
+	private transient int slType;
 	private SL0Ontology slOnto; // ontology of the content language
-	private Ontology domainOnto = null; // application ontology
-	/** This is the StringBuffer used by the encode method **/
-	private transient StringBuffer buffer = null; 
 	/** This variable is true, when meta symbols are allowed (metas are a semantics-specific extension to the SL Grammar) **/
 	private boolean metaAllowed = true; //FIXME set/unset this variable to do
 	
@@ -117,17 +125,47 @@ public class SLCodec extends StringCodec {
 	}
 
 	private void initParser() {
-		int	slType	= jade.domain.FIPANames.ContentLanguage.FIPA_SL0.equals(getName()) ? 0
-					: jade.domain.FIPANames.ContentLanguage.FIPA_SL2.equals(getName()) ? 1 
-					: jade.domain.FIPANames.ContentLanguage.FIPA_SL2.equals(getName()) ? 2 : 3;
+		slType	= jade.domain.FIPANames.ContentLanguage.FIPA_SL0.equals(getName()) ? 0
+				: jade.domain.FIPANames.ContentLanguage.FIPA_SL2.equals(getName()) ? 1 
+				: jade.domain.FIPANames.ContentLanguage.FIPA_SL2.equals(getName()) ? 2 : 3;
 		
+		parsers = new ArrayList(MAX_POOLED_PARSERS);
+		// Create the first parser immediately as the codec used to do
+		releaseParser(createParser());
+	}
+	
+	private Object createParser() {
 		if (preserveJavaTypes) {
-			extendedParser = new ExtendedSLParser(new StringReader(""));
+			ExtendedSLParser extendedParser = new ExtendedSLParser(new StringReader(""));
 			extendedParser.setSLType(slType);
+			return extendedParser;
 		}
 		else {
-			parser = new SLParser(new StringReader(""));
+			SLParser parser = new SLParser(new StringReader(""));
 			parser.setSLType(slType); 
+			return parser;
+		}
+	}
+	
+	/**
+	 * Take an idle parser from the pool or create a new one if there are 
+	 * no idle parsers (i.e. all of them are in use by other threads)
+	 */
+	private Object acquireParser() {
+		synchronized (parsers) {
+			int size = parsers.size();
+			if (size > 0) {
+				return parsers.remove(size - 1);
+			}
+		}
+		return createParser();
+	}
+	
+	private void releaseParser(Object p) {
+		synchronized (parsers) {
+			if (parsers.size() < MAX_POOLED_PARSERS) {
+				parsers.add(p);
+			}
 		}
 	}
 	
@@ -152,22 +190,17 @@ public class SLCodec extends StringCodec {
 	 * @return the content as a String.
 	 * @throws CodecException
 	 */
-	public synchronized String encode(Ontology ontology, AbsContentElement content) throws CodecException {
-		try {
-			domainOnto = ontology;
-			buffer = new StringBuffer("(");
-			if (content instanceof AbsContentElementList) {
-				for (Iterator i=((AbsContentElementList)content).iterator(); i.hasNext(); ) {
-					AbsObject o = (AbsObject)i.next();
-					encodeAndAppend(o);
-					buffer.append(' ');
-				}
-			} else encodeAndAppend(content);
-			buffer.append(')');
-			return buffer.toString();
-		} finally {
-			buffer = null; //frees the memory
-		}
+	public String encode(Ontology ontology, AbsContentElement content) throws CodecException {
+		StringBuffer buffer = new StringBuffer("(");
+		if (content instanceof AbsContentElementList) {
+			for (Iterator i=((AbsContentElementList)content).iterator(); i.hasNext(); ) {
+				AbsObject o = (AbsObject)i.next();
+				encodeAndAppend(buffer, ontology, o);
+				buffer.append(' ');
+			}
+		} else encodeAndAppend(buffer, ontology, content);
+		buffer.append(')');
+		return buffer.toString();
 	}
 
 
@@ -177,7 +210,7 @@ public class SLCodec extends StringCodec {
 	 * escaping strings, if necessary.
 	 * And append it to the buffer.
 	 **/
-	private void encodeAndAppend(String val) {
+	private void encodeAndAppend(StringBuffer buffer, Ontology domainOnto, String val) {
 		// if the slotName is a String of words then quote it. If it is a meta (i.e. startsWith "??") do not quote it.
 		String out = ( (SimpleSLTokenizer.isAWord(val) || (metaAllowed && val.startsWith("??")) ) ? val : SimpleSLTokenizer.quoteString(val));
 		buffer.append(out);
@@ -185,17 +218,17 @@ public class SLCodec extends StringCodec {
 
 
 	/** Encode the passed Abstract Predicate and append its encoding to buffer **/
-	private void encodeAndAppend(AbsPredicate val) throws CodecException {
+	private void encodeAndAppend(StringBuffer buffer, Ontology domainOnto, AbsPredicate val) throws CodecException {
 		String propositionSymbol = val.getTypeName();
 		if (val.getCount() > 0) { // predicate with arguments
-			String[] slotNames = getSlotNames(val);
+			String[] slotNames = getSlotNames(domainOnto, val);
 			buffer.append('(');
 			if (slOnto.isUnaryLogicalOp(propositionSymbol)) {
 				// Unary logical operator of the SL language (NOT)
 				buffer.append(propositionSymbol);
 				buffer.append(' ');
 				try {
-					encodeAndAppend((AbsPredicate)val.getAbsObject(slotNames[0]));
+					encodeAndAppend(buffer, domainOnto, (AbsPredicate)val.getAbsObject(slotNames[0]));
 				} catch (RuntimeException e) {
 					throw new CodecException("A UnaryLogicalOp requires a formula argument",e);
 				}
@@ -204,9 +237,9 @@ public class SLCodec extends StringCodec {
 				buffer.append(propositionSymbol);
 				buffer.append(' ');
 				try {
-					encodeAndAppend((AbsPredicate)val.getAbsObject(slotNames[0]));
+					encodeAndAppend(buffer, domainOnto, (AbsPredicate)val.getAbsObject(slotNames[0]));
 					buffer.append(' ');
-					encodeAndAppend((AbsPredicate)val.getAbsObject(slotNames[1]));
+					encodeAndAppend(buffer, domainOnto, (AbsPredicate)val.getAbsObject(slotNames[1]));
 				} catch (RuntimeException e) {
 					throw new CodecException("A BinaryLogicalOp requires 2 formula arguments",e);
 				}
@@ -215,9 +248,9 @@ public class SLCodec extends StringCodec {
 				buffer.append(propositionSymbol);
 				buffer.append(' ');
 				try {
-					encodeAndAppend((AbsVariable)val.getAbsObject(slotNames[0])); //FIXME. The hypothesis is that the first slot is the variable
+					encodeAndAppend(buffer, domainOnto, (AbsVariable)val.getAbsObject(slotNames[0])); //FIXME. The hypothesis is that the first slot is the variable
 					buffer.append(' ');
-					encodeAndAppend((AbsPredicate)val.getAbsObject(slotNames[1]));
+					encodeAndAppend(buffer, domainOnto, (AbsPredicate)val.getAbsObject(slotNames[1]));
 				} catch (RuntimeException e) {
 					throw new CodecException("A Quantifier requires a variable and a formula arguments",e);
 				}
@@ -226,9 +259,9 @@ public class SLCodec extends StringCodec {
 				buffer.append(propositionSymbol);
 				buffer.append(' ');
 				try {
-					encodeAndAppend((AbsTerm)val.getAbsObject(slotNames[0]));
+					encodeAndAppend(buffer, domainOnto, (AbsTerm)val.getAbsObject(slotNames[0]));
 					buffer.append(' ');
-					encodeAndAppend((AbsPredicate)val.getAbsObject(slotNames[1]));
+					encodeAndAppend(buffer, domainOnto, (AbsPredicate)val.getAbsObject(slotNames[1]));
 				} catch (RuntimeException e) {
 					throw new CodecException("A ModalOp requires a term and a formula arguments",e);
 				}
@@ -237,11 +270,11 @@ public class SLCodec extends StringCodec {
 				buffer.append(propositionSymbol);
 				buffer.append(' ');
 				try {
-					encodeAndAppend((AbsTerm)val.getAbsObject(slotNames[0])); //FIXME check it is an action expression
+					encodeAndAppend(buffer, domainOnto, (AbsTerm)val.getAbsObject(slotNames[0])); //FIXME check it is an action expression
 					AbsPredicate ap = (AbsPredicate)val.getAbsObject(slotNames[1]);
 					if (ap != null) { // Second argument is optional
 						buffer.append(' ');
-						encodeAndAppend(ap);
+						encodeAndAppend(buffer, domainOnto, ap);
 					}
 				} catch (RuntimeException e) {
 					throw new CodecException("An ActionOp requires an actionexpression and (optionally) a formula arguments",e);
@@ -251,17 +284,17 @@ public class SLCodec extends StringCodec {
 				buffer.append(propositionSymbol);
 				buffer.append(' ');
 				try {
-					encodeAndAppend((AbsTerm)val.getAbsObject(slotNames[0]));
+					encodeAndAppend(buffer, domainOnto, (AbsTerm)val.getAbsObject(slotNames[0]));
 					buffer.append(' ');
-					encodeAndAppend((AbsTerm)val.getAbsObject(slotNames[1]));
+					encodeAndAppend(buffer, domainOnto, (AbsTerm)val.getAbsObject(slotNames[1]));
 				} catch (RuntimeException e) {
 					throw new CodecException("A BinaryTermOp requires 2 term arguments",e);
 				}
 			} else {
-				encodeAndAppend(propositionSymbol);
+				encodeAndAppend(buffer, domainOnto, propositionSymbol);
 				// Predicate in the ontology
 				try {
-					encodeSlotsByOrder(val, slotNames);
+					encodeSlotsByOrder(buffer, domainOnto, val, slotNames);
 				} catch (RuntimeException e) {
 					throw new CodecException("SL allows predicates with term arguments only",e);
 				}
@@ -269,39 +302,39 @@ public class SLCodec extends StringCodec {
 			buffer.append(')');
 		} else
 			// Proposition
-			encodeAndAppend(propositionSymbol);  
+			encodeAndAppend(buffer, domainOnto, propositionSymbol);  
 	}
 
-	private void encodeAndAppend(AbsIRE val) throws CodecException {
+	private void encodeAndAppend(StringBuffer buffer, Ontology domainOnto, AbsIRE val) throws CodecException {
 		buffer.append('(');
-		encodeAndAppend(val.getTypeName());
+		encodeAndAppend(buffer, domainOnto, val.getTypeName());
 		buffer.append(' ');
-		encodeAndAppend(val.getTerm());
+		encodeAndAppend(buffer, domainOnto, val.getTerm());
 		buffer.append(' ');
-		encodeAndAppend(val.getProposition());
+		encodeAndAppend(buffer, domainOnto, val.getProposition());
 		buffer.append(')'); 
 	}
 
-	private void encodeAndAppend(AbsVariable val) throws CodecException {
+	private void encodeAndAppend(StringBuffer buffer, Ontology domainOnto, AbsVariable val) throws CodecException {
 		String var = val.getName();
 		if (var.charAt(0) == '?') {
-			encodeAndAppend(var);
+			encodeAndAppend(buffer, domainOnto, var);
 		} else {
 			buffer.append('?');
-			encodeAndAppend(var);
+			encodeAndAppend(buffer, domainOnto, var);
 		}
 	}
 
-	private void encodeAndAppend(AbsConcept val) throws CodecException {
+	private void encodeAndAppend(StringBuffer buffer, Ontology domainOnto, AbsConcept val) throws CodecException {
 		String functionSymbol = val.getTypeName();
 		buffer.append('(');
-		String[] slotNames = getSlotNames(val);
+		String[] slotNames = getSlotNames(domainOnto, val);
 		if (slOnto.isSLFunctionWithoutSlotNames(functionSymbol)) { 
 			// A Functional operator of the SL language (ACTION, + ...)
 			// The form is: functionSymbol Term*
 			buffer.append(functionSymbol);
 			try {
-				encodeSlotsByOrder(val, slotNames);
+				encodeSlotsByOrder(buffer, domainOnto, val, slotNames);
 			} catch (RuntimeException e) {
 				throw new CodecException("A FunctionalOperator requires 1 or 2 Term arguments",e);
 			}
@@ -309,17 +342,17 @@ public class SLCodec extends StringCodec {
 			// A generic term in the ontology. The form can be both 
 			// functionSymbol Parameter* or functionSymbol Term*. Get the 
 			// preferred way from the ontology.
-			encodeAndAppend(functionSymbol);
+			encodeAndAppend(buffer, domainOnto, functionSymbol);
 			try {
 				// FIXME: To improve performances the two operations that imply
 				// retrieving a schema from the ontology (getting slot names and
 				// getting the preferred encoding type) should be carried out at 
 				// the same time.
-				if (getEncodingByOrder(val)) {
-					encodeSlotsByOrder(val, slotNames);
+				if (getEncodingByOrder(domainOnto, val)) {
+					encodeSlotsByOrder(buffer, domainOnto, val, slotNames);
 				}
 				else {
-					encodeSlotsByName(val, slotNames);
+					encodeSlotsByName(buffer, domainOnto, val, slotNames);
 				}
 			} catch (RuntimeException e) {
 				throw new CodecException("A FunctionalTerm requires Terms arguments",e);
@@ -330,18 +363,18 @@ public class SLCodec extends StringCodec {
 	}
 
 
-	private void encodeAndAppend(AbsAggregate val) throws CodecException {
+	private void encodeAndAppend(StringBuffer buffer, Ontology domainOnto, AbsAggregate val) throws CodecException {
 		buffer.append('(');
-		encodeAndAppend(val.getTypeName());
+		encodeAndAppend(buffer, domainOnto, val.getTypeName());
 		for (Iterator i=val.iterator(); i.hasNext(); ) {
 			buffer.append(' ');
-			encodeAndAppend((AbsObject)i.next());
+			encodeAndAppend(buffer, domainOnto, (AbsObject)i.next());
 		}
 		buffer.append(')');
 	}
 
 
-	private void encodeAndAppend(AbsPrimitive val) throws CodecException {
+	private void encodeAndAppend(StringBuffer buffer, Ontology domainOnto, AbsPrimitive val) throws CodecException {
 		Object v = val.getObject();
 		if (v instanceof Date)
 			buffer.append(ISO8601.toString((Date)v));
@@ -376,18 +409,18 @@ public class SLCodec extends StringCodec {
 				buffer.append(vs);
 				buffer.append('"');
 			} else
-				encodeAndAppend(vs);
+				encodeAndAppend(buffer, domainOnto, vs);
 		}
 	}
 
-	private void encodeAndAppend(AbsObject val) throws CodecException { 
-		if (val instanceof AbsPrimitive)      encodeAndAppend( (AbsPrimitive)val);
-		else if (val instanceof AbsPredicate) encodeAndAppend( (AbsPredicate)val);
-		else if (val instanceof AbsIRE)       encodeAndAppend( (AbsIRE)val);
-		else if (val instanceof AbsVariable)  encodeAndAppend( (AbsVariable)val);
+	private void encodeAndAppend(StringBuffer buffer, Ontology domainOnto, AbsObject val) throws CodecException { 
+		if (val instanceof AbsPrimitive)      encodeAndAppend(buffer, domainOnto, (AbsPrimitive)val);
+		else if (val instanceof AbsPredicate) encodeAndAppend(buffer, domainOnto, (AbsPredicate)val);
+		else if (val instanceof AbsIRE)       encodeAndAppend(buffer, domainOnto, (AbsIRE)val);
+		else if (val instanceof AbsVariable)  encodeAndAppend(buffer, domainOnto, (AbsVariable)val);
 		//	if (val instanceof AbsAgentAction) return toString( (AbsAgentAction)val);
-		else if (val instanceof AbsAggregate) encodeAndAppend( (AbsAggregate)val);
-		else if (val instanceof AbsConcept)   encodeAndAppend( (AbsConcept)val);
+		else if (val instanceof AbsAggregate) encodeAndAppend(buffer, domainOnto, (AbsAggregate)val);
+		else if (val instanceof AbsConcept)   encodeAndAppend(buffer, domainOnto, (AbsConcept)val);
 		else throw new CodecException("SLCodec cannot encode this object "+val);
 	}
 
@@ -409,14 +442,17 @@ public class SLCodec extends StringCodec {
 	 * @return the content as an abstract description.
 	 * @throws CodecException
 	 */
-	public synchronized AbsContentElement decode(Ontology ontology, String content) throws CodecException {
+	public AbsContentElement decode(Ontology ontology, String content) throws CodecException {
+		Object p = acquireParser();
 		try {
 			AbsContentElementList tuple = null;
 			if (preserveJavaTypes) {
+				ExtendedSLParser extendedParser = (ExtendedSLParser) p;
 				extendedParser.reinit(ontology, content);
 				tuple = extendedParser.Content();
 			}
 			else {
+				SLParser parser = (SLParser) p;
 				parser.reinit(ontology, content);
 				tuple = parser.Content();
 			}
@@ -426,6 +462,8 @@ public class SLCodec extends StringCodec {
 				return tuple.get(0);
 		}  catch(Throwable e) { // both ParseException and TokenMgrError
 			throw new CodecException("Parse exception", e);
+		} finally {
+			releaseParser(p);
 		}
 	}
 
@@ -439,18 +477,23 @@ public class SLCodec extends StringCodec {
 	 * @throws CodecException
 	 * @since JADE 3.4
 	 */
-	public synchronized AbsTerm decodeTerm(Ontology ontology, String term) throws CodecException {
+	public AbsTerm decodeTerm(Ontology ontology, String term) throws CodecException {
+		Object p = acquireParser();
 		try {
 			if (preserveJavaTypes) {
+				ExtendedSLParser extendedParser = (ExtendedSLParser) p;
 				extendedParser.reinit(ontology, term);
 				return extendedParser.Term();
 			}
 			else {
+				SLParser parser = (SLParser) p;
 				parser.reinit(ontology, term);
 				return parser.Term();
 			}
 		}  catch(Throwable e) { // both ParseException and TokenMgrError
 			throw new CodecException("Parse exception", e);
+		} finally {
+			releaseParser(p);
 		}
 	}
 
@@ -463,15 +506,10 @@ public class SLCodec extends StringCodec {
 	 * @throws CodecException
 	 * @since JADE 3.4
 	 */
-	public synchronized String encodeTerm(Ontology ontology, AbsTerm term) throws CodecException {
-		try {
-			domainOnto = ontology;
-			buffer = new StringBuffer();
-			encodeAndAppend(term);
-			return buffer.toString();
-		} finally {
-			buffer = null; //frees the memory
-		}
+	public String encodeTerm(Ontology ontology, AbsTerm term) throws CodecException {
+		StringBuffer buffer = new StringBuffer();
+		encodeAndAppend(buffer, ontology, term);
+		return buffer.toString();
 	}
 
 
@@ -483,18 +521,23 @@ public class SLCodec extends StringCodec {
 	 * @throws CodecException
 	 * @since JADE 3.4
 	 */
-	public synchronized AbsPredicate decodeFormula(Ontology ontology, String formula) throws CodecException {
+	public AbsPredicate decodeFormula(Ontology ontology, String formula) throws CodecException {
+		Object p = acquireParser();
 		try {
 			if (preserveJavaTypes) {
+				ExtendedSLParser extendedParser = (ExtendedSLParser) p;
 				extendedParser.reinit(ontology, formula);
 				return extendedParser.Wff();
 			}
 			else {
+				SLParser parser = (SLParser) p;
 				parser.reinit(ontology, formula);
 				return parser.Wff();
 			}
 		}  catch(Throwable e) { // both ParseException and TokenMgrError
 			throw new CodecException("Parse exception", e);
+		} finally {
+			releaseParser(p);
 		}
 	}
 
@@ -507,15 +550,10 @@ public class SLCodec extends StringCodec {
 	 * @throws CodecException
 	 * @since JADE 3.4
 	 */
-	public synchronized String encodeFormula(Ontology ontology, AbsPredicate formula) throws CodecException {
-		try {
-			domainOnto = ontology;
-			buffer = new StringBuffer();
-			encodeAndAppend(formula);
-			return buffer.toString();
-		} finally {
-			buffer = null; //frees the memory
-		}
+	public String encodeFormula(Ontology ontology, AbsPredicate formula) throws CodecException {
+		StringBuffer buffer = new StringBuffer();
+		encodeAndAppend(buffer, ontology, formula);
+		return buffer.toString();
 	}
 
 
@@ -576,7 +614,7 @@ public class SLCodec extends StringCodec {
 		return slOnto;
 	}
 
-	private String[] getSlotNames(AbsObject abs) throws CodecException {
+	private String[] getSlotNames(Ontology domainOnto, AbsObject abs) throws CodecException {
 		String[] slotNames = null;
 		String type = abs.getTypeName();
 		if (domainOnto != null) {
@@ -600,7 +638,7 @@ public class SLCodec extends StringCodec {
 		return slotNames;
 	}
 
-	private boolean getEncodingByOrder(AbsObject abs) throws CodecException {
+	private boolean getEncodingByOrder(Ontology domainOnto, AbsObject abs) throws CodecException {
 		if (domainOnto != null) {
 			String type = abs.getTypeName();
 			try {
@@ -621,7 +659,7 @@ public class SLCodec extends StringCodec {
 	 * the end.
 	 * Append this encoded string to buffer.
 	 */
-	private void encodeSlotsByOrder(AbsObject val, String[] slotNames) throws CodecException {
+	private void encodeSlotsByOrder(StringBuffer buffer, Ontology domainOnto, AbsObject val, String[] slotNames) throws CodecException {
 		boolean lastSlotEmpty = false;
 		for (int i=0; i<slotNames.length; i++) {
 			AbsTerm t = (AbsTerm)val.getAbsObject(slotNames[i]);
@@ -630,7 +668,7 @@ public class SLCodec extends StringCodec {
 					throw new CodecException("Non-empty slot "+slotNames[i]+" follows empty slot "+slotNames[i-1]);
 				}
 				buffer.append(' ');
-				encodeAndAppend(t);
+				encodeAndAppend(buffer, domainOnto, t);
 			}
 			else {
 				lastSlotEmpty = true;
@@ -644,17 +682,17 @@ public class SLCodec extends StringCodec {
 	 * slot value.
 	 * Append this encoded string to buffer.
 	 */
-	private void encodeSlotsByName(AbsObject val, String[] slotNames) throws CodecException {
+	private void encodeSlotsByName(StringBuffer buffer, Ontology domainOnto, AbsObject val, String[] slotNames) throws CodecException {
 		for (int i=0; i<slotNames.length; i++) {
 			AbsTerm t = (AbsTerm)val.getAbsObject(slotNames[i]);
 			if (t != null) {
 				// if this isn't un unnamed slot, then encode it otherwise just encode its value
 				if (!slotNames[i].startsWith(this.UNNAMEDPREFIX)) {
 					buffer.append(" :");
-					encodeAndAppend(slotNames[i]);
+					encodeAndAppend(buffer, domainOnto, slotNames[i]);
 				}
 				buffer.append(' ');
-				encodeAndAppend(t);
+				encodeAndAppend(buffer, domainOnto, t);
 			}
 		}
 	}
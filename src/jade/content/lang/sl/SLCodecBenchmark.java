@@ -0,0 +1,168 @@
+package jade.content.lang.sl;
+
+//#J2ME_EXCLUDE_FILE
+//#APIDOC_EXCLUDE_FILE
+
+import jade.content.ContentManager;
+import jade.content.onto.basic.Action;
+import jade.core.AID;
+import jade.core.BenchmarkHarness;
+import jade.domain.FIPANames;
+import jade.domain.FIPAAgentManagement.DFAgentDescription;
+import jade.domain.FIPAAgentManagement.FIPAManagementOntology;
+import jade.domain.FIPAAgentManagement.Property;
+import jade.domain.FIPAAgentManagement.Register;
+import jade.domain.FIPAAgentManagement.Search;
+import jade.domain.FIPAAgentManagement.SearchConstraints;
+import jade.domain.FIPAAgentManagement.ServiceDescription;
+import jade.lang.acl.ACLMessage;
+import jade.util.leap.Properties;
+
+/**
+ Measure the throughput of a single <code>ContentManager</code>, and
+ therefore of a single <code>SLCodec</code>, shared by an increasing number
+ of threads that encode and decode <code>FIPAManagementOntology</code>
+ register and search requests, as the DF does.
+ Usage:
+ <code>java jade.content.lang.sl.SLCodecBenchmark [-threads 1,2,4,8,16,32] [-t 3] [-warmup 2] [-sync false]</code>
+ where
+ <ul>
+ <li><code>threads</code> is the list of thread counts to measure</li>
+ <li><code>sync</code> if <code>true</code> all content processing is serialized on the codec as
+ it was when the SLCodec methods were synchronized</li>
+ </ul>
+ @see jade.core.BenchmarkHarness
+ */
+public class SLCodecBenchmark {
+	private static final String THREADS = "threads";
+	private static final String DEFAULT_THREADS = "1,2,4,8,16,32";
+
+	private static final String SYNC = "sync";
+
+	private static final AID df = new AID("df@benchmark", AID.ISGUID);
+
+	public static void main(String[] args) throws Exception {
+		Properties pp = BenchmarkHarness.parseArguments(args);
+		int duration = BenchmarkHarness.getDuration(pp);
+		int warmup = BenchmarkHarness.getWarmup(pp);
+		boolean sync = "true".equalsIgnoreCase(pp.getProperty(SYNC));
+		String[] threads = pp.getProperty(THREADS, DEFAULT_THREADS).split(",");
+
+		SLCodec codec = new SLCodec();
+		ContentManager cm = new ContentManager();
+		cm.registerLanguage(codec);
+		cm.registerOntology(FIPAManagementOntology.getInstance());
+
+		// Check that contents survive an encoding/decoding round trip
+		for (int i = 0; i < 2; ++i) {
+			ACLMessage msg = createMessage();
+			cm.fillContent(msg, createAction(i));
+			String content = msg.getContent();
+			cm.fillContent(msg, cm.extractContent(msg));
+			if (!content.equals(msg.getContent())) {
+				System.out.println("ERROR: wrong round trip\n"+content+"\n"+msg.getContent());
+				System.exit(1);
+			}
+		}
+
+		System.out.println("Threads    Encode+decode/s"+(sync ? " (synchronized)" : ""));
+		for (int i = 0; i < threads.length; ++i) {
+			int n = Integer.parseInt(threads[i].trim());
+			run(cm, codec, sync, n, warmup);
+			long ops = run(cm, codec, sync, n, duration);
+			System.out.println(BenchmarkHarness.pad(String.valueOf(n), 11)+(ops / duration));
+		}
+	}
+
+	private static long run(final ContentManager cm, final SLCodec codec, final boolean sync, int n, int duration) throws Exception {
+		final long end = System.currentTimeMillis() + duration * 1000L;
+		final long[] counters = new long[n];
+		final Throwable[] error = new Throwable[1];
+		Thread[] tt = new Thread[n];
+		for (int i = 0; i < n; ++i) {
+			final int index = i;
+			tt[i] = new Thread() {
+				public void run() {
+					try {
+						ACLMessage msg = createMessage();
+						Action[] actions = new Action[]{createAction(0), createAction(1)};
+						long cnt = 0;
+						while (System.currentTimeMillis() < end) {
+							// Check the time every 10 operations only
+							for (int j = 0; j < 10; ++j) {
+								Action a = actions[j & 1];
+								if (sync) {
+									synchronized (codec) {
+										cm.fillContent(msg, a);
+										cm.extractContent(msg);
+									}
+								}
+								else {
+									cm.fillContent(msg, a);
+									cm.extractContent(msg);
+								}
+							}
+							cnt += 10;
+						}
+						counters[index] = cnt;
+					}
+					catch (Throwable t) {
+						error[0] = t;
+					}
+				}
+			};
+			tt[i].start();
+		}
+		long total = 0;
+		for (int i = 0; i < n; ++i) {
+			tt[i].join();
+			total += counters[i];
+		}
+		if (error[0] != null) {
+			error[0].printStackTrace();
+			System.exit(1);
+		}
+		return total;
+	}
+
+	private static ACLMessage createMessage() {
+		ACLMessage msg = new ACLMessage(ACLMessage.REQUEST);
+		msg.addReceiver(df);
+		msg.setLanguage(FIPANames.ContentLanguage.FIPA_SL);
+		msg.setOntology(FIPAManagementOntology.NAME);
+		return msg;
+	}
+
+	/**
+	 @param type 0 for a register request, 1 for a search request
+	 */
+	private static Action createAction(int type) {
+		DFAgentDescription dfd = new DFAgentDescription();
+		ServiceDescription sd = new ServiceDescription();
+		sd.setType("weather-forecast");
+		if (type == 0) {
+			AID id = new AID("forecaster@benchmark", AID.ISGUID);
+			id.addAddresses("http://host.domain.com:7778/acc");
+			dfd.setName(id);
+			dfd.addLanguages(FIPANames.ContentLanguage.FIPA_SL);
+			dfd.addOntologies("weather-ontology");
+			dfd.addProtocols(FIPANames.InteractionProtocol.FIPA_REQUEST);
+			sd.setName("Forecaster \"Europe\"");
+			sd.addProperties(new Property("area", "Europe"));
+			sd.addProperties(new Property("horizon", new Long(7)));
+			dfd.addServices(sd);
+			Register r = new Register();
+			r.setDescription(dfd);
+			return new Action(df, r);
+		}
+		else {
+			dfd.addServices(sd);
+			SearchConstraints sc = new SearchConstraints();
+			sc.setMaxResults(new Long(100));
+			Search s = new Search();
+			s.setDescription(dfd);
+			s.setConstraints(sc);
+			return new Action(df, s);
+		}
+	}
+}
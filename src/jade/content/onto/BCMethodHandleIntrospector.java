@@ -0,0 +1,91 @@
+/*****************************************************************
+JADE - Java Agent DEvelopment Framework is a framework to develop 
+multi-agent systems in compliance with the FIPA specifications.
+Copyright (C) 2000 CSELT S.p.A. 
+
+GNU Lesser General Public License
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation, 
+version 2.1 of the License. 
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the
+Free Software Foundation, Inc., 59 Temple Place - Suite 330,
+Boston, MA  02111-1307, USA.
+*****************************************************************/
+
+package jade.content.onto;
+
+//#J2ME_EXCLUDE_FILE
+
+import jade.content.schema.AggregateSchema;
+import jade.content.schema.ObjectSchema;
+import jade.util.leap.Collection;
+import jade.util.leap.Iterator;
+
+/**
+   Backward Compatible introspector that translates java objects to/from 
+   abstract descriptors exactly as the <code>BCReflectiveIntrospector</code> 
+   does (i.e. assuming aggregate slots to be accessed by means of 
+   <code>getAllXXX()</code> and <code>addXXX()</code> methods), but 
+   accesses slots through <code>java.lang.invoke.MethodHandle</code>s
+   cached per class instead of <code>Method.invoke()</code>.
+   <br>
+   <b>NOT available in MIDP and PJava</b>
+   <br>
+   @see BCReflectiveIntrospector
+   @see MethodHandleIntrospector
+ */
+public class BCMethodHandleIntrospector extends BCReflectiveIntrospector {
+	private transient MethodAccessorTable accessors;
+
+	public Object getSlotValue(String slotName, Object obj, ObjectSchema schema) throws OntologyException {
+		ObjectSchema slotSchema = schema.getSchema(slotName);
+		if (slotSchema != null) {
+			int kind = (slotSchema instanceof AggregateSchema ? MethodAccessorTable.GET_ALL : MethodAccessorTable.GET);
+			return getAccessors().get(this, kind, slotName, obj);
+		}
+		else {
+			throw new OntologyException("No slot named "+slotName+" found in schema "+schema.getTypeName());
+		}
+	}
+
+	public void setSlotValue(String slotName, Object slotValue, Object obj, ObjectSchema schema) throws OntologyException {
+		ObjectSchema slotSchema = schema.getSchema(slotName);
+		if (slotSchema != null) {
+			if (slotSchema instanceof AggregateSchema) {
+				MethodAccessor addAccessor = getAccessors().getAccessor(this, MethodAccessorTable.ADD, slotName, obj.getClass());
+				try {
+					Iterator it = ((Collection) slotValue).iterator();
+					while (it.hasNext()) {
+						MethodAccessorTable.invokeSetter(this, addAccessor, obj, it.next());
+					}
+				}
+				catch (ClassCastException cce) {
+					throw new OntologyException("Can't apply recursively method "+addAccessor.method.getName()+" to object "+obj+" as value "+slotValue+" is not a List", cce);
+				}
+			}
+			else {
+				getAccessors().set(this, MethodAccessorTable.SET, slotName, obj, slotValue);
+			}
+		}
+		else {
+			throw new OntologyException("No slot named "+slotName+" found in schema "+schema.getTypeName());
+		}
+	}
+
+	private MethodAccessorTable getAccessors() {
+		// Lazily created as the table is not serialized
+		if (accessors == null) {
+			accessors = new MethodAccessorTable();
+		}
+		return accessors;
+	}
+}
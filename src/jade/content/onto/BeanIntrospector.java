@@ -55,10 +55,16 @@ class BeanIntrospector implements Introspector {
 		this.accessors.putAll(accessors);
 	}
 
-	private Object invokeGetterMethod(Method method, Object obj) throws OntologyException {
+	private Object invokeGetterMethod(MethodAccessor accessor, Object obj) throws OntologyException {
+		Method method = accessor.method;
 		Object result = null;
 		try {
-			result = method.invoke(obj, (Object[]) null);
+			if (accessor.canGet(obj)) {
+				result = accessor.get(obj);
+			}
+			else {
+				result = method.invoke(obj, (Object[]) null);
+			}
 			if (result != null && java.util.Calendar.class.isAssignableFrom(result.getClass())) {
 				// ontologically, Calendar is translated into a Date => convert the Calendar into a Date
 				result = ((java.util.Calendar)result).getTime();
@@ -71,7 +77,8 @@ class BeanIntrospector implements Introspector {
 		return result;
 	} 
 
-	private void invokeSetterMethod(Method method, Object obj, Object value, Class clazz) throws OntologyException {
+	private void invokeSetterMethod(MethodAccessor accessor, Object obj, Object value, Class clazz) throws OntologyException {
+		Method method = accessor.method;
 		try {
 			if (java.util.Calendar.class.isAssignableFrom(clazz)) {
 				// ontologically, Calendar is translated into a Date => convert the date back into a Calendar
@@ -82,8 +89,13 @@ class BeanIntrospector implements Introspector {
 			else {
 				value = BasicOntology.adjustPrimitiveValue(value, clazz);
 			}
-			Object[] params = new Object[] {value};
-			method.invoke(obj, params);
+			if (accessor.canSet(obj, value)) {
+				accessor.set(obj, value);
+			}
+			else {
+				Object[] params = new Object[] {value};
+				method.invoke(obj, params);
+			}
 		} catch (Exception e) {
 			throw new OntologyException("Error invoking setter method "+method.getName()+" on object "+obj+" with parameter "+value, e);
 		}
@@ -99,7 +111,7 @@ class BeanIntrospector implements Introspector {
 			throw new OntologyException("cannot retrieve a getter for slot "+slotName+", class "+obj.getClass());
 		}
 
-		return invokeGetterMethod(slotAccessData.getter, obj);
+		return invokeGetterMethod(slotAccessData.getterAccessor, obj);
 	}
 
 	public void setSlotValue(String slotName, Object slotValue, Object obj, ObjectSchema schema) throws OntologyException {
@@ -108,7 +120,7 @@ class BeanIntrospector implements Introspector {
 			throw new OntologyException("cannot retrieve a setter for slot "+slotName+", class "+obj.getClass());
 		}
 
-		invokeSetterMethod(slotAccessData.setter, obj, slotValue, slotAccessData.type);
+		invokeSetterMethod(slotAccessData.setterAccessor, obj, slotValue, slotAccessData.type);
 	}
 	
 	public AbsAggregate externalizeAggregate(String slotName, Object slotValue, ObjectSchema schema, Ontology referenceOnto) throws OntologyException {
@@ -0,0 +1,169 @@
+/*****************************************************************
+JADE - Java Agent DEvelopment Framework is a framework to develop 
+multi-agent systems in compliance with the FIPA specifications.
+Copyright (C) 2000 CSELT S.p.A. 
+
+GNU Lesser General Public License
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation, 
+version 2.1 of the License. 
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the
+Free Software Foundation, Inc., 59 Temple Place - Suite 330,
+Boston, MA  02111-1307, USA.
+*****************************************************************/
+
+package jade.content.onto;
+
+//#J2ME_EXCLUDE_FILE
+//#APIDOC_EXCLUDE_FILE
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+/**
+ Fast accessor for a getter or setter method of an ontological class.
+ The method is resolved into a <code>MethodHandle</code> once, so that
+ invoking it does not go through <code>Method.invoke()</code> with its
+ access checks and argument array.
+ The fast path is only taken when the invocation is guaranteed to behave as
+ <code>Method.invoke()</code> would (see <code>canGet()</code> and 
+ <code>canSet()</code>): in all other cases callers are expected to fall back 
+ to reflection so that argument conversions and error reporting do not change.
+ */
+class MethodAccessor {
+	private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+	private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+
+	final Method method;
+	// The type of the parameter of a setter method
+	final Class parameterType;
+	private final Class declaringClass;
+	private final MethodHandle getHandle;
+	private final MethodHandle setHandle;
+	// The boxed type of the parameter of a setter method
+	private final Class valueClass;
+	private final boolean primitiveValue;
+
+	MethodAccessor(Method method) {
+		this.method = method;
+		declaringClass = method.getDeclaringClass();
+		Class[] params = method.getParameterTypes();
+		parameterType = (params.length == 1 ? params[0] : null);
+		MethodHandle handle = null;
+		if (!Modifier.isStatic(method.getModifiers()) && params.length <= 1) {
+			try {
+				handle = MethodHandles.publicLookup().unreflect(method);
+			}
+			catch (IllegalAccessException iae) {
+				// Method of a non-public class: reflection will be used
+			}
+		}
+		if (handle != null && params.length == 0) {
+			getHandle = handle.asType(GETTER_TYPE);
+			setHandle = null;
+			valueClass = null;
+			primitiveValue = false;
+		}
+		else if (handle != null && params.length == 1) {
+			getHandle = null;
+			setHandle = handle.asType(SETTER_TYPE);
+			valueClass = box(params[0]);
+			primitiveValue = params[0].isPrimitive();
+		}
+		else {
+			getHandle = null;
+			setHandle = null;
+			valueClass = null;
+			primitiveValue = false;
+		}
+	}
+
+	/**
+	 @return <code>true</code> if <code>get(obj)</code> can be used in place of
+	 <code>method.invoke(obj)</code>
+	 */
+	final boolean canGet(Object obj) {
+		return getHandle != null && declaringClass.isInstance(obj);
+	}
+
+	/**
+	 @return <code>true</code> if <code>set(obj, value)</code> can be used in place of
+	 <code>method.invoke(obj, value)</code>. Values that would require a widening
+	 conversion are not accepted.
+	 */
+	final boolean canSet(Object obj, Object value) {
+		if (setHandle == null || !declaringClass.isInstance(obj)) {
+			return false;
+		}
+		return value != null ? valueClass.isInstance(value) : !primitiveValue;
+	}
+
+	/**
+	 Invoke the getter method on a given object. 
+	 As for <code>Method.invoke()</code> exceptions thrown by the method 
+	 are wrapped into an <code>InvocationTargetException</code>.
+	 */
+	final Object get(Object obj) throws InvocationTargetException {
+		try {
+			return (Object) getHandle.invokeExact(obj);
+		}
+		catch (Throwable t) {
+			throw new InvocationTargetException(t);
+		}
+	}
+
+	/**
+	 Invoke the setter method on a given object. 
+	 As for <code>Method.invoke()</code> exceptions thrown by the method 
+	 are wrapped into an <code>InvocationTargetException</code>.
+	 */
+	final void set(Object obj, Object value) throws InvocationTargetException {
+		try {
+			setHandle.invokeExact(obj, value);
+		}
+		catch (Throwable t) {
+			throw new InvocationTargetException(t);
+		}
+	}
+
+	private static Class box(Class c) {
+		if (!c.isPrimitive()) {
+			return c;
+		}
+		if (c == int.class) {
+			return Integer.class;
+		}
+		if (c == long.class) {
+			return Long.class;
+		}
+		if (c == boolean.class) {
+			return Boolean.class;
+		}
+		if (c == double.class) {
+			return Double.class;
+		}
+		if (c == float.class) {
+			return Float.class;
+		}
+		if (c == short.class) {
+			return Short.class;
+		}
+		if (c == byte.class) {
+			return Byte.class;
+		}
+		return Character.class;
+	}
+}
@@ -0,0 +1,130 @@
+/*****************************************************************
+JADE - Java Agent DEvelopment Framework is a framework to develop 
+multi-agent systems in compliance with the FIPA specifications.
+Copyright (C) 2000 CSELT S.p.A. 
+
+GNU Lesser General Public License
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation, 
+version 2.1 of the License. 
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the
+Free Software Foundation, Inc., 59 Temple Place - Suite 330,
+Boston, MA  02111-1307, USA.
+*****************************************************************/
+
+package jade.content.onto;
+
+//#J2ME_EXCLUDE_FILE
+//#APIDOC_EXCLUDE_FILE
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ Per-class layout of the accessor methods used by the 
+ <code>MethodHandleIntrospector</code> and the 
+ <code>BCMethodHandleIntrospector</code>.
+ For each class and slot the accessor methods are looked up (by means of 
+ the <code>translateName()</code> and <code>findMethodCaseInsensitive()</code> 
+ hooks of the introspector) the first time they are needed only.
+ */
+class MethodAccessorTable {
+	static final int GET = 0;
+	static final int SET = 1;
+	static final int GET_ALL = 2;
+	static final int ADD = 3;
+	private static final String[] PREFIXES = new String[]{"get", "set", "getAll", "add"};
+
+	// Maps classes to the accessors of their slots indexed by kind
+	private Map<Class, Map<String, MethodAccessor[]>> layouts = new ConcurrentHashMap<Class, Map<String, MethodAccessor[]>>();
+
+	MethodAccessor getAccessor(ReflectiveIntrospector introspector, int kind, String slotName, Class c) throws OntologyException {
+		Map<String, MethodAccessor[]> layout = layouts.get(c);
+		if (layout == null) {
+			layout = new ConcurrentHashMap<String, MethodAccessor[]>();
+			layouts.put(c, layout);
+		}
+		MethodAccessor[] accessors = layout.get(slotName);
+		if (accessors == null) {
+			accessors = new MethodAccessor[PREFIXES.length];
+			layout.put(slotName, accessors);
+		}
+		// Concurrent threads may resolve the same accessor twice: this is harmless
+		MethodAccessor accessor = accessors[kind];
+		if (accessor == null) {
+			Method m = introspector.findMethodCaseInsensitive(PREFIXES[kind] + introspector.translateName(slotName), c);
+			accessor = new MethodAccessor(m);
+			accessors[kind] = accessor;
+		}
+		return accessor;
+	}
+
+	Object get(ReflectiveIntrospector introspector, int kind, String slotName, Object obj) throws OntologyException {
+		return invokeGetter(introspector, getAccessor(introspector, kind, slotName, obj.getClass()), obj);
+	}
+
+	void set(ReflectiveIntrospector introspector, int kind, String slotName, Object obj, Object value) throws OntologyException {
+		invokeSetter(introspector, getAccessor(introspector, kind, slotName, obj.getClass()), obj, value);
+	}
+
+	/**
+	 Invoke a getter method through its method handle, falling back to the 
+	 (reflective) <code>invokeAccessorMethod()</code> hook of the introspector
+	 when this cannot be done safely.
+	 */
+	static Object invokeGetter(ReflectiveIntrospector introspector, MethodAccessor accessor, Object obj) throws OntologyException {
+		if (accessor.canGet(obj)) {
+			try {
+				return accessor.get(obj);
+			}
+			catch (InvocationTargetException ite) {
+				throw new OntologyException("Error invoking accessor method "+accessor.method.getName()+" on object "+obj, ite);
+			}
+		}
+		return introspector.invokeAccessorMethod(accessor.method, obj);
+	}
+
+	/**
+	 Invoke a setter method through its method handle, falling back to the 
+	 (reflective) <code>invokeSetterMethod()</code> hook of the introspector
+	 when this cannot be done safely.
+	 */
+	static void invokeSetter(ReflectiveIntrospector introspector, MethodAccessor accessor, Object obj, Object value) throws OntologyException {
+		Object param = value;
+		if (!accessor.canSet(obj, param) && accessor.parameterType != null) {
+			// Maybe the method requires an int argument and we supplied a Long
+			// (this is always the case for int slots). Convert the value as 
+			// the reflective introspector does, but without an 
+			// IllegalArgumentException being thrown first
+			try {
+				param = BasicOntology.adjustPrimitiveValue(value, accessor.parameterType);
+			}
+			catch (RuntimeException re) {
+				// Let the reflective introspector report the error
+				param = value;
+			}
+		}
+		if (accessor.canSet(obj, param)) {
+			try {
+				accessor.set(obj, param);
+			}
+			catch (InvocationTargetException ite) {
+				throw new OntologyException("Error invoking setter method "+accessor.method.getName()+" on object "+obj+" with parameter "+value, ite);
+			}
+		}
+		else {
+			introspector.invokeSetterMethod(accessor.method, obj, value);
+		}
+	}
+}
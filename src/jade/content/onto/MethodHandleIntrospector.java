@@ -0,0 +1,63 @@
+/*****************************************************************
+JADE - Java Agent DEvelopment Framework is a framework to develop 
+multi-agent systems in compliance with the FIPA specifications.
+Copyright (C) 2000 CSELT S.p.A. 
+
+GNU Lesser General Public License
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation, 
+version 2.1 of the License. 
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the
+Free Software Foundation, Inc., 59 Temple Place - Suite 330,
+Boston, MA  02111-1307, USA.
+*****************************************************************/
+
+package jade.content.onto;
+
+//#J2ME_EXCLUDE_FILE
+
+import jade.content.schema.ObjectSchema;
+
+/**
+   An introspector that translates java objects to/from abstract
+   descriptors exactly as the <code>ReflectiveIntrospector</code> does,
+   but accesses slots through <code>java.lang.invoke.MethodHandle</code>s
+   instead of <code>Method.invoke()</code>. 
+   The getter and setter methods of each class are looked up the first time 
+   an instance of that class is converted and are then cached, so that 
+   methods are neither searched by name nor invoked reflectively
+   afterwards. 
+   This is the default introspector for user defined ontologies in J2SE.
+   <br>
+   <b>NOT available in MIDP and PJava</b>
+   <br>
+   @see ReflectiveIntrospector
+ */
+public class MethodHandleIntrospector extends ReflectiveIntrospector {
+	private transient MethodAccessorTable accessors;
+
+	public Object getSlotValue(String slotName, Object obj, ObjectSchema schema) throws OntologyException {
+		return getAccessors().get(this, MethodAccessorTable.GET, slotName, obj);
+	}
+
+	public void setSlotValue(String slotName, Object slotValue, Object obj, ObjectSchema schema) throws OntologyException {
+		getAccessors().set(this, MethodAccessorTable.SET, slotName, obj, slotValue);
+	}
+
+	private MethodAccessorTable getAccessors() {
+		// Lazily created as the table is not serialized
+		if (accessors == null) {
+			accessors = new MethodAccessorTable();
+		}
+		return accessors;
+	}
+}
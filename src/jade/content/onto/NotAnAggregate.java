@@ -7,4 +7,15 @@ public class NotAnAggregate extends OntologyException {
 	public NotAnAggregate() {
 		super("");
 	}
+
+	//#J2ME_EXCLUDE_BEGIN
+	/**
+	 This exception is thrown (and caught) for every slot or object whose
+	 conversion goes through the default path: avoid the cost of filling
+	 a stack trace nobody looks at.
+	 */
+	public synchronized Throwable fillInStackTrace() {
+		return this;
+	}
+	//#J2ME_EXCLUDE_END
 }
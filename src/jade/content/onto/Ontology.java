@@ -154,7 +154,12 @@ import jade.util.Logger;
  * @author Giovanni Caire - TILAB
  */
 public class Ontology implements Serializable {
+	//#J2ME_EXCLUDE_BEGIN
+	private static final String DEFAULT_INTROSPECTOR_CLASS = "jade.content.onto.MethodHandleIntrospector";
+	//#J2ME_EXCLUDE_END
+	/*#J2ME_INCLUDE_BEGIN
 	private static final String DEFAULT_INTROSPECTOR_CLASS = "jade.content.onto.ReflectiveIntrospector";
+	#J2ME_INCLUDE_END*/
 	private Ontology[]   base = new Ontology[0];
 	private String       name = null;
 	private Introspector introspector = null;
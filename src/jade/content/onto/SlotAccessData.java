@@ -34,6 +34,9 @@ class SlotAccessData {
 	Class type;
 	Method getter;
 	Method setter;
+	// Resolved when the BeanOntologyBuilder inspects the class
+	MethodAccessor getterAccessor;
+	MethodAccessor setterAccessor;
 	boolean aggregate;
 	boolean mandatory;
 	Class aggregateClass;
@@ -48,6 +51,8 @@ class SlotAccessData {
 		this.type = type;
 		this.getter = getter;
 		this.setter = setter;
+		getterAccessor = new MethodAccessor(getter);
+		setterAccessor = new MethodAccessor(setter);
 		aggregate = isAggregate(type);
 		this.mandatory = mandatory;
 		this.aggregateClass = aggregateClass;
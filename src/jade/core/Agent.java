@@ -37,6 +37,8 @@ import jade.lang.acl.*;
 
 import jade.security.JADESecurityException;
 
+import jade.util.WakeSignal;
+
 //#MIDP_EXCLUDE_BEGIN
 import java.io.InputStream;
 import java.io.ObjectInputStream;
@@ -460,6 +462,22 @@ public class Agent implements Runnable, Serializable
 
 
 	public static final String MSG_QUEUE_CLASS = "jade_core_Agent_msgQueueClass";
+
+	//#J2ME_EXCLUDE_BEGIN
+	/**
+	 The name of the agent property (true or false) that indicates whether
+	 or not, when a message arrives, only the behaviours that may be interested 
+	 in it must be restarted. By default all behaviours are restarted. 
+	 When this property is set to true a behaviour is not restarted by a message 
+	 if its last execution step (all steps since it was last restarted by a 
+	 message for composite behaviours other than serial ones) included 
+	 <code>receive()</code> calls and none of their templates matches the message. 
+	 This saves a lot of useless behaviour executions in agents with many 
+	 behaviours waiting for specific messages, but breaks behaviours that 
+	 rely on being restarted by any message.
+	 */
+	public static final String SELECTIVE_RESTART = "jade_core_Agent_selectiveRestart";
+	//#J2ME_EXCLUDE_END
 	
 	private transient AgentToolkit myToolkit;
 	
@@ -471,7 +489,7 @@ public class Agent implements Runnable, Serializable
 	private int o2aQueueSize = 0;
 	private transient Map o2aLocks;
 	private Behaviour o2aManager = null;
-	private transient Object suspendLock;
+	private transient WakeSignal suspendSignal;
 	//#MIDP_EXCLUDE_END
 
 	private String myName = null;  
@@ -480,9 +498,34 @@ public class Agent implements Runnable, Serializable
 
 	private transient Object stateLock;
 
+	// Signalled when a message arrives or doWake() is called. Agent threads wait
+	// for it, instead of waiting on the msgQueue monitor, so that, if they are
+	// virtual threads, they do not pin their carrier thread.
+	private transient WakeSignal msgSignal;
+
 	private transient Thread myThread;
 	private transient TimerDispatcher theDispatcher;
 
+	//#J2ME_EXCLUDE_BEGIN
+	// The shared pool of threads executing this agent when it has no dedicated thread 
+	private transient AgentExecutor myExecutor;
+	// The execution state of an agent executed by an AgentExecutor (guarded by execLock)
+	private transient int executionState = EXEC_IDLE;
+	private transient Object execLock;
+	private transient boolean started = false;
+	
+	private static final int EXEC_IDLE = 0;
+	private static final int EXEC_QUEUED = 1;
+	private static final int EXEC_RUNNING = 2;
+	// Running, but something happened (e.g. a behaviour became ready) since the slice started
+	private static final int EXEC_RUNNING_NOTIFIED = 3;
+	private static final int EXEC_TERMINATED = 4;
+
+	// Signalled when a behaviour becomes ready. Agent threads with nothing 
+	// to do wait for it instead of waiting on the scheduler monitor
+	private transient WakeSignal readySignal;
+	//#J2ME_EXCLUDE_END
+
 	private Scheduler myScheduler;
 
 	private transient AssociationTB pendingTimers;
@@ -530,16 +573,21 @@ public class Agent implements Runnable, Serializable
 		//#MIDP_EXCLUDE_BEGIN
 		myToolkit = DummyToolkit.instance();
 		o2aLocks = new HashMap();
-		suspendLock = new Object();
+		suspendSignal = new WakeSignal();
 		temporaryMessageQueue = true;
 		//#MIDP_EXCLUDE_END
 		msgQueue = new InternalMessageQueue(msgQueueMaxSize);
+		msgSignal = new WakeSignal();
 		stateLock = new Object(); 
 		pendingTimers = new AssociationTB();
 		myActiveLifeCycle = new ActiveLifeCycle();
 		myLifeCycle = myActiveLifeCycle;
 		myScheduler = new Scheduler(this);
 		theDispatcher = TimerDispatcher.getTimerDispatcher();
+		//#J2ME_EXCLUDE_BEGIN
+		execLock = new Object();
+		readySignal = new WakeSignal();
+		//#J2ME_EXCLUDE_END
 	}
 	
 	//#MIDP_EXCLUDE_BEGIN
@@ -586,6 +634,16 @@ public class Agent implements Runnable, Serializable
 		}
 	}
 	
+	//#J2ME_EXCLUDE_BEGIN
+	/**
+	 Configure the scheduler according to the agent properties.
+	 This is only called by AgentContainerImpl
+	 */
+	void initScheduler() {
+		myScheduler.setSelectiveRestart("true".equalsIgnoreCase(getProperty(SELECTIVE_RESTART, null)));
+	}
+	//#J2ME_EXCLUDE_END
+
 	/**
 	 This is only called by AgentContainerImpl
 	 */
@@ -807,6 +865,12 @@ public class Agent implements Runnable, Serializable
 	 * FIXME: the timeout value should be got by Profile
 	 */
 	public void join() {
+		//#J2ME_EXCLUDE_BEGIN
+		if (myExecutor != null) {
+			joinExecution(5000);
+			return;
+		}
+		//#J2ME_EXCLUDE_END
 		//#MIDP_EXCLUDE_BEGIN
 		try {
 			if(myThread == null) {
@@ -1104,26 +1168,32 @@ public class Agent implements Runnable, Serializable
 	 @see jade.core.Agent#doWait()
 	 */
 	public void doWait(long millis) {
+		doWait(millis, msgSignal.getCount());
+	}
+
+	/**
+	 Wait for a message (or a doWake() call) unless one arrived since 
+	 the message signal counter was equal to <code>wakeCnt</code>
+	 */
+	private void doWait(long millis, long wakeCnt) {
 		if (Thread.currentThread().equals(myThread)) {
 			setActiveState(AP_WAITING);
 
-			synchronized(msgQueue) {
-				try {
-					// Blocks on msgQueue monitor for a while
-					waitOn(msgQueue, millis);
-				}
-				catch (InterruptedException ie) {
-					if (myLifeCycle != myActiveLifeCycle && !terminating) {
-						// Change state request from the outside
-						throw new Interrupted();
-					}
-					else {
-						// Spurious wake up. Just print a warning
-						System.out.println("Agent "+getName()+" interrupted while waiting");
-					}    			
+			try {
+				// Blocks on the message signal for a while
+				await(msgSignal, wakeCnt, millis);
+			}
+			catch (InterruptedException ie) {
+				if (myLifeCycle != myActiveLifeCycle && !terminating) {
+					// Change state request from the outside
+					throw new Interrupted();
 				}
-				setActiveState(AP_ACTIVE);
+				else {
+					// Spurious wake up. Just print a warning
+					System.out.println("Agent "+getName()+" interrupted while waiting");
+				}    			
 			}
+			setActiveState(AP_ACTIVE);
 		}
 	}
 
@@ -1135,6 +1205,14 @@ public class Agent implements Runnable, Serializable
 	 @see jade.core.Agent#doWait()
 	 */
 	public void doWake() {
+		wakeUp(null);
+	}
+
+	/**
+	 Wake up the agent because a message arrived (<code>msg</code> not null) 
+	 or because doWake() was called.
+	 */
+	private void wakeUp(ACLMessage msg) {
 		synchronized(stateLock) {
 			int previous = myLifeCycle.getState();
 			if((previous == AP_WAITING) || (previous == AP_IDLE)) {
@@ -1142,10 +1220,18 @@ public class Agent implements Runnable, Serializable
 			}
 		}
 		if(myLifeCycle.isMessageAware()) {
-			activateAllBehaviours();
-			synchronized(msgQueue) {
-				msgQueue.notifyAll(); // Wakes up the embedded thread
+			//#J2ME_EXCLUDE_BEGIN
+			if (msg != null) {
+				myScheduler.restartInterested(msg);
+			}
+			else {
+				activateAllBehaviours();
 			}
+			//#J2ME_EXCLUDE_END
+			/*#J2ME_INCLUDE_BEGIN
+			activateAllBehaviours();
+			#J2ME_INCLUDE_END*/
+			msgSignal.signal(); // Wakes up the embedded thread
 		}
 	}
 
@@ -1166,6 +1252,13 @@ public class Agent implements Runnable, Serializable
 
 	// This is called only by the scheduler
 	void idle() throws InterruptedException {
+		//#J2ME_EXCLUDE_BEGIN
+		if (myExecutor != null) {
+			// Never hold a pool thread waiting for a behaviour: the agent is parked 
+			// by runSlice() and re-submitted as soon as a behaviour becomes ready
+			throw new Interrupted();
+		}
+		//#J2ME_EXCLUDE_END
 		setActiveState(AP_IDLE);
 		// No need for synchronized block since this is only called by the 
 		// scheduler in the synchronized schedule() method
@@ -1492,12 +1585,20 @@ public class Agent implements Runnable, Serializable
 		}
 
 		public void execute() throws JADESecurityException, InterruptedException, InterruptedIOException {
+			//#J2ME_EXCLUDE_BEGIN
+			waitUntilReady();
+			//#J2ME_EXCLUDE_END
 			// Select the next behaviour to execute
 			Behaviour currentBehaviour = myScheduler.schedule();
 			long oldRestartCounter = currentBehaviour.getRestartCounter();
 
 			// Just do it!
 			currentBehaviour.actionWrapper();
+			//#J2ME_EXCLUDE_BEGIN
+			if (myScheduler.isSelectiveRestart()) {
+				myScheduler.stepDone(currentBehaviour);
+			}
+			//#J2ME_EXCLUDE_END
 
 			// When it is needed no more, delete it from the behaviours queue
 			if(currentBehaviour.done()) {
@@ -1727,6 +1828,207 @@ public class Agent implements Runnable, Serializable
 		}
 	}
 
+	//#J2ME_EXCLUDE_BEGIN
+	// This method is used by the Agent Container to fire up a new agent that will be
+	// executed by a shared pool of threads instead of by a dedicated thread
+	synchronized void powerUp(AID id, AgentExecutor executor) {
+		if (myThread == null && myExecutor == null) {
+			// Set this agent's name and address and submit it to the executor
+			myName = id.getLocalName();
+			myHap = id.getHap();
+
+			myAID = id;
+			myToolkit.setPlatformAddresses(myAID);
+
+			myExecutor = executor;
+			activateExecution();
+		}
+	}
+
+	/**
+	 Execute a slice of the activity of this agent on behalf of the AgentExecutor.
+	 This is the counterpart of the run() method for agents with no dedicated thread:
+	 at most maxSteps iterations of the life cycle are performed. Then the agent 
+	 is re-submitted to the executor if it still has something to do or parked 
+	 (i.e. it holds no thread) until a behaviour becomes ready or its state changes.
+	 */
+	final void runSlice(int maxSteps) {
+		synchronized (execLock) {
+			if (executionState == EXEC_TERMINATED) {
+				return;
+			}
+			myThread = Thread.currentThread();
+			executionState = EXEC_RUNNING;
+		}
+		// Clear any interruption pending on this pool thread
+		Thread.interrupted();
+		boolean resubmit = false;
+		boolean terminated = false;
+		try {
+			if (!started) {
+				started = true;
+				myLifeCycle.init();
+			}
+			int steps = 0;
+			while (myLifeCycle.alive()) {
+				if (steps >= maxSteps) {
+					resubmit = true;
+					break;
+				}
+				if (parkIfNothingToDo()) {
+					break;
+				}
+				steps++;
+				try {
+					if (myLifeCycle == myActiveLifeCycle && myLifeCycle.getState() == AP_IDLE) {
+						setActiveState(AP_ACTIVE);
+					}
+					myLifeCycle.execute();
+				}
+				catch (JADESecurityException jse) {
+					// FIXME: maybe we should send a message to the agent
+					System.out.println("JADESecurityException: "+jse.getMessage());
+				}
+				catch (InterruptedException ie) {
+					// Change LC state request from the outside. Just do nothing
+					// and let the new LC state do its job
+				}
+				catch (InterruptedIOException ie) {
+					// Change LC state request from the outside. Just do nothing
+					// and let the new LC state do its job
+				}
+				catch (Interrupted i) {
+					// Change LC state request from the outside or no ready behaviour. 
+					// Just do nothing and let the new LC state do its job
+				}
+			}
+			terminated = !myLifeCycle.alive();
+		}
+		catch(Throwable t) {
+			System.err.println("***  Uncaught Exception for agent " + myName + "  ***");
+			t.printStackTrace();
+			terminated = true;
+		}
+		if (terminated) {
+			terminating = true;
+			try {
+				myLifeCycle.end();
+			}
+			finally {
+				synchronized (execLock) {
+					myThread = null;
+					executionState = EXEC_TERMINATED;
+					execLock.notifyAll();
+				}
+				Thread.interrupted();
+			}
+		}
+		else if (resubmit) {
+			synchronized (execLock) {
+				myThread = null;
+				executionState = EXEC_QUEUED;
+			}
+			Thread.interrupted();
+			myExecutor.submit(this);
+		}
+	}
+
+	/**
+	 Check whether this agent has nothing to do (no ready behaviour or 
+	 suspended) and, if so, release the pool thread.
+	 The check is performed holding the scheduler lock so that a behaviour 
+	 becoming ready in the meanwhile can't be missed.
+	 */
+	private boolean parkIfNothingToDo() {
+		synchronized (myScheduler) {
+			boolean nothingToDo = false;
+			if (myLifeCycle == myActiveLifeCycle) {
+				nothingToDo = !myScheduler.hasReadyBehaviours();
+			}
+			//#MIDP_EXCLUDE_BEGIN
+			else if (myLifeCycle.getState() == AP_SUSPENDED) {
+				nothingToDo = true;
+			}
+			//#MIDP_EXCLUDE_END
+			if (nothingToDo && myLifeCycle == myActiveLifeCycle) {
+				try {
+					setActiveState(AP_IDLE);
+				}
+				catch (Interrupted i) {
+					// The state changed in the meanwhile
+					return false;
+				}
+			}
+			synchronized (execLock) {
+				if (executionState == EXEC_RUNNING_NOTIFIED) {
+					// Something happened since the last check: give it another chance
+					executionState = EXEC_RUNNING;
+					return false;
+				}
+				if (nothingToDo) {
+					myThread = null;
+					executionState = EXEC_IDLE;
+					Thread.interrupted();
+					return true;
+				}
+				return false;
+			}
+		}
+	}
+
+	/**
+	 Make sure this agent, if executed by an AgentExecutor, gets a chance to run.
+	 This is called when a behaviour becomes ready and when the agent state
+	 is changed from the outside. For agents with a dedicated thread it just wakes
+	 up the thread if it is waiting for a behaviour to become ready.
+	 */
+	void activateExecution() {
+		if (myExecutor == null) {
+			// Wake up the dedicated thread if it is waiting in waitUntilReady()
+			readySignal.signal();
+		}
+		else {
+			synchronized (execLock) {
+				switch (executionState) {
+				case EXEC_IDLE:
+					executionState = EXEC_QUEUED;
+					myExecutor.submit(this);
+					break;
+				case EXEC_RUNNING:
+					executionState = EXEC_RUNNING_NOTIFIED;
+					break;
+				default:
+					// Already queued or notified or terminated: nothing to do
+				}
+			}
+		}
+	}
+
+	private void joinExecution(long millis) {
+		long deadline = System.currentTimeMillis() + millis;
+		synchronized (execLock) {
+			while (executionState != EXEC_TERMINATED) {
+				long timeToWait = deadline - System.currentTimeMillis();
+				if (timeToWait <= 0) {
+					System.out.println("*** Warning: Agent " + myName + " did not terminate when requested to do so.");
+					if (myThread != null && !myThread.equals(Thread.currentThread())) {
+						myThread.interrupt();
+						System.out.println("*** Second interrupt issued.");
+					}
+					return;
+				}
+				try {
+					execLock.wait(timeToWait);
+				}
+				catch (InterruptedException ie) {
+					ie.printStackTrace();
+					return;
+				}
+			}
+		}
+	}
+	//#J2ME_EXCLUDE_END
+
 	//#J2ME_EXCLUDE_BEGIN
 	// Return agent thread
 	// Package scooped as it is called by JadeMisc add-on for container monitor purpose
@@ -1748,7 +2050,8 @@ public class Agent implements Runnable, Serializable
 
 		// Restore transient fields apart from myThread, that will be set when the agent will be powered up)
 		stateLock = new Object();
-		suspendLock = new Object();
+		suspendSignal = new WakeSignal();
+		msgSignal = new WakeSignal();
 		pendingTimers = new AssociationTB();
 		theDispatcher = TimerDispatcher.getTimerDispatcher();
 		// restore O2AQueue
@@ -1758,6 +2061,11 @@ public class Agent implements Runnable, Serializable
 		myToolkit = DummyToolkit.instance();
 		temporaryMessageQueue = true;
 		msgQueue = new InternalMessageQueue(msgQueueMaxSize);
+		//#J2ME_EXCLUDE_BEGIN
+		execLock = new Object();
+		executionState = EXEC_IDLE;
+		readySignal = new WakeSignal();
+		//#J2ME_EXCLUDE_END
 
 		//#PJAVA_EXCLUDE_BEGIN
 		//For persistence service
@@ -1772,26 +2080,47 @@ public class Agent implements Runnable, Serializable
 	 from a separate Thread. 
 	 It does not affect the agent state.
 	 */
-	private void waitUntilWake(long millis) {
-		synchronized(msgQueue) {
-			try {
-				// Blocks on msgQueue monitor for a while
-				waitOn(msgQueue, millis);
-			}
-			catch (InterruptedException ie) {
-				throw new Interrupted();
-			}
+	private void waitUntilWake(long millis, long wakeCnt) {
+		try {
+			// Blocks on the message signal for a while
+			await(msgSignal, wakeCnt, millis);
+		}
+		catch (InterruptedException ie) {
+			throw new Interrupted();
 		}
 	}
 
 	//#MIDP_EXCLUDE_BEGIN
 	private void waitUntilActivate() throws InterruptedException {
-		synchronized(suspendLock) {
-			waitOn(suspendLock, 0);
-		}
+		// Nobody signals the suspend signal: we just wait to be interrupted
+		await(suspendSignal, suspendSignal.getCount(), 0);
 	}
 	//#MIDP_EXCLUDE_END
 
+	//#J2ME_EXCLUDE_BEGIN
+	/**
+	 Wait until there is a ready behaviour. The agent thread waits for the
+	 ready signal holding no monitor. This way a virtual thread does not pin its 
+	 carrier as it would happen waiting on the scheduler monitor in idle()
+	 (that remains as a fall back in case the ready behaviour is blocked again
+	 before schedule() is called).
+	 Agents executed by an AgentExecutor never wait here: they are parked instead.
+	 */
+	private void waitUntilReady() throws InterruptedException {
+		if (myExecutor == null) {
+			long wakeCnt = readySignal.getCount();
+			if (!myScheduler.hasReadyBehaviours()) {
+				setActiveState(AP_IDLE);
+				do {
+					await(readySignal, wakeCnt, 0);
+					wakeCnt = readySignal.getCount();
+				} while (!myScheduler.hasReadyBehaviours());
+				setActiveState(AP_ACTIVE);
+			}
+		}
+	}
+	//#J2ME_EXCLUDE_END
+
 	/**
 	 This method adds a new behaviour to the agent. This behaviour
 	 will be executed concurrently with all the others, using a
@@ -1877,6 +2206,12 @@ public class Agent implements Runnable, Serializable
 				myToolkit.handleReceived(myAID, msg);
 			 }
 			//#MIDP_EXCLUDE_END
+			//#J2ME_EXCLUDE_BEGIN
+			if (myScheduler.isSelectiveRestart() && Thread.currentThread().equals(myThread)) {
+				// Let the scheduler know which messages the current behaviour is interested in
+				myScheduler.receivePerformed(pattern);
+			}
+			//#J2ME_EXCLUDE_END
 		}
 		return msg;
 	}
@@ -1935,28 +2270,29 @@ public class Agent implements Runnable, Serializable
 	 @see jade.core.Agent#blockingReceive()
 	 */
 	public final ACLMessage blockingReceive(MessageTemplate pattern, long millis) {
-		ACLMessage msg = null;
-		synchronized(msgQueue) {
-			msg = receive(pattern);
-			long timeToWait = millis;
-			while(msg == null) {
-				long startTime = System.currentTimeMillis();
-				if (Thread.currentThread().equals(myThread)) {
-					doWait(timeToWait);
-				}
-				else {
-					// blockingReceive() called from an external thread --> Do not change the agent state
-					waitUntilWake(timeToWait);
-				}
-				long elapsedTime = System.currentTimeMillis() - startTime;
+		// Read the message signal counter before checking the queue: a message 
+		// arriving after the check will make the wait return immediately
+		long wakeCnt = msgSignal.getCount();
+		ACLMessage msg = receive(pattern);
+		long timeToWait = millis;
+		while(msg == null) {
+			long startTime = System.currentTimeMillis();
+			if (Thread.currentThread().equals(myThread)) {
+				doWait(timeToWait, wakeCnt);
+			}
+			else {
+				// blockingReceive() called from an external thread --> Do not change the agent state
+				waitUntilWake(timeToWait, wakeCnt);
+			}
+			long elapsedTime = System.currentTimeMillis() - startTime;
 
-				msg = receive(pattern);
+			wakeCnt = msgSignal.getCount();
+			msg = receive(pattern);
 
-				if(millis != 0) {
-					timeToWait -= elapsedTime;
-					if(timeToWait <= 0)
-						break;
-				}
+			if(millis != 0) {
+				timeToWait -= elapsedTime;
+				if(timeToWait <= 0)
+					break;
 			}
 		}
 		return msg;
@@ -2084,7 +2420,7 @@ public class Agent implements Runnable, Serializable
 				myToolkit.handlePosted(myAID, msg);
 				//#MIDP_EXCLUDE_END
 				msgQueue.addLast(msg);
-				doWake();
+				wakeUp(msg);
 			}
 		}
 	}
@@ -2167,13 +2503,29 @@ public class Agent implements Runnable, Serializable
 	 simulated as described below.
 	 The agent thread can be in one of the following three states:
 	 1) Running a behaviour.
-	 2) Sleeping on msgQueue due to a doWait()
+	 2) Waiting for the message signal due to a doWait()
 	 3) Sleeping on myScheduler due to a schedule() with no active behaviours
 	 Note that in MIDP the suspended state is not supported
 	 The idea is: set the 'isInterrupted' flag, then wake up the
 	 thread wherever it may be
 	 */
 	private void interruptThread() {
+		//#J2ME_EXCLUDE_BEGIN
+		if (myExecutor != null) {
+			// Interrupt the pool thread only while it is actually executing this agent
+			synchronized (execLock) {
+				if (executionState == EXEC_RUNNING || executionState == EXEC_RUNNING_NOTIFIED) {
+					executionState = EXEC_RUNNING_NOTIFIED;
+					if (myThread != null) {
+						myThread.interrupt();
+					}
+					return;
+				}
+			}
+			activateExecution();
+			return;
+		}
+		//#J2ME_EXCLUDE_END
 		//#MIDP_EXCLUDE_BEGIN
 		myThread.interrupt();
 		//#MIDP_EXCLUDE_END
@@ -2182,8 +2534,8 @@ public class Agent implements Runnable, Serializable
 		 isInterrupted = true;
 
 		 // case 1: Nothing to do.
-		  // case 2: Signal on msgQueue.
-		   synchronized (msgQueue) {msgQueue.notifyAll();} 
+		  // case 2: Signal the message signal.
+		   msgSignal.signal(); 
 		   // case 3: Signal on the Scheduler
 		    synchronized (myScheduler) {myScheduler.notifyAll();}
 		    }
@@ -2197,6 +2549,13 @@ public class Agent implements Runnable, Serializable
 	 after going to sleep.
 	 */
 	void waitOn(Object lock, long millis) throws InterruptedException {
+		//#J2ME_EXCLUDE_BEGIN
+		if (myExecutor != null && Thread.currentThread().equals(myThread)) {
+			// Let the pool know that one of its threads is going to block 
+			myExecutor.waitOn(lock, millis);
+			return;
+		}
+		//#J2ME_EXCLUDE_END
 		/*#MIDP_INCLUDE_BEGIN
 		 synchronized (this) {
 		 if (isInterrupted) {
@@ -2216,6 +2575,36 @@ public class Agent implements Runnable, Serializable
 		 #MIDP_INCLUDE_END*/
 	}
 
+	/**
+	 The counterpart of waitOn() for agent threads waiting for a WakeSignal.
+	 */
+	private void await(WakeSignal signal, long wakeCnt, long millis) throws InterruptedException {
+		//#J2ME_EXCLUDE_BEGIN
+		if (myExecutor != null && Thread.currentThread().equals(myThread)) {
+			// Let the pool know that one of its threads is going to block 
+			myExecutor.await(signal, wakeCnt, millis);
+			return;
+		}
+		//#J2ME_EXCLUDE_END
+		/*#MIDP_INCLUDE_BEGIN
+		 synchronized (this) {
+		 if (isInterrupted) {
+		 isInterrupted = false;
+		 throw new InterruptedException();
+		 }
+		 } 
+		 #MIDP_INCLUDE_END*/
+		signal.await(wakeCnt, millis);
+		/*#MIDP_INCLUDE_BEGIN
+		 synchronized (this) {
+		 if (isInterrupted) {
+		 isInterrupted = false;
+		 throw new InterruptedException();
+		 }
+		 } 
+		 #MIDP_INCLUDE_END*/
+	}
+
 	//#J2ME_EXCLUDE_BEGIN
 	// For persistence service -- Hibernate needs java.util collections
 	private java.util.Set getBehaviours() {
@@ -108,6 +108,11 @@ class AgentContainerImpl implements AgentContainer, AgentToolkit {
 	// The Object managing Thread resources in this container
 	private ResourceManager myResourceManager;
 
+	//#J2ME_EXCLUDE_BEGIN
+	// The shared pool of threads executing agents. Null if each agent has its own thread
+	private AgentExecutor myAgentExecutor;
+	//#J2ME_EXCLUDE_END
+
 	protected ContainerID myID;
 	protected NodeDescriptor myNodeDescriptor;
 
@@ -366,6 +371,21 @@ class AgentContainerImpl implements AgentContainer, AgentToolkit {
 			myResourceManager.initGraphicResources();
 		}
 
+		//#J2ME_EXCLUDE_BEGIN
+		// Create the AgentExecutor if required
+		try {
+			int poolSize = Integer.parseInt(myProfile.getParameter(Profile.AGENT_POOL_SIZE, "0"));
+			if (poolSize > 0) {
+				int batchSize = Integer.parseInt(myProfile.getParameter(Profile.AGENT_POOL_BATCH_SIZE, String.valueOf(AgentExecutor.BATCH_SIZE_DEFAULT)));
+				myAgentExecutor = new AgentExecutor(poolSize, batchSize);
+				myLogger.log(Logger.CONFIG, "Agents executed by a shared pool of "+poolSize+" threads");
+			}
+		}
+		catch (NumberFormatException nfe) {
+			myLogger.log(Logger.WARNING, "Wrong agent pool configuration: "+nfe.getMessage()+". Each agent will have its own thread");
+		}
+		//#J2ME_EXCLUDE_END
+
 		// Initialize the Container ID
 		TransportAddress addr = (TransportAddress) myIMTPManager.getLocalAddresses().get(0);
 		myID = new ContainerID(myProfile.getParameter(Profile.CONTAINER_NAME, PlatformManager.NO_NAME), addr);
@@ -640,6 +660,11 @@ class AgentContainerImpl implements AgentContainer, AgentToolkit {
 		}
 
 		// Release Thread resources
+		//#J2ME_EXCLUDE_BEGIN
+		if (myAgentExecutor != null) {
+			myAgentExecutor.shutdown();
+		}
+		//#J2ME_EXCLUDE_END
 		myResourceManager.releaseResources();
 
 		// Notify the JADE Runtime that the container has terminated execution
@@ -929,6 +954,9 @@ class AgentContainerImpl implements AgentContainer, AgentToolkit {
 		// Initialize the agent message queue after the toolkit is set and before the agent is inserted in the LADT
 		a.initMessageQueue();
 		//#MIDP_EXCLUDE_END
+		//#J2ME_EXCLUDE_BEGIN
+		a.initScheduler();
+		//#J2ME_EXCLUDE_END
 		return localAgents.put(id, a);
 	}
 
@@ -938,6 +966,13 @@ class AgentContainerImpl implements AgentContainer, AgentToolkit {
 			throw new NotFoundException("powerUpLocalAgent() failed to find agent "+agentID.getName());
 		}
 		int type = (agentID.equals(theAMS) || agentID.equals(theDefaultDF) ? ResourceManager.SYSTEM_AGENTS : ResourceManager.USER_AGENTS);
+		//#J2ME_EXCLUDE_BEGIN
+		if (myAgentExecutor != null && type == ResourceManager.USER_AGENTS) {
+			instance.powerUp(agentID, myAgentExecutor);
+			localAgents.release(agentID);
+			return;
+		}
+		//#J2ME_EXCLUDE_END
 		Thread t = myResourceManager.getThread(type, agentID.getLocalName(), instance);
 		instance.powerUp(agentID, t);
 		localAgents.release(agentID);
@@ -975,16 +1010,9 @@ class AgentContainerImpl implements AgentContainer, AgentToolkit {
 	//#MIDP_EXCLUDE_BEGIN
 	public void fillListFromReadyBehaviours(List behaviours, Agent a) {
 
-		Scheduler s = a.getScheduler();
-
-		// (Mutual exclusion with Scheduler.add(), remove()...)
-		synchronized (s) {
-			Iterator it = s.readyBehaviours.iterator();
-			while (it.hasNext()) {
-				Behaviour b = (Behaviour) it.next();
-				behaviours.add(new BehaviourID(b));
-			}
-
+		Behaviour[] bb = a.getScheduler().getReadyBehaviours();
+		for (int i = 0; i < bb.length; ++i) {
+			behaviours.add(new BehaviourID(bb[i]));
 		}
 	}
 	//#MIDP_EXCLUDE_END
@@ -992,15 +1020,9 @@ class AgentContainerImpl implements AgentContainer, AgentToolkit {
 	//#MIDP_EXCLUDE_BEGIN
 	public void fillListFromBlockedBehaviours(List behaviours, Agent a) {
 
-		Scheduler s = a.getScheduler();
-
-		// (Mutual exclusion with Scheduler.add(), remove()...)
-		synchronized (s) {
-			Iterator it = s.blockedBehaviours.iterator();
-			while (it.hasNext()) {
-				Behaviour b = (Behaviour) it.next();
-				behaviours.add(new BehaviourID(b));
-			}
+		Behaviour[] bb = a.getScheduler().getBlockedBehaviours();
+		for (int i = 0; i < bb.length; ++i) {
+			behaviours.add(new BehaviourID(bb[i]));
 		}
 	}
 	//#MIDP_EXCLUDE_END
@@ -49,7 +49,7 @@ public class AgentDescriptor {
 	private AMSAgentDescription description;
 	//  private AgentProxy proxy;
 	private boolean foreign;
-	private ContainerID containerID;
+	private volatile ContainerID containerID;
 	private JADEPrincipal principal;
 	private Credentials amsDelegation;
 
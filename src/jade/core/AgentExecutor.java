@@ -0,0 +1,134 @@
+/*****************************************************************
+ JADE - Java Agent DEvelopment Framework is a framework to develop
+ multi-agent systems in compliance with the FIPA specifications.
+ Copyright (C) 2000 CSELT S.p.A.
+
+ GNU Lesser General Public License
+
+ This library is free software; you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public
+ License as published by the Free Software Foundation,
+ version 2.1 of the License.
+
+ This library is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ Lesser General Public License for more details.
+
+ You should have received a copy of the GNU Lesser General Public
+ License along with this library; if not, write to the
+ Free Software Foundation, Inc., 59 Temple Place - Suite 330,
+ Boston, MA  02111-1307, USA.
+ *****************************************************************/
+
+package jade.core;
+
+//#J2ME_EXCLUDE_FILE
+//#APIDOC_EXCLUDE_FILE
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.TimeUnit;
+
+import jade.util.WakeSignal;
+
+/**
+ This class executes the agents living in a container by means of a
+ shared, bounded, work-stealing pool of threads instead of giving each
+ agent a dedicated thread.
+ An agent that has ready behaviours (or that must react to a life-cycle
+ change) is submitted to the pool. A pool thread then executes up to
+ <code>batchSize</code> behaviour steps of that agent and re-submits it if it
+ still has work to do. Agents with nothing to do hold no thread at all.
+ <br>
+ An agent is never executed by more than one pool thread at a time
+ and therefore the usual single-threaded-per-agent semantics is preserved.
+ Agents blocking their thread (e.g. by means of <code>doWait()</code> or
+ <code>blockingReceive()</code>) are supported but hold a pool thread for the
+ whole blocking time: the pool compensates for that by temporarily adding
+ threads.
+ <br>
+ The pool is activated by setting the <code>Profile.AGENT_POOL_SIZE</code>
+ property to a positive value.
+ @see Profile#AGENT_POOL_SIZE
+ @see Profile#AGENT_POOL_BATCH_SIZE
+ */
+class AgentExecutor {
+	static final int BATCH_SIZE_DEFAULT = 16;
+
+	private final ForkJoinPool pool;
+	private final int batchSize;
+
+	AgentExecutor(int poolSize, int batchSize) {
+		this.batchSize = (batchSize > 0 ? batchSize : BATCH_SIZE_DEFAULT);
+		pool = new ForkJoinPool(poolSize, new ForkJoinPool.ForkJoinWorkerThreadFactory() {
+			private int cnt = 0;
+			public synchronized ForkJoinWorkerThread newThread(ForkJoinPool p) {
+				ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+				t.setName("JADE-Agent-Executor-"+(cnt++));
+				return t;
+			}
+		}, null, true);
+	}
+
+	/**
+	 Schedule the execution of a slice of the activity of a given agent
+	 */
+	void submit(final Agent a) {
+		pool.execute(new Runnable() {
+			public void run() {
+				a.runSlice(batchSize);
+			}
+		});
+	}
+
+	/**
+	 Wait on a given lock (the caller must hold its monitor) notifying
+	 the pool that the current thread is blocked.
+	 */
+	void waitOn(final Object lock, final long millis) throws InterruptedException {
+		ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+			private boolean done = false;
+			public boolean block() throws InterruptedException {
+				lock.wait(millis);
+				done = true;
+				return true;
+			}
+			public boolean isReleasable() {
+				return done;
+			}
+		});
+	}
+
+	/**
+	 Wait for a given WakeSignal notifying the pool that the current 
+	 thread is blocked.
+	 */
+	void await(final WakeSignal signal, final long wakeCnt, final long millis) throws InterruptedException {
+		ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+			private boolean done = false;
+			public boolean block() throws InterruptedException {
+				signal.await(wakeCnt, millis);
+				done = true;
+				return true;
+			}
+			public boolean isReleasable() {
+				return done;
+			}
+		});
+	}
+
+	int getPoolSize() {
+		return pool.getParallelism();
+	}
+
+	void shutdown() {
+		pool.shutdown();
+		try {
+			pool.awaitTermination(5, TimeUnit.SECONDS);
+		}
+		catch (InterruptedException ie) {
+			// Just do nothing
+		}
+	}
+}
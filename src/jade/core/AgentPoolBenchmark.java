@@ -0,0 +1,169 @@
+package jade.core;
+
+//#J2ME_EXCLUDE_FILE
+//#APIDOC_EXCLUDE_FILE
+
+import jade.core.behaviours.*;
+import jade.lang.acl.ACLMessage;
+import jade.util.leap.Properties;
+import jade.wrapper.AgentContainer;
+
+/**
+ Measure how many agents and which message rate a single container can
+ sustain when agents have their own dedicated thread and when they are
+ executed by the shared pool of threads (see <code>Profile.AGENT_POOL_SIZE</code>).
+ Usage:
+ <code>java jade.core.AgentPoolBenchmark [-n 1000] [-pool 0] [-t 10] [-active 100]</code>
+ where
+ <ul>
+ <li><code>n</code> is the number of couples of agents</li>
+ <li><code>pool</code> is the size of the shared pool of threads (0 means a dedicated thread per agent)</li>
+ <li><code>t</code> is the duration of the measurement in seconds</li>
+ <li><code>active</code> is the number of couples that keep exchanging messages.
+ The others just stay idle waiting for a message.</li>
+ </ul>
+ Each active couple plays ping-pong: the sender sends a message and waits for the reply.
+ Run the benchmark once per mode as the JADE runtime is a singleton.
+ @see jade.core.BenchmarkHarness
+ */
+public class AgentPoolBenchmark {
+	private static final String N_COUPLES = "n";
+	private static final int DEFAULT_N_COUPLES = 1000;
+
+	private static final String POOL_SIZE = "pool";
+	private static final int DEFAULT_POOL_SIZE = 0;
+
+	private static final int DEFAULT_DURATION = 10;
+
+	private static final String N_ACTIVE = "active";
+	private static final int DEFAULT_N_ACTIVE = 100;
+
+	private static volatile boolean measuring = false;
+	private static long exchangedCnt = 0;
+	private static Object counterLock = new Object();
+
+	public static void main(String[] args) {
+		Properties pp = BenchmarkHarness.parseArguments(args);
+		int nCouples = BenchmarkHarness.getIntProperty(pp, N_COUPLES, DEFAULT_N_COUPLES);
+		int poolSize = BenchmarkHarness.getIntProperty(pp, POOL_SIZE, DEFAULT_POOL_SIZE);
+		int duration = BenchmarkHarness.getIntProperty(pp, BenchmarkHarness.DURATION, DEFAULT_DURATION);
+		int nActive = Math.min(nCouples, BenchmarkHarness.getIntProperty(pp, N_ACTIVE, DEFAULT_N_ACTIVE));
+
+		ProfileImpl p = new ProfileImpl();
+		p.setParameter(Profile.LOCAL_PORT, "1199");
+		p.setParameter(Profile.NO_MTP, "true");
+		p.setParameter(Profile.SERVICES, Profile.DEFAULT_SERVICES_NOMOBILITY);
+		if (poolSize > 0) {
+			p.setParameter(Profile.AGENT_POOL_SIZE, String.valueOf(poolSize));
+		}
+		Runtime.instance().setCloseVM(true);
+		AgentContainer container = Runtime.instance().createMainContainer(p);
+		if (container == null) {
+			System.out.println("Cannot start the platform!!!!!");
+			System.exit(1);
+		}
+
+		long start = System.currentTimeMillis();
+		int started = 0;
+		try {
+			for (int i = 0; i < nCouples; ++i) {
+				boolean active = i < nActive;
+				container.createNewAgent("R-"+i, ReceiverAgent.class.getName(), null).start();
+				container.createNewAgent("S-"+i, SenderAgent.class.getName(), new Object[]{"R-"+i, String.valueOf(active)}).start();
+				started += 2;
+			}
+		}
+		catch (Throwable t) {
+			System.out.println("Agent creation failed after "+started+" agents: "+t);
+		}
+		long startupTime = System.currentTimeMillis() - start;
+		System.out.println(started+" agents started in "+startupTime+" ms. Live threads = "+Thread.activeCount());
+
+		measuring = true;
+		try {
+			Thread.sleep(duration * 1000L);
+		}
+		catch (InterruptedException ie) {
+		}
+		measuring = false;
+
+		long cnt = 0;
+		synchronized (counterLock) {
+			cnt = exchangedCnt;
+		}
+		System.out.println("----------------------------------");
+		System.out.println("Mode = "+(poolSize > 0 ? "shared pool of "+poolSize+" threads" : "one thread per agent"));
+		System.out.println("Agents = "+started+" ("+(2*nActive)+" active)");
+		System.out.println("Message rate = "+((cnt * 2) / duration)+" msg/s");
+		System.out.println("----------------------------------");
+		System.exit(0);
+	}
+
+	private static void countExchange() {
+		if (measuring) {
+			synchronized (counterLock) {
+				exchangedCnt++;
+			}
+		}
+	}
+
+	/**
+	   Inner class SenderAgent
+	 */
+	public static class SenderAgent extends Agent {
+		protected void setup() {
+			Object[] args = getArguments();
+			final AID receiver = new AID((String) args[0], AID.ISLOCALNAME);
+			if (!"true".equals(args[1])) {
+				// Idle agent: just wait for a message that will never arrive
+				addBehaviour(new CyclicBehaviour(this) {
+					public void action() {
+						if (myAgent.receive() == null) {
+							block();
+						}
+					}
+				} );
+				return;
+			}
+
+			final ACLMessage msg = new ACLMessage(ACLMessage.REQUEST);
+			msg.addReceiver(receiver);
+			msg.setContent("ping");
+			send(msg);
+			addBehaviour(new CyclicBehaviour(this) {
+				public void action() {
+					ACLMessage reply = myAgent.receive();
+					if (reply != null) {
+						countExchange();
+						myAgent.send(msg);
+					}
+					else {
+						block();
+					}
+				}
+			} );
+		}
+	} // END of inner class SenderAgent
+
+	/**
+	   Inner class ReceiverAgent
+	 */
+	public static class ReceiverAgent extends Agent {
+		protected void setup() {
+			addBehaviour(new CyclicBehaviour(this) {
+				public void action() {
+					ACLMessage msg = myAgent.receive();
+					if (msg != null) {
+						ACLMessage reply = msg.createReply();
+						reply.setPerformative(ACLMessage.INFORM);
+						reply.setContent("pong");
+						myAgent.send(reply);
+					}
+					else {
+						block();
+					}
+				}
+			} );
+		}
+	} // END of inner class ReceiverAgent
+}
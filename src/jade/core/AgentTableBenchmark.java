@@ -0,0 +1,144 @@
+package jade.core;
+
+//#J2ME_EXCLUDE_FILE
+//#APIDOC_EXCLUDE_FILE
+
+import jade.util.leap.Properties;
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ Measure the throughput of the agent tables (LADT and GADT) when many
+ threads concurrently resolve AIDs, as it happens on a Main Container
+ routing messages.
+ Usage:
+ <code>java jade.core.AgentTableBenchmark [-threads 64] [-n 10000] [-t 5] [-writers 1]</code>
+ where
+ <ul>
+ <li><code>threads</code> is the number of threads resolving AIDs</li>
+ <li><code>n</code> is the number of agents in the tables</li>
+ <li><code>writers</code> is the number of threads that keep adding and removing
+ agents (as it happens when agents are created, killed or moved) during the measurement</li>
+ </ul>
+ Three measurements are performed: GADT lookups as done by
+ <code>MainContainerImpl.getContainerID()</code>, GADT <code>acquire()/release()</code>
+ and LADT <code>acquire()/release()</code> as done when posting a message to a local agent.
+ @see jade.core.BenchmarkHarness
+ */
+public class AgentTableBenchmark {
+	private static final String N_THREADS = "threads";
+	private static final int DEFAULT_N_THREADS = 64;
+
+	private static final String N_AGENTS = "n";
+	private static final int DEFAULT_N_AGENTS = 10000;
+
+	private static final int DEFAULT_DURATION = 5;
+
+	private static final String N_WRITERS = "writers";
+	private static final int DEFAULT_N_WRITERS = 1;
+
+	private static final int GADT_LOOKUP = 0;
+	private static final int GADT_ACQUIRE = 1;
+	private static final int LADT_ACQUIRE = 2;
+	private static final String[] NAMES = new String[]{"GADT lookup", "GADT acquire/release", "LADT acquire/release"};
+
+	private static volatile boolean running;
+
+	public static void main(String[] args) {
+		Properties pp = BenchmarkHarness.parseArguments(args);
+		int nThreads = BenchmarkHarness.getIntProperty(pp, N_THREADS, DEFAULT_N_THREADS);
+		int nAgents = BenchmarkHarness.getIntProperty(pp, N_AGENTS, DEFAULT_N_AGENTS);
+		int duration = BenchmarkHarness.getIntProperty(pp, BenchmarkHarness.DURATION, DEFAULT_DURATION);
+		int nWriters = BenchmarkHarness.getIntProperty(pp, N_WRITERS, DEFAULT_N_WRITERS);
+
+		AID[] ids = new AID[nAgents];
+		GADT gadt = new GADT();
+		LADT ladt = new LADT(16);
+		ContainerID cid = new ContainerID("Container-1", null);
+		for (int i = 0; i < nAgents; ++i) {
+			ids[i] = new AID("a"+i+"@Platform", AID.ISGUID);
+			AgentDescriptor ad = new AgentDescriptor(AgentDescriptor.NATIVE_AGENT);
+			ad.setContainerID(cid);
+			gadt.put(ids[i], ad);
+			ladt.put(ids[i], new Agent());
+		}
+
+		System.out.println("----------------------------------");
+		System.out.println("Threads = "+nThreads+", agents = "+nAgents+", writers = "+nWriters);
+		for (int mode = GADT_LOOKUP; mode <= LADT_ACQUIRE; ++mode) {
+			long ops = measure(mode, gadt, ladt, ids, nThreads, nWriters, duration);
+			System.out.println(NAMES[mode]+": "+(ops / duration)+" ops/s");
+		}
+		System.out.println("----------------------------------");
+	}
+
+	private static long measure(final int mode, final GADT gadt, final LADT ladt, final AID[] ids, int nThreads, int nWriters, int duration) {
+		final long[] counters = new long[nThreads];
+		final CountDownLatch done = new CountDownLatch(nThreads + nWriters);
+		running = true;
+		for (int i = 0; i < nThreads; ++i) {
+			final int index = i;
+			Thread t = new Thread() {
+				public void run() {
+					Random rnd = new Random(index);
+					long cnt = 0;
+					while (running) {
+						AID id = ids[rnd.nextInt(ids.length)];
+						switch (mode) {
+						case GADT_LOOKUP:
+							AgentDescriptor ad = gadt.get(id);
+							if (ad != null) {
+								ad.getContainerID();
+							}
+							break;
+						case GADT_ACQUIRE:
+							if (gadt.acquire(id) != null) {
+								gadt.release(id);
+							}
+							break;
+						default:
+							if (ladt.acquire(id) != null) {
+								ladt.release(id);
+							}
+						}
+						cnt++;
+					}
+					counters[index] = cnt;
+					done.countDown();
+				}
+			};
+			t.start();
+		}
+		for (int i = 0; i < nWriters; ++i) {
+			final int index = i;
+			Thread t = new Thread() {
+				public void run() {
+					int cnt = 0;
+					while (running) {
+						AID id = new AID("w"+index+"-"+(cnt++)+"@Platform", AID.ISGUID);
+						gadt.put(id, new AgentDescriptor(AgentDescriptor.NATIVE_AGENT));
+						ladt.put(id, new Agent());
+						gadt.remove(id);
+						ladt.remove(id);
+					}
+					done.countDown();
+				}
+			};
+			t.start();
+		}
+
+		try {
+			Thread.sleep(duration * 1000L);
+			running = false;
+			done.await();
+		}
+		catch (InterruptedException ie) {
+		}
+		long total = 0;
+		for (int i = 0; i < counters.length; ++i) {
+			total += counters[i];
+		}
+		return total;
+	}
+}
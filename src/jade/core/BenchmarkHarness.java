@@ -0,0 +1,93 @@
+package jade.core;
+
+//#J2ME_EXCLUDE_FILE
+//#APIDOC_EXCLUDE_FILE
+
+import jade.util.leap.Properties;
+
+/**
+ Utility methods shared by the JADE benchmarks, i.e. the classes named 
+ <code>*Benchmark</code> that are run from the command line by means of 
+ their <code>main()</code> method. Benchmarks are compiled together with 
+ the rest of the sources, but are not included in <code>jade.jar</code>.
+ <br>
+ All benchmarks accept options of the form <code>-name value</code>. 
+ Those repeating a measurement for a given time also accept
+ <ul>
+ <li><code>t</code>: the duration of each measurement in seconds (default 3)</li>
+ <li><code>warmup</code>: the duration of the warm-up phase preceding each measurement in seconds (default 2)</li>
+ </ul>
+ */
+public class BenchmarkHarness {
+	public static final String DURATION = "t";
+	public static final int DEFAULT_DURATION = 3;
+
+	public static final String WARMUP = "warmup";
+	public static final int DEFAULT_WARMUP = 2;
+
+	private BenchmarkHarness() {
+	}
+
+	/**
+	 Parse command line arguments of the form <code>-name value</code>
+	 */
+	public static Properties parseArguments(String[] args) {
+		Properties props = new Properties();
+		int i = 0;
+		while (i < args.length) {
+			if (args[i].startsWith("-")) {
+				// Parse next option
+				String name = args[i].substring(1);
+				if (++i < args.length) {
+					props.setProperty(name, args[i]);
+				}
+				else {
+					throw new IllegalArgumentException("No value specified for property \""+name+"\"");
+				}
+				++i;
+			}
+			else {
+				throw new IllegalArgumentException("Invalid property \""+args[i]+"\". It does not start with '-'");
+			}
+		}
+		return props;
+	}
+
+	/**
+	 @return the value of an integer option or <code>def</code> if it is
+	 not specified or is not a valid integer
+	 */
+	public static int getIntProperty(Properties pp, String key, int def) {
+		try {
+			return Integer.parseInt(pp.getProperty(key));
+		}
+		catch (Exception e) {
+			return def;
+		}
+	}
+
+	/**
+	 @return the duration of each measurement in seconds
+	 */
+	public static int getDuration(Properties pp) {
+		return getIntProperty(pp, DURATION, DEFAULT_DURATION);
+	}
+
+	/**
+	 @return the duration of the warm-up phase preceding each measurement in seconds
+	 */
+	public static int getWarmup(Properties pp) {
+		return getIntProperty(pp, WARMUP, DEFAULT_WARMUP);
+	}
+
+	/**
+	 Pad a string with blanks on the right to align benchmark results
+	 */
+	public static String pad(String s, int length) {
+		StringBuffer sb = new StringBuffer(s);
+		while (sb.length() < length) {
+			sb.append(' ');
+		}
+		return sb.toString();
+	}
+}
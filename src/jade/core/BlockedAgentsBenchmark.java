@@ -0,0 +1,137 @@
+package jade.core;
+
+//#J2ME_EXCLUDE_FILE
+//#APIDOC_EXCLUDE_FILE
+
+import jade.core.behaviours.OneShotBehaviour;
+import jade.lang.acl.ACLMessage;
+import jade.util.VirtualThreads;
+import jade.util.leap.Properties;
+import jade.wrapper.AgentContainer;
+
+import java.util.concurrent.CountDownLatch;
+
+/**
+ Measure how many agents blocked in <code>blockingReceive()</code> a single
+ container can hold when agents are executed by virtual threads
+ (see <code>Profile.VIRTUAL_THREADS</code>) and when they are executed by
+ normal threads.
+ Usage:
+ <code>java jade.core.BlockedAgentsBenchmark [-n 100000] [-virtual true]</code>
+ where
+ <ul>
+ <li><code>n</code> is the number of agents</li>
+ <li><code>virtual</code> indicates whether or not agents must be executed by virtual threads.
+ Virtual threads require Java 21 or later.</li>
+ </ul>
+ All agents are started and block waiting for a message. When all of them are
+ blocked a single agent sends a message to each of them and the time required
+ to wake them all up is measured.
+ Run the benchmark once per mode as the JADE runtime is a singleton.
+ @see jade.core.BenchmarkHarness
+ */
+public class BlockedAgentsBenchmark {
+	private static final String N_AGENTS = "n";
+	private static final int DEFAULT_N_AGENTS = 100000;
+
+	private static final String VIRTUAL = "virtual";
+
+	private static CountDownLatch blocked;
+	private static CountDownLatch woken;
+
+	public static void main(String[] args) {
+		Properties pp = BenchmarkHarness.parseArguments(args);
+		int nAgents = DEFAULT_N_AGENTS;
+		try {
+			nAgents = Integer.parseInt(pp.getProperty(N_AGENTS));
+		}
+		catch (Exception e) {
+			// Keep default
+		}
+		boolean virtual = !"false".equalsIgnoreCase(pp.getProperty(VIRTUAL, "true"));
+		if (virtual && !VirtualThreads.isSupported()) {
+			System.out.println("Virtual threads not supported by this JVM. Use normal threads");
+			virtual = false;
+		}
+
+		ProfileImpl p = new ProfileImpl();
+		p.setParameter(Profile.NO_MTP, "true");
+		p.setParameter(Profile.SERVICES, Profile.DEFAULT_SERVICES_NOMOBILITY);
+		p.setParameter(Profile.VIRTUAL_THREADS, String.valueOf(virtual));
+		Runtime.instance().setCloseVM(true);
+		AgentContainer container = Runtime.instance().createMainContainer(p);
+		if (container == null) {
+			System.out.println("Cannot start the platform!!!!!");
+			System.exit(1);
+		}
+
+		blocked = new CountDownLatch(nAgents);
+		woken = new CountDownLatch(nAgents);
+		long start = System.currentTimeMillis();
+		int started = 0;
+		try {
+			for (int i = 0; i < nAgents; ++i) {
+				container.createNewAgent("B-"+i, BlockedAgent.class.getName(), null).start();
+				started++;
+			}
+			blocked.await();
+		}
+		catch (Throwable t) {
+			System.out.println("Agent creation failed after "+started+" agents: "+t);
+			System.exit(1);
+		}
+		long startupTime = System.currentTimeMillis() - start;
+		java.lang.Runtime rt = java.lang.Runtime.getRuntime();
+		rt.gc();
+		long usedMemory = (rt.totalMemory() - rt.freeMemory()) / (1024 * 1024);
+
+		start = System.currentTimeMillis();
+		try {
+			container.createNewAgent("Waker", WakerAgent.class.getName(), new Object[]{String.valueOf(nAgents)}).start();
+			woken.await();
+		}
+		catch (Throwable t) {
+			System.out.println("Wake-up failed: "+t);
+			System.exit(1);
+		}
+		long wakeUpTime = System.currentTimeMillis() - start;
+
+		System.out.println("----------------------------------");
+		System.out.println("Mode = "+(virtual ? "virtual threads" : "normal threads"));
+		System.out.println(started+" agents blocked in "+startupTime+" ms");
+		System.out.println("Live normal threads = "+Thread.activeCount()+", used memory = "+usedMemory+" MB");
+		System.out.println("All agents woken up in "+wakeUpTime+" ms");
+		System.out.println("----------------------------------");
+		System.exit(0);
+	}
+
+	/**
+	   Inner class BlockedAgent
+	 */
+	public static class BlockedAgent extends Agent {
+		protected void setup() {
+			addBehaviour(new OneShotBehaviour(this) {
+				public void action() {
+					blocked.countDown();
+					myAgent.blockingReceive();
+					woken.countDown();
+				}
+			} );
+		}
+	} // END of inner class BlockedAgent
+
+	/**
+	   Inner class WakerAgent
+	 */
+	public static class WakerAgent extends Agent {
+		protected void setup() {
+			int n = Integer.parseInt((String) getArguments()[0]);
+			for (int i = 0; i < n; ++i) {
+				ACLMessage msg = new ACLMessage(ACLMessage.INFORM);
+				msg.addReceiver(new AID("B-"+i, AID.ISLOCALNAME));
+				msg.setContent("wake-up");
+				send(msg);
+			}
+		}
+	} // END of inner class WakerAgent
+}
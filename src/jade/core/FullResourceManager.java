@@ -25,6 +25,13 @@ package jade.core;
 
 //#J2ME_EXCLUDE_FILE
 
+import jade.util.Logger;
+import jade.util.VirtualThreads;
+
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
 class FullResourceManager implements ResourceManager {
 	private static final String USER_AGENTS_GROUP_NAME = "JADE User Agents";
 	private static final String SYSTEM_AGENTS_GROUP_NAME = "JADE System Agents";
@@ -36,6 +43,10 @@ class FullResourceManager implements ResourceManager {
 	private ThreadGroup criticalThreads;
 	
 	private boolean terminating = false;
+	// Whether threads for user agents and time-critical tasks are virtual threads
+	private boolean virtualThreads = false;
+	// Virtual threads do not belong to any JADE thread group --> Keep track of the live ones
+	private final Set<Thread> liveVirtualThreads = ConcurrentHashMap.newKeySet();
 
 
 	public FullResourceManager() {
@@ -56,7 +67,41 @@ class FullResourceManager implements ResourceManager {
 		criticalThreads.setMaxPriority(Thread.MAX_PRIORITY);
 	}
 
+	/**
+	 Make this ResourceManager return virtual threads for user agents 
+	 and time-critical tasks (i.e. message delivery). System agents keep 
+	 normal threads. Virtual threads have no priority and do not belong to 
+	 the JADE thread groups: those that are still alive are interrupted 
+	 one by one when resources are released.
+	 */
+	void setVirtualThreads(boolean virtualThreads) {
+		if (virtualThreads && !VirtualThreads.isSupported()) {
+			Logger.getMyLogger(getClass().getName()).log(Logger.WARNING, "Virtual threads not supported by this JVM. Use normal threads");
+			virtualThreads = false;
+		}
+		this.virtualThreads = virtualThreads;
+	}
+
 	public Thread getThread(int type, String name, Runnable r) {
+		if (virtualThreads && (type == USER_AGENTS || type == TIME_CRITICAL)) {
+			final Runnable target = r;
+			final Thread[] holder = new Thread[1];
+			Thread t = VirtualThreads.newThread(name, new Runnable() {
+				public void run() {
+					try {
+						target.run();
+					}
+					finally {
+						liveVirtualThreads.remove(holder[0]);
+					}
+				}
+			});
+			if (t != null) {
+				holder[0] = t;
+				liveVirtualThreads.add(t);
+				return t;
+			}
+		}
 		Thread t = null;
 		switch (type) {
 		case USER_AGENTS:
@@ -85,6 +130,10 @@ class FullResourceManager implements ResourceManager {
 		if (parent != null) {
 			parent.interrupt();
 		}
+		Iterator<Thread> it = liveVirtualThreads.iterator();
+		while (it.hasNext()) {
+			it.next().interrupt();
+		}
 
 		agentThreads = null;
 		systemAgentThreads = null;
@@ -25,55 +25,65 @@ package jade.core;
 
 //#MIDP_EXCLUDE_FILE
 
+//#J2ME_EXCLUDE_BEGIN
+import java.util.concurrent.ConcurrentHashMap;
+//#J2ME_EXCLUDE_END
+/*#J2ME_INCLUDE_BEGIN
 import jade.util.leap.Map;
 import jade.util.leap.HashMap;
-import jade.util.leap.List;
-import jade.util.leap.ArrayList;
-import jade.util.leap.Iterator;
+#J2ME_INCLUDE_END*/
 
 
 /**
    The table holding information about all agents known to the
    platform (both agents living in the platform and remote agents
    registered with the platform AMS).
+   In J2SE the table is backed by a <code>ConcurrentHashMap</code>: lookups
+   never block and <code>keys()</code>/<code>values()</code> return a snapshot
+   without locking the whole table. Row locks are only taken by
+   <code>acquire()</code> and by the operations that change the descriptor
+   a row refers to.
    @author Giovanni Caire - TILAB
    @author Giovanni Rimassa - Universita` di Parma
  */
 class GADT {
+  //#J2ME_EXCLUDE_BEGIN
+  private ConcurrentHashMap<AID, Row> agents = new ConcurrentHashMap<AID, Row>();
+  //#J2ME_EXCLUDE_END
+  /*#J2ME_INCLUDE_BEGIN
   private Map agents = new HashMap();
+  #J2ME_INCLUDE_END*/
 
   public AgentDescriptor put(AID aid, AgentDescriptor a) {
-  	Row r;
-    synchronized(agents) {
-	  	r = (Row)agents.get(aid);
-    }
-    if(r == null) {
-	  	agents.put(aid, new Row(a));
-	  	return null;
-    }
-    else {
-	  	r.lock();
-
-	  	agents.put(aid, new Row(a));
-	  	AgentDescriptor old = r.get();
-
-	  	r.unlock();
-	  	return old;
+    while (true) {
+    	Row r = getRow(aid);
+	    if(r == null) {
+	    	if (putRowIfAbsent(aid, new Row(a))) {
+	    		return null;
+	    	}
+	    	// Someone else inserted a row in the meanwhile --> retry
+	    }
+	    else {
+		  	r.lock();
+	
+		  	putRow(aid, new Row(a));
+		  	AgentDescriptor old = r.get();
+	
+		  	r.unlock();
+		  	return old;
+	    }
     }
   }
 
   public AgentDescriptor remove(AID key) {
-    Row r;
-    synchronized(agents) {
-			r = (Row)agents.get(key);
-    }
+    Row r = getRow(key);
     if (r == null) {
 			return null;
     }
     else {
 			r.lock();
 
-			agents.remove(key);
+			removeRow(key, r);
 			AgentDescriptor a = r.get();
 			// Clear the row value, to avoid pending acquire() using the
 			// removed agent descriptor...
@@ -86,10 +96,7 @@ class GADT {
 
   // The caller must call release() after it has finished with the row
   public AgentDescriptor acquire(AID key) {
-    Row r;
-    synchronized(agents) {
-			r = (Row)agents.get(key);
-    }
+    Row r = getRow(key);
     if(r == null) {
 			return null;
     }
@@ -100,34 +107,113 @@ class GADT {
   }
 
   public void release(AID key) {
-    Row r;
-    synchronized(agents) {
-			r = (Row)agents.get(key);
-    }
+    Row r = getRow(key);
     if(r != null) {
       r.unlock();
     }
   }
 
+  /**
+     Return the descriptor of a given agent without locking its row.
+     This is suitable for read-only lookups, such as resolving the
+     container an agent lives in when routing a message.
+   */
+  public AgentDescriptor get(AID key) {
+    Row r = getRow(key);
+    return (r != null ? r.get() : null);
+  }
+
   public AID[] keys() {
+  	//#J2ME_EXCLUDE_BEGIN
+  	return agents.keySet().toArray(new AID[0]);
+  	//#J2ME_EXCLUDE_END
+  	/*#J2ME_INCLUDE_BEGIN
     synchronized(agents) {
       Object[] objs = agents.keySet().toArray();
       AID[] result = new AID[objs.length];
       System.arraycopy(objs, 0, result, 0, result.length);
       return result;
     }
+    #J2ME_INCLUDE_END*/
   }
 
   public AgentDescriptor[] values() {
+  	//#J2ME_EXCLUDE_BEGIN
+  	Object[] objs = agents.values().toArray();
+  	//#J2ME_EXCLUDE_END
+  	/*#J2ME_INCLUDE_BEGIN
+  	Object[] objs = null;
     synchronized(agents) {
-			Object[] objs = agents.values().toArray();
-			AgentDescriptor[] result = new AgentDescriptor[objs.length];
-			for(int i = 0; i < objs.length; i++) {
-	    	Row r = (Row)objs[i];
-	    	result[i] = r.get();
-			}
-			return result;
+			objs = agents.values().toArray();
     }
+  	#J2ME_INCLUDE_END*/
+		AgentDescriptor[] result = new AgentDescriptor[objs.length];
+		int cnt = 0;
+		for(int i = 0; i < objs.length; i++) {
+    	Row r = (Row)objs[i];
+    	AgentDescriptor ad = r.get();
+    	// Skip rows removed after the snapshot was taken
+    	if (ad != null) {
+    		result[cnt++] = ad;
+    	}
+		}
+		if (cnt < result.length) {
+			AgentDescriptor[] tmp = new AgentDescriptor[cnt];
+			System.arraycopy(result, 0, tmp, 0, cnt);
+			result = tmp;
+		}
+		return result;
+  }
+
+  private Row getRow(AID key) {
+  	//#J2ME_EXCLUDE_BEGIN
+  	return agents.get(key);
+  	//#J2ME_EXCLUDE_END
+  	/*#J2ME_INCLUDE_BEGIN
+  	synchronized(agents) {
+  		return (Row)agents.get(key);
+  	}
+  	#J2ME_INCLUDE_END*/
+  }
+
+  private void putRow(AID key, Row r) {
+  	//#J2ME_EXCLUDE_BEGIN
+  	agents.put(key, r);
+  	//#J2ME_EXCLUDE_END
+  	/*#J2ME_INCLUDE_BEGIN
+  	synchronized(agents) {
+  		agents.put(key, r);
+  	}
+  	#J2ME_INCLUDE_END*/
+  }
+
+  private boolean putRowIfAbsent(AID key, Row r) {
+  	//#J2ME_EXCLUDE_BEGIN
+  	return agents.putIfAbsent(key, r) == null;
+  	//#J2ME_EXCLUDE_END
+  	/*#J2ME_INCLUDE_BEGIN
+  	synchronized(agents) {
+  		if (agents.get(key) == null) {
+  			agents.put(key, r);
+  			return true;
+  		}
+  		return false;
+  	}
+  	#J2ME_INCLUDE_END*/
+  }
+
+  // Remove a row only if the key is still mapped to it
+  private void removeRow(AID key, Row r) {
+  	//#J2ME_EXCLUDE_BEGIN
+  	agents.remove(key, r);
+  	//#J2ME_EXCLUDE_END
+  	/*#J2ME_INCLUDE_BEGIN
+  	synchronized(agents) {
+  		if (agents.get(key) == r) {
+  			agents.remove(key);
+  		}
+  	}
+  	#J2ME_INCLUDE_END*/
   }
 
   /**
@@ -135,7 +221,7 @@ class GADT {
      Rows of the GADT are protected by a recursive mutex lock
    */
   private static class Row {
-    private AgentDescriptor value;
+    private volatile AgentDescriptor value;
     private Thread owner;
     private long depth;
 
@@ -0,0 +1,294 @@
+/*****************************************************************
+ JADE - Java Agent DEvelopment Framework is a framework to develop
+ multi-agent systems in compliance with the FIPA specifications.
+ Copyright (C) 2000 CSELT S.p.A.
+
+ GNU Lesser General Public License
+
+ This library is free software; you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public
+ License as published by the Free Software Foundation,
+ version 2.1 of the License.
+
+ This library is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ Lesser General Public License for more details.
+
+ You should have received a copy of the GNU Lesser General Public
+ License along with this library; if not, write to the
+ Free Software Foundation, Inc., 59 Temple Place - Suite 330,
+ Boston, MA  02111-1307, USA.
+ *****************************************************************/
+
+package jade.core;
+
+//#J2ME_EXCLUDE_FILE
+
+import jade.util.leap.List;
+
+import jade.lang.acl.ACLMessage;
+import jade.lang.acl.MessageTemplate;
+
+import java.util.HashMap;
+
+/**
+ * A <code>MessageQueue</code> implementation that, besides keeping messages
+ * in FIFO order, maintains secondary indexes on the conversation-id, in-reply-to,
+ * performative and sender slots.
+ * When a <code>receive()</code> is performed with a template that constrains
+ * (possibly by means of <code>and</code> combinations) one or more of the above
+ * slots, only the messages in the smallest matching index bucket are checked.
+ * As a consequence retrieving a message by conversation-id (the typical case for
+ * agents involved in many parallel negotiations) takes a time that does not depend
+ * on the number of pending messages.
+ * <br>
+ * Agents can use this queue by specifying
+ * <code>-jade_core_Agent_msgQueueClass jade.core.IndexedMessageQueue</code>
+ * or by redefining the <code>Agent.createMessageQueue()</code> method.
+ * <br>
+ * Like <code>InternalMessageQueue</code> this class is not synchronized:
+ * the <code>Agent</code> class always accesses its message queue holding the
+ * queue monitor.
+ * @see Agent#createMessageQueue()
+ * @see MessageTemplate#getIndexKeys()
+ */
+public class IndexedMessageQueue implements MessageQueue {
+
+	/**
+	 * Inner class Node.
+	 * A queued message, linked both in the global FIFO list and in
+	 * one bucket list for each index it belongs to.
+	 */
+	private static class Node {
+		private ACLMessage msg;
+		private Object[] keys;
+		private Node prev;
+		private Node next;
+		private Node[] bucketPrev = new Node[MessageTemplate.INDEX_SIZE];
+		private Node[] bucketNext = new Node[MessageTemplate.INDEX_SIZE];
+
+		private Node(ACLMessage msg) {
+			this.msg = msg;
+			keys = MessageTemplate.getIndexKeys(msg);
+		}
+	} // END of inner class Node
+
+	/**
+	 * Inner class Bucket.
+	 * The list of messages sharing the same value for an indexed slot
+	 */
+	private static class Bucket {
+		private Node head;
+		private Node tail;
+		private int size;
+	} // END of inner class Bucket
+
+	private Node head;
+	private Node tail;
+	private int size;
+	private int maxSize;
+
+	private HashMap[] indexes = new HashMap[MessageTemplate.INDEX_SIZE];
+
+	public IndexedMessageQueue(int size) {
+		maxSize = size;
+		for (int i = 0; i < indexes.length; ++i) {
+			indexes[i] = new HashMap();
+		}
+	}
+
+	public IndexedMessageQueue() {
+		this(0);
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public void setMaxSize(int newSize) throws IllegalArgumentException {
+		if(newSize < 0)
+			throw new IllegalArgumentException("Invalid MsgQueue size");
+		maxSize = newSize;
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * @return the number of messages
+	 * currently in the queue
+	 **/
+	public int size() {
+		return size;
+	}
+
+	public void addFirst(ACLMessage msg) {
+		if((maxSize != 0) && (size >= maxSize)) {
+			unlink(head); // FIFO replacement policy
+		}
+		Node n = new Node(msg);
+		n.next = head;
+		if (head != null) {
+			head.prev = n;
+		}
+		else {
+			tail = n;
+		}
+		head = n;
+		size++;
+		for (int i = 0; i < MessageTemplate.INDEX_SIZE; ++i) {
+			Object key = n.keys[i];
+			if (key != null) {
+				Bucket b = getBucket(i, key, true);
+				n.bucketNext[i] = b.head;
+				if (b.head != null) {
+					b.head.bucketPrev[i] = n;
+				}
+				else {
+					b.tail = n;
+				}
+				b.head = n;
+				b.size++;
+			}
+		}
+	}
+
+	public void addLast(ACLMessage msg) {
+		if((maxSize != 0) && (size >= maxSize)){
+			unlink(head); // FIFO replacement policy
+			System.err.println("WARNING: a message has been lost by an agent because of the FIFO replacement policy of its message queue.\n Notice that, under some circumstances, this might not be the proper expected behaviour and the size of the queue needs to be increased. Check the method Agent.setQueueSize()");
+		}
+		Node n = new Node(msg);
+		n.prev = tail;
+		if (tail != null) {
+			tail.next = n;
+		}
+		else {
+			head = n;
+		}
+		tail = n;
+		size++;
+		for (int i = 0; i < MessageTemplate.INDEX_SIZE; ++i) {
+			Object key = n.keys[i];
+			if (key != null) {
+				Bucket b = getBucket(i, key, true);
+				n.bucketPrev[i] = b.tail;
+				if (b.tail != null) {
+					b.tail.bucketNext[i] = n;
+				}
+				else {
+					b.head = n;
+				}
+				b.tail = n;
+				b.size++;
+			}
+		}
+	}
+
+	public ACLMessage receive(MessageTemplate pattern) {
+		if (head == null) {
+			return null;
+		}
+		if (pattern == null) {
+			ACLMessage result = head.msg;
+			unlink(head);
+			return result;
+		}
+
+		// Select the smallest bucket among those of the slots constrained by the template
+		Object[] keys = pattern.getIndexKeys();
+		int index = -1;
+		Bucket bucket = null;
+		for (int i = 0; i < keys.length; ++i) {
+			if (keys[i] != null) {
+				Bucket b = getBucket(i, keys[i], false);
+				if (b == null) {
+					// No message has the required value for this slot --> nothing can match
+					return null;
+				}
+				if (bucket == null || b.size < bucket.size) {
+					bucket = b;
+					index = i;
+				}
+			}
+		}
+
+		Node n = (bucket != null ? bucket.head : head);
+		while (n != null) {
+			if (pattern.match(n.msg)) {
+				unlink(n);
+				return n.msg;
+			}
+			n = (bucket != null ? n.bucketNext[index] : n.next);
+		}
+		return null;
+	}
+
+	public void copyTo(List list) {
+		for (Node n = head; n != null; n = n.next) {
+			list.add(n.msg);
+		}
+	}
+
+	// For debugging purpose
+	Object[] getAllMessages() {
+		Object[] messages = new Object[size];
+		int i = 0;
+		for (Node n = head; n != null; n = n.next) {
+			messages[i++] = n.msg;
+		}
+		return messages;
+	}
+
+	private Bucket getBucket(int index, Object key, boolean create) {
+		Bucket b = (Bucket) indexes[index].get(key);
+		if (b == null && create) {
+			b = new Bucket();
+			indexes[index].put(key, b);
+		}
+		return b;
+	}
+
+	private void unlink(Node n) {
+		if (n.prev != null) {
+			n.prev.next = n.next;
+		}
+		else {
+			head = n.next;
+		}
+		if (n.next != null) {
+			n.next.prev = n.prev;
+		}
+		else {
+			tail = n.prev;
+		}
+		size--;
+
+		for (int i = 0; i < MessageTemplate.INDEX_SIZE; ++i) {
+			Object key = n.keys[i];
+			if (key != null) {
+				Bucket b = getBucket(i, key, false);
+				Node p = n.bucketPrev[i];
+				Node nx = n.bucketNext[i];
+				if (p != null) {
+					p.bucketNext[i] = nx;
+				}
+				else {
+					b.head = nx;
+				}
+				if (nx != null) {
+					nx.bucketPrev[i] = p;
+				}
+				else {
+					b.tail = p;
+				}
+				if (--b.size == 0) {
+					// Avoid keeping empty buckets for conversations that are over
+					indexes[i].remove(key);
+				}
+			}
+		}
+	}
+}
@@ -23,13 +23,23 @@ Boston, MA  02111-1307, USA.
 
 package jade.core;
 
+//#J2ME_EXCLUDE_BEGIN
+import java.util.concurrent.ConcurrentHashMap;
+//#J2ME_EXCLUDE_END
+/*#J2ME_INCLUDE_BEGIN
 import jade.util.leap.Map;
 import jade.util.leap.HashMap;
+#J2ME_INCLUDE_END*/
 
 
 // Class for the Local Agent Descriptor Table.
 
 /**
+   In J2SE the table is backed by a <code>ConcurrentHashMap</code>: lookups
+   never block and <code>keys()</code>/<code>values()</code> return a snapshot
+   without locking the whole table. Row locks are only taken by
+   <code>acquire()</code> and by the operations that change the agent a row
+   refers to.
    @author Giovanni Rimassa - Universita' di Parma
    @version $Date: 2008-01-07 15:49:34 +0100 (lun, 07 gen 2008) $ $Revision: 6013 $
  */
@@ -37,7 +47,7 @@ class LADT {
 
     // Rows of the LADT are protected by a recursive mutex lock
     private static class Row {
-        private Agent value;
+        private volatile Agent value;
         // DEBUG private Agent bakValue;
         // DEBUG private String target = "ma";
         private Thread owner;
@@ -126,46 +136,54 @@ class LADT {
 
 
     //private Map agents = new HashMap(MAP_SIZE, MAP_LOAD_FACTOR);
+    //#J2ME_EXCLUDE_BEGIN
+    private ConcurrentHashMap<AID, Row> agents;
+    //#J2ME_EXCLUDE_END
+    /*#J2ME_INCLUDE_BEGIN
     private Map agents;
+    #J2ME_INCLUDE_END*/
     
     public LADT(int size) {
+    	//#J2ME_EXCLUDE_BEGIN
+    	agents = new ConcurrentHashMap<AID, Row>(size);
+    	//#J2ME_EXCLUDE_END
+    	/*#J2ME_INCLUDE_BEGIN
     	agents = new HashMap(size);
+    	#J2ME_INCLUDE_END*/
     }
     
     public Agent put(AID aid, Agent a) {
-        Row r;
-        synchronized(agents) {
-            r = (Row)agents.get(aid);
-        }       
-        if(r == null) {
-            agents.put(aid, new Row(a));
-            return null;
-        }
-        else {
-            r.lock();
-            
-            Agent old = r.get();
-          	// Re-putting an existing agent must have no effect
-            if (a != old) {
-	            agents.put(aid, new Row(a));
+        while (true) {
+            Row r = getRow(aid);
+            if(r == null) {
+                if (putRowIfAbsent(aid, new Row(a))) {
+                    return null;
+                }
+                // Someone else inserted a row in the meanwhile --> retry
+            }
+            else {
+                r.lock();
+                
+                Agent old = r.get();
+              	// Re-putting an existing agent must have no effect
+                if (a != old) {
+    	            putRow(aid, new Row(a));
+                }
+                
+                r.unlock();
+                return old;
             }
-            
-            r.unlock();
-            return old;
         }
     }
 
     public Agent remove(AID key) {
-        Row r;
-        synchronized(agents) {
-            r = (Row)agents.get(key);
-        }
+        Row r = getRow(key);
         if(r == null)
             return null;
         else {
             r.lock();
 
-            agents.remove(key);
+            removeRow(key, r);
             Agent a = r.get();
             // Clear the row value, to avoid pending acquire() using the
             // removed agent...
@@ -178,10 +196,7 @@ class LADT {
 
     // The caller must call release() after it has finished with the row
     public Agent acquire(AID key) {
-        Row r;
-        synchronized(agents) {
-            r = (Row)agents.get(key);
-        }
+        Row r = getRow(key);
         if(r == null)
             return null;
         else {
@@ -191,16 +206,27 @@ class LADT {
     }
 
     public void release(AID key) {
-        Row r;
-        synchronized(agents) {
-            r = (Row)agents.get(key);
-        }
+        Row r = getRow(key);
         if(r != null) {
             r.unlock();
         }
     }
 
+    /**
+       Return the agent with a given AID without locking its row.
+       This is suitable for read-only lookups that do not need the
+       agent to stay in the table while they use it.
+     */
+    public Agent get(AID key) {
+        Row r = getRow(key);
+        return (r != null ? r.get() : null);
+    }
+
     public AID[] keys() {
+    	//#J2ME_EXCLUDE_BEGIN
+    	return agents.keySet().toArray(new AID[0]);
+    	//#J2ME_EXCLUDE_END
+    	/*#J2ME_INCLUDE_BEGIN
         synchronized(agents) {
             Object[] objs = agents.keySet().toArray();
             AID[] result = new AID[objs.length];
@@ -211,35 +237,112 @@ class LADT {
             }            
             return result;
         }
+        #J2ME_INCLUDE_END*/
     }
     
     public Agent[] values() {
-        synchronized(agents) {
-            Object[] objs = agents.values().toArray();
-            Agent[] result = new Agent[objs.length];
-            for(int i = 0; i < objs.length; i++) {
-                Row r = (Row)objs[i];
-                result[i] = r.get();
+        Object[] objs = rowsSnapshot();
+        Agent[] result = new Agent[objs.length];
+        int cnt = 0;
+        for(int i = 0; i < objs.length; i++) {
+            Row r = (Row)objs[i];
+            Agent a = r.get();
+            // Skip rows removed after the snapshot was taken
+            if (a != null) {
+                result[cnt++] = a;
             }
-            return result;
         }
-
+        if (cnt < result.length) {
+            Agent[] tmp = new Agent[cnt];
+            for (int i = 0; i < cnt; i++) {
+                tmp[i] = result[i];
+            }
+            result = tmp;
+        }
+        return result;
     }
 
-    synchronized boolean contains(AID key) {
+    boolean contains(AID key) {
+    	//#J2ME_EXCLUDE_BEGIN
     	return agents.containsKey(key);
+    	//#J2ME_EXCLUDE_END
+    	/*#J2ME_INCLUDE_BEGIN
+    	synchronized(agents) {
+    		return agents.containsKey(key);
+    	}
+    	#J2ME_INCLUDE_END*/
     }
     
     // For debugging purpose
     public String[] getStatus() {
-        synchronized(agents) {
-            Object[] objs = agents.values().toArray();
-            String[] status = new String[objs.length];
-            for(int i = 0; i < objs.length; i++) {
-                Row r = (Row)objs[i];
-                status[i] = r.toString();
-            }
-            return status;
+        Object[] objs = rowsSnapshot();
+        String[] status = new String[objs.length];
+        for(int i = 0; i < objs.length; i++) {
+            Row r = (Row)objs[i];
+            status[i] = r.toString();
         }
+        return status;
+    }
+
+    private Row getRow(AID key) {
+    	//#J2ME_EXCLUDE_BEGIN
+    	return agents.get(key);
+    	//#J2ME_EXCLUDE_END
+    	/*#J2ME_INCLUDE_BEGIN
+    	synchronized(agents) {
+    		return (Row)agents.get(key);
+    	}
+    	#J2ME_INCLUDE_END*/
+    }
+
+    private void putRow(AID key, Row r) {
+    	//#J2ME_EXCLUDE_BEGIN
+    	agents.put(key, r);
+    	//#J2ME_EXCLUDE_END
+    	/*#J2ME_INCLUDE_BEGIN
+    	synchronized(agents) {
+    		agents.put(key, r);
+    	}
+    	#J2ME_INCLUDE_END*/
+    }
+
+    private boolean putRowIfAbsent(AID key, Row r) {
+    	//#J2ME_EXCLUDE_BEGIN
+    	return agents.putIfAbsent(key, r) == null;
+    	//#J2ME_EXCLUDE_END
+    	/*#J2ME_INCLUDE_BEGIN
+    	synchronized(agents) {
+    		if (agents.get(key) == null) {
+    			agents.put(key, r);
+    			return true;
+    		}
+    		return false;
+    	}
+    	#J2ME_INCLUDE_END*/
+    }
+
+    // Remove a row only if the key is still mapped to it
+    private void removeRow(AID key, Row r) {
+    	//#J2ME_EXCLUDE_BEGIN
+    	agents.remove(key, r);
+    	//#J2ME_EXCLUDE_END
+    	/*#J2ME_INCLUDE_BEGIN
+    	synchronized(agents) {
+    		if (agents.get(key) == r) {
+    			agents.remove(key);
+    		}
+    	}
+    	#J2ME_INCLUDE_END*/
+    }
+
+    private Object[] rowsSnapshot() {
+    	//#J2ME_EXCLUDE_BEGIN
+    	return agents.values().toArray();
+    	//#J2ME_EXCLUDE_END
+    	/*#J2ME_INCLUDE_BEGIN
+    	synchronized(agents) {
+    		return agents.values().toArray();
+    	}
+    	#J2ME_INCLUDE_END*/
     }
 }
@@ -1320,12 +1320,11 @@ public class MainContainerImpl implements MainContainer, AgentManager {
 	 Return the ID of the container an agent lives in
 	 */
 	public ContainerID getContainerID(AID agentID) throws NotFoundException {
-		AgentDescriptor ad = platformAgents.acquire(agentID);
+		// Read-only lookup performed for each message routed through the Main: don't lock the row
+		AgentDescriptor ad = platformAgents.get(agentID);
 		if(ad == null)
 			throw new NotFoundException("getContainerID() failed to find agent " + agentID.getName());
-		ContainerID result = ad.getContainerID();
-		platformAgents.release(agentID);
-		return result;
+		return ad.getContainerID();
 	}
 	
 	/**
@@ -0,0 +1,93 @@
+package jade.core;
+
+//#J2ME_EXCLUDE_FILE
+//#APIDOC_EXCLUDE_FILE
+
+import jade.lang.acl.ACLMessage;
+import jade.lang.acl.MessageTemplate;
+import jade.util.leap.Properties;
+
+import java.util.Random;
+
+/**
+ * Compare the <code>InternalMessageQueue</code> with the <code>IndexedMessageQueue</code>
+ * when receiving messages by conversation-id out of a backlog of pending messages.
+ * Usage:
+ * <code>java jade.core.MessageQueueBenchmark [-sizes 100,10000,1000000] [-i 1000]</code>
+ * For each backlog size the queue is filled with messages belonging to different
+ * conversations. Then <code>i</code> messages are received with a
+ * <code>MatchConversationId()</code> (AND <code>MatchPerformative()</code>) template and
+ * replaced by new ones so that the backlog size stays constant.
+ @see jade.core.BenchmarkHarness
+ */
+public class MessageQueueBenchmark {
+	private static final String SIZES = "sizes";
+	private static final String DEFAULT_SIZES = "100,10000,1000000";
+
+	private static final String N_ITERATIONS = "i";
+	private static final int DEFAULT_N_ITERATIONS = 1000;
+
+	private static final AID sender = new AID("sender@benchmark", AID.ISGUID);
+
+	public static void main(String[] args) {
+		Properties pp = BenchmarkHarness.parseArguments(args);
+
+		int nIterations = DEFAULT_N_ITERATIONS;
+		try {
+			nIterations = Integer.parseInt(pp.getProperty(N_ITERATIONS));
+		}
+		catch (Exception e) {
+			// Keep default
+		}
+
+		String[] sizes = pp.getProperty(SIZES, DEFAULT_SIZES).split(",");
+		System.out.println("Backlog    Queue                  Fill (ms)  Receive (us/msg)");
+		for (int i = 0; i < sizes.length; ++i) {
+			int size = Integer.parseInt(sizes[i].trim());
+			run(new InternalMessageQueue(), size, nIterations);
+			run(new IndexedMessageQueue(), size, nIterations);
+		}
+	}
+
+	private static void run(MessageQueue queue, int size, int nIterations) {
+		Random rnd = new Random(size);
+		long start = System.currentTimeMillis();
+		for (int i = 0; i < size; ++i) {
+			queue.addLast(createMessage(i));
+		}
+		long fillTime = System.currentTimeMillis() - start;
+
+		int next = size;
+		int found = 0;
+		start = System.nanoTime();
+		for (int i = 0; i < nIterations; ++i) {
+			// Pick a conversation among those of the messages currently in the queue
+			int k = next - size + rnd.nextInt(size);
+			MessageTemplate template = MessageTemplate.and(
+					MessageTemplate.MatchConversationId("C-"+k),
+					MessageTemplate.MatchPerformative(ACLMessage.INFORM));
+			ACLMessage msg = queue.receive(template);
+			if (msg != null) {
+				found++;
+				queue.addLast(createMessage(next++));
+			}
+		}
+		long receiveTime = System.nanoTime() - start;
+		if (found == 0) {
+			System.out.println("No message found!!!!!");
+			return;
+		}
+
+		String name = queue.getClass().getName();
+		name = name.substring(name.lastIndexOf('.')+1);
+		System.out.println(BenchmarkHarness.pad(String.valueOf(size), 11)+BenchmarkHarness.pad(name, 23)+BenchmarkHarness.pad(String.valueOf(fillTime), 11)+((receiveTime / found) / 1000.0));
+	}
+
+	private static ACLMessage createMessage(int i) {
+		ACLMessage msg = new ACLMessage(ACLMessage.INFORM);
+		msg.setSender(sender);
+		msg.setConversationId("C-"+i);
+		msg.setContent("Message "+i);
+		return msg;
+	}
+}
@@ -222,6 +222,36 @@ public abstract class Profile {
 	public static final String ACCEPT_FOREIGN_AGENTS = "accept-foreign-agents";
 	
 	public static final String STYLE_3_X = "style3-x";
+	
+	//#J2ME_EXCLUDE_BEGIN
+	/**
+	 This constant is the key of the property whose value (a positive integer)
+	 indicates the number of threads of the shared pool used to execute the 
+	 agents living in this container. If this property is not set (default) 
+	 each agent is executed by its own dedicated thread.
+	 The AMS and the default DF always have a dedicated thread.
+	 */
+	public static final String AGENT_POOL_SIZE = "agent-pool-size";
+	
+	/**
+	 This constant is the key of the property whose value indicates the 
+	 maximum number of behaviour steps an agent executed by the shared pool 
+	 of threads can perform before leaving the pool thread to other agents.
+	 Default is 16.
+	 @see #AGENT_POOL_SIZE
+	 */
+	public static final String AGENT_POOL_BATCH_SIZE = "agent-pool-batch-size";
+	
+	/**
+	 This constant is the key of the property whose value (true or false)
+	 indicates whether or not the threads executing user agents, the threads 
+	 of the message delivery pool and the threads dedicated to threaded 
+	 behaviours must be virtual threads. This requires a JVM supporting 
+	 virtual threads (Java 21 or later): on other JVMs normal threads are used.
+	 Default is false.
+	 */
+	public static final String VIRTUAL_THREADS = "virtual-threads";
+	//#J2ME_EXCLUDE_END
 		
 	/**
 	 * This constant is the key of the property whose value contains
@@ -569,6 +569,11 @@ public class ProfileImpl extends Profile {
 		catch (Exception e) {
 			throw new ProfileException("Error loading ResourceManager class "+className);
 		}
+		//#J2ME_EXCLUDE_BEGIN
+		if (myResourceManager instanceof FullResourceManager) {
+			((FullResourceManager) myResourceManager).setVirtualThreads(getBooleanProperty(VIRTUAL_THREADS, false));
+		}
+		//#J2ME_EXCLUDE_END
 	}
 	
 	
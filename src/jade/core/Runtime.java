@@ -248,8 +248,12 @@ public class Runtime {
 	void beginContainer() {
 		myLogger.log(Logger.INFO, "----------------------------------\n"+getCopyrightNotice()+"----------------------------------------");
 		if(activeContainers == 0) {
-			// Initialize and start up the timer dispatcher
-			TimerDispatcher theDispatcher = new TimerDispatcher();
+			// Initialize and start up the timer dispatcher. If a dispatcher not
+			// yet started was set by means of setTimerDispatcher(), use it.
+			TimerDispatcher theDispatcher = TimerDispatcher.getTimerDispatcher();
+			if (theDispatcher.isStarted()) {
+				theDispatcher = new TimerDispatcher();
+			}
 
 			//#MIDP_EXCLUDE_BEGIN
 			// Set up group and attributes for time critical threads
@@ -26,14 +26,25 @@ package jade.core;
 
 import java.util.Vector;
 
-import jade.util.leap.List;
-import jade.util.leap.LinkedList;
-import jade.util.leap.Iterator;
-import jade.util.leap.EnumIterator;
+import jade.util.leap.Map;
+import jade.util.leap.HashMap;
 import jade.util.leap.Serializable;
 
 import jade.core.behaviours.Behaviour;
 
+//#MIDP_EXCLUDE_BEGIN
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+//#MIDP_EXCLUDE_END
+
+//#J2ME_EXCLUDE_BEGIN
+import jade.core.behaviours.CompositeBehaviour;
+import jade.core.behaviours.SerialBehaviour;
+import jade.lang.acl.ACLMessage;
+import jade.lang.acl.MessageTemplate;
+//#J2ME_EXCLUDE_END
+
 /**
  @author Giovanni Rimassa - Universita' di Parma
  @version $Date: 2005-12-16 16:37:25 +0100 (ven, 16 dic 2005) $ $Revision: 5844 $
@@ -59,29 +70,50 @@ class Scheduler implements Serializable {
 	
 	
 	//#MIDP_EXCLUDE_BEGIN
-	protected List readyBehaviours = new LinkedList();
-	protected List blockedBehaviours = new LinkedList();
+	// Ready and blocked behaviours are kept in two doubly linked lists of Nodes. 
+	// Each behaviour is mapped to its Node so that add, block, restart, remove
+	// and schedule never need to scan the lists.
+	// These fields are rebuilt by readObject()
+	private transient Map nodes = new HashMap();
+	private transient Node readyHead;
+	private transient Node readyTail;
+	private transient int readyCnt = 0;
+	private transient Node blockedHead;
+	private transient Node blockedTail;
+	private transient int blockedCnt = 0;
+	// The next ready behaviour to schedule. null means the head of the ready list
+	private transient Node current;
 	//#MIDP_EXCLUDE_END
 	/*#MIDP_INCLUDE_BEGIN
 	 protected Vector readyBehaviours = new Vector();
 	 protected Vector blockedBehaviours = new Vector();
+	 private int currentIndex = 0;
 	 #MIDP_INCLUDE_END*/
 	
+	//#J2ME_EXCLUDE_BEGIN
+	// Maximum number of templates remembered for a behaviour before 
+	// considering it interested in all messages 
+	private static final int MAX_TEMPLATES = 64;
 	
+	// Selective restart: on message arrival only restart behaviours that 
+	// may be interested in the message (see setSelectiveRestart()). 
+	// It is serialized so that it is preserved when the agent moves or is cloned.
+	private boolean selectiveRestart = false;
+	// The Node of the behaviour currently executed by the agent
+	private transient Node running;
+	// Nodes whose interests include a template with a given conversation-id
+	private transient java.util.HashMap<Object, java.util.HashSet<Node>> interestedByConversation;
+	// Nodes whose interests must always be checked (e.g. templates with no conversation-id)
+	private transient java.util.HashSet<Node> interestedInAll;
+	//#J2ME_EXCLUDE_END
 	
 	/**
 	 @serial
 	 */
 	private Agent owner;
 	
-	/**
-	 @serial
-	 */
-	private int currentIndex;
-	
 	public Scheduler(Agent a) {
 		owner = a;
-		currentIndex = 0;
 	}
 	
 	// Add a behaviour at the end of the behaviours queue. 
@@ -90,12 +122,30 @@ class Scheduler implements Serializable {
 	// the owner agent that a behaviour is now available.
 	public synchronized void add(Behaviour b) {
 		//#MIDP_EXCLUDE_BEGIN
-		readyBehaviours.add(b);
+		Node n = (Node) nodes.get(b);
+		if (n == null) {
+			n = new Node(b);
+			nodes.put(b, n);
+			//#J2ME_EXCLUDE_BEGIN
+			resetInterests(n);
+			//#J2ME_EXCLUDE_END
+		}
+		else if (n.ready) {
+			// Already scheduled
+			return;
+		}
+		else {
+			unlink(n);
+		}
+		appendReady(n);
 		//#MIDP_EXCLUDE_END
 		/*#MIDP_INCLUDE_BEGIN
 		 readyBehaviours.addElement(b);
 		 #MIDP_INCLUDE_END*/
 		notify();
+		//#J2ME_EXCLUDE_BEGIN
+		owner.activateExecution();
+		//#J2ME_EXCLUDE_END
 		//#MIDP_EXCLUDE_BEGIN
 		owner.notifyAddBehaviour(b);
 		//#MIDP_EXCLUDE_END
@@ -103,29 +153,43 @@ class Scheduler implements Serializable {
 	
 	// Moves a behaviour from the ready queue to the sleeping queue.
 	public synchronized void block(Behaviour b) {
+		//#MIDP_EXCLUDE_BEGIN
+		Node n = (Node) nodes.get(b);
+		if (n != null && n.ready) {
+			unlink(n);
+			appendBlocked(n);
+			//#J2ME_EXCLUDE_BEGIN
+			index(n);
+			//#J2ME_EXCLUDE_END
+			owner.notifyChangeBehaviourState(b, Behaviour.STATE_READY, Behaviour.STATE_BLOCKED);
+		}
+		//#MIDP_EXCLUDE_END
+		/*#MIDP_INCLUDE_BEGIN
 		if (removeFromReady(b)) {
-			//#MIDP_EXCLUDE_BEGIN
-			blockedBehaviours.add(b);
-			//#MIDP_EXCLUDE_END
-			/*#MIDP_INCLUDE_BEGIN
 			 blockedBehaviours.addElement(b);
-			 #MIDP_INCLUDE_END*/
-			//#MIDP_EXCLUDE_BEGIN
-			owner.notifyChangeBehaviourState(b, Behaviour.STATE_READY, Behaviour.STATE_BLOCKED);
-			//#MIDP_EXCLUDE_END
 		}
+		 #MIDP_INCLUDE_END*/
 	}
 	
 	// Moves a behaviour from the sleeping queue to the ready queue.
 	public synchronized void restart(Behaviour b) {
+		//#MIDP_EXCLUDE_BEGIN
+		Node n = (Node) nodes.get(b);
+		if (n != null && !n.ready) {
+			unlink(n);
+			appendReady(n);
+			//#J2ME_EXCLUDE_BEGIN
+			index(n);
+			//#J2ME_EXCLUDE_END
+		//#MIDP_EXCLUDE_END
+		/*#MIDP_INCLUDE_BEGIN
 		if (removeFromBlocked(b)) {
-			//#MIDP_EXCLUDE_BEGIN
-			readyBehaviours.add(b);
-			//#MIDP_EXCLUDE_END
-			/*#MIDP_INCLUDE_BEGIN
 			 readyBehaviours.addElement(b);
-			 #MIDP_INCLUDE_END*/
+		 #MIDP_INCLUDE_END*/
 			notify();
+			//#J2ME_EXCLUDE_BEGIN
+			owner.activateExecution();
+			//#J2ME_EXCLUDE_END
 			//#MIDP_EXCLUDE_BEGIN
 			owner.notifyChangeBehaviourState(b, Behaviour.STATE_BLOCKED, Behaviour.STATE_READY);
 			//#MIDP_EXCLUDE_END
@@ -145,72 +209,58 @@ class Scheduler implements Serializable {
 	 children blocked. These children must be restarted too.
 	 */
 	public synchronized void restartAll() {
-		
-		Behaviour[] behaviours = new Behaviour[readyBehaviours.size()];
-		int counter = 0;
 		//#MIDP_EXCLUDE_BEGIN
-		for(Iterator it = readyBehaviours.iterator(); it.hasNext();)
-			//#MIDP_EXCLUDE_END
-			/*#MIDP_INCLUDE_BEGIN
-			 for(Iterator it = new EnumIterator(readyBehaviours.elements()); it.hasNext();)
-			 #MIDP_INCLUDE_END*/
-			behaviours[counter++] = (Behaviour)it.next();
-		
+		Behaviour[] behaviours = toArray(readyHead, readyCnt);
+		Behaviour[] blocked = toArray(blockedHead, blockedCnt);
+		//#J2ME_EXCLUDE_BEGIN
+		if (selectiveRestart) {
+			resetAllInterests();
+		}
+		//#J2ME_EXCLUDE_END
 		for(int i = 0; i < behaviours.length; i++) {
-			Behaviour b = behaviours[i];
-			b.restart();
+			behaviours[i].restart();
 		}
-		
-		behaviours = new Behaviour[blockedBehaviours.size()];
-		counter = 0;
-		//#MIDP_EXCLUDE_BEGIN
-		for(Iterator it = blockedBehaviours.iterator(); it.hasNext();) {
-			//#MIDP_EXCLUDE_END
-			/*#MIDP_INCLUDE_BEGIN
-			 for(Iterator it = new EnumIterator(blockedBehaviours.elements()); it.hasNext();) {
-			 #MIDP_INCLUDE_END*/
-			
-			//#DOTNET_EXCLUDE_BEGIN
-			behaviours[counter++] = (Behaviour)it.next();
-			//#DOTNET_EXCLUDE_END
-			/*#DOTNET_INCLUDE_BEGIN
-			 Object tmpB = null;
-			 try // Hack: sometimes .NET inserts into this array a non-Behaviour object
-			 { 
-			 tmpB = it.next();
-			 behaviours[counter++] = (Behaviour)tmpB;
-			 }
-			 catch(ClassCastException cce) 
-			 {
-			 System.out.println("Found an object of type "+tmpB.getClass().getName()+" instead of Behaviour");
-			 cce.printStackTrace();
-			 }
-			 #DOTNET_INCLUDE_END*/
+		for(int i = 0; i < blocked.length; i++) {
+			blocked[i].restart();
 		}
-		
+		//#MIDP_EXCLUDE_END
+		/*#MIDP_INCLUDE_BEGIN
+		Behaviour[] behaviours = new Behaviour[readyBehaviours.size()];
+		readyBehaviours.copyInto(behaviours);
 		for(int i = 0; i < behaviours.length; i++) {
-			Behaviour b = behaviours[i];
-			/*#DOTNET_INCLUDE_BEGIN
-			 if (b != null)
-			 #DOTNET_INCLUDE_END*/
-			b.restart();
-			
+			behaviours[i].restart();
 		}
+		behaviours = new Behaviour[blockedBehaviours.size()];
+		blockedBehaviours.copyInto(behaviours);
+		for(int i = 0; i < behaviours.length; i++) {
+			behaviours[i].restart();
+		}
+		 #MIDP_INCLUDE_END*/
 	}
 	
 	/**
 	 Removes a specified behaviour from the scheduler
 	 */
 	public synchronized void remove(Behaviour b) {
+		//#MIDP_EXCLUDE_BEGIN
+		Node n = (Node) nodes.remove(b);
+		if (n != null) {
+			unlink(n);
+			//#J2ME_EXCLUDE_BEGIN
+			unindex(n);
+			if (running == n) {
+				running = null;
+			}
+			//#J2ME_EXCLUDE_END
+			owner.notifyRemoveBehaviour(b);    
+		}
+		//#MIDP_EXCLUDE_END
+		/*#MIDP_INCLUDE_BEGIN
 		boolean found = removeFromBlocked(b);
 		if(!found) {
 			found = removeFromReady(b);
 		}
-		if (found) {
-			//#MIDP_EXCLUDE_BEGIN
-			owner.notifyRemoveBehaviour(b);    
-			//#MIDP_EXCLUDE_END
-		}
+		 #MIDP_INCLUDE_END*/
 	}
 	
 	/**
@@ -218,76 +268,476 @@ class Scheduler implements Serializable {
 	 round-robin algorithm.
 	 */
 	public synchronized Behaviour schedule() throws InterruptedException {
-		while(readyBehaviours.isEmpty()) {
+		//#MIDP_EXCLUDE_BEGIN
+		while(readyCnt == 0) {
 			owner.idle();
 		}
 		
-		//#MIDP_EXCLUDE_BEGIN
-		Behaviour b = (Behaviour)readyBehaviours.get(currentIndex);
+		Node n = (current != null ? current : readyHead);
+		current = n.next;
+		//#J2ME_EXCLUDE_BEGIN
+		if (selectiveRestart) {
+			if (running != null) {
+				// The previous step did not complete: we don't know what the behaviour is waiting for
+				running.receivedInStep = false;
+				stepDone(running.behaviour);
+			}
+			running = n;
+			n.receivedInStep = false;
+			if (!n.accumulate) {
+				// Only the last step matters
+				clearTemplates(n);
+			}
+		}
+		//#J2ME_EXCLUDE_END
+		return n.behaviour;
 		//#MIDP_EXCLUDE_END
 		/*#MIDP_INCLUDE_BEGIN
-		 Behaviour b = (Behaviour)readyBehaviours.elementAt(currentIndex);
-		 #MIDP_INCLUDE_END*/
+		while(readyBehaviours.isEmpty()) {
+			owner.idle();
+		}
+		
+		Behaviour b = (Behaviour)readyBehaviours.elementAt(currentIndex);
 		currentIndex = (currentIndex + 1) % readyBehaviours.size();
 		return b;
+		 #MIDP_INCLUDE_END*/
 	}
 	
 	
-	//#MIDP_EXCLUDE_BEGIN
+	//#J2ME_EXCLUDE_BEGIN
+	/**
+	 Used by agents executed by an AgentExecutor to check whether or not
+	 there is something to do without blocking.
+	 */
+	synchronized boolean hasReadyBehaviours() {
+		return readyCnt > 0;
+	}
 	
-	// Helper method for persistence service
-	public synchronized Behaviour[] getBehaviours() {
-		
-		Behaviour[] result = new Behaviour[blockedBehaviours.size() + readyBehaviours.size()];
-		Iterator itReady = readyBehaviours.iterator();
-		Iterator itBlocked = blockedBehaviours.iterator();
-		for(int i = 0; i < result.length; i++) {
-			Behaviour b = null;
-			if(itReady.hasNext()) {
-				b = (Behaviour)itReady.next();
+	/**
+	 Enable or disable the selective restart of behaviours on message arrival.
+	 When disabled (default) all behaviours are restarted each time a message 
+	 arrives, as required by the documented semantics of <code>Behaviour.block()</code>.
+	 When enabled, the scheduler keeps track of the templates passed to 
+	 <code>receive()</code> while executing each behaviour and, when a message 
+	 arrives, only restarts the behaviours whose templates match it. 
+	 For simple and serial behaviours only the last execution step is considered.
+	 For other composite behaviours (e.g. <code>ParallelBehaviour</code>), whose 
+	 children may block in different steps, all steps since the behaviour was last 
+	 restarted by a message are considered.
+	 A behaviour whose considered steps include a step with no <code>receive()</code>
+	 (e.g. it blocked waiting for something else) is restarted by any message. 
+	 The behaviour that is being executed is always restarted.
+	 @see Agent#SELECTIVE_RESTART
+	 */
+	boolean isSelectiveRestart() {
+		return selectiveRestart;
+	}
+	
+	synchronized void setSelectiveRestart(boolean selectiveRestart) {
+		if (selectiveRestart != this.selectiveRestart) {
+			this.selectiveRestart = selectiveRestart;
+			running = null;
+			if (selectiveRestart) {
+				initInterests();
+			}
+			else {
+				interestedByConversation = null;
+				interestedInAll = null;
+			}
+		}
+	}
+	
+	/**
+	 Restart the behaviours that may be interested in a newly arrived message.
+	 This is called by the agent, holding the message queue lock, each time
+	 a message is inserted in its queue.
+	 */
+	synchronized void restartInterested(ACLMessage msg) {
+		if (!selectiveRestart) {
+			restartAll();
+			return;
+		}
+		java.util.ArrayList<Node> candidates = new java.util.ArrayList<Node>(interestedInAll);
+		String convId = msg.getConversationId();
+		if (convId != null) {
+			java.util.HashSet<Node> nn = interestedByConversation.get(new CaseInsensitiveString(convId));
+			if (nn != null) {
+				candidates.addAll(nn);
+			}
+		}
+		if (running != null && !candidates.contains(running)) {
+			candidates.add(running);
+		}
+		java.util.ArrayList<Behaviour> toRestart = new java.util.ArrayList<Behaviour>(candidates.size());
+		for (Node n : candidates) {
+			if (n == running || (n.needsRestart() && n.matches(msg))) {
+				resetInterests(n);
+				toRestart.add(n.behaviour);
+			}
+		}
+		for (Behaviour b : toRestart) {
+			b.restart();
+		}
+	}
+	
+	/**
+	 Record that the behaviour currently executed performed a receive() 
+	 with a given template. This is called holding the message queue lock so 
+	 that a message arriving just after the receive() can't be missed.
+	 */
+	synchronized void receivePerformed(MessageTemplate template) {
+		Node n = running;
+		if (n == null) {
+			return;
+		}
+		n.receivedInStep = true;
+		if (template == null) {
+			n.anyMessage = true;
+		}
+		else if (!n.templates.contains(template)) {
+			if (n.templates.size() >= MAX_TEMPLATES) {
+				n.anyMessage = true;
 			}
 			else {
-				b = (Behaviour)itBlocked.next();
+				n.templates.add(template);
+				Object convId = template.getIndexKeys()[MessageTemplate.INDEX_CONVERSATION_ID];
+				if (convId != null) {
+					n.conversations.add(convId);
+					java.util.HashSet<Node> nn = interestedByConversation.get(convId);
+					if (nn == null) {
+						nn = new java.util.HashSet<Node>();
+						interestedByConversation.put(convId, nn);
+					}
+					nn.add(n);
+				}
+				else {
+					n.generic = true;
+				}
+			}
+		}
+		index(n);
+	}
+	
+	/**
+	 Mark the end of an execution step of a given behaviour. If the considered 
+	 steps (see setSelectiveRestart()) all included a receive(), from now on 
+	 the behaviour is only restarted by messages matching one of the templates 
+	 passed to those receive() calls.
+	 */
+	synchronized void stepDone(Behaviour b) {
+		Node n = running;
+		if (n == null || n.behaviour != b) {
+			return;
+		}
+		running = null;
+		if (!n.receivedInStep) {
+			n.unknown = true;
+		}
+		else if (!n.accumulate || !n.stepped) {
+			n.unknown = false;
+		}
+		n.stepped = true;
+		index(n);
+	}
+	
+	private void initInterests() {
+		interestedByConversation = new java.util.HashMap<Object, java.util.HashSet<Node>>();
+		interestedInAll = new java.util.HashSet<Node>();
+		resetAllInterests();
+	}
+	
+	private void resetAllInterests() {
+		for (Node n = readyHead; n != null; n = n.next) {
+			resetInterests(n);
+		}
+		for (Node n = blockedHead; n != null; n = n.next) {
+			resetInterests(n);
+		}
+	}
+	
+	private void resetInterests(Node n) {
+		if (selectiveRestart) {
+			clearTemplates(n);
+			n.unknown = true;
+			n.stepped = false;
+			n.receivedInStep = false;
+			index(n);
+		}
+	}
+	
+	private void clearTemplates(Node n) {
+		unindex(n);
+		n.templates.clear();
+		n.conversations.clear();
+		n.generic = false;
+		n.anyMessage = false;
+	}
+	
+	// Insert n in the interestedInAll set if needed. Conversation indexes are updated by receivePerformed()
+	private void index(Node n) {
+		if (!selectiveRestart) {
+			return;
+		}
+		if (n.needsRestart() && (n.unknown || n.anyMessage || n.generic)) {
+			interestedInAll.add(n);
+		}
+		else {
+			interestedInAll.remove(n);
+		}
+	}
+	
+	private void unindex(Node n) {
+		if (selectiveRestart) {
+			interestedInAll.remove(n);
+			for (Object convId : n.conversations) {
+				java.util.HashSet<Node> nn = interestedByConversation.get(convId);
+				if (nn != null) {
+					nn.remove(n);
+					if (nn.isEmpty()) {
+						interestedByConversation.remove(convId);
+					}
+				}
 			}
-			
-			result[i] = b;
-			
 		}
+	}
+	//#J2ME_EXCLUDE_END
+	
+	//#MIDP_EXCLUDE_BEGIN
+	
+	// Helper method for persistence service
+	public synchronized Behaviour[] getBehaviours() {
 		
+		Behaviour[] result = new Behaviour[blockedCnt + readyCnt];
+		int i = 0;
+		for (Node n = readyHead; n != null; n = n.next) {
+			result[i++] = n.behaviour;
+		}
+		for (Node n = blockedHead; n != null; n = n.next) {
+			result[i++] = n.behaviour;
+		}
 		return result;
 	}
 	
 	// Helper method for persistence service
 	public void setBehaviours(Behaviour[] behaviours) {
-		
-		readyBehaviours.clear();
-		blockedBehaviours.clear();
-		
+		clear();
 		for(int i = 0; i < behaviours.length; i++) {
 			Behaviour b = behaviours[i];
+			Node n = new Node(b);
+			nodes.put(b, n);
 			if(b.isRunnable()) {
-				readyBehaviours.add(b);
+				appendReady(n);
 			}
 			else {
-				blockedBehaviours.add(b);
+				appendBlocked(n);
 			}
+			//#J2ME_EXCLUDE_BEGIN
+			resetInterests(n);
+			//#J2ME_EXCLUDE_END
 		}
-		
-		// The current index is not saved when persisting an agent
-		currentIndex = 0;
 	}
 	
-	//#MIDP_EXCLUDE_END
+	/**
+	 @return The ready behaviours in scheduling order
+	 */
+	synchronized Behaviour[] getReadyBehaviours() {
+		return toArray(readyHead, readyCnt);
+	}
+	
+	/**
+	 @return The blocked behaviours
+	 */
+	synchronized Behaviour[] getBlockedBehaviours() {
+		return toArray(blockedHead, blockedCnt);
+	}
+	
+	private void clear() {
+		nodes.clear();
+		readyHead = readyTail = blockedHead = blockedTail = current = null;
+		readyCnt = blockedCnt = 0;
+		//#J2ME_EXCLUDE_BEGIN
+		running = null;
+		if (selectiveRestart) {
+			interestedByConversation.clear();
+			interestedInAll.clear();
+		}
+		//#J2ME_EXCLUDE_END
+	}
+	
+	private Behaviour[] toArray(Node head, int size) {
+		Behaviour[] result = new Behaviour[size];
+		int i = 0;
+		for (Node n = head; n != null; n = n.next) {
+			result[i++] = n.behaviour;
+		}
+		return result;
+	}
+	
+	private void appendReady(Node n) {
+		n.ready = true;
+		n.prev = readyTail;
+		n.next = null;
+		if (readyTail != null) {
+			readyTail.next = n;
+		}
+		else {
+			readyHead = n;
+		}
+		readyTail = n;
+		readyCnt++;
+	}
 	
+	private void appendBlocked(Node n) {
+		n.ready = false;
+		n.prev = blockedTail;
+		n.next = null;
+		if (blockedTail != null) {
+			blockedTail.next = n;
+		}
+		else {
+			blockedHead = n;
+		}
+		blockedTail = n;
+		blockedCnt++;
+	}
 	
+	// Remove a Node from the list (ready or blocked) it belongs to.
+	// If the removed Node is the next one to schedule, the one after it 
+	// (or the head of the ready list if none) becomes the next one.
+	private void unlink(Node n) {
+		if (n.ready) {
+			if (current == n) {
+				current = n.next;
+			}
+			if (n.prev != null) {
+				n.prev.next = n.next;
+			}
+			else {
+				readyHead = n.next;
+			}
+			if (n.next != null) {
+				n.next.prev = n.prev;
+			}
+			else {
+				readyTail = n.prev;
+			}
+			readyCnt--;
+		}
+		else {
+			if (n.prev != null) {
+				n.prev.next = n.next;
+			}
+			else {
+				blockedHead = n.next;
+			}
+			if (n.next != null) {
+				n.next.prev = n.prev;
+			}
+			else {
+				blockedTail = n.prev;
+			}
+			blockedCnt--;
+		}
+		n.prev = null;
+		n.next = null;
+	}
+	
+	// The lists of Nodes are not serialized as such (they may be very long and
+	// default serialization of linked structures is recursive). Behaviours are 
+	// written as two arrays instead.
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		out.defaultWriteObject();
+		synchronized (this) {
+			out.writeObject(toArray(readyHead, readyCnt));
+			out.writeObject(toArray(blockedHead, blockedCnt));
+		}
+	}
+	
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		nodes = new HashMap();
+		Behaviour[] ready = (Behaviour[]) in.readObject();
+		Behaviour[] blocked = (Behaviour[]) in.readObject();
+		for (int i = 0; i < ready.length; ++i) {
+			Node n = new Node(ready[i]);
+			nodes.put(ready[i], n);
+			appendReady(n);
+		}
+		for (int i = 0; i < blocked.length; ++i) {
+			Node n = new Node(blocked[i]);
+			nodes.put(blocked[i], n);
+			appendBlocked(n);
+		}
+		//#J2ME_EXCLUDE_BEGIN
+		if (selectiveRestart) {
+			// The interests of restored behaviours are unknown until they perform a step 
+			initInterests();
+		}
+		//#J2ME_EXCLUDE_END
+	}
+	
+	
+	/**
+	 Inner class Node.
+	 The element of the ready and blocked lists holding a behaviour.
+	 */
+	private static class Node {
+		private final Behaviour behaviour;
+		private Node prev;
+		private Node next;
+		private boolean ready;
+		
+		//#J2ME_EXCLUDE_BEGIN
+		// Selective restart: the templates of the receive() calls performed in the 
+		// considered steps and the conversation-ids they require
+		private final java.util.ArrayList<MessageTemplate> templates = new java.util.ArrayList<MessageTemplate>(2);
+		private final java.util.HashSet<Object> conversations = new java.util.HashSet<Object>(2);
+		// Some template does not require a conversation-id
+		private boolean generic = false;
+		// A receive() with no template was performed
+		private boolean anyMessage = false;
+		// We don't know which messages the behaviour is waiting for
+		private boolean unknown = true;
+		// The behaviour performed at least one step since it was last restarted by a message
+		private boolean stepped = false;
+		private boolean receivedInStep = false;
+		// Whether the templates of all steps (rather than those of the last step) must be considered 
+		private final boolean accumulate;
+		//#J2ME_EXCLUDE_END
+		
+		private Node(Behaviour b) {
+			behaviour = b;
+			//#J2ME_EXCLUDE_BEGIN
+			accumulate = (b instanceof CompositeBehaviour) && !(b instanceof SerialBehaviour);
+			//#J2ME_EXCLUDE_END
+		}
+		
+		//#J2ME_EXCLUDE_BEGIN
+		// A ready simple or serial behaviour will check its messages anyway in its next step
+		private boolean needsRestart() {
+			return !ready || accumulate;
+		}
+		
+		private boolean matches(ACLMessage msg) {
+			if (unknown || anyMessage) {
+				return true;
+			}
+			for (int i = 0; i < templates.size(); ++i) {
+				if (templates.get(i).match(msg)) {
+					return true;
+				}
+			}
+			return false;
+		}
+		//#J2ME_EXCLUDE_END
+	} // END of inner class Node
+	
+	//#MIDP_EXCLUDE_END
+	
+	/*#MIDP_INCLUDE_BEGIN
 	// Removes a specified behaviour from the blocked queue.
 	private boolean removeFromBlocked(Behaviour b) {
-		//#MIDP_EXCLUDE_BEGIN
-		return blockedBehaviours.remove(b);
-		//#MIDP_EXCLUDE_END
-		/*#MIDP_INCLUDE_BEGIN
-		 return blockedBehaviours.removeElement(b);
-		 #MIDP_INCLUDE_END*/
+		return blockedBehaviours.removeElement(b);
 	}
 	
 	// Removes a specified behaviour from the ready queue.
@@ -297,21 +747,14 @@ class Scheduler implements Serializable {
 	private boolean removeFromReady(Behaviour b) {
 		int index = readyBehaviours.indexOf(b);
 		if(index != -1) {
-			//#MIDP_EXCLUDE_BEGIN
-			readyBehaviours.remove(b);
-			//#MIDP_EXCLUDE_END
-			/*#MIDP_INCLUDE_BEGIN
-			 readyBehaviours.removeElement(b);
-			 #MIDP_INCLUDE_END*/
+			readyBehaviours.removeElement(b);
 			if(index < currentIndex)
 				--currentIndex;
-			//if(currentIndex < 0)
-			//  currentIndex = 0;
 			else if (index == currentIndex && currentIndex == readyBehaviours.size())
 				currentIndex = 0;
 		}
 		return index != -1;
 	}
+	 #MIDP_INCLUDE_END*/
 	
 }
-
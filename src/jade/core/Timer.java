@@ -40,6 +40,14 @@ public class Timer {
 	private long expireTimeMillis;
 	private boolean fired;
 	private TimerListener owner;
+	
+	//#J2ME_EXCLUDE_BEGIN
+	// Used by the TimingWheelTimerDispatcher to link timers in the same slot
+	Timer wheelPrev;
+	Timer wheelNext;
+	int wheelLevel = -1;
+	int wheelSlot;
+	//#J2ME_EXCLUDE_END
 
 	public Timer(long when, TimerListener tl) {
 		expireTimeMillis = when;
@@ -47,12 +55,6 @@ public class Timer {
 		fired = false;
 	}
 
-	public boolean equals(Object o) {
-		Timer t = (Timer)o;
-		return (expireTimeMillis == t.expireTimeMillis);
-	}
-
-
 	// Called by the TimerDispatcher
 
 	boolean isExpired() {
@@ -34,6 +34,11 @@ import java.util.Vector;
 /**
 This class implements the JADE internal timing system. It should not
 be used by application developers.
+<br>
+A different implementation (e.g. <code>TimingWheelTimerDispatcher</code>, 
+more suitable for containers with a huge number of timers) can be selected 
+by means of <code>setTimerDispatcher()</code> before the first container 
+in the JVM is started.
 @author Giovanni Rimassa - Universita' di Parma
 @version $Date: 2007-03-05 11:02:22 +0100 (lun, 05 mar 2007) $ $Revision: 5938 $
  */
@@ -53,7 +58,7 @@ public class TimerDispatcher implements Runnable {
 	/*#J2ME_INCLUDE_BEGIN
 	private Vector timers = new Vector();
 	#J2ME_INCLUDE_END*/
-	private boolean active;
+	private volatile boolean active;
 
 	void setThread(Thread t) {
 		if(myThread == null) {
@@ -146,6 +151,15 @@ public class TimerDispatcher implements Runnable {
 		}
 	}
 
+	final boolean isActive() {
+		return active;
+	}
+	
+	// A dispatcher that was never started (or that was stopped) can be (re)started 
+	final boolean isStarted() {
+		return myThread != null;
+	}
+	
 	public static TimerDispatcher getTimerDispatcher() {
 		if (theDispatcher == null) {
 			theDispatcher = new TimerDispatcher();
@@ -153,7 +167,13 @@ public class TimerDispatcher implements Runnable {
 		return theDispatcher;
 	}
 
-	static void setTimerDispatcher(TimerDispatcher td) {
+	/**
+	 Set the TimerDispatcher used in this JVM. This must be called before the 
+	 first container is started: a dispatcher that is not running when a 
+	 container starts is started by the JADE runtime, otherwise it is replaced 
+	 by a new default one.
+	 */
+	public static void setTimerDispatcher(TimerDispatcher td) {
 		theDispatcher = td;
 	}
 
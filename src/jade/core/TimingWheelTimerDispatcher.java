@@ -0,0 +1,362 @@
+/*****************************************************************
+JADE - Java Agent DEvelopment Framework is a framework to develop
+multi-agent systems in compliance with the FIPA specifications.
+Copyright (C) 2000 CSELT S.p.A.
+
+GNU Lesser General Public License
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation,
+version 2.1 of the License.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the
+Free Software Foundation, Inc., 59 Temple Place - Suite 330,
+Boston, MA  02111-1307, USA.
+ *****************************************************************/
+
+package jade.core;
+
+//#J2ME_EXCLUDE_FILE
+//#APIDOC_EXCLUDE_FILE
+
+import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import jade.util.Logger;
+
+/**
+ A TimerDispatcher based on a hashed hierarchical timing wheel.
+ Timers are kept in 4 wheels of 256 slots each, with a resolution of 1 ms:
+ the first wheel holds the timers expiring within 256 ms, the second one
+ those expiring within 65 s and so on. Adding and removing a timer are O(1)
+ operations and, unlike the default TimerDispatcher, timers with the same
+ expiration time are allowed (their expiration time is never modified).
+ <br>
+ Expired timers are fired by a small pool of threads so that a slow
+ <code>TimerListener.doTimeOut()</code> does not delay the other timers.
+ As a consequence timers expiring at about the same time may be fired
+ concurrently and in any order.
+ <br>
+ This dispatcher is selected by calling
+ <code>TimerDispatcher.setTimerDispatcher(new TimingWheelTimerDispatcher())</code>
+ before the first container in the JVM is started.
+ */
+public class TimingWheelTimerDispatcher extends TimerDispatcher {
+	public static final int DEFAULT_FIRING_THREADS = 2;
+
+	private static final int LEVELS = 4;
+	private static final int SLOT_BITS = 8;
+	private static final int SLOTS = 1 << SLOT_BITS;
+	private static final int SLOT_MASK = SLOTS - 1;
+	// The maximum distance in the future of a timer that can be placed in the wheels.
+	// Farther timers are placed in the last slot of the highest wheel and re-inserted
+	// when that slot is processed
+	private static final long MAX_DELAY = (1L << (LEVELS * SLOT_BITS)) - 1;
+
+	private final Timer[][] slots = new Timer[LEVELS][SLOTS];
+	private final int[] counts = new int[LEVELS];
+	// The next tick (ms) to be processed. All timers expiring before it have been fired
+	private long wheelTime;
+	// The time the dispatcher thread will wake up at if no timer is added (Long.MAX_VALUE means never)
+	private long nextWakeUp = Long.MAX_VALUE;
+
+	private final int firingThreads;
+	private ExecutorService firingPool;
+
+	private final Logger myLogger = Logger.getMyLogger(getClass().getName());
+
+	public TimingWheelTimerDispatcher() {
+		this(DEFAULT_FIRING_THREADS);
+	}
+
+	/**
+	 @param firingThreads The number of threads used to fire expired timers
+	 */
+	public TimingWheelTimerDispatcher(int firingThreads) {
+		this.firingThreads = (firingThreads > 0 ? firingThreads : DEFAULT_FIRING_THREADS);
+		wheelTime = System.currentTimeMillis();
+	}
+
+	public synchronized Timer add(Timer t) {
+		if (!isStarted()) {
+			setThread(new Thread(this));
+			start();
+		}
+		if (t.wheelLevel >= 0) {
+			unlink(t);
+		}
+		if (t.expirationTime() < wheelTime) {
+			// Already expired
+			fire(t);
+		}
+		else {
+			insert(t);
+			if (t.expirationTime() + 1 < nextWakeUp) {
+				notifyAll();
+			}
+		}
+		return t;
+	}
+
+	public synchronized void remove(Timer t) {
+		if (t.wheelLevel >= 0) {
+			unlink(t);
+		}
+	}
+
+	public void run() {
+		try {
+			while (isActive()) {
+				ArrayList<Timer> expired = new ArrayList<Timer>();
+				synchronized (this) {
+					while (isActive()) {
+						advance(System.currentTimeMillis(), expired);
+						if (!expired.isEmpty()) {
+							nextWakeUp = Long.MAX_VALUE;
+							break;
+						}
+						nextWakeUp = computeNextWakeUp();
+						if (nextWakeUp == Long.MAX_VALUE) {
+							wait();
+						}
+						else {
+							long timeToWait = nextWakeUp - System.currentTimeMillis();
+							// Avoid wait(0), that means 'for ever'
+							wait(timeToWait > 0 ? timeToWait : 1);
+						}
+					}
+				}
+				// This check just avoids firing timers on termination
+				for (int i = 0; i < expired.size() && isActive(); ++i) {
+					fire(expired.get(i));
+				}
+			}
+		}
+		catch (InterruptedException ie) {
+			// Do nothing, but just return, since this is a shutdown.
+		}
+		synchronized (this) {
+			clear();
+		}
+	}
+
+	synchronized void start() {
+		if (firingPool == null) {
+			firingPool = new ThreadPoolExecutor(firingThreads, firingThreads, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+				private int cnt = 0;
+				public synchronized Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "JADE Timer firer-"+(cnt++));
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		}
+		wheelTime = System.currentTimeMillis();
+		super.start();
+	}
+
+	void stop() {
+		super.stop();
+		ExecutorService pool = null;
+		synchronized (this) {
+			if (!isStarted()) {
+				pool = firingPool;
+				firingPool = null;
+			}
+		}
+		if (pool != null) {
+			pool.shutdown();
+			try {
+				pool.awaitTermination(5, TimeUnit.SECONDS);
+			}
+			catch (InterruptedException ie) {
+				// Just do nothing
+			}
+		}
+	}
+
+	private void fire(final Timer t) {
+		ExecutorService pool = firingPool;
+		if (pool == null) {
+			return;
+		}
+		try {
+			pool.execute(new Runnable() {
+				public void run() {
+					try {
+						t.fire();
+					}
+					catch (Throwable th) {
+						myLogger.log(Logger.WARNING, "Unexpected error firing timer", th);
+					}
+				}
+			});
+		}
+		catch (Exception e) {
+			// The pool is being shut down
+		}
+	}
+
+	/**
+	 Process all ticks before <code>now</code> collecting expired timers 
+	 into <code>expired</code>.
+	 */
+	private void advance(long now, ArrayList<Timer> expired) {
+		while (wheelTime < now) {
+			if (isEmpty()) {
+				wheelTime = now;
+				break;
+			}
+			// Move the timers of the higher wheels whose slot is reached to the lower wheels
+			for (int level = LEVELS - 1; level > 0; --level) {
+				if ((wheelTime & ((1L << (level * SLOT_BITS)) - 1)) == 0) {
+					cascade(level, slotIndex(wheelTime, level));
+				}
+			}
+
+			int index = slotIndex(wheelTime, 0);
+			Timer t = slots[0][index];
+			while (t != null) {
+				Timer next = t.wheelNext;
+				unlink(t);
+				expired.add(t);
+				t = next;
+			}
+			wheelTime++;
+
+			if (counts[0] == 0) {
+				// Nothing can happen before the next slot of the lowest non-empty wheel is reached
+				long target = now;
+				for (int level = 1; level < LEVELS; ++level) {
+					if (counts[level] > 0) {
+						target = Math.min(now, roundUp(wheelTime, level));
+						break;
+					}
+				}
+				wheelTime = Math.max(wheelTime, target);
+			}
+		}
+	}
+
+	private long computeNextWakeUp() {
+		long wakeUp = Long.MAX_VALUE;
+		if (counts[0] > 0) {
+			for (int i = 0; i < SLOTS; ++i) {
+				if (slots[0][slotIndex(wheelTime + i, 0)] != null) {
+					// Timers fire when their expiration time is passed
+					wakeUp = wheelTime + i + 1;
+					break;
+				}
+			}
+		}
+		for (int level = 1; level < LEVELS; ++level) {
+			if (counts[level] > 0) {
+				wakeUp = Math.min(wakeUp, roundUp(wheelTime, level) + 1);
+				break;
+			}
+		}
+		return wakeUp;
+	}
+
+	private void cascade(int level, int index) {
+		Timer t = slots[level][index];
+		while (t != null) {
+			Timer next = t.wheelNext;
+			unlink(t);
+			insert(t);
+			t = next;
+		}
+	}
+
+	private void insert(Timer t) {
+		long expiration = t.expirationTime();
+		long delay = expiration - wheelTime;
+		if (delay < 0) {
+			// Only happens when cascading: fire at the current tick
+			expiration = wheelTime;
+			delay = 0;
+		}
+		else if (delay > MAX_DELAY) {
+			expiration = wheelTime + MAX_DELAY;
+			delay = MAX_DELAY;
+		}
+		int level = 0;
+		while (level < LEVELS - 1 && delay >= (1L << ((level + 1) * SLOT_BITS))) {
+			level++;
+		}
+		int index = slotIndex(expiration, level);
+		Timer head = slots[level][index];
+		t.wheelPrev = null;
+		t.wheelNext = head;
+		if (head != null) {
+			head.wheelPrev = t;
+		}
+		slots[level][index] = t;
+		t.wheelLevel = level;
+		t.wheelSlot = index;
+		counts[level]++;
+	}
+
+	private void unlink(Timer t) {
+		if (t.wheelPrev != null) {
+			t.wheelPrev.wheelNext = t.wheelNext;
+		}
+		else {
+			slots[t.wheelLevel][t.wheelSlot] = t.wheelNext;
+		}
+		if (t.wheelNext != null) {
+			t.wheelNext.wheelPrev = t.wheelPrev;
+		}
+		counts[t.wheelLevel]--;
+		t.wheelPrev = null;
+		t.wheelNext = null;
+		t.wheelLevel = -1;
+	}
+
+	private void clear() {
+		for (int level = 0; level < LEVELS; ++level) {
+			for (int i = 0; i < SLOTS; ++i) {
+				Timer t = slots[level][i];
+				while (t != null) {
+					Timer next = t.wheelNext;
+					t.wheelPrev = null;
+					t.wheelNext = null;
+					t.wheelLevel = -1;
+					t = next;
+				}
+				slots[level][i] = null;
+			}
+			counts[level] = 0;
+		}
+	}
+
+	private boolean isEmpty() {
+		for (int level = 0; level < LEVELS; ++level) {
+			if (counts[level] > 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static int slotIndex(long time, int level) {
+		return (int) ((time >> (level * SLOT_BITS)) & SLOT_MASK);
+	}
+
+	// The first time not earlier than <code>time</code> at which a slot of a given wheel starts
+	private static long roundUp(long time, int level) {
+		long span = 1L << (level * SLOT_BITS);
+		return ((time + span - 1) / span) * span;
+	}
+}
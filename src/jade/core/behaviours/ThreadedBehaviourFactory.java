@@ -28,6 +28,10 @@ package jade.core.behaviours;
 import jade.core.Agent;
 import jade.core.NotFoundException;
 import jade.util.Logger;
+import jade.util.WakeSignal;
+//#J2ME_EXCLUDE_BEGIN
+import jade.util.VirtualThreads;
+//#J2ME_EXCLUDE_END
 
 import java.lang.reflect.Method;
 import java.util.Vector;
@@ -212,6 +216,9 @@ public class ThreadedBehaviourFactory {
 		private volatile boolean restarted = false;
 		private boolean finished = false;
 		private volatile boolean suspended = false;
+		// Signalled by go(). The dedicated thread waits for it (rather than on this
+		// object's monitor) when the wrapped behaviour is blocked
+		private WakeSignal restartSignal = new WakeSignal();
 		private int exitValue;
 		// Only for debugging purpose
 		private volatile String threadState = CREATED_STATE;
@@ -233,8 +240,19 @@ public class ThreadedBehaviourFactory {
 		
 		private void start() {
 			// Start the dedicated thread
-			myThread = new Thread(this);
-			myThread.setName(myAgent.getLocalName()+"#"+myBehaviour.getBehaviourName());
+			String name = myAgent.getLocalName()+"#"+myBehaviour.getBehaviourName();
+			myThread = null;
+			//#J2ME_EXCLUDE_BEGIN
+			// If the thread starting the threaded behaviour (typically the agent thread) 
+			// is a virtual thread, the dedicated thread is a virtual thread too
+			if (VirtualThreads.isVirtual(Thread.currentThread())) {
+				myThread = VirtualThreads.newThread(name, this);
+			}
+			//#J2ME_EXCLUDE_END
+			if (myThread == null) {
+				myThread = new Thread(this);
+				myThread.setName(name);
+			}
 			myThread.start();			
 		}
 		
@@ -314,7 +332,7 @@ public class ThreadedBehaviourFactory {
 		
 		private synchronized void go() {
 			restarted = true;
-			notifyAll();
+			restartSignal.signal();
 		}
 		
 		// Only the dedicated thread can suspend a threaded behaviour
@@ -346,7 +364,12 @@ public class ThreadedBehaviourFactory {
 					restarted = false;
 					myBehaviour.actionWrapper();
 					
+					long wakeCnt = 0;
+					boolean blocked = false;
 					synchronized (this) {
+						// go() signals holding this object's monitor: a restart occurring 
+						// after this point will make the wait below return immediately
+						wakeCnt = restartSignal.getCount();
 						// If the behaviour was restarted from outside during the action()
 						// method, give it another chance
 						if (restarted) {
@@ -377,10 +400,14 @@ public class ThreadedBehaviourFactory {
 							}
 							if (!myBehaviour.isRunnable()) {
 								threadState = BLOCKED_STATE;
-								wait();
+								blocked = true;
 							}
 						}
 					}
+					if (blocked) {
+						// Wait holding no monitor: this does not pin virtual threads
+						restartSignal.await(wakeCnt, 0);
+					}
 					threadState = RUNNING_STATE;
 				}
 				exitValue = myBehaviour.onEnd();
@@ -0,0 +1,101 @@
+/*****************************************************************
+JADE - Java Agent DEvelopment Framework is a framework to develop
+multi-agent systems in compliance with the FIPA specifications.
+Copyright (C) 2000 CSELT S.p.A.
+
+GNU Lesser General Public License
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation,
+version 2.1 of the License.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the
+Free Software Foundation, Inc., 59 Temple Place - Suite 330,
+Boston, MA  02111-1307, USA.
+ *****************************************************************/
+
+package jade.core.messaging;
+
+import jade.core.AID;
+import jade.core.messaging.MessageManager.PendingMsg;
+import jade.core.messaging.MessageManager.Channel;
+import jade.lang.acl.ACLMessage;
+
+/**
+ * Base class for the objects that keep the messages waiting to be delivered
+ * by the <code>MessageManager</code>. Messages to the same receiver 
+ * are delivered in order and by at most one deliverer at a time.
+ * 
+ * @see OutBox
+ * @see StripedOutBox
+ */
+abstract class BaseOutBox {
+	
+	/**
+	 * Add a message to the tail of the queue of messages for the indicated 
+	 * receiver.
+	 * This method is executed by an agent's thread requesting to deliver 
+	 * a new message.
+	 */
+	abstract void addLast(AID receiverID, GenericMessage msg, Channel ch);
+	
+	/**
+	 * Get the first message for the first receiver that is not currently served
+	 * by any deliverer, blocking until there is one. That receiver is then 
+	 * served by the calling deliverer until <code>handleServed()</code> is called.
+	 */
+	abstract PendingMsg get();
+	
+	/**
+	 * Remove the oldest message waiting to be delivered to the indicated receiver.
+	 * The message currently being delivered by a deliverer (if any) is not affected.
+	 * @return the removed message or null if no message is waiting for that receiver
+	 */
+	abstract PendingMsg removeFirst(AID receiverID);
+	
+	/**
+	 * A message for the receiver receiverID has been served
+	 */
+	abstract void handleServed(AID receiverID);
+	
+	/**
+	 * Enable/disable the delay of senders when the size of this OutBox
+	 * exceeds its maximum size.
+	 */
+	abstract void setThrottling(boolean throttling);
+	
+	/**
+	 * @return the status of the queue of messages for the indicated receiver
+	 */
+	abstract QueueStatus getStatus(AID receiverID);
+	
+	// For debugging purpose
+	abstract String[] getStatus();
+	
+	// For debugging purpose
+	abstract int getSize();
+	
+	abstract long getSubmittedCnt();
+	
+	abstract long getServedCnt();
+	
+	/**
+	 * If the message is already encoded and can be modified, release the 
+	 * content of the ACLMessage as it will not be used anymore.
+	 */
+	protected void releaseContent(GenericMessage msg) {
+		if (msg.getPayload() != null && msg.isModifiable()) {
+			ACLMessage acl = msg.getACLMessage();
+			if (acl != null) {
+				acl.setContent(null);
+			}
+		}
+	}
+}
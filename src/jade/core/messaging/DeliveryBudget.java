@@ -0,0 +1,206 @@
+/*****************************************************************
+JADE - Java Agent DEvelopment Framework is a framework to develop
+multi-agent systems in compliance with the FIPA specifications.
+Copyright (C) 2000 CSELT S.p.A.
+
+GNU Lesser General Public License
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation,
+version 2.1 of the License.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the
+Free Software Foundation, Inc., 59 Temple Place - Suite 330,
+Boston, MA  02111-1307, USA.
+ *****************************************************************/
+
+package jade.core.messaging;
+
+//#J2ME_EXCLUDE_FILE
+
+import jade.core.AID;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This class keeps track of the bytes that are pending in the
+ * <code>MessageManager</code> for each receiver and for each sender and
+ * checks them against the per-receiver and per-sender budgets.
+ * Each receiver and each sender has its own lock so that a sender waiting
+ * for budget to become available (<code>BLOCK</code> policy) does not
+ * affect senders and receivers it is not related to.
+ * <br>
+ * Messages larger than a budget are accepted when nothing is pending for
+ * the involved receiver/sender so that they can always be delivered.
+ *
+ * @see MessageManager
+ */
+class DeliveryBudget {
+	static final int BLOCK = 0;
+	static final int FAIL = 1;
+	static final int DROP_OLDEST = 2;
+
+	// Outcomes of reserve()
+	static final int RESERVED = 0;
+	static final int SENDER_EXCEEDED = 1;
+	static final int RECEIVER_EXCEEDED = 2;
+
+	static final String BLOCK_S = "block";
+	static final String FAIL_S = "fail";
+	static final String DROP_OLDEST_S = "dropoldest";
+
+	private final int policy;
+	private final long maxReceiverSize;
+	private final long maxSenderSize;
+
+	private final ConcurrentHashMap<AID, Usage> receiversUsage = new ConcurrentHashMap<AID, Usage>();
+	private final ConcurrentHashMap<AID, Usage> sendersUsage = new ConcurrentHashMap<AID, Usage>();
+
+	DeliveryBudget(int policy, long maxReceiverSize, long maxSenderSize) {
+		this.policy = policy;
+		this.maxReceiverSize = maxReceiverSize;
+		this.maxSenderSize = maxSenderSize;
+	}
+
+	/**
+	 * Convert the value of the <code>jade_core_messaging_MessageManager_backpressure</code>
+	 * parameter into a policy
+	 * @return the policy or -1 if <code>s</code> does not indicate a valid policy
+	 */
+	static int parsePolicy(String s) {
+		if (BLOCK_S.equalsIgnoreCase(s)) {
+			return BLOCK;
+		}
+		else if (FAIL_S.equalsIgnoreCase(s)) {
+			return FAIL;
+		}
+		else if (DROP_OLDEST_S.equalsIgnoreCase(s)) {
+			return DROP_OLDEST;
+		}
+		return -1;
+	}
+
+	int getPolicy() {
+		return policy;
+	}
+
+	/**
+	 * Reserve the budget for a message of <code>length</code> bytes from
+	 * <code>sender</code> to <code>receiver</code>.
+	 * With the <code>BLOCK</code> policy (and if <code>mayBlock</code> is true)
+	 * this method waits until enough budget is available and always returns
+	 * <code>RESERVED</code>. Otherwise it returns <code>SENDER_EXCEEDED</code> 
+	 * or <code>RECEIVER_EXCEEDED</code> if the budget of the sender or of the 
+	 * receiver would be exceeded. In this case nothing is reserved.
+	 * @param sender The sender of the message. It can be null.
+	 */
+	int reserve(AID sender, AID receiver, int length, boolean mayBlock) {
+		boolean block = mayBlock && policy == BLOCK;
+		if (sender != null && !reserve(sendersUsage, sender, length, maxSenderSize, block)) {
+			return SENDER_EXCEEDED;
+		}
+		if (!reserve(receiversUsage, receiver, length, maxReceiverSize, block)) {
+			if (sender != null) {
+				release(sendersUsage, sender, length);
+			}
+			return RECEIVER_EXCEEDED;
+		}
+		return RESERVED;
+	}
+
+	/**
+	 * Reserve the budget for a message without checking the limits.
+	 * This is used for messages that must never be refused, such as AMS failures,
+	 * and for messages the sender of which cannot be blocked.
+	 */
+	void forceReserve(AID sender, AID receiver, int length) {
+		if (sender != null) {
+			reserve(sendersUsage, sender, length, -1, false);
+		}
+		reserve(receiversUsage, receiver, length, -1, false);
+	}
+
+	/**
+	 * Release the budget reserved for a message that was delivered,
+	 * failed or was dropped.
+	 */
+	void release(AID sender, AID receiver, int length) {
+		if (sender != null) {
+			release(sendersUsage, sender, length);
+		}
+		release(receiversUsage, receiver, length);
+	}
+
+	private boolean reserve(ConcurrentHashMap<AID, Usage> table, AID id, int length, long max, boolean block) {
+		while (true) {
+			Usage u = table.get(id);
+			if (u == null) {
+				Usage newUsage = new Usage();
+				u = table.putIfAbsent(id, newUsage);
+				if (u == null) {
+					u = newUsage;
+				}
+			}
+			synchronized (u) {
+				if (u.removed) {
+					// Usage removed in the meanwhile. Retry
+					continue;
+				}
+				while (max >= 0 && u.size > 0 && u.size + length > max) {
+					if (!block) {
+						return false;
+					}
+					u.waiting++;
+					try {
+						u.wait();
+					}
+					catch (InterruptedException ie) {
+						// Just do nothing
+					}
+					finally {
+						u.waiting--;
+					}
+				}
+				u.size += length;
+				u.messages++;
+				return true;
+			}
+		}
+	}
+
+	private void release(ConcurrentHashMap<AID, Usage> table, AID id, int length) {
+		Usage u = table.get(id);
+		if (u != null) {
+			synchronized (u) {
+				u.size -= length;
+				u.messages--;
+				if (u.waiting > 0) {
+					u.notifyAll();
+				}
+				else if (u.messages <= 0) {
+					u.removed = true;
+					table.remove(id, u);
+				}
+			}
+		}
+	}
+
+
+	/**
+	 * Inner class Usage.
+	 * The bytes and messages pending for a given receiver or sender.
+	 */
+	private static class Usage {
+		private long size = 0;
+		private int messages = 0;
+		private int waiting = 0;
+		private boolean removed = false;
+	} // END of inner class Usage
+}
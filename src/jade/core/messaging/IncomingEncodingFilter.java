@@ -48,6 +48,9 @@ public class IncomingEncodingFilter extends Filter {
 	
 	private Map messageEncodings;
 	private MessagingService myService;
+	//#J2ME_EXCLUDE_BEGIN
+	private boolean lazyDecoding = false;
+	//#J2ME_EXCLUDE_END
 	
 	public IncomingEncodingFilter(Map m, MessagingService svc) {
 		messageEncodings = m;
@@ -55,6 +58,17 @@ public class IncomingEncodingFilter extends Filter {
 		setPreferredPosition(50);
 	}
 	
+	//#J2ME_EXCLUDE_BEGIN
+	/**
+	 * Indicate whether or not messages encoded according to the LEAP 
+	 * representation must be decoded lazily.
+	 * @see LEAPACLCodec#decodeLazily(byte[])
+	 */
+	void setLazyDecoding(boolean lazyDecoding) {
+		this.lazyDecoding = lazyDecoding;
+	}
+	//#J2ME_EXCLUDE_END
+	
 	/**
 	 * Receive a command object for processing.
 	 *
@@ -143,6 +157,11 @@ public class IncomingEncodingFilter extends Filter {
 						((charset = env.getPayloadEncoding()) == null)) {
 					charset = ACLCodec.DEFAULT_CHARSET;
 				}
+				//#J2ME_EXCLUDE_BEGIN
+				if (lazyDecoding && codec instanceof LEAPACLCodec) {
+					return ((LEAPACLCodec) codec).decodeLazily(payload);
+				}
+				//#J2ME_EXCLUDE_END
 				return codec.decode(payload,charset);
 			} 
 			else {
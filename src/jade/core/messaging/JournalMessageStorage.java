@@ -0,0 +1,813 @@
+/*****************************************************************
+JADE - Java Agent DEvelopment Framework is a framework to develop
+multi-agent systems in compliance with the FIPA specifications.
+Copyright (C) 2000 CSELT S.p.A.
+
+GNU Lesser General Public License
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation,
+version 2.1 of the License.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the
+Free Software Foundation, Inc., 59 Temple Place - Suite 330,
+Boston, MA  02111-1307, USA.
+ *****************************************************************/
+
+package jade.core.messaging;
+
+//#J2ME_EXCLUDE_FILE
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+import jade.core.AID;
+import jade.core.Profile;
+import jade.domain.FIPAAgentManagement.Envelope;
+import jade.lang.acl.ACLMessage;
+import jade.lang.acl.LEAPACLCodec;
+import jade.util.Logger;
+
+/**
+ * A <code>MessageStorage</code> keeping undelivered messages in a journal
+ * i.e. a sequence of append-only segment files in the
+ * <code>persistent-delivery-basedir</code> directory.
+ * <br>
+ * Storing a message appends a record holding the message (the ACL message
+ * in the LEAP binary representation) and its receiver to the current
+ * segment. Deleting a message appends a tombstone record. Concurrent
+ * stores are made durable by a single <code>force()</code> of the segment
+ * (group sync). Tombstones are not forced: after a crash a message may be
+ * delivered again, but is never lost.
+ * <br>
+ * When the current segment exceeds the <code>persistent-delivery-journal-segmentsize</code>
+ * bytes a new one is started. A background thread deletes older segments
+ * as soon as they only hold deleted messages and copies the messages still
+ * pending in the oldest segment to the current one when most messages in
+ * the oldest segment were deleted.
+ * <br>
+ * An in-memory index maps each receiver to its pending messages and their
+ * segments so that neither deletes nor compaction ever search the files.
+ * At startup all segments are read sequentially and only the messages
+ * that were not deleted are decoded.
+ *
+ * @see PersistentDeliveryService#PERSISTENT_DELIVERY_STORAGEMETHOD
+ */
+class JournalMessageStorage implements MessageStorage {
+
+	private static final String SEGMENT_PREFIX = "JOURNAL-";
+	private static final String SEGMENT_SUFFIX = ".log";
+
+	// Record types
+	private static final byte STORE = 1;
+	private static final byte DELETE = 2;
+
+	// Flags indicating the parts of a GenericMessage included in a STORE record
+	private static final int HAS_ACL = 0x01;
+	private static final int HAS_PAYLOAD = 0x02;
+	private static final int HAS_ENVELOPE = 0x04;
+	private static final int HAS_TRACE_ID = 0x08;
+	private static final int AMS_FAILURE = 0x10;
+
+	// Record type (1 byte) and body length (4 bytes)
+	private static final int HEADER_SIZE = 5;
+	// CRC32 of the header and the body
+	private static final int TRAILER_SIZE = 4;
+
+	private static final long DEFAULT_SEGMENT_SIZE = 16 * 1024 * 1024;
+	// The oldest segment is compacted when less than this fraction of its bytes belong to pending messages
+	private static final double COMPACTION_THRESHOLD = 0.5;
+	// How often to check for segments to compact even if nobody signalled it
+	private static final long COMPACTION_PERIOD = 10000;
+
+	private Logger myLogger = Logger.getMyLogger(getClass().getName());
+
+	private File baseDir;
+	private long segmentSize;
+	private boolean sync;
+	private final LEAPACLCodec codec = new LEAPACLCodec();
+	private final AtomicLong nextId = new AtomicLong(1);
+
+	// All segments by number, including the active one. Guarded by this
+	private final TreeMap<Long, Segment> segments = new TreeMap<Long, Segment>();
+	// The segment records are appended to. Guarded by this
+	private Segment active;
+	// The pending messages of each receiver by id. Guarded by this
+	private final HashMap<AID, HashMap<Long, Entry>> index = new HashMap<AID, HashMap<Long, Entry>>();
+	// The number of records appended so far. Guarded by this
+	private long appended;
+
+	private final Object syncLock = new Object();
+	// The number of records known to be on disk. Guarded by syncLock
+	private long synced;
+
+	// The messages found in the journal at startup, by id, until they are passed to loadAll()
+	private TreeMap<Long, Entry> recovered;
+
+	private Compactor compactor;
+
+	public void init(Profile p) {
+		// Retrieve the base directory from the profile
+		String s = p.getParameter(PersistentDeliveryService.PERSISTENT_DELIVERY_BASEDIR, null);
+		if(s == null) {
+			s = "." + File.separator + "PersistentDeliveryStore";
+		}
+		baseDir = new File(s);
+		if(!baseDir.exists()) {
+			baseDir.mkdirs();
+		}
+
+		segmentSize = DEFAULT_SEGMENT_SIZE;
+		s = p.getParameter(PersistentDeliveryService.PERSISTENT_DELIVERY_JOURNAL_SEGMENTSIZE, null);
+		if (s != null) {
+			try {
+				segmentSize = Long.parseLong(s);
+			}
+			catch (NumberFormatException nfe) {
+				// Do nothing: the default value will be used...
+			}
+		}
+		sync = !"false".equalsIgnoreCase(p.getParameter(PersistentDeliveryService.PERSISTENT_DELIVERY_JOURNAL_SYNC, null));
+
+		try {
+			synchronized (this) {
+				replay();
+				active = openSegment(segments.isEmpty() ? 1 : segments.lastKey().longValue() + 1);
+			}
+		}
+		catch (IOException ioe) {
+			myLogger.log(Logger.SEVERE, "Cannot open the persistent delivery journal in "+baseDir, ioe);
+		}
+
+		compactor = new Compactor();
+		compactor.start();
+	}
+
+	public String store(GenericMessage msg, AID receiver) throws IOException {
+		long id = nextId.getAndIncrement();
+		// Encode outside the lock: this is by far the most expensive part
+		byte[] record = encodeStore(id, msg, receiver);
+		long seq;
+		synchronized (this) {
+			append(record);
+			Entry e = new Entry(active, record.length, receiver);
+			active.liveBytes += record.length;
+			HashMap<Long, Entry> ids = index.get(receiver);
+			if (ids == null) {
+				ids = new HashMap<Long, Entry>();
+				index.put(receiver, ids);
+			}
+			ids.put(new Long(id), e);
+			seq = appended;
+		}
+		if (sync) {
+			sync(seq);
+		}
+		return Long.toString(id);
+	}
+
+	public void delete(String storeName, AID receiver) throws IOException {
+		Long id = new Long(storeName);
+		synchronized (this) {
+			HashMap<Long, Entry> ids = index.get(receiver);
+			Entry e = (ids != null ? ids.remove(id) : null);
+			if (e == null) {
+				if (myLogger.isLoggable(Logger.FINE)) {
+					myLogger.log(Logger.FINE, "Message "+storeName+" for "+receiver.getName()+" not found in the journal");
+				}
+				return;
+			}
+			if (ids.isEmpty()) {
+				index.remove(receiver);
+			}
+			remove(id.longValue(), e);
+		}
+	}
+
+	public void loadAll(LoadListener ll) throws IOException {
+		TreeMap<Long, Entry> entries;
+		synchronized (this) {
+			entries = recovered;
+			recovered = null;
+		}
+
+		// Notify the listener that the load process started
+		ll.loadStarted("");
+
+		if (entries != null) {
+			Iterator<Map.Entry<Long, Entry>> it = entries.entrySet().iterator();
+			while (it.hasNext()) {
+				Map.Entry<Long, Entry> me = it.next();
+				Entry e = me.getValue();
+				GenericMessage msg = null;
+				try {
+					msg = decodeMessage(e.body);
+				}
+				catch (Exception ex) {
+					myLogger.log(Logger.WARNING, "Error decoding message "+me.getKey()+" for "+e.receiver.getName()+" ["+ex+"]. Message discarded");
+					delete(me.getKey().toString(), e.receiver);
+					continue;
+				}
+				finally {
+					e.body = null;
+				}
+				// Notify the listener that a new item was loaded
+				ll.itemLoaded(me.getKey().toString(), msg, e.receiver);
+			}
+		}
+
+		// Notify the listener that the load process ended
+		ll.loadEnded("");
+	}
+
+
+	///////////////////////////////////
+	// Journal management
+	///////////////////////////////////
+
+	/**
+	 Append a tombstone for a message that is no longer pending.
+	 The message is removed from the accounting of its segment even
+	 if the tombstone cannot be written: at worst it is loaded again 
+	 after a restart.
+	 Must be called holding the lock on this object
+	 */
+	private void remove(long id, Entry e) throws IOException {
+		Segment s = e.segment;
+		s.liveBytes -= e.length;
+		if (s != active && s.liveBytes < s.size * COMPACTION_THRESHOLD) {
+			compactor.wakeUp();
+		}
+		append(frame(DELETE, encodeId(id)));
+		if (s != active) {
+			// The tombstone must survive as long as the deleted record
+			active.targets.add(new Long(s.number));
+		}
+	}
+
+	/**
+	 Append a record to the active segment starting a new segment if
+	 the active one is full.
+	 Must be called holding the lock on this object
+	 */
+	private void append(byte[] record) throws IOException {
+		if (active == null) {
+			throw new IOException("Persistent delivery journal not available");
+		}
+		if (active.broken || (active.size > 0 && active.size + record.length > segmentSize)) {
+			roll();
+		}
+		ByteBuffer bb = ByteBuffer.wrap(record);
+		try {
+			while (bb.hasRemaining()) {
+				active.channel.write(bb);
+			}
+		}
+		catch (IOException ioe) {
+			// A partially written record would hide the following ones: start a new segment
+			active.broken = true;
+			throw ioe;
+		}
+		active.size += record.length;
+		appended++;
+	}
+
+	/**
+	 Seal the active segment and start a new one. The sealed segment is
+	 forced so that no sync is ever needed on it afterwards: threads 
+	 waiting to sync records in it rely on that. If forcing fails the 
+	 active segment does not change.
+	 Must be called holding the lock on this object
+	 */
+	private void roll() throws IOException {
+		Segment old = active;
+		if (old.broken) {
+			// Drop the partially written record, if any, keeping the complete ones
+			old.channel.truncate(old.size);
+		}
+		old.channel.force(false);
+		old.channel.close();
+		old.channel = null;
+		active = openSegment(old.number + 1);
+		compactor.wakeUp();
+	}
+
+	/**
+	 Must be called holding the lock on this object
+	 */
+	private Segment openSegment(long number) throws IOException {
+		File f = new File(baseDir, SEGMENT_PREFIX+pad(number)+SEGMENT_SUFFIX);
+		RandomAccessFile raf = new RandomAccessFile(f, "rw");
+		// Never append after what a crashed process may have left
+		raf.setLength(0);
+		Segment s = new Segment(number, f);
+		s.channel = raf.getChannel();
+		segments.put(new Long(number), s);
+		return s;
+	}
+
+	/**
+	 Make sure the first <code>seq</code> records appended are on disk.
+	 Threads that call this method while a force is in progress wait for
+	 it to complete and then perform a single force for all of them.
+	 */
+	private void sync(long seq) throws IOException {
+		synchronized (syncLock) {
+			if (synced >= seq) {
+				// Someone else forced our record already
+				return;
+			}
+			long target;
+			FileChannel ch;
+			synchronized (this) {
+				target = appended;
+				ch = active.channel;
+			}
+			try {
+				ch.force(false);
+			}
+			catch (ClosedChannelException cce) {
+				// The segment was sealed (and therefore forced) in the meanwhile
+			}
+			synced = target;
+		}
+	}
+
+	/**
+	 Read all segments rebuilding the index and collecting the messages
+	 still pending.
+	 Must be called holding the lock on this object
+	 */
+	private void replay() throws IOException {
+		recovered = new TreeMap<Long, Entry>();
+		File[] files = baseDir.listFiles();
+		TreeMap<Long, File> sorted = new TreeMap<Long, File>();
+		for (int i = 0; files != null && i < files.length; ++i) {
+			String name = files[i].getName();
+			if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+				try {
+					sorted.put(new Long(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())), files[i]);
+				}
+				catch (NumberFormatException nfe) {
+					// Not a segment: ignore it
+				}
+			}
+		}
+
+		long maxId = 0;
+		Iterator<Map.Entry<Long, File>> it = sorted.entrySet().iterator();
+		while (it.hasNext()) {
+			Map.Entry<Long, File> me = it.next();
+			Segment s = new Segment(me.getKey().longValue(), me.getValue());
+			segments.put(me.getKey(), s);
+			RecordReader reader = new RecordReader(s.file);
+			try {
+				while (reader.next()) {
+					int length = reader.getLength();
+					DataInputStream in = new DataInputStream(new ByteArrayInputStream(reader.body));
+					Long id = new Long(in.readLong());
+					if (reader.type == STORE) {
+						Entry e = new Entry(s, length, LEAPACLCodec.deserializeAID(in));
+						e.body = reader.body;
+						// A message copied by the compactor appears twice if the process crashed before the copied segment was deleted
+						Entry old = recovered.put(id, e);
+						if (old != null) {
+							old.segment.liveBytes -= old.length;
+						}
+						s.liveBytes += length;
+					}
+					else {
+						Entry e = recovered.remove(id);
+						if (e != null) {
+							e.segment.liveBytes -= e.length;
+							if (e.segment != s) {
+								s.targets.add(new Long(e.segment.number));
+							}
+						}
+					}
+					s.size += length;
+					maxId = Math.max(maxId, id.longValue());
+				}
+			}
+			finally {
+				reader.close();
+			}
+			if (reader.torn) {
+				myLogger.log(Logger.WARNING, "Persistent delivery journal segment "+s.file.getName()+" truncated or corrupted after "+s.size+" bytes");
+			}
+		}
+		nextId.set(maxId + 1);
+
+		Iterator<Map.Entry<Long, Entry>> it2 = recovered.entrySet().iterator();
+		while (it2.hasNext()) {
+			Map.Entry<Long, Entry> me = it2.next();
+			Entry e = me.getValue();
+			HashMap<Long, Entry> ids = index.get(e.receiver);
+			if (ids == null) {
+				ids = new HashMap<Long, Entry>();
+				index.put(e.receiver, ids);
+			}
+			ids.put(me.getKey(), e);
+		}
+		if (myLogger.isLoggable(Logger.CONFIG)) {
+			myLogger.log(Logger.CONFIG, "Persistent delivery journal: "+segments.size()+" segments, "+recovered.size()+" pending messages");
+		}
+	}
+
+	/**
+	 Delete the segments that are no longer needed, copying the pending
+	 messages of the oldest segment to the active one if most of its
+	 messages were deleted.
+	 */
+	private void compact() throws IOException {
+		while (true) {
+			Segment victim = null;
+			boolean copy = false;
+			synchronized (this) {
+				Iterator<Segment> it = segments.values().iterator();
+				boolean head = true;
+				while (it.hasNext()) {
+					Segment s = it.next();
+					if (s == active) {
+						break;
+					}
+					if (s.liveBytes == 0 && !hasTargets(s)) {
+						// Only deleted messages and tombstones no longer needed
+						victim = s;
+						break;
+					}
+					if (head && s.liveBytes < s.size * COMPACTION_THRESHOLD) {
+						// The tombstones of the oldest segment only refer to messages in the segment itself
+						victim = s;
+						copy = true;
+						break;
+					}
+					head = false;
+				}
+			}
+			if (victim == null) {
+				return;
+			}
+
+			if (copy) {
+				copyPending(victim);
+			}
+			synchronized (this) {
+				if (victim.liveBytes != 0) {
+					myLogger.log(Logger.WARNING, "Persistent delivery journal segment "+victim.file.getName()+" still holds pending messages after compaction");
+					return;
+				}
+				segments.remove(new Long(victim.number));
+			}
+			if (myLogger.isLoggable(Logger.FINE)) {
+				myLogger.log(Logger.FINE, "Persistent delivery journal segment "+victim.file.getName()+" deleted");
+			}
+			victim.file.delete();
+		}
+	}
+
+	/**
+	 Must be called holding the lock on this object
+	 */
+	private boolean hasTargets(Segment s) {
+		Iterator<Long> it = s.targets.iterator();
+		while (it.hasNext()) {
+			if (segments.containsKey(it.next())) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 Copy the records of the pending messages of a sealed segment to the
+	 active one and make them durable.
+	 */
+	private void copyPending(Segment victim) throws IOException {
+		RecordReader reader = new RecordReader(victim.file);
+		long seq = 0;
+		try {
+			while (reader.next()) {
+				if (reader.type == STORE) {
+					DataInputStream in = new DataInputStream(new ByteArrayInputStream(reader.body));
+					Long id = new Long(in.readLong());
+					AID receiver = LEAPACLCodec.deserializeAID(in);
+					synchronized (this) {
+						HashMap<Long, Entry> ids = index.get(receiver);
+						Entry e = (ids != null ? ids.get(id) : null);
+						if (e != null && e.segment == victim) {
+							append(frame(STORE, reader.body));
+							victim.liveBytes -= e.length;
+							e.segment = active;
+							active.liveBytes += e.length;
+							seq = appended;
+						}
+					}
+				}
+			}
+		}
+		finally {
+			reader.close();
+		}
+		// The copies must be on disk before the original records are deleted
+		if (seq > 0) {
+			sync(seq);
+		}
+	}
+
+
+	///////////////////////////////////
+	// Encoding methods
+	///////////////////////////////////
+
+	private byte[] encodeStore(long id, GenericMessage msg, AID receiver) throws IOException {
+		ACLMessage acl = msg.getACLMessage();
+		byte[] payload = msg.getPayload();
+		Envelope env = msg.getEnvelope();
+		String traceID = msg.getTraceID();
+		int flags = 0;
+		if (acl != null) { flags |= HAS_ACL; }
+		if (payload != null) { flags |= HAS_PAYLOAD; }
+		if (env != null) { flags |= HAS_ENVELOPE; }
+		if (traceID != null) { flags |= HAS_TRACE_ID; }
+		if (msg.isAMSFailure()) { flags |= AMS_FAILURE; }
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream(512);
+		DataOutputStream dos = new DataOutputStream(out);
+		dos.writeLong(id);
+		LEAPACLCodec.serializeAID(receiver, dos);
+		dos.writeByte(flags);
+		if (acl != null) {
+			writeBytes(dos, codec.encode(acl, null));
+		}
+		if (payload != null) {
+			writeBytes(dos, payload);
+		}
+		if (env != null) {
+			// Envelopes have no LEAP representation outside the IMTP: they are
+			// only present in messages from/to remote platforms
+			ByteArrayOutputStream eos = new ByteArrayOutputStream();
+			ObjectOutputStream oos = new ObjectOutputStream(eos);
+			oos.writeObject(env);
+			oos.close();
+			writeBytes(dos, eos.toByteArray());
+		}
+		if (traceID != null) {
+			dos.writeUTF(traceID);
+		}
+		dos.flush();
+		return frame(STORE, out.toByteArray());
+	}
+
+	private GenericMessage decodeMessage(byte[] body) throws Exception {
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(body));
+		// Skip the id and the receiver
+		in.readLong();
+		LEAPACLCodec.deserializeAID(in);
+		int flags = in.readUnsignedByte();
+		ACLMessage acl = null;
+		if ((flags & HAS_ACL) != 0) {
+			acl = codec.decodeLazily(readBytes(in));
+		}
+		byte[] payload = null;
+		if ((flags & HAS_PAYLOAD) != 0) {
+			payload = readBytes(in);
+		}
+		Envelope env = null;
+		if ((flags & HAS_ENVELOPE) != 0) {
+			ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(readBytes(in)));
+			env = (Envelope) ois.readObject();
+		}
+		GenericMessage msg = new GenericMessage(env, payload);
+		msg.setACLMessage(acl);
+		if ((flags & HAS_TRACE_ID) != 0) {
+			msg.setTraceID(in.readUTF());
+		}
+		msg.setAMSFailure((flags & AMS_FAILURE) != 0);
+		return msg;
+	}
+
+	private static byte[] encodeId(long id) {
+		byte[] b = new byte[8];
+		for (int i = 7; i >= 0; --i) {
+			b[i] = (byte) id;
+			id >>>= 8;
+		}
+		return b;
+	}
+
+	/**
+	 Build a record: type, body length, body and CRC32 of all that.
+	 */
+	private static byte[] frame(byte type, byte[] body) {
+		byte[] record = new byte[HEADER_SIZE + body.length + TRAILER_SIZE];
+		record[0] = type;
+		putInt(record, 1, body.length);
+		System.arraycopy(body, 0, record, HEADER_SIZE, body.length);
+		CRC32 crc = new CRC32();
+		crc.update(record, 0, HEADER_SIZE + body.length);
+		putInt(record, HEADER_SIZE + body.length, (int) crc.getValue());
+		return record;
+	}
+
+	private static void putInt(byte[] b, int offset, int v) {
+		b[offset] = (byte) (v >>> 24);
+		b[offset+1] = (byte) (v >>> 16);
+		b[offset+2] = (byte) (v >>> 8);
+		b[offset+3] = (byte) v;
+	}
+
+	private static void writeBytes(DataOutputStream dos, byte[] b) throws IOException {
+		dos.writeInt(b.length);
+		dos.write(b);
+	}
+
+	private static byte[] readBytes(DataInputStream in) throws IOException {
+		byte[] b = new byte[in.readInt()];
+		in.readFully(b);
+		return b;
+	}
+
+	private static String pad(long number) {
+		StringBuffer sb = new StringBuffer(Long.toString(number));
+		while (sb.length() < 10) {
+			sb.insert(0, '0');
+		}
+		return sb.toString();
+	}
+
+
+	/**
+	   Inner class Segment
+	 */
+	private static class Segment {
+		private final long number;
+		private final File file;
+		// Only the active segment is open
+		private FileChannel channel;
+		private boolean broken;
+		// Bytes of valid records
+		private long size;
+		// Bytes of the records of pending messages
+		private long liveBytes;
+		// The numbers of the segments holding messages deleted by tombstones in this segment
+		private final HashSet<Long> targets = new HashSet<Long>();
+
+		private Segment(long number, File file) {
+			this.number = number;
+			this.file = file;
+		}
+	} // END of inner class Segment
+
+
+	/**
+	   Inner class Entry.
+	   A message still pending.
+	 */
+	private static class Entry {
+		private Segment segment;
+		private final int length;
+		private final AID receiver;
+		// The encoded message. Only set between the replay and loadAll()
+		private byte[] body;
+
+		private Entry(Segment segment, int length, AID receiver) {
+			this.segment = segment;
+			this.length = length;
+			this.receiver = receiver;
+		}
+	} // END of inner class Entry
+
+
+	/**
+	   Inner class RecordReader.
+	   Read the records of a segment sequentially, stopping at the first
+	   truncated or corrupted one.
+	 */
+	private static class RecordReader {
+		private final DataInputStream in;
+		private long remaining;
+		private final CRC32 crc = new CRC32();
+		private byte type;
+		private byte[] body;
+		private boolean torn = false;
+
+		private RecordReader(File f) throws IOException {
+			remaining = f.length();
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(f), 65536));
+		}
+
+		private boolean next() throws IOException {
+			if (remaining == 0) {
+				return false;
+			}
+			try {
+				if (remaining < HEADER_SIZE + TRAILER_SIZE) {
+					throw new EOFException();
+				}
+				type = in.readByte();
+				int length = in.readInt();
+				if ((type != STORE && type != DELETE) || length < 8 || length > remaining - HEADER_SIZE - TRAILER_SIZE) {
+					throw new EOFException();
+				}
+				body = new byte[length];
+				in.readFully(body);
+				int expected = in.readInt();
+				crc.reset();
+				crc.update(type);
+				crc.update(length >>> 24);
+				crc.update(length >>> 16);
+				crc.update(length >>> 8);
+				crc.update(length);
+				crc.update(body, 0, length);
+				if ((int) crc.getValue() != expected) {
+					throw new EOFException();
+				}
+				remaining -= getLength();
+				return true;
+			}
+			catch (EOFException eofe) {
+				torn = true;
+				body = null;
+				return false;
+			}
+		}
+
+		private int getLength() {
+			return HEADER_SIZE + body.length + TRAILER_SIZE;
+		}
+
+		private void close() throws IOException {
+			in.close();
+		}
+	} // END of inner class RecordReader
+
+
+	/**
+	   Inner class Compactor
+	 */
+	private class Compactor implements Runnable {
+		private boolean signalled = false;
+		private Thread myThread;
+
+		public void run() {
+			while (true) {
+				synchronized (this) {
+					if (!signalled) {
+						try {
+							wait(COMPACTION_PERIOD);
+						}
+						catch (InterruptedException ie) {
+							return;
+						}
+					}
+					signalled = false;
+				}
+				try {
+					compact();
+				}
+				catch (Exception e) {
+					myLogger.log(Logger.WARNING, "Error compacting the persistent delivery journal", e);
+				}
+			}
+		}
+
+		public void start() {
+			myThread = new Thread(this, "Persistent Delivery Service -- Journal Compactor Thread");
+			myThread.setDaemon(true);
+			myThread.start();
+		}
+
+		public synchronized void wakeUp() {
+			signalled = true;
+			notifyAll();
+		}
+	} // END of inner class Compactor
+}
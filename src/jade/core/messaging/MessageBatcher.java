@@ -0,0 +1,373 @@
+/*****************************************************************
+ JADE - Java Agent DEvelopment Framework is a framework to develop
+ multi-agent systems in compliance with the FIPA specifications.
+ Copyright (C) 2000 CSELT S.p.A.
+
+ GNU Lesser General Public License
+
+ This library is free software; you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public
+ License as published by the Free Software Foundation,
+ version 2.1 of the License.
+
+ This library is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ Lesser General Public License for more details.
+
+ You should have received a copy of the GNU Lesser General Public
+ License along with this library; if not, write to the
+ Free Software Foundation, Inc., 59 Temple Place - Suite 330,
+ Boston, MA  02111-1307, USA.
+ *****************************************************************/
+
+package jade.core.messaging;
+
+//#J2ME_EXCLUDE_FILE
+
+import jade.core.AID;
+import jade.util.Logger;
+
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ This class coalesces the messages to be dispatched to the same remote
+ container into batches that are sent by means of a single
+ <code>H_DISPATCHLOCALLYBATCH</code> horizontal command.
+ A batch is sent as soon as it contains <code>maxSize</code> messages or
+ <code>window</code> ms after its first message was added.
+ <br>
+ The batches for a given container are sent one at a time in the order they
+ were created and the receiving slice dispatches the messages of a batch in
+ order: therefore the order of the messages sent to a given receiver is preserved.
+ Moreover a message to a receiver that still has messages waiting in the batches
+ for a container is not added to the batches for another container (e.g. because
+ the receiver moved) and is not sent directly (see <code>flush()</code>) until 
+ those messages have been delivered.
+ Messages whose dispatch fails (or all messages of a batch that cannot be
+ sent at all) are handed back to the <code>Handler</code> so that they go
+ through the normal, non-batched, delivery process that takes care of
+ retrying and of notifying failures to the sender. As the receiving slice 
+ stops dispatching messages to a receiver once a message to it failed, 
+ the following messages to that receiver are handed back as well, in order, 
+ after the failed one.
+ */
+class MessageBatcher {
+
+	interface Handler {
+		/**
+		 Deliver a message without batching it. This is called when
+		 the batched dispatch of the message failed.
+		 */
+		void deliverUnbatched(GenericMessage msg, AID receiverID);
+	}
+
+	private final int maxSize;
+	private final long window;
+	private final Handler myHandler;
+
+	private final ConcurrentHashMap<String, Target> targets = new ConcurrentHashMap<String, Target>();
+	// The messages batched and not delivered yet for each receiver
+	private final HashMap<AID, Pending> pending = new HashMap<AID, Pending>();
+	private final ScheduledExecutorService timer;
+	private final ExecutorService senders;
+
+	private final Logger myLogger = Logger.getMyLogger(getClass().getName());
+
+	MessageBatcher(int maxSize, long window, Handler h) {
+		this.maxSize = maxSize;
+		this.window = window;
+		myHandler = h;
+		timer = Executors.newSingleThreadScheduledExecutor(new BatcherThreadFactory("JADE-Message-Batcher-Timer"));
+		senders = Executors.newCachedThreadPool(new BatcherThreadFactory("JADE-Message-Batcher-Sender"));
+	}
+
+	/**
+	 Add a message to the batch for a given container
+	 @param containerName The name of the container the receiver lives in
+	 @param slice The messaging slice of that container
+	 */
+	void dispatch(String containerName, MessagingProxy slice, GenericMessage msg, AID receiverID) {
+		Target t = targets.get(containerName);
+		if (t == null || t.slice != slice) {
+			// New container or the slice of the container changed (e.g. it was restarted)
+			Target newT = new Target(containerName, slice);
+			if (t == null) {
+				t = targets.putIfAbsent(containerName, newT);
+			}
+			else {
+				t = (targets.replace(containerName, t, newT) ? null : targets.get(containerName));
+			}
+			if (t == null) {
+				t = newT;
+			}
+		}
+		acquire(receiverID, t);
+		t.add(msg, receiverID);
+	}
+
+	/**
+	 Wait until all messages batched for a given receiver have been delivered.
+	 This must be called before sending a message to that receiver without
+	 batching it.
+	 */
+	void flush(AID receiverID) {
+		acquire(receiverID, null);
+	}
+
+	/**
+	 Wait until all messages batched for a given receiver in a Target other 
+	 than <code>t</code> have been delivered and, if <code>t</code> is not null, 
+	 record that a further message for that receiver is going to be added to 
+	 <code>t</code>. 
+	 */
+	private void acquire(AID receiverID, Target t) {
+		while (true) {
+			Pending p = null;
+			synchronized (pending) {
+				p = pending.get(receiverID);
+				if (p == null || p.target == t) {
+					if (t != null) {
+						if (p == null) {
+							p = new Pending(t);
+							pending.put(receiverID, p);
+						}
+						p.cnt++;
+					}
+					return;
+				}
+			}
+			// Do not wait for the batching window to expire
+			p.target.seal(-1);
+			synchronized (pending) {
+				while (pending.get(receiverID) == p) {
+					try {
+						pending.wait();
+					}
+					catch (InterruptedException ie) {
+						// Just do nothing
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 A message batched for a given receiver has been delivered (or 
+	 handed back to the Handler)
+	 */
+	private void release(AID receiverID) {
+		synchronized (pending) {
+			Pending p = pending.get(receiverID);
+			if (p != null && --p.cnt == 0) {
+				pending.remove(receiverID);
+				pending.notifyAll();
+			}
+		}
+	}
+
+	/**
+	 Send all pending batches and release the threads used by this batcher
+	 */
+	void shutdown() {
+		for (Target t : targets.values()) {
+			t.seal(-1);
+		}
+		timer.shutdownNow();
+		senders.shutdown();
+		try {
+			senders.awaitTermination(5, TimeUnit.SECONDS);
+		}
+		catch (InterruptedException ie) {
+			// Just do nothing
+		}
+	}
+
+
+	/**
+	 Inner class Target.
+	 The batches for a given container.
+	 */
+	private class Target implements Runnable {
+		private final String name;
+		private final MessagingProxy slice;
+
+		private Batch current;
+		// The sequence number of the current batch, used to discard stale window expirations
+		private long currentSeq = 0;
+		private final LinkedList<Batch> sealed = new LinkedList<Batch>();
+		private boolean sending = false;
+
+		private Target(String name, MessagingProxy slice) {
+			this.name = name;
+			this.slice = slice;
+		}
+
+		private synchronized void add(GenericMessage msg, AID receiverID) {
+			if (current == null) {
+				current = new Batch(maxSize);
+				final long seq = ++currentSeq;
+				try {
+					timer.schedule(new Runnable() {
+						public void run() {
+							seal(seq);
+						}
+					}, window, TimeUnit.MILLISECONDS);
+				}
+				catch (Exception e) {
+					// Shutting down: the batch will be sealed by shutdown()
+				}
+			}
+			current.add(msg, receiverID);
+			if (current.size() >= maxSize) {
+				seal(currentSeq);
+			}
+		}
+
+		/**
+		 Seal the current batch (if its sequence number is <code>seq</code>,
+		 or in any case if <code>seq</code> is negative) and make sure it will
+		 be sent.
+		 */
+		private synchronized void seal(long seq) {
+			if (current != null && (seq < 0 || seq == currentSeq)) {
+				sealed.addLast(current);
+				current = null;
+				if (!sending) {
+					sending = true;
+					try {
+						senders.execute(this);
+					}
+					catch (Exception e) {
+						// Shutting down: send in the current thread
+						sending = false;
+						run();
+					}
+				}
+			}
+		}
+
+		// Send the sealed batches one at a time and in order
+		public void run() {
+			while (true) {
+				Batch b = null;
+				synchronized (this) {
+					if (sealed.isEmpty()) {
+						sending = false;
+						return;
+					}
+					b = sealed.removeFirst();
+				}
+				send(b);
+			}
+		}
+
+		private void send(Batch b) {
+			jade.util.leap.List results = null;
+			try {
+				results = slice.dispatchLocallyBatch(b.messages, b.senders(), b.receivers());
+			}
+			catch (Throwable t) {
+				myLogger.log(Logger.FINE, "Batch of "+b.size()+" messages to container "+name+" could not be dispatched. "+t);
+				// Do not reuse this slice any longer
+				targets.remove(name, this);
+			}
+			for (int i = 0; i < b.size(); ++i) {
+				AID receiverID = (AID) b.receiverIDs.get(i);
+				if (results == null || i >= results.size() || results.get(i) != null) {
+					GenericMessage msg = (GenericMessage) b.messages.get(i);
+					if (results != null && myLogger.isLoggable(Logger.FINE)) {
+						myLogger.log(Logger.FINE, "Batched dispatch of message "+MessageManager.stringify(msg)+" to agent "+receiverID.getName()+" failed. "+results.get(i));
+					}
+					try {
+						myHandler.deliverUnbatched(msg, receiverID);
+					}
+					catch (Throwable t) {
+						// A sender thread must never die
+						myLogger.log(Logger.WARNING, "Unexpected error delivering message "+MessageManager.stringify(msg)+" to agent "+receiverID.getName(), t);
+					}
+				}
+				// Only now later messages to this receiver can be sent by other means
+				release(receiverID);
+			}
+		}
+	} // END of inner class Target
+
+
+	/**
+	 Inner class Pending
+	 */
+	private static class Pending {
+		private final Target target;
+		private int cnt = 0;
+
+		private Pending(Target target) {
+			this.target = target;
+		}
+	} // END of inner class Pending
+
+
+	/**
+	 Inner class Batch
+	 */
+	private static class Batch {
+		private final jade.util.leap.ArrayList messages;
+		private final jade.util.leap.ArrayList receiverIDs;
+
+		private Batch(int size) {
+			messages = new jade.util.leap.ArrayList(size);
+			receiverIDs = new jade.util.leap.ArrayList(size);
+		}
+
+		private void add(GenericMessage msg, AID receiverID) {
+			messages.add(msg);
+			receiverIDs.add(receiverID);
+		}
+
+		private int size() {
+			return messages.size();
+		}
+
+		private AID[] senders() {
+			AID[] ids = new AID[messages.size()];
+			for (int i = 0; i < ids.length; ++i) {
+				ids[i] = ((GenericMessage) messages.get(i)).getSender();
+			}
+			return ids;
+		}
+
+		private AID[] receivers() {
+			AID[] ids = new AID[receiverIDs.size()];
+			for (int i = 0; i < ids.length; ++i) {
+				ids[i] = (AID) receiverIDs.get(i);
+			}
+			return ids;
+		}
+	} // END of inner class Batch
+
+
+	/**
+	 Inner class BatcherThreadFactory
+	 */
+	private static class BatcherThreadFactory implements ThreadFactory {
+		private final String prefix;
+		private int cnt = 0;
+
+		private BatcherThreadFactory(String prefix) {
+			this.prefix = prefix;
+		}
+
+		public synchronized Thread newThread(Runnable r) {
+			Thread t = new Thread(r, prefix+"-"+(cnt++));
+			t.setDaemon(true);
+			return t;
+		}
+	} // END of inner class BatcherThreadFactory
+}
@@ -62,7 +62,18 @@ class MessageManager {
 
 	private static final int  MAX_QUEUE_SIZE_DEFAULT = 10000000; // 10MBytes
 
-	private OutBox outBox;
+	//#J2ME_EXCLUDE_BEGIN
+	private static final String OUT_BOX_STRIPED = "striped";
+
+	private static final int  MAX_RECEIVER_QUEUE_SIZE_DEFAULT = 1000000; // 1MByte
+	private static final int  MAX_SENDER_QUEUE_SIZE_DEFAULT = 1000000; // 1MByte
+	//#J2ME_EXCLUDE_END
+
+	private BaseOutBox outBox;
+	//#J2ME_EXCLUDE_BEGIN
+	// The per-receiver and per-sender budgets. Null if backpressure is not active
+	private DeliveryBudget budget;
+	//#J2ME_EXCLUDE_END
 	private Thread[] delivererThreads;
 	private Deliverer[] deliverers;
 	
@@ -100,7 +111,50 @@ class MessageManager {
 		catch (Exception e) {
 			// Do nothing and keep default value
 		}
-		outBox = new OutBox(maxQueueSize);
+		// OUT_BOX_TYPE
+		String outBoxType = p.getParameter("jade_core_messaging_MessageManager_outbox", null);
+		//#J2ME_EXCLUDE_BEGIN
+		if (OUT_BOX_STRIPED.equals(outBoxType)) {
+			outBox = new StripedOutBox(maxQueueSize);
+		}
+		//#J2ME_EXCLUDE_END
+		if (outBox == null) {
+			outBox = new OutBox(maxQueueSize);
+		}
+		myLogger.log(Logger.CONFIG, "MessageManager OutBox = "+outBox.getClass().getName());
+
+		//#J2ME_EXCLUDE_BEGIN
+		// BACKPRESSURE
+		String backpressure = p.getParameter("jade_core_messaging_MessageManager_backpressure", null);
+		if (backpressure != null) {
+			int policy = DeliveryBudget.parsePolicy(backpressure);
+			if (policy >= 0) {
+				int maxReceiverQueueSize = MAX_RECEIVER_QUEUE_SIZE_DEFAULT;
+				try {
+					String tmp = p.getParameter("jade_core_messaging_MessageManager_maxreceiverqueuesize", null);
+					maxReceiverQueueSize = Integer.parseInt(tmp);
+				}
+				catch (Exception e) {
+					// Do nothing and keep default value
+				}
+				int maxSenderQueueSize = MAX_SENDER_QUEUE_SIZE_DEFAULT;
+				try {
+					String tmp = p.getParameter("jade_core_messaging_MessageManager_maxsenderqueuesize", null);
+					maxSenderQueueSize = Integer.parseInt(tmp);
+				}
+				catch (Exception e) {
+					// Do nothing and keep default value
+				}
+				budget = new DeliveryBudget(policy, maxReceiverQueueSize, maxSenderQueueSize);
+				// Senders are controlled by the budget: the OutBox must not delay them any longer 
+				outBox.setThrottling(false);
+				myLogger.log(Logger.CONFIG, "MessageManager backpressure = "+backpressure+", max-receiver-queue-size = "+maxReceiverQueueSize+", max-sender-queue-size = "+maxSenderQueueSize);
+			}
+			else {
+				myLogger.log(Logger.WARNING, "Unknown MessageManager backpressure policy "+backpressure+". Use one of "+DeliveryBudget.BLOCK_S+", "+DeliveryBudget.FAIL_S+", "+DeliveryBudget.DROP_OLDEST_S);
+			}
+		}
+		//#J2ME_EXCLUDE_END
 
 
 		try {
@@ -126,9 +180,79 @@ class MessageManager {
 	   Activate the asynchronous delivery of a GenericMessage
 	 */
 	public void deliver(GenericMessage msg, AID receiverID, Channel ch) {
+		//#J2ME_EXCLUDE_BEGIN
+		if (budget != null && !reserveBudget(msg, receiverID, ch)) {
+			return;
+		}
+		//#J2ME_EXCLUDE_END
 		outBox.addLast(receiverID, msg, ch);
 	}
 
+	//#J2ME_EXCLUDE_BEGIN
+	/**
+	   Reserve the budget for a message to be delivered applying the 
+	   configured backpressure policy. 
+	   @return false if the message must not be delivered. In this case
+	   the failure has already been notified to the sender.
+	 */
+	private boolean reserveBudget(GenericMessage msg, AID receiverID, Channel ch) {
+		AID sender = msg.getSender();
+		int length = msg.length();
+		// Deliverers (that may deliver messages coming from MTPs) must never block 
+		// as they are the threads that release the budget.
+		boolean mayBlock = !isDeliverer(Thread.currentThread());
+		if (msg.isAMSFailure()) {
+			// Never refuse failure notifications
+			budget.forceReserve(sender, receiverID, length);
+			return true;
+		}
+		int outcome = budget.reserve(sender, receiverID, length, mayBlock);
+		if (outcome == DeliveryBudget.RESERVED) {
+			return true;
+		}
+
+		int policy = budget.getPolicy();
+		if (policy == DeliveryBudget.DROP_OLDEST) {
+			// Make room by dropping the oldest messages waiting for the receiver. 
+			// This is pointless (and unfair to other senders) if the sender budget is exhausted
+			PendingMsg old = null;
+			while (outcome == DeliveryBudget.RECEIVER_EXCEEDED && (old = outBox.removeFirst(receiverID)) != null) {
+				GenericMessage oldMsg = old.getMessage();
+				budget.release(oldMsg.getSender(), receiverID, oldMsg.length());
+				if (myLogger.isLoggable(Logger.FINE)) {
+					myLogger.log(Logger.FINE, "MessageManager queue for receiver "+receiverID.getName()+" full. Message "+stringify(oldMsg)+" dropped");
+				}
+				old.getChannel().notifyFailureToSender(oldMsg, receiverID, new InternalError("Message dropped: receiver queue full"));
+				outcome = budget.reserve(sender, receiverID, length, false);
+				if (outcome == DeliveryBudget.RESERVED) {
+					return true;
+				}
+			}
+			// The sender budget is exhausted or nothing else can be dropped for this receiver 
+		}
+		else if (policy == DeliveryBudget.BLOCK) {
+			// We get here only if the current thread is a deliverer
+			budget.forceReserve(sender, receiverID, length);
+			return true;
+		}
+
+		if (myLogger.isLoggable(Logger.FINE)) {
+			myLogger.log(Logger.FINE, "MessageManager budget exceeded. Message "+stringify(msg)+" to agent "+receiverID.getName()+" refused");
+		}
+		ch.notifyFailureToSender(msg, receiverID, new InternalError("MessageManager queue full"));
+		return false;
+	}
+
+	private boolean isDeliverer(Thread t) {
+		for (int i = 0; i < delivererThreads.length; ++i) {
+			if (delivererThreads[i] == t) {
+				return true;
+			}
+		}
+		return false;
+	}
+	//#J2ME_EXCLUDE_END
+
 
 
 	/**
@@ -145,6 +269,11 @@ class MessageManager {
 				PendingMsg pm = outBox.get();
 				GenericMessage msg = pm.getMessage();
 				AID receiverID = pm.getReceiver();
+				//#J2ME_EXCLUDE_BEGIN
+				// Delivering the message may change its length (e.g. if it gets encoded)
+				AID senderID = msg.getSender();
+				int length = msg.length();
+				//#J2ME_EXCLUDE_END
 
 				// Deliver the message
 				Channel ch = pm.getChannel();
@@ -158,6 +287,11 @@ class MessageManager {
 				}
 				servedCnt++;
 				outBox.handleServed(receiverID);
+				//#J2ME_EXCLUDE_BEGIN
+				if (budget != null) {
+					budget.release(senderID, receiverID, length);
+				}
+				//#J2ME_EXCLUDE_END
 			}
 		}
 		
@@ -230,10 +364,22 @@ class MessageManager {
 		}
 	}
 
-	// For debugging purpose
+	/**
+	   Return the status of the OutBox: one entry of the form 
+	   <code>(receiver :busy b :message-cnt n :bytes s)</code> for each receiver that
+	   has messages waiting to be delivered.
+	 */
 	String[] getQueueStatus() {
 		return outBox.getStatus();
 	}
+
+	/**
+	   Return the status of the queue of messages waiting to be delivered
+	   to a given receiver. 
+	 */
+	QueueStatus getQueueStatus(AID receiverID) {
+		return outBox.getStatus(receiverID);
+	}
 	
 	// For debugging purpose
 	String getGlobalInfo() {
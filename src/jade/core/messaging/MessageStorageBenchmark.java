@@ -0,0 +1,223 @@
+package jade.core.messaging;
+
+//#J2ME_EXCLUDE_FILE
+//#APIDOC_EXCLUDE_FILE
+
+import jade.core.AID;
+import jade.core.BenchmarkHarness;
+import jade.core.ProfileImpl;
+import jade.lang.acl.ACLMessage;
+import jade.lang.acl.LEAPACLCodec;
+import jade.util.leap.Properties;
+
+import java.io.File;
+
+/**
+ Measure how many undelivered messages per second the
+ <code>FileMessageStorage</code> and the <code>JournalMessageStorage</code>
+ of the <code>PersistentDeliveryService</code> can store, load at startup
+ and delete, when a number of threads store messages for a few receivers
+ concurrently (e.g. during the outage of a popular agent).
+ Before measuring the deletions the benchmark checks that all stored
+ messages are loaded, and after that it checks that none is loaded anymore.
+ Usage:
+ <code>java jade.core.messaging.MessageStorageBenchmark [-n 20000] [-threads 8] [-receivers 4] [-sync true] [-dir ./MessageStorageBenchmark]</code>
+ where
+ <ul>
+ <li><code>n</code> is the number of messages</li>
+ <li><code>threads</code> is the number of threads storing and deleting messages</li>
+ <li><code>receivers</code> is the number of receivers messages are addressed to</li>
+ <li><code>sync</code> if <code>true</code> the journal waits for stored messages to be
+ physically written to disk (see <code>persistent-delivery-journal-sync</code>). Notice that
+ the <code>FileMessageStorage</code> never does that</li>
+ <li><code>dir</code> is the directory where messages are stored. Its content is deleted</li>
+ </ul>
+ @see jade.core.BenchmarkHarness
+ */
+public class MessageStorageBenchmark {
+	private static final String N_MESSAGES = "n";
+	private static final int DEFAULT_N_MESSAGES = 20000;
+
+	private static final String THREADS = "threads";
+	private static final int DEFAULT_THREADS = 8;
+
+	private static final String RECEIVERS = "receivers";
+	private static final int DEFAULT_RECEIVERS = 4;
+
+	private static final String SYNC = "sync";
+
+	private static final String DIR = "dir";
+	private static final String DEFAULT_DIR = "./MessageStorageBenchmark";
+
+	private static final String[] STORAGES = new String[]{"file", "journal"};
+
+	public static void main(String[] args) throws Exception {
+		Properties pp = BenchmarkHarness.parseArguments(args);
+		int n = BenchmarkHarness.getIntProperty(pp, N_MESSAGES, DEFAULT_N_MESSAGES);
+		int nThreads = BenchmarkHarness.getIntProperty(pp, THREADS, DEFAULT_THREADS);
+		int nReceivers = BenchmarkHarness.getIntProperty(pp, RECEIVERS, DEFAULT_RECEIVERS);
+		String sync = pp.getProperty(SYNC, "true");
+		File dir = new File(pp.getProperty(DIR, DEFAULT_DIR));
+
+		GenericMessage[] messages = new GenericMessage[n];
+		AID[] receivers = new AID[n];
+		for (int i = 0; i < n; ++i) {
+			receivers[i] = new AID("receiver"+(i % nReceivers)+"@benchmark", AID.ISGUID);
+			messages[i] = createMessage(i, receivers[i]);
+		}
+
+		System.out.println("----------------------------------");
+		System.out.println(n+" messages, "+nThreads+" threads, "+nReceivers+" receivers, journal sync = "+sync);
+		for (int i = 0; i < STORAGES.length; ++i) {
+			File base = new File(dir, STORAGES[i]);
+			clean(base);
+			base.mkdirs();
+			Properties props = new Properties();
+			props.setProperty(PersistentDeliveryService.PERSISTENT_DELIVERY_BASEDIR, base.getPath());
+			props.setProperty(PersistentDeliveryService.PERSISTENT_DELIVERY_JOURNAL_SYNC, sync);
+
+			MessageStorage storage = createStorage(STORAGES[i], props);
+			String[] names = new String[n];
+			long storeTime = run(storage, messages, receivers, names, nThreads, true);
+
+			// Load the stored messages as a restarted container would do
+			Counter counter = new Counter(messages);
+			long start = System.currentTimeMillis();
+			storage = createStorage(STORAGES[i], props);
+			storage.loadAll(counter);
+			long loadTime = System.currentTimeMillis() - start;
+			if (counter.cnt != n || counter.wrong > 0) {
+				System.out.println("ERROR: "+STORAGES[i]+" loaded "+counter.cnt+" messages ("+counter.wrong+" wrong) instead of "+n);
+				System.exit(1);
+			}
+
+			for (int j = 0; j < n; ++j) {
+				names[j] = counter.names[j];
+			}
+			long deleteTime = run(storage, messages, receivers, names, nThreads, false);
+			counter = new Counter(messages);
+			createStorage(STORAGES[i], props).loadAll(counter);
+			if (counter.cnt != 0) {
+				System.out.println("ERROR: "+STORAGES[i]+" loaded "+counter.cnt+" messages after deleting all of them");
+				System.exit(1);
+			}
+
+			System.out.println("- "+BenchmarkHarness.pad(STORAGES[i], 8)+": store "+BenchmarkHarness.pad(String.valueOf(rate(n, storeTime)), 9)+
+					"load "+BenchmarkHarness.pad(String.valueOf(rate(n, loadTime)), 9)+"delete "+rate(n, deleteTime)+" messages/s");
+		}
+		System.out.println("----------------------------------");
+		System.exit(0);
+	}
+
+	private static MessageStorage createStorage(String type, Properties props) {
+		MessageStorage storage = ("file".equals(type) ? (MessageStorage) new FileMessageStorage() : new JournalMessageStorage());
+		storage.init(new ProfileImpl(props));
+		return storage;
+	}
+
+	/**
+	 Store (or delete) all messages from a number of threads
+	 @return the elapsed time in ms
+	 */
+	private static long run(final MessageStorage storage, final GenericMessage[] messages, final AID[] receivers, final String[] names, int nThreads, final boolean store) throws Exception {
+		final Throwable[] error = new Throwable[1];
+		Thread[] tt = new Thread[nThreads];
+		long start = System.currentTimeMillis();
+		for (int i = 0; i < nThreads; ++i) {
+			final int first = i;
+			final int step = nThreads;
+			tt[i] = new Thread() {
+				public void run() {
+					try {
+						for (int j = first; j < messages.length; j += step) {
+							if (store) {
+								names[j] = storage.store(messages[j], receivers[j]);
+							}
+							else {
+								storage.delete(names[j], receivers[j]);
+							}
+						}
+					}
+					catch (Throwable t) {
+						error[0] = t;
+					}
+				}
+			};
+			tt[i].start();
+		}
+		for (int i = 0; i < nThreads; ++i) {
+			tt[i].join();
+		}
+		if (error[0] != null) {
+			error[0].printStackTrace();
+			System.exit(1);
+		}
+		return System.currentTimeMillis() - start;
+	}
+
+	private static GenericMessage createMessage(int i, AID receiver) {
+		ACLMessage msg = new ACLMessage(ACLMessage.INFORM);
+		AID sender = new AID("sender@benchmark", AID.ISGUID);
+		sender.addAddresses("http://host.domain.com:7778/acc");
+		msg.setSender(sender);
+		msg.addReceiver(receiver);
+		msg.setLanguage("fipa-sl");
+		msg.setOntology("weather-ontology");
+		msg.setConversationId("C"+i);
+		msg.setContent("((forecast :area Europe :horizon 7 :id "+i+"))");
+		return new GenericMessage(msg);
+	}
+
+	private static long rate(int n, long time) {
+		return (n * 1000L) / Math.max(time, 1);
+	}
+
+	private static void clean(File f) {
+		File[] ff = f.listFiles();
+		for (int i = 0; ff != null && i < ff.length; ++i) {
+			clean(ff[i]);
+		}
+		f.delete();
+	}
+
+	/**
+	 Count the loaded messages checking that they are the stored ones and
+	 collect their store names
+	 */
+	private static class Counter implements MessageStorage.LoadListener {
+		private GenericMessage[] messages;
+		private String[] names;
+		private int cnt = 0;
+		private int wrong = 0;
+
+		private Counter(GenericMessage[] messages) {
+			this.messages = messages;
+			names = new String[messages.length];
+		}
+
+		public void loadStarted(String storeName) {
+		}
+
+		public void itemLoaded(String storeName, GenericMessage msg, AID receiver) {
+			cnt++;
+			try {
+				ACLMessage acl = msg.getACLMessage();
+				if (acl == null) {
+					// The FileMessageStorage only restores the payload
+					acl = new LEAPACLCodec().decode(msg.getPayload(), null);
+				}
+				int i = Integer.parseInt(acl.getConversationId().substring(1));
+				if (!acl.toString().equals(messages[i].getACLMessage().toString()) || !receiver.equals(messages[i].getACLMessage().getAllReceiver().next())) {
+					wrong++;
+				}
+				names[i] = storeName;
+			}
+			catch (Exception e) {
+				wrong++;
+			}
+		}
+
+		public void loadEnded(String storeName) {
+		}
+	}
+}
@@ -0,0 +1,51 @@
+/*****************************************************************
+JADE - Java Agent DEvelopment Framework is a framework to develop
+multi-agent systems in compliance with the FIPA specifications.
+Copyright (C) 2000 CSELT S.p.A.
+
+GNU Lesser General Public License
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation,
+version 2.1 of the License.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the
+Free Software Foundation, Inc., 59 Temple Place - Suite 330,
+Boston, MA  02111-1307, USA.
+ *****************************************************************/
+
+package jade.core.messaging;
+
+//#MIDP_EXCLUDE_FILE
+
+import jade.core.AID;
+import jade.core.ServiceHelper;
+
+/**
+ * The MessagingHelper provides methods that allow agents to inspect the 
+ * messages the local <code>MessagingService</code> has not delivered yet,
+ * e.g. to slow down when a receiver does not keep up with them.
+ */
+public interface MessagingHelper extends ServiceHelper {
+	/**
+	 * This constant represents the name of the Messaging Service and must be specified 
+	 * in the <code>getHelper()</code> method of the <code>Agent</code> class to retrieve the helper
+	 * of the local MessagingService.
+	 */
+	public static final String SERVICE_NAME = MessagingSlice.NAME;
+
+	/**
+	 * Return the status of the queue of messages sent by agents living 
+	 * in the local container that are waiting to be delivered to a given receiver.
+	 * @param receiverID The receiver
+	 * @return The number and size of the queued messages
+	 */
+	QueueStatus getQueueStatus(AID receiverID);
+}
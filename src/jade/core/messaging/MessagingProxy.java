@@ -38,6 +38,8 @@ import jade.domain.FIPAAgentManagement.Envelope;
 import jade.mtp.MTPDescriptor;
 import jade.mtp.MTPException;
 
+import jade.util.leap.List;
+
 
 /**
  The remote proxy for the JADE kernel-level service managing
@@ -79,6 +81,44 @@ public class MessagingProxy extends SliceProxy implements MessagingSlice {
 		}
 	}
 	
+	/**
+	 Dispatch a batch of messages to agents living in the container of this slice
+	 by means of a single horizontal command. 
+	 @param msgs The list of <code>GenericMessage</code> objects to dispatch
+	 @param senderIDs The senders of the messages
+	 @param receiverIDs The receivers of the messages
+	 @return A list holding, for each message, null if the message was successfully 
+	 dispatched or the exception that prevented its dispatch. Once the dispatch of 
+	 a message fails, the following messages to the same receiver are not dispatched.
+	 */
+	public List dispatchLocallyBatch(List msgs, AID[] senderIDs, AID[] receiverIDs) throws IMTPException {
+		try {
+			GenericCommand cmd = new GenericCommand(H_DISPATCHLOCALLYBATCH, NAME, null);
+			cmd.addParam(msgs);
+			cmd.addParam(senderIDs);
+			cmd.addParam(receiverIDs);
+			
+			Node n = getNode();
+			Object result = n.accept(cmd);
+			if((result != null) && (result instanceof Throwable)) {
+				if(result instanceof IMTPException) {
+					throw (IMTPException)result;
+				}
+				else {
+					throw new IMTPException("An undeclared exception was thrown", (Throwable)result);
+				}
+			}
+			if (!(result instanceof List)) {
+				// The remote container does not support batches
+				throw new IMTPException("Unexpected result for batch dispatch: "+result);
+			}
+			return (List) result;
+		}
+		catch(ServiceException se) {
+			throw new IMTPException("Unable to access remote node", se);
+		}
+	}
+	
 	public void routeOut(Envelope env, byte[] payload,AID receiverID, String address) throws IMTPException, MTPException {
 		try {
 			GenericCommand cmd = new GenericCommand(H_ROUTEOUT, NAME, null);
@@ -37,6 +37,7 @@ import jade.core.GenericCommand;
 import jade.core.Service;
 import jade.core.BaseService;
 import jade.core.ServiceException;
+import jade.core.ServiceHelper;
 import jade.core.Sink;
 import jade.core.Filter;
 import jade.core.Node;
@@ -97,6 +98,44 @@ public class MessagingService extends BaseService implements MessageManager.Chan
 	public static final String CACHE_SIZE = "jade_core_messaging_MessagingService_cachesize";
 	public static final int CACHE_SIZE_DEFAULT = 100;
 	
+	//#J2ME_EXCLUDE_BEGIN
+	/**
+	 The name of the property indicating for how long (in ms) an agent
+	 the Main Container reported as unknown is remembered by a peripheral
+	 container. Messages sent to that agent in the meanwhile fail 
+	 immediately without asking the Main Container again.
+	 Default is 0 (unknown agents are not remembered).
+	 */
+	public static final String UNKNOWN_CACHE_TTL = "jade_core_messaging_MessagingService_unknowncachettl";
+	public static final int UNKNOWN_CACHE_TTL_DEFAULT = 0;
+	
+	/**
+	 The name of the property indicating whether or not messages received 
+	 from other containers in the LEAP representation must be decoded lazily.
+	 When this is the case only the performative, sender, ontology, protocol, 
+	 conversation-id and in-reply-to slots are decoded on reception and the 
+	 other slots are decoded when first accessed. Default is false.
+	 */
+	public static final String LAZY_DECODING = "jade_core_messaging_MessagingService_lazydecoding";
+	
+	/**
+	 The name of the property indicating the maximum number of messages that can 
+	 be dispatched to a remote container by means of a single horizontal command.
+	 Values greater than 1 activate batched dispatch: messages to be delivered 
+	 to agents living in the same remote container are coalesced into a batch 
+	 that is sent when it is full or when the batch window expires.
+	 All containers in the platform must support batched dispatch. 
+	 Default is 0 (no batching).
+	 */
+	public static final String BATCH_SIZE = "jade_core_messaging_MessagingService_batchsize";
+	/**
+	 The name of the property indicating the maximum time (in ms) a message
+	 can wait in a batch before the batch is sent. Default is 5.
+	 */
+	public static final String BATCH_WINDOW = "jade_core_messaging_MessagingService_batchwindow";
+	public static final int BATCH_WINDOW_DEFAULT = 5;
+	//#J2ME_EXCLUDE_END
+	
 	public static final String ATTACH_PLATFORM_INFO = "jade_core_messaging_MessagingService_attachplatforminfo";
 	public static final String PLATFORM_IDENTIFIER = "x-sender-platform-identifer";
 	public static final String MTP_IDENTIFIER = "x-sender-mtp-identifer";
@@ -129,7 +168,12 @@ public class MessagingService extends BaseService implements MessageManager.Chan
 	private Filter encInFilter;
 	
 	// The cached AID -> MessagingSlice associations
+	//#J2ME_EXCLUDE_BEGIN
+	private SliceCache cachedSlices;
+	//#J2ME_EXCLUDE_END
+	/*#J2ME_INCLUDE_BEGIN
 	private Map cachedSlices; 
+	#J2ME_INCLUDE_END*/
 	
 	// The routing table mapping MTP addresses to their hosting slice
 	private RoutingTable routes;
@@ -144,6 +188,14 @@ public class MessagingService extends BaseService implements MessageManager.Chan
 	// The component managing asynchronous message delivery and retries
 	private MessageManager myMessageManager;
 	
+	//#J2ME_EXCLUDE_BEGIN
+	// The component coalescing messages to remote containers into batches. Null if batching is not active
+	private MessageBatcher myBatcher;
+	
+	// The proxy to the local slice used to dispatch the messages of a received batch
+	private volatile MessagingProxy localDispatcher;
+	//#J2ME_EXCLUDE_END
+	
 	
 	public static class UnknownACLEncodingException extends NotFoundException {
 		UnknownACLEncodingException(String msg) {
@@ -191,7 +243,19 @@ public class MessagingService extends BaseService implements MessageManager.Chan
 		catch (Exception e) {
 			// Keep default
 		}
+		//#J2ME_EXCLUDE_BEGIN
+		long unknownTTL = UNKNOWN_CACHE_TTL_DEFAULT;
+		try {
+			unknownTTL = Long.parseLong(myProfile.getParameter(UNKNOWN_CACHE_TTL, null));
+		}
+		catch (Exception e) {
+			// Keep default
+		}
+		cachedSlices = new SliceCache(size, unknownTTL);
+		//#J2ME_EXCLUDE_END
+		/*#J2ME_INCLUDE_BEGIN
 		cachedSlices = new HashCache(size);
+		#J2ME_INCLUDE_END*/
 		
 		routes = new RoutingTable(myProfile.getBooleanProperty(ATTACH_PLATFORM_INFO, false));
 		
@@ -205,8 +269,36 @@ public class MessagingService extends BaseService implements MessageManager.Chan
 		// create the command filters related to the encoding of ACL messages
 		encOutFilter = new OutgoingEncodingFilter(messageEncodings, myContainer, this);
 		encInFilter = new IncomingEncodingFilter(messageEncodings, this);
+		//#J2ME_EXCLUDE_BEGIN
+		((IncomingEncodingFilter) encInFilter).setLazyDecoding(myProfile.getBooleanProperty(LAZY_DECODING, false));
+		//#J2ME_EXCLUDE_END
 		
 		myMessageManager = MessageManager.instance(p);
+		
+		//#J2ME_EXCLUDE_BEGIN
+		int batchSize = 0;
+		try {
+			batchSize = Integer.parseInt(myProfile.getParameter(BATCH_SIZE, null));
+		}
+		catch (Exception e) {
+			// Keep default
+		}
+		if (batchSize > 1) {
+			long batchWindow = BATCH_WINDOW_DEFAULT;
+			try {
+				batchWindow = Long.parseLong(myProfile.getParameter(BATCH_WINDOW, null));
+			}
+			catch (Exception e) {
+				// Keep default
+			}
+			myBatcher = new MessageBatcher(batchSize, batchWindow, new MessageBatcher.Handler() {
+				public void deliverUnbatched(GenericMessage msg, AID receiverID) {
+					deliverNowUnbatched(msg, receiverID);
+				}
+			});
+			myLogger.log(Logger.CONFIG, "Batched dispatch active: batch-size = "+batchSize+", batch-window = "+batchWindow);
+		}
+		//#J2ME_EXCLUDE_END
 	}
 	
 	/**
@@ -316,6 +408,12 @@ public class MessagingService extends BaseService implements MessageManager.Chan
 	
 	// kindly provided by David Bernstein, 15/6/2005
 	public void shutdown() {
+		//#J2ME_EXCLUDE_BEGIN
+		if (myBatcher != null) {
+			myBatcher.shutdown();
+		}
+		//#J2ME_EXCLUDE_END
+		
 		// clone addresses (externally because leap list doesn't
 		// implement Cloneable) so don't get concurrent modification
 		// exception on the list as the MTPs are being uninstalled
@@ -381,6 +479,13 @@ public class MessagingService extends BaseService implements MessageManager.Chan
 		return localSlice;
 	}
 	
+	/**
+	 * Return the MessagingHelper for a given agent
+	 */
+	public ServiceHelper getHelper(Agent a) throws ServiceException {
+		return new MessagingHelperImpl();
+	}
+	
 	
 	/**
 	 * Access the command filter this service needs to perform its
@@ -520,8 +625,8 @@ public class MessagingService extends BaseService implements MessageManager.Chan
 				myLogger.log(Logger.INFO, "MessagingService source sink handling message "+MessageManager.stringify(msg)+" for receiver "+dest.getName()+". TraceID = "+msg.getTraceID());
 			}
 			if (needSynchDelivery(msg)) {
-				// Synchronous delivery: skip the MessageManager 
-				deliverNow(msg, dest);
+				// Synchronous delivery: skip the MessageManager (and batching)
+				deliverNowUnbatched(msg, dest);
 			}
 			else {
 				// Normal (asynchronous) delivery
@@ -1033,6 +1138,15 @@ public class MessagingService extends BaseService implements MessageManager.Chan
 					gCmd.addParam(receiverID);
 					result = gCmd;
 				}
+				//#J2ME_EXCLUDE_BEGIN
+				else if(cmdName.equals(MessagingSlice.H_DISPATCHLOCALLYBATCH)) {
+					List msgs = (List)params[0];
+					AID[] senderIDs = (AID[])params[1];
+					AID[] receiverIDs = (AID[])params[2];
+					
+					cmd.setReturnValue(dispatchBatchLocally(msgs, senderIDs, receiverIDs));
+				}
+				//#J2ME_EXCLUDE_END
 				else if(cmdName.equals(MessagingSlice.H_ROUTEOUT)) {
 					Envelope env = (Envelope)params[0];
 					byte[] payload = (byte[])params[1];
@@ -1102,6 +1216,41 @@ public class MessagingService extends BaseService implements MessageManager.Chan
 		}
 		
 		// Private methods
+		//#J2ME_EXCLUDE_BEGIN
+		/**
+		 Dispatch the messages of a batch one by one (and in order) as if each 
+		 of them was received by means of an H_DISPATCHLOCALLY command.
+		 */
+		private List dispatchBatchLocally(List msgs, AID[] senderIDs, AID[] receiverIDs) throws IMTPException {
+			if (localDispatcher == null) {
+				localDispatcher = (MessagingProxy) getIMTPManager().createSliceProxy(getName(), getHorizontalInterface(), getLocalNode());
+			}
+			List results = new jade.util.leap.ArrayList(msgs.size());
+			// The receivers a message of this batch could not be dispatched to
+			java.util.HashSet<AID> failed = null;
+			for (int i = 0; i < msgs.size(); ++i) {
+				if (failed != null && failed.contains(receiverIDs[i])) {
+					// Do not overtake the failed message: the sender will deliver this one again after it
+					results.add(new IMTPException("A previous message to "+receiverIDs[i].getName()+" in the same batch could not be dispatched"));
+					continue;
+				}
+				try {
+					localDispatcher.dispatchLocally(senderIDs[i], (GenericMessage) msgs.get(i), receiverIDs[i]);
+					results.add(null);
+				}
+				catch (Throwable t) {
+					// The sender will deliver this message again without batching 
+					results.add(t);
+					if (failed == null) {
+						failed = new java.util.HashSet<AID>();
+					}
+					failed.add(receiverIDs[i]);
+				}
+			}
+			return results;
+		}
+		//#J2ME_EXCLUDE_END
+		
 		private void routeOut(Envelope env, byte[] payload, AID receiverID, String address) throws IMTPException, MTPException {
 			RoutingTable.OutPort out = routes.lookup(address);
 			//log("Routing message to "+receiverID.getName()+" towards port "+out, 2);
@@ -1172,6 +1321,58 @@ public class MessagingService extends BaseService implements MessageManager.Chan
 	
 	// Entry point for the ACL message delivery
 	public void deliverNow(GenericMessage msg, AID receiverID) {
+		//#J2ME_EXCLUDE_BEGIN
+		if (myBatcher != null) {
+			if (dispatchBatched(msg, receiverID)) {
+				return;
+			}
+			// Do not overtake messages to the same receiver still waiting in a batch
+			myBatcher.flush(receiverID);
+		}
+		//#J2ME_EXCLUDE_END
+		deliverNowUnbatched(msg, receiverID);
+	}
+	
+	//#J2ME_EXCLUDE_BEGIN
+	/**
+	 Add a message to the batch for the remote container its receiver lives in.
+	 @return false if the message can't be batched (e.g. the receiver lives locally
+	 or its location is not known) and must be delivered as usual. 
+	 */
+	private boolean dispatchBatched(GenericMessage msg, AID receiverID) {
+		if (msg.hasForeignReceiver() || msg.getTraceID() != null || msg.getSenderPrincipal() != null || msg.getSenderCredentials() != null) {
+			return false;
+		}
+		try {
+			String localName = myContainer.getID().getName();
+			String containerName = null;
+			Slice targetSlice = null;
+			MainContainer impl = myContainer.getMain();
+			if (impl != null) {
+				containerName = impl.getContainerID(receiverID).getName();
+				if (!containerName.equals(localName)) {
+					targetSlice = getSlice(containerName);
+				}
+			}
+			else {
+				targetSlice = cachedSlices.get(receiverID);
+				if (targetSlice != null) {
+					containerName = targetSlice.getNode().getName();
+				}
+			}
+			if (targetSlice instanceof MessagingProxy && !localName.equals(containerName)) {
+				myBatcher.dispatch(containerName, (MessagingProxy) targetSlice, msg, receiverID);
+				return true;
+			}
+		}
+		catch (Exception e) {
+			// Let the normal delivery process handle the problem
+		}
+		return false;
+	}
+	//#J2ME_EXCLUDE_END
+	
+	private void deliverNowUnbatched(GenericMessage msg, AID receiverID) {
 		if (msg.getTraceID() != null) {
 			myLogger.log(Logger.INFO, msg.getTraceID()+" - Serving message delivery");
 		}
@@ -1291,6 +1492,11 @@ public class MessagingService extends BaseService implements MessageManager.Chan
 	
 	
 	private void deliverUntilOK(GenericMessage msg, AID receiverID) throws IMTPException, NotFoundException, ServiceException, JADESecurityException {
+		//#J2ME_EXCLUDE_BEGIN
+		if (cachedSlices.isUnknown(receiverID)) {
+			throw new NotFoundException("Agent "+receiverID.getName()+" recently reported as not found");
+		}
+		//#J2ME_EXCLUDE_END
 		while (true) {
 			ContainerID cid = null;
 			try {
@@ -1304,6 +1510,12 @@ public class MessagingService extends BaseService implements MessageManager.Chan
 					cid = mainSlice.getAgentLocation(receiverID);
 				}
 			}
+			//#J2ME_EXCLUDE_BEGIN
+			catch (NotFoundException nfe) {
+				cachedSlices.putUnknown(receiverID);
+				throw nfe;
+			}
+			//#J2ME_EXCLUDE_END
 			catch (ServiceException se) {
 				// This container is no longer able to access the Main --> before propagating the exception
 				// try to see if the receiver lives locally
@@ -1574,6 +1786,18 @@ public class MessagingService extends BaseService implements MessageManager.Chan
 		return null; 
 	}
 	
+	/**
+	 * Inner class MessagingHelperImpl
+	 */
+	private class MessagingHelperImpl implements MessagingHelper {
+		public void init(Agent a) {
+		}
+		
+		public QueueStatus getQueueStatus(AID receiverID) {
+			return myMessageManager.getQueueStatus(receiverID);
+		}
+	} // END of inner class MessagingHelperImpl
+	
 	// For debugging purpose
 	public String[] getMessageManagerQueueStatus() {
 		return myMessageManager.getQueueStatus();
@@ -1594,8 +1818,38 @@ public class MessagingService extends BaseService implements MessageManager.Chan
 		return myMessageManager.getThreadPool();
 	}
 	
+	//#J2ME_EXCLUDE_BEGIN
+	// For debugging purpose
+	public String getSliceCacheInfo() {
+		return (cachedSlices != null ? cachedSlices.toString() : null);
+	}
+	
+	public String dump(String key) {
+		return super.dump(key)+(cachedSlices != null ? cachedSlices.toString()+"\n" : "");
+	}
+	
+	/**
+	 Forget the cached location of an agent. This is called when 
+	 the agent is born, dies or moves.
+	 */
+	void invalidateCachedSlice(AID id) {
+		if (cachedSlices != null) {
+			cachedSlices.invalidate(id);
+		}
+	}
+	//#J2ME_EXCLUDE_END
+	
 	protected void clearCachedSlice(String name) {
 		if (cachedSlices != null){
+			//#J2ME_EXCLUDE_BEGIN
+			if (!MAIN_SLICE.equals(name)) {
+				// Only the agents living in the given container are affected
+				cachedSlices.removeSlice(name);
+				myLogger.log(Logger.FINE, "Clearing cache entries for slice "+name);
+				super.clearCachedSlice(name);
+				return;
+			}
+			//#J2ME_EXCLUDE_END
 			cachedSlices.clear();
 			myLogger.log(Logger.INFO, "Clearing cache");
 		}
@@ -110,6 +110,11 @@ public interface MessagingSlice extends Service.Slice {
   static final String H_DEADMTP = "7";
   static final String H_ADDROUTE = "8";
   static final String H_REMOVEROUTE = "9";
+  /**
+     Dispatch a batch of messages to agents living in the target container.
+     This is only issued by <code>MessagingProxy.dispatchLocallyBatch()</code>.
+  */
+  static final String H_DISPATCHLOCALLYBATCH = "10";
 
   void dispatchLocally(AID senderAID, GenericMessage msg, AID receiverID) throws IMTPException, NotFoundException, JADESecurityException;
   void routeOut(Envelope env, byte[] payload, AID receiverID, String address) throws IMTPException, MTPException;
@@ -10,21 +10,24 @@ import jade.util.leap.HashMap;
 import jade.core.AID;
 import jade.core.messaging.MessageManager.PendingMsg;
 import jade.core.messaging.MessageManager.Channel;
-import jade.lang.acl.ACLMessage;
 
 import jade.util.Logger;
 
 /**
  * Object to mantain message to send and
  * to preserve the order for sending.
+ * All operations are serialized on the OutBox monitor.
  * 
+ * @see StripedOutBox
  * @author Elisabetta Cortese - TILAB
  */
 
-class OutBox {
+class OutBox extends BaseOutBox {
 	private int size = 0;
 	private int maxSize; 
 	private boolean overMaxSize = false;
+	// When false senders are never delayed (the MessageManager applies its own backpressure)
+	private boolean throttling = true;
 	
 	// The massages to be delivered organized as an hashtable that maps
 	// a receiver AID into the Box of messages to be delivered to that receiver
@@ -56,12 +59,7 @@ class OutBox {
 		boolean logActivated = myLogger.isLoggable(Logger.FINER);
 		if (logActivated)
 			myLogger.log(Logger.FINER,"Entering addLast for receiver "+receiverID.getName());
-		if (msg.getPayload() != null && msg.isModifiable()) {
-			ACLMessage acl = msg.getACLMessage();
-			if (acl != null) {
-				acl.setContent(null);
-			}
-		}
+		releaseContent(msg);
 		
 		// This must fall outside the synchronized block because the method calls Thread.sleep
 		increaseSize(msg.length());
@@ -109,12 +107,32 @@ class OutBox {
 	
 
 
+	/**
+	 * Remove the oldest message waiting to be delivered to the indicated receiver.
+	 * The message currently being delivered by a deliverer (if any) is not affected.
+	 * This is used by the MessageManager to implement the drop-oldest backpressure policy.
+	 * @return the removed message or null if no message is waiting for that receiver
+	 */
+	synchronized PendingMsg removeFirst(AID receiverID) {
+		Box b = (Box) messagesByReceiver.get(receiverID);
+		if (b == null || b.isEmpty()) {
+			return null;
+		}
+		PendingMsg pm = b.removeFirst();
+		decreaseSize(pm.getMessage().length());
+		if (b.isEmpty() && !b.isBusy()) {
+			messagesByReceiver.remove(receiverID);
+			messagesByOrder.remove(b);
+		}
+		return pm;
+	}
+
 	/**
 	 * Get the first message for the first idle (i.e. not busy) receiver.
 	 * This is executed by a Deliverer thread just before delivering 
 	 * a message.
 	 */
-	synchronized final PendingMsg get(){
+	synchronized PendingMsg get(){
 		Box b = null;
 		// Wait until an idle (i.e. not busy) receiver is found
 		while( (b = getNextIdle()) == null ){
@@ -162,7 +180,7 @@ class OutBox {
 	 * If the Box of messages for that receiver is now empty --> remove it.
 	 * Otherwise just mark it as idel (not busy).
    */
-	synchronized final void handleServed( AID receiverID ){
+	synchronized void handleServed( AID receiverID ){
 		servedCnt++;
 		boolean logActivated = myLogger.isLoggable(Logger.FINER);
 		if (logActivated)
@@ -183,6 +201,14 @@ class OutBox {
 			myLogger.log(Logger.FINER,"Exiting handleServed for "+receiverID.getName());
 	}
 
+	/**
+	 * Enable/disable the delay of senders when the size of this OutBox
+	 * exceeds its maximum size.
+	 */
+	void setThrottling(boolean throttling) {
+		this.throttling = throttling;
+	}
+	
 	private void increaseSize(int k) {
 		long sleepTime = 0;
 		synchronized (this) {
@@ -192,7 +218,9 @@ class OutBox {
 					myLogger.log(Logger.WARNING, "MessageManager queue size > "+maxSize);
 					overMaxSize = true;
 				}
-				sleepTime = (1 + ((size - maxSize) / 1000000)) * 100;
+				if (throttling) {
+					sleepTime = (1 + ((size - maxSize) / 1000000)) * 100;
+				}
 			}
 		}
 			if (sleepTime > 0) {
@@ -232,6 +260,7 @@ class OutBox {
 	    private boolean busy;
 	    private String owner;
 	    private final List messages;
+	    private int bytes;
 		
 		public Box(AID r) {
 			receiver = r;
@@ -256,19 +285,26 @@ class OutBox {
 		
 		private void addLast(PendingMsg pm) {
 			messages.add(pm);
+			bytes += pm.getMessage().length();
 		}
 		
 		private PendingMsg removeFirst() {
-			return (PendingMsg) messages.remove(0);
+			PendingMsg pm = (PendingMsg) messages.remove(0);
+			bytes -= pm.getMessage().length();
+			return pm;
 		}
 		
 		private boolean isEmpty() {
 			return messages.isEmpty();
 		}	
 		
+		private QueueStatus getStatus() {
+			return new QueueStatus(receiver, busy, messages.size(), bytes);
+		}
+		
 		// For debugging purpose
 		public String toString() {
-			return "("+receiver.getName()+" :busy "+busy+ (owner != null ? " :owner "+owner : "") + " :message-cnt "+messages.size()+")";
+			return "("+receiver.getName()+" :busy "+busy+ (owner != null ? " :owner "+owner : "") + " :message-cnt "+messages.size()+" :bytes "+bytes+")";
 		}
 	} // END of inner class Box
 	
@@ -283,6 +319,14 @@ class OutBox {
 		return status;
 	}	
 	
+	/**
+	 * @return the status of the Box of messages for the indicated receiver
+	 */
+	synchronized QueueStatus getStatus(AID receiverID) {
+		Box b = (Box) messagesByReceiver.get(receiverID);
+		return (b != null ? b.getStatus() : new QueueStatus(receiverID, false, 0, 0));
+	}
+	
 	// For debugging purpose 
 	int getSize() {
 		return size;
@@ -123,6 +123,14 @@ public class OutgoingEncodingFilter extends Filter {
 				ee.printStackTrace();
 			}            
 		}
+		//#J2ME_EXCLUDE_BEGIN
+		else if (name.equals(jade.core.management.AgentManagementSlice.INFORM_CREATED) || 
+				name.equals(jade.core.management.AgentManagementSlice.INFORM_KILLED) || 
+				name.equals(jade.core.mobility.AgentMobilityHelper.INFORM_MOVED)) {
+			// The location of the agent changed: the slice cached for it (if any) is no longer valid
+			myService.invalidateCachedSlice((AID) params[0]);
+		}
+		//#J2ME_EXCLUDE_END
 		return true;
 	}
 	
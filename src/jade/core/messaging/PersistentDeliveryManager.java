@@ -63,10 +63,12 @@ class PersistentDeliveryManager {
 	private static final long DEFAULT_SENDFAILUREPERIOD = 60*1000; // One minute
 	
 	private static final String FILE_STORAGE_SHORTCUT = "file";
+	private static final String JOURNAL_STORAGE_SHORTCUT = "journal";
 
 	// Default storage class
 	private static final String DEFAULT_STORAGE = "jade.core.messaging.PersistentDeliveryManager$DummyStorage";
 	private static final String FILE_STORAGE = "jade.core.messaging.FileMessageStorage";
+	private static final String JOURNAL_STORAGE = "jade.core.messaging.JournalMessageStorage";
 
 	private static class DeliveryItem {
 
@@ -181,6 +183,9 @@ class PersistentDeliveryManager {
 			if (FILE_STORAGE_SHORTCUT.equalsIgnoreCase(storageClass)) {
 				storageClass = FILE_STORAGE;
 			}
+			else if (JOURNAL_STORAGE_SHORTCUT.equalsIgnoreCase(storageClass)) {
+				storageClass = JOURNAL_STORAGE;
+			}
 			storage = (MessageStorage)Class.forName(storageClass).newInstance();
 			storage.init(p);
 
@@ -235,6 +240,9 @@ class PersistentDeliveryManager {
 	public void storeMessage(String storeName, GenericMessage msg, AID receiver) throws IOException {
 
 		// Store the ACL message and its receiver for later re-delivery...
+		// This is done outside the lock on the pending messages so that 
+		// storages can serve concurrent stores in parallel
+		String tmpName = storage.store(msg, receiver);
 		synchronized(pendingMessages) {
 			List msgs = (List)pendingMessages.get(receiver);
 			if(msgs == null) {
@@ -242,7 +250,6 @@ class PersistentDeliveryManager {
 				pendingMessages.put(receiver, msgs);
 			}
 
-			String tmpName = storage.store(msg, receiver);
 			msgs.add(new DeliveryItem(msg, receiver, deliveryChannel, tmpName));
 		}
 
@@ -83,7 +83,12 @@ public class PersistentDeliveryService extends BaseService {
      The supported values for this parameter are:
      <ul>
      <li><b>file</b> - A directory tree on the local filesystem is used.</li>
+     <li><b>journal</b> - A sequence of append-only files on the local 
+     filesystem is used. This is much faster than <b>file</b> when many 
+     messages are stored.</li>
      </ul>
+     The fully qualified name of a class implementing 
+     <code>MessageStorage</code> can be specified as well.
      If this property is not specified undelivered ACL messages are
      kept in memory and not persisted at all.
 	 */
@@ -92,11 +97,27 @@ public class PersistentDeliveryService extends BaseService {
 	/**
      This constant is the name of the property whose value contains
      the root of the directory tree that is used to persist
-     undelivered ACL messages when the <i>file</i> storage
+     undelivered ACL messages when the <i>file</i> or <i>journal</i> storage
      method is selected.
 	 */
 	public static final String PERSISTENT_DELIVERY_BASEDIR = "persistent-delivery-basedir";
 
+	/**
+     This constant is the name of the property whose value contains the 
+     size in bytes beyond which the <i>journal</i> storage method starts a 
+     new file. Default is 16 MB.
+	 */
+	public static final String PERSISTENT_DELIVERY_JOURNAL_SEGMENTSIZE = "persistent-delivery-journal-segmentsize";
+
+	/**
+     This constant is the name of the property whose value indicates 
+     whether or not the <i>journal</i> storage method must wait for 
+     stored messages to be physically written to disk (<code>true</code>,
+     default) before returning. If <code>false</code> messages stored 
+     shortly before a crash of the host may be lost.
+	 */
+	public static final String PERSISTENT_DELIVERY_JOURNAL_SYNC = "persistent-delivery-journal-sync";
+
 
 	static final String ACL_USERDEF_DUE_DATE = "JADE-persistentdelivery-duedate";
 
@@ -0,0 +1,78 @@
+/*****************************************************************
+JADE - Java Agent DEvelopment Framework is a framework to develop
+multi-agent systems in compliance with the FIPA specifications.
+Copyright (C) 2000 CSELT S.p.A.
+
+GNU Lesser General Public License
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation,
+version 2.1 of the License.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the
+Free Software Foundation, Inc., 59 Temple Place - Suite 330,
+Boston, MA  02111-1307, USA.
+ *****************************************************************/
+
+package jade.core.messaging;
+
+//#MIDP_EXCLUDE_FILE
+
+import jade.core.AID;
+
+/**
+ * The messages waiting to be delivered to a given receiver by the 
+ * <code>MessagingService</code> of the local container. The message
+ * currently being delivered (if any) is not included.
+ * 
+ * @see MessagingHelper#getQueueStatus(AID)
+ */
+public class QueueStatus {
+	private final AID receiverID;
+	private final boolean busy;
+	private final int messageCnt;
+	private final int bytes;
+
+	QueueStatus(AID receiverID, boolean busy, int messageCnt, int bytes) {
+		this.receiverID = receiverID;
+		this.busy = busy;
+		this.messageCnt = messageCnt;
+		this.bytes = bytes;
+	}
+
+	public AID getReceiver() {
+		return receiverID;
+	}
+
+	/**
+	 * @return true if a message is currently being delivered to the receiver
+	 */
+	public boolean isBusy() {
+		return busy;
+	}
+
+	/**
+	 * @return the number of messages waiting to be delivered
+	 */
+	public int getMessageCnt() {
+		return messageCnt;
+	}
+
+	/**
+	 * @return the size in bytes of the messages waiting to be delivered
+	 */
+	public int getBytes() {
+		return bytes;
+	}
+
+	public String toString() {
+		return "("+receiverID.getName()+" :busy "+busy+" :message-cnt "+messageCnt+" :bytes "+bytes+")";
+	}
+}
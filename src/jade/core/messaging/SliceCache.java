@@ -0,0 +1,271 @@
+/*****************************************************************
+ JADE - Java Agent DEvelopment Framework is a framework to develop
+ multi-agent systems in compliance with the FIPA specifications.
+ Copyright (C) 2000 CSELT S.p.A.
+
+ GNU Lesser General Public License
+
+ This library is free software; you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public
+ License as published by the Free Software Foundation,
+ version 2.1 of the License.
+
+ This library is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ Lesser General Public License for more details.
+
+ You should have received a copy of the GNU Lesser General Public
+ License along with this library; if not, write to the
+ Free Software Foundation, Inc., 59 Temple Place - Suite 330,
+ Boston, MA  02111-1307, USA.
+ *****************************************************************/
+
+package jade.core.messaging;
+
+//#J2ME_EXCLUDE_FILE
+
+import jade.core.AID;
+import jade.core.ServiceException;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ The cache of the AID -> MessagingSlice associations used by the
+ MessagingService on peripheral containers to avoid asking the Main
+ Container where a receiver lives for each message.
+ <br>
+ The cache is split into a number of segments, each one protected by its
+ own lock and managed according to an LRU policy, so that threads
+ delivering messages to different receivers seldom contend.
+ Besides the positive entries the cache can keep, for a short time,
+ the AIDs the Main Container reported as unknown: this way a flood of
+ messages to a dead agent does not turn into a flood of
+ <code>getAgentLocation()</code> requests to the Main Container.
+ */
+class SliceCache {
+	private static final int MAX_SEGMENTS = 16;
+	// Avoid segments so small that the LRU policy becomes meaningless
+	private static final int MIN_SEGMENT_SIZE = 32;
+
+	private final Segment[] segments;
+	private final int segmentMask;
+
+	// AID -> expiration time of the negative entry
+	private final ConcurrentHashMap<AID, Long> unknown = new ConcurrentHashMap<AID, Long>();
+	private final long unknownTTL;
+	private final int maxUnknown;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+	private final AtomicLong unknownHits = new AtomicLong();
+
+	/**
+	 @param size The maximum number of AID -> MessagingSlice associations
+	 @param unknownTTL The time (in ms) an AID reported as unknown is
+	 remembered. 0 or less means unknown AIDs are never remembered.
+	 */
+	SliceCache(int size, long unknownTTL) {
+		if (size < 1) {
+			size = 1;
+		}
+		int n = 1;
+		while (n < MAX_SEGMENTS && (n * 2) * MIN_SEGMENT_SIZE <= size) {
+			n *= 2;
+		}
+		segments = new Segment[n];
+		int segmentSize = (size + n - 1) / n;
+		for (int i = 0; i < n; ++i) {
+			segments[i] = new Segment(segmentSize);
+		}
+		segmentMask = n - 1;
+		this.unknownTTL = unknownTTL;
+		maxUnknown = size;
+	}
+
+	MessagingSlice get(AID id) {
+		MessagingSlice s = segmentFor(id).get(id);
+		if (s != null) {
+			hits.incrementAndGet();
+		}
+		else {
+			misses.incrementAndGet();
+		}
+		return s;
+	}
+
+	void put(AID id, MessagingSlice s) {
+		unknown.remove(id);
+		segmentFor(id).put(id, s);
+	}
+
+	MessagingSlice remove(AID id) {
+		return segmentFor(id).remove(id);
+	}
+
+	/**
+	 Forget everything about a given agent. This is called when the agent
+	 is born, dies or moves.
+	 */
+	void invalidate(AID id) {
+		unknown.remove(id);
+		segmentFor(id).remove(id);
+	}
+
+	/**
+	 Remove all associations pointing to the slice of a given container
+	 */
+	void removeSlice(String containerName) {
+		for (int i = 0; i < segments.length; ++i) {
+			segments[i].removeSlice(containerName);
+		}
+	}
+
+	void clear() {
+		for (int i = 0; i < segments.length; ++i) {
+			segments[i].clear();
+		}
+		unknown.clear();
+	}
+
+	/**
+	 Remember that the Main Container reported a given agent as unknown
+	 */
+	void putUnknown(AID id) {
+		if (unknownTTL > 0) {
+			long now = System.currentTimeMillis();
+			if (unknown.size() >= maxUnknown) {
+				purgeUnknown(now);
+			}
+			if (unknown.size() < maxUnknown) {
+				unknown.put(id, new Long(now + unknownTTL));
+			}
+		}
+	}
+
+	/**
+	 @return <code>true</code> if the Main Container recently reported
+	 the given agent as unknown
+	 */
+	boolean isUnknown(AID id) {
+		if (unknownTTL <= 0 || unknown.isEmpty()) {
+			return false;
+		}
+		Long expiration = unknown.get(id);
+		if (expiration != null) {
+			if (expiration.longValue() > System.currentTimeMillis()) {
+				unknownHits.incrementAndGet();
+				return true;
+			}
+			unknown.remove(id, expiration);
+		}
+		return false;
+	}
+
+	long getHits() {
+		return hits.get();
+	}
+
+	long getMisses() {
+		return misses.get();
+	}
+
+	long getEvictions() {
+		return evictions.get();
+	}
+
+	long getUnknownHits() {
+		return unknownHits.get();
+	}
+
+	int size() {
+		int size = 0;
+		for (int i = 0; i < segments.length; ++i) {
+			size += segments[i].size();
+		}
+		return size;
+	}
+
+	public String toString() {
+		return "SliceCache [segments="+segments.length+", size="+size()+", unknown="+unknown.size()+", hits="+hits.get()+", misses="+misses.get()+", evictions="+evictions.get()+", unknown-hits="+unknownHits.get()+"]";
+	}
+
+	private void purgeUnknown(long now) {
+		Iterator<Map.Entry<AID, Long>> it = unknown.entrySet().iterator();
+		while (it.hasNext()) {
+			if (it.next().getValue().longValue() <= now) {
+				it.remove();
+			}
+		}
+	}
+
+	private Segment segmentFor(AID id) {
+		int h = id.hashCode();
+		// Spread the bits of the hash code as the lower ones select the segment
+		h ^= (h >>> 16);
+		return segments[h & segmentMask];
+	}
+
+
+	/**
+	 Inner class Segment.
+	 An LRU map holding a portion of the cached associations
+	 */
+	private class Segment extends LinkedHashMap<AID, MessagingSlice> {
+		private final int maxSize;
+
+		private Segment(int maxSize) {
+			super(16, 0.75f, true);
+			this.maxSize = maxSize;
+		}
+
+		protected boolean removeEldestEntry(Map.Entry<AID, MessagingSlice> eldest) {
+			if (size() > maxSize) {
+				evictions.incrementAndGet();
+				return true;
+			}
+			return false;
+		}
+
+		private synchronized MessagingSlice get(AID id) {
+			return super.get(id);
+		}
+
+		public synchronized MessagingSlice put(AID id, MessagingSlice s) {
+			return super.put(id, s);
+		}
+
+		private synchronized MessagingSlice remove(AID id) {
+			return super.remove(id);
+		}
+
+		public synchronized void clear() {
+			super.clear();
+		}
+
+		public synchronized int size() {
+			return super.size();
+		}
+
+		private synchronized void removeSlice(String containerName) {
+			Iterator<MessagingSlice> it = values().iterator();
+			while (it.hasNext()) {
+				MessagingSlice s = it.next();
+				try {
+					if (containerName.equals(s.getNode().getName())) {
+						it.remove();
+					}
+				}
+				catch (ServiceException se) {
+					// The slice is no longer usable
+					it.remove();
+				}
+			}
+		}
+	} // END of inner class Segment
+}
@@ -0,0 +1,309 @@
+/*****************************************************************
+JADE - Java Agent DEvelopment Framework is a framework to develop
+multi-agent systems in compliance with the FIPA specifications.
+Copyright (C) 2000 CSELT S.p.A.
+
+GNU Lesser General Public License
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation,
+version 2.1 of the License.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the
+Free Software Foundation, Inc., 59 Temple Place - Suite 330,
+Boston, MA  02111-1307, USA.
+ *****************************************************************/
+
+package jade.core.messaging;
+
+//#J2ME_EXCLUDE_FILE
+
+import jade.core.AID;
+import jade.core.messaging.MessageManager.PendingMsg;
+import jade.core.messaging.MessageManager.Channel;
+
+import jade.util.Logger;
+
+import java.util.LinkedList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An OutBox that, unlike the <code>OutBox</code> class, does not serialize 
+ * all operations on a single monitor.
+ * Each Box of messages for a given receiver is protected by its own lock and
+ * the Boxes are retrieved by means of a concurrent map. Boxes that hold messages
+ * and are not currently served by any deliverer are kept in a ready-queue:
+ * deliverers simply take the next Box from that queue instead of scanning all
+ * Boxes and only one waiting deliverer is woken up each time a Box becomes ready.
+ * <br>
+ * As in the <code>OutBox</code>, messages to the same receiver are delivered in
+ * order and by at most one deliverer at a time.
+ * <br>
+ * This OutBox is used when the <code>jade_core_messaging_MessageManager_outbox</code>
+ * parameter is set to <code>striped</code>.
+ *
+ * @see OutBox
+ */
+class StripedOutBox extends BaseOutBox {
+	private final AtomicLong size = new AtomicLong(0);
+	private final int maxSize;
+	private volatile boolean overMaxSize = false;
+	private volatile boolean throttling = true;
+
+	// The Boxes of messages indexed by receiver
+	private final ConcurrentHashMap<AID, Box> messagesByReceiver = new ConcurrentHashMap<AID, Box>();
+	// The Boxes that hold messages and are not busy, in the order they became ready
+	private final LinkedBlockingQueue<Box> readyBoxes = new LinkedBlockingQueue<Box>();
+
+	// For debugging purposes
+	private final AtomicLong submittedCnt = new AtomicLong(0);
+	private final AtomicLong servedCnt = new AtomicLong(0);
+
+	private Logger myLogger;
+
+	StripedOutBox(int s) {
+		maxSize = s;
+		myLogger = Logger.getMyLogger(getClass().getName());
+	}
+
+	/**
+	 * Add a message to the tail of the Box of messages for the indicated
+	 * receiver. If a Box for the indicated receiver is not yet present, a
+	 * new one is created.
+	 */
+	void addLast(AID receiverID, GenericMessage msg, Channel ch) {
+		boolean logActivated = myLogger.isLoggable(Logger.FINER);
+		if (logActivated)
+			myLogger.log(Logger.FINER,"Entering addLast for receiver "+receiverID.getName());
+		releaseContent(msg);
+
+		increaseSize(msg.length());
+
+		PendingMsg pm = new PendingMsg(msg, receiverID, ch, -1);
+		while (true) {
+			Box b = messagesByReceiver.get(receiverID);
+			if (b == null) {
+				Box newBox = new Box(receiverID);
+				b = messagesByReceiver.putIfAbsent(receiverID, newBox);
+				if (b == null) {
+					b = newBox;
+					if (logActivated)
+						myLogger.log(Logger.FINER,"Box created for receiver "+receiverID.getName());
+				}
+			}
+			synchronized (b) {
+				if (b.removed) {
+					// The Box was emptied and removed in the meanwhile. Retry
+					continue;
+				}
+				b.addLast(pm);
+				submittedCnt.incrementAndGet();
+				if (!b.busy && !b.ready) {
+					b.ready = true;
+					// Wakes up a single deliverer (if any is waiting)
+					readyBoxes.offer(b);
+				}
+			}
+			break;
+		}
+		if (logActivated)
+			myLogger.log(Logger.FINER,"Exiting addLast for receiver "+receiverID.getName());
+	}
+
+	/**
+	 * Get the first message for the first ready receiver.
+	 * This is executed by a Deliverer thread just before delivering
+	 * a message.
+	 */
+	PendingMsg get() {
+		while (true) {
+			try {
+				Box b = readyBoxes.take();
+				PendingMsg pm = null;
+				synchronized (b) {
+					b.ready = false;
+					if (b.messages.isEmpty()) {
+						// All messages were removed by removeFirst() while the Box was in the ready-queue
+						continue;
+					}
+					b.setBusy(true);
+					pm = b.removeFirst();
+				}
+				if (myLogger.isLoggable(Logger.FINER))
+					myLogger.log(Logger.FINER,"Setting box busy for receiver "+b.getReceiver().getName());
+				decreaseSize(pm.getMessage().length());
+				return pm;
+			}
+			catch (InterruptedException ie) {
+				// Just do nothing
+			}
+		}
+	}
+
+	/**
+	 * Remove the oldest message waiting to be delivered to the indicated receiver.
+	 * The message currently being delivered by a deliverer (if any) is not affected.
+	 * @return the removed message or null if no message is waiting for that receiver
+	 */
+	PendingMsg removeFirst(AID receiverID) {
+		Box b = messagesByReceiver.get(receiverID);
+		if (b == null) {
+			return null;
+		}
+		PendingMsg pm = null;
+		synchronized (b) {
+			if (b.removed || b.messages.isEmpty()) {
+				return null;
+			}
+			pm = b.removeFirst();
+			if (b.messages.isEmpty() && !b.busy) {
+				// If the Box is in the ready-queue get() will just skip it
+				b.removed = true;
+				messagesByReceiver.remove(receiverID, b);
+			}
+		}
+		decreaseSize(pm.getMessage().length());
+		return pm;
+	}
+
+	/**
+	 * A message for the receiver receiverID has been served
+	 * If the Box of messages for that receiver is now empty --> remove it.
+	 * Otherwise mark it as idle and put it back in the ready-queue.
+	 */
+	void handleServed(AID receiverID) {
+		servedCnt.incrementAndGet();
+		boolean logActivated = myLogger.isLoggable(Logger.FINER);
+		Box b = messagesByReceiver.get(receiverID);
+		synchronized (b) {
+			b.setBusy(false);
+			if (b.messages.isEmpty()) {
+				b.removed = true;
+				messagesByReceiver.remove(receiverID, b);
+				if (logActivated)
+					myLogger.log(Logger.FINER,"Removed box for receiver "+receiverID.getName());
+			}
+			else {
+				b.ready = true;
+				readyBoxes.offer(b);
+				if (logActivated)
+					myLogger.log(Logger.FINER,"Freeing box for receiver "+receiverID.getName());
+			}
+		}
+	}
+
+	void setThrottling(boolean throttling) {
+		this.throttling = throttling;
+	}
+
+	private void increaseSize(int k) {
+		long currentSize = size.addAndGet(k);
+		if (currentSize > maxSize) {
+			if (!overMaxSize) {
+				myLogger.log(Logger.WARNING, "MessageManager queue size > "+maxSize);
+				overMaxSize = true;
+			}
+			if (throttling) {
+				long sleepTime = (1 + ((currentSize - maxSize) / 1000000)) * 100;
+				try { // delay a bit this Thread because the queue is becoming too big
+					Thread.sleep(sleepTime);
+				}
+				catch (InterruptedException ie) {}
+			}
+		}
+	}
+
+	private void decreaseSize(int k) {
+		long currentSize = size.addAndGet(-k);
+		if (currentSize < maxSize && overMaxSize) {
+			myLogger.log(Logger.INFO, "MessageManager queue size < "+maxSize);
+			overMaxSize = false;
+		}
+	}
+
+	/**
+	 * This class represents a Box of messages to be delivered to
+	 * a single receiver. All fields but the receiver are accessed
+	 * holding the Box lock.
+	 */
+	private class Box {
+		private final AID receiver;
+		private boolean busy = false;
+		private boolean ready = false;
+		private boolean removed = false;
+		private String owner;
+		private final LinkedList<PendingMsg> messages = new LinkedList<PendingMsg>();
+		private int bytes = 0;
+
+		public Box(AID r) {
+			receiver = r;
+		}
+
+		private AID getReceiver() {
+			return receiver;
+		}
+
+		private void addLast(PendingMsg pm) {
+			messages.addLast(pm);
+			bytes += pm.getMessage().length();
+		}
+
+		private PendingMsg removeFirst() {
+			PendingMsg pm = messages.removeFirst();
+			bytes -= pm.getMessage().length();
+			return pm;
+		}
+
+		private void setBusy(boolean b){
+			busy = b;
+			owner = (busy ? Thread.currentThread().getName() : null);
+		}
+
+		private synchronized QueueStatus getStatus() {
+			return new QueueStatus(receiver, busy, messages.size(), bytes);
+		}
+
+		// For debugging purpose
+		public synchronized String toString() {
+			return "("+receiver.getName()+" :busy "+busy+ (owner != null ? " :owner "+owner : "") + " :message-cnt "+messages.size()+" :bytes "+bytes+")";
+		}
+	} // END of inner class Box
+
+
+	// For debugging purpose
+	String[] getStatus() {
+		Object[] boxes = messagesByReceiver.values().toArray();
+		String[] status = new String[boxes.length];
+		for (int i = 0; i < boxes.length; ++i) {
+			status[i] = boxes[i].toString();
+		}
+		return status;
+	}
+
+	QueueStatus getStatus(AID receiverID) {
+		Box b = messagesByReceiver.get(receiverID);
+		return (b != null ? b.getStatus() : new QueueStatus(receiverID, false, 0, 0));
+	}
+
+	// For debugging purpose
+	int getSize() {
+		return (int) size.get();
+	}
+
+	long getSubmittedCnt() {
+		return submittedCnt.get();
+	}
+
+	long getServedCnt() {
+		return servedCnt.get();
+	}
+}
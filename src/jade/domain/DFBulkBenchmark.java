@@ -0,0 +1,231 @@
+package jade.domain;
+
+//#J2ME_EXCLUDE_FILE
+//#APIDOC_EXCLUDE_FILE
+
+import jade.core.AID;
+import jade.core.Agent;
+import jade.core.BenchmarkHarness;
+import jade.core.Profile;
+import jade.core.ProfileImpl;
+import jade.core.Runtime;
+import jade.core.behaviours.OneShotBehaviour;
+import jade.domain.FIPAAgentManagement.DFAgentDescription;
+import jade.domain.FIPAAgentManagement.Property;
+import jade.domain.FIPAAgentManagement.SearchConstraints;
+import jade.domain.FIPAAgentManagement.ServiceDescription;
+import jade.domain.JADEAgentManagement.BulkItemResult;
+import jade.util.leap.Properties;
+import jade.wrapper.AgentContainer;
+
+import java.util.concurrent.CountDownLatch;
+
+/**
+ Measure how many registrations, searches and deregistrations per second
+ an agent can perform with the DF when it issues one request per
+ description (<code>DFService.register()</code>, <code>search()</code> and
+ <code>deregister()</code>) and when it groups descriptions into bulk
+ requests (<code>DFService.bulkRegister()</code>, <code>bulkSearch()</code>
+ and <code>bulkDeregister()</code>).
+ While measuring bulk requests the benchmark checks that each item
+ succeeded and that registering already registered descriptions fails
+ for those items only.
+ Usage:
+ <code>java jade.domain.DFBulkBenchmark [-n 2000] [-batch 100] [-dburl jdbc:hsqldb:file:dfdb] [-dbdriver org.hsqldb.jdbcDriver]</code>
+ where
+ <ul>
+ <li><code>n</code> is the number of descriptions</li>
+ <li><code>batch</code> is the number of descriptions in each bulk request</li>
+ <li><code>dburl</code> if specified, the DF keeps its catalogue in the database at that URL
+ (see the <code>jade_domain_df_db-url</code> parameter of the DF)</li>
+ <li><code>dbdriver</code> is the JDBC driver to use together with <code>dburl</code></li>
+ </ul>
+ @see jade.core.BenchmarkHarness
+ */
+public class DFBulkBenchmark {
+	private static final String N_DESCRIPTIONS = "n";
+	private static final int DEFAULT_N_DESCRIPTIONS = 2000;
+
+	private static final String BATCH = "batch";
+	private static final int DEFAULT_BATCH = 100;
+
+	private static final String DB_URL = "dburl";
+	private static final String DB_DRIVER = "dbdriver";
+
+	private static final String[] OPERATIONS = new String[]{"register", "search", "deregister"};
+
+	private static int n;
+	private static int batch;
+	private static long[] singleTimes = new long[OPERATIONS.length];
+	private static long[] bulkTimes = new long[OPERATIONS.length];
+	private static String error;
+	private static CountDownLatch done = new CountDownLatch(1);
+
+	public static void main(String[] args) throws Exception {
+		Properties pp = BenchmarkHarness.parseArguments(args);
+		n = BenchmarkHarness.getIntProperty(pp, N_DESCRIPTIONS, DEFAULT_N_DESCRIPTIONS);
+		batch = BenchmarkHarness.getIntProperty(pp, BATCH, DEFAULT_BATCH);
+
+		ProfileImpl p = new ProfileImpl();
+		p.setParameter(Profile.NO_MTP, "true");
+		p.setParameter(Profile.SERVICES, Profile.DEFAULT_SERVICES_NOMOBILITY);
+		if (pp.getProperty(DB_URL) != null) {
+			p.setParameter("jade_domain_df_db-url", pp.getProperty(DB_URL));
+			p.setParameter("jade_domain_df_db-cleantables", "true");
+			if (pp.getProperty(DB_DRIVER) != null) {
+				p.setParameter("jade_domain_df_db-driver", pp.getProperty(DB_DRIVER));
+			}
+		}
+		Runtime.instance().setCloseVM(true);
+		AgentContainer container = Runtime.instance().createMainContainer(p);
+		if (container == null) {
+			System.out.println("Cannot start the platform!!!!!");
+			System.exit(1);
+		}
+
+		container.createNewAgent("client", BulkClient.class.getName(), null).start();
+		done.await();
+		if (error != null) {
+			System.out.println("ERROR: "+error);
+			System.exit(1);
+		}
+
+		System.out.println("----------------------------------");
+		System.out.println(n+" descriptions, "+batch+" descriptions per bulk request, "+(pp.getProperty(DB_URL) != null ? "database" : "in-memory")+" DF");
+		for (int i = 0; i < OPERATIONS.length; ++i) {
+			System.out.println("- "+BenchmarkHarness.pad(OPERATIONS[i], 11)+": single "+BenchmarkHarness.pad(String.valueOf(rate(singleTimes[i])), 9)+"bulk "+rate(bulkTimes[i])+" descriptions/s");
+		}
+		System.out.println("----------------------------------");
+		System.exit(0);
+	}
+
+	private static long rate(long time) {
+		return (n * 1000L) / Math.max(time, 1);
+	}
+
+	private static DFAgentDescription createDescription(int i) {
+		DFAgentDescription dfd = new DFAgentDescription();
+		AID id = new AID("provider"+i+"@benchmark", AID.ISGUID);
+		id.addAddresses("http://host.domain.com:7778/acc");
+		dfd.setName(id);
+		dfd.addLanguages(FIPANames.ContentLanguage.FIPA_SL);
+		dfd.addOntologies("service-ontology");
+		dfd.addProtocols(FIPANames.InteractionProtocol.FIPA_REQUEST);
+		ServiceDescription sd = new ServiceDescription();
+		sd.setType("service-type-"+i);
+		sd.setName("Provider "+i);
+		sd.addProperties(new Property("area", "Europe"));
+		dfd.addServices(sd);
+		return dfd;
+	}
+
+	private static DFAgentDescription createTemplate(int i) {
+		DFAgentDescription template = new DFAgentDescription();
+		ServiceDescription sd = new ServiceDescription();
+		sd.setType("service-type-"+i);
+		template.addServices(sd);
+		return template;
+	}
+
+	/**
+	   Inner class BulkClient.
+	   Performs all operations from a single behaviour as DFService methods
+	   block the agent anyway.
+	 */
+	public static class BulkClient extends Agent {
+		protected void setup() {
+			addBehaviour(new OneShotBehaviour(this) {
+				public void action() {
+					try {
+						measureSingle(myAgent);
+						measureBulk(myAgent);
+					}
+					catch (Throwable t) {
+						t.printStackTrace();
+						error = t.toString();
+					}
+					done.countDown();
+				}
+			});
+		}
+	}
+
+	private static void measureSingle(Agent a) throws Exception {
+		long start = System.currentTimeMillis();
+		for (int i = 0; i < n; ++i) {
+			DFService.register(a, a.getDefaultDF(), createDescription(i));
+		}
+		singleTimes[0] = System.currentTimeMillis() - start;
+
+		SearchConstraints sc = new SearchConstraints();
+		sc.setMaxResults(new Long(-1));
+		start = System.currentTimeMillis();
+		for (int i = 0; i < n; ++i) {
+			if (DFService.search(a, a.getDefaultDF(), createTemplate(i), sc).length != 1) {
+				throw new Exception("Wrong number of descriptions found for template "+i);
+			}
+		}
+		singleTimes[1] = System.currentTimeMillis() - start;
+
+		start = System.currentTimeMillis();
+		for (int i = 0; i < n; ++i) {
+			DFService.deregister(a, a.getDefaultDF(), createDescription(i));
+		}
+		singleTimes[2] = System.currentTimeMillis() - start;
+	}
+
+	private static void measureBulk(Agent a) throws Exception {
+		long start = System.currentTimeMillis();
+		for (int i = 0; i < n; i += batch) {
+			check(DFService.bulkRegister(a, a.getDefaultDF(), createDescriptions(i, false)), i, 1);
+		}
+		bulkTimes[0] = System.currentTimeMillis() - start;
+
+		// Descriptions already registered must fail, the others must not
+		DFAgentDescription[] dfds = new DFAgentDescription[]{createDescription(0), createDescription(n)};
+		BulkItemResult[] results = DFService.bulkRegister(a, a.getDefaultDF(), dfds);
+		if (results.length != 2 || results[0].getFailure() == null || results[1].getFailure() != null) {
+			throw new Exception("Wrong outcome of a partially failed bulk registration");
+		}
+		DFService.bulkDeregister(a, a.getDefaultDF(), new DFAgentDescription[]{dfds[1]});
+
+		start = System.currentTimeMillis();
+		for (int i = 0; i < n; i += batch) {
+			check(DFService.bulkSearch(a, a.getDefaultDF(), createDescriptions(i, true), null), i, 1);
+		}
+		bulkTimes[1] = System.currentTimeMillis() - start;
+
+		start = System.currentTimeMillis();
+		for (int i = 0; i < n; i += batch) {
+			check(DFService.bulkDeregister(a, a.getDefaultDF(), createDescriptions(i, false)), i, 0);
+		}
+		bulkTimes[2] = System.currentTimeMillis() - start;
+	}
+
+	private static DFAgentDescription[] createDescriptions(int first, boolean templates) {
+		DFAgentDescription[] dfds = new DFAgentDescription[Math.min(batch, n - first)];
+		for (int i = 0; i < dfds.length; ++i) {
+			dfds[i] = (templates ? createTemplate(first + i) : createDescription(first + i));
+		}
+		return dfds;
+	}
+
+	/**
+	 Check that all items of a bulk request succeeded and hold the expected
+	 number of descriptions
+	 */
+	private static void check(BulkItemResult[] results, int first, int expectedDescriptions) throws Exception {
+		if (results.length != Math.min(batch, n - first)) {
+			throw new Exception("Wrong number of results for batch "+first+": "+results.length);
+		}
+		for (int i = 0; i < results.length; ++i) {
+			if (results[i].getFailure() != null) {
+				throw new Exception("Item "+(first + i)+" failed: "+results[i].getFailure());
+			}
+			DFAgentDescription[] dfds = results[i].getDescriptionsArray();
+			if (dfds.length != expectedDescriptions || (dfds.length == 1 && !dfds[0].getName().getName().equals("provider"+(first + i)+"@benchmark"))) {
+				throw new Exception("Wrong descriptions for item "+(first + i));
+			}
+		}
+	}
+}
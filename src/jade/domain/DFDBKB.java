@@ -54,7 +54,12 @@ import java.security.MessageDigest;
 import java.sql.*;
 import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.Date;
 import java.util.Vector;
 import java.util.NoSuchElementException;
@@ -70,7 +75,8 @@ import org.apache.commons.codec.binary.Base64;
  * @author Roland Mungenast - Profactor
  */
 public class DFDBKB extends DBKB {
-	private static final int MAX_PRELOAD_CNT = 1000;
+	// Sizes of the IN lists of the statements loading the content of a set of DFDs
+	private static final int[] LOAD_BATCH_SIZES = new int[] {1, 10, 100};
 	private static final int MAX_REGISTER_WITHOUT_CLEAN = 100;
 	private static final int MAX_PROP_LENGTH = 255;
 	
@@ -89,8 +95,10 @@ public class DFDBKB extends DBKB {
 	private static final String AGENTADDRESS = "agentaddress";
 	private static final String DFAGENTDESCR = "dfagentdescr";
 	
-	// Number of registrations after the last lease-time-cleanup
-	private int regsCnt = 0;
+	// Number of registrations after the last lease-time-cleanup.
+	// Registrations may be performed concurrently by the group commit writer and by other threads
+	private final AtomicInteger regsCnt = new AtomicInteger(0);
+	private final AtomicBoolean cleanRequired = new AtomicBoolean(false);
 	
 	private boolean tablesReady = false;
 	
@@ -109,23 +117,21 @@ public class DFDBKB extends DBKB {
 		private PreparedStatement stm_selAgentResolverAIDs;
 		private PreparedStatement stm_selAgentUserDefSlot;
 		private PreparedStatement stm_selLease;
-		private PreparedStatement stm_selProtocols;
-		private PreparedStatement stm_selLanguages;
-		private PreparedStatement stm_selOntologies;
-		private PreparedStatement stm_selServices;
-		private PreparedStatement stm_selServiceProtocols;
-		private PreparedStatement stm_selServiceLanguages;
-		private PreparedStatement stm_selServiceOntologies;
-		private PreparedStatement stm_selServiceProperties;
 		private PreparedStatement stm_selExpiredDescr;
 		private PreparedStatement stm_selSubscriptions;
 		
-		private PreparedStatement stm_selAllProtocols;
-		private PreparedStatement stm_selCountAllProtocols;
-		private PreparedStatement stm_selAllLanguages;
-		private PreparedStatement stm_selCountAllLanguages;
-		private PreparedStatement stm_selAllOntologies;
-		private PreparedStatement stm_selCountAllOntologies;
+		// Each of these holds one statement per size in LOAD_BATCH_SIZES
+		private PreparedStatement[] stm_selAgentAddressesIn;
+		private PreparedStatement[] stm_selAgentResolverAIDsIn;
+		private PreparedStatement[] stm_selAgentUserDefSlotsIn;
+		private PreparedStatement[] stm_selProtocolsIn;
+		private PreparedStatement[] stm_selLanguagesIn;
+		private PreparedStatement[] stm_selOntologiesIn;
+		private PreparedStatement[] stm_selServicesIn;
+		private PreparedStatement[] stm_selServiceProtocolsIn;
+		private PreparedStatement[] stm_selServiceLanguagesIn;
+		private PreparedStatement[] stm_selServiceOntologiesIn;
+		private PreparedStatement[] stm_selServicePropertiesIn;
 		
 		private PreparedStatement stm_insAgentDescr;
 		private PreparedStatement stm_insAgentAddress;
@@ -157,6 +163,14 @@ public class DFDBKB extends DBKB {
 		private PreparedStatement stm_delServiceProtocol;
 		private PreparedStatement stm_delServiceProperty;
 		private PreparedStatement stm_delSubscription;
+		
+		// The insert statements in the order their batches must be executed 
+		// to respect foreign keys
+		private PreparedStatement[] insStatements;
+		// The insert statements with rows not yet executed 
+		private Set pendingStatements = new HashSet();
+		// The names of the agents whose DFD has rows not yet executed
+		private Set pendingAIDs = new HashSet();
 
 		private PreparedStatements(Connection conn) throws SQLException {
 			// select statements
@@ -164,26 +178,24 @@ public class DFDBKB extends DBKB {
 			stm_selAgentAddresses = conn.prepareStatement("SELECT address FROM agentaddress WHERE aid = ?");
 			stm_selAgentResolverAIDs = conn.prepareStatement("SELECT resolveraid FROM agentresolver WHERE aid = ?");
 			stm_selAgentUserDefSlot = conn.prepareStatement("SELECT slotkey, slotval FROM agentuserdefslot WHERE aid = ?");
-			stm_selLease = conn.prepareStatement("SELECT id, lease FROM dfagentdescr WHERE aid = ?");
-			stm_selProtocols = conn.prepareStatement("SELECT protocol FROM protocol WHERE descrid = ?");
-			stm_selLanguages = conn.prepareStatement("SELECT language FROM language WHERE descrid = ?");
-			stm_selOntologies = conn.prepareStatement("SELECT ontology FROM ontology WHERE descrid = ?");
-			stm_selServices = conn.prepareStatement("SELECT id, sname, stype, sownership FROM service WHERE descrid = ?");
-			stm_selServiceProtocols = conn.prepareStatement("SELECT protocol FROM serviceprotocol WHERE serviceid = ?");
-			stm_selServiceLanguages = conn.prepareStatement("SELECT ontology FROM serviceontology WHERE serviceid = ?");
-			stm_selServiceOntologies = conn.prepareStatement("SELECT language FROM servicelanguage WHERE serviceid = ?");
-			stm_selServiceProperties = conn.prepareStatement("SELECT propkey, propval_str, propval_obj FROM serviceproperty WHERE serviceid = ?");
+			stm_selLease = conn.prepareStatement("SELECT id, aid, lease FROM dfagentdescr WHERE aid = ?");
 			stm_selDescrId = conn.prepareStatement("SELECT id FROM dfagentdescr WHERE aid = ?"); 
 			stm_selServiceId = conn.prepareStatement("SELECT id FROM service WHERE descrid = ?");
 			stm_selExpiredDescr = conn.prepareStatement("SELECT aid FROM dfagentdescr WHERE lease < ? AND lease <> '-1'");
 			stm_selSubscriptions = conn.prepareStatement("SELECT * FROM subscription");
 
-			stm_selAllProtocols = conn.prepareStatement("SELECT descrid, protocol FROM protocol ORDER BY descrid");
-			stm_selCountAllProtocols = conn.prepareStatement("SELECT COUNT(*) FROM protocol");
-			stm_selAllLanguages = conn.prepareStatement("SELECT descrid, language FROM language ORDER BY descrid");
-			stm_selCountAllLanguages = conn.prepareStatement("SELECT COUNT(*) FROM language");
-			stm_selAllOntologies = conn.prepareStatement("SELECT descrid, ontology FROM ontology ORDER BY descrid");
-			stm_selCountAllOntologies = conn.prepareStatement("SELECT COUNT(*) FROM ontology");
+			stm_selAgentAddressesIn = prepareLoaders(conn, "aid, address", "agentaddress", null, "aid");
+			stm_selAgentResolverAIDsIn = prepareLoaders(conn, "aid, resolveraid", "agentresolver", null, "aid");
+			stm_selAgentUserDefSlotsIn = prepareLoaders(conn, "aid, slotkey, slotval", "agentuserdefslot", null, "aid");
+			stm_selProtocolsIn = prepareLoaders(conn, "descrid, protocol", "protocol", null, "descrid");
+			stm_selLanguagesIn = prepareLoaders(conn, "descrid, language", "language", null, "descrid");
+			stm_selOntologiesIn = prepareLoaders(conn, "descrid, ontology", "ontology", null, "descrid");
+			stm_selServicesIn = prepareLoaders(conn, "descrid, id, sname, stype, sownership", "service", null, "descrid");
+			// Service details are selected by the id of the DFD the service belongs to
+			stm_selServiceProtocolsIn = prepareLoaders(conn, "serviceprotocol.serviceid, serviceprotocol.protocol", "service, serviceprotocol", "serviceprotocol.serviceid = service.id", "service.descrid");
+			stm_selServiceLanguagesIn = prepareLoaders(conn, "servicelanguage.serviceid, servicelanguage.language", "service, servicelanguage", "servicelanguage.serviceid = service.id", "service.descrid");
+			stm_selServiceOntologiesIn = prepareLoaders(conn, "serviceontology.serviceid, serviceontology.ontology", "service, serviceontology", "serviceontology.serviceid = service.id", "service.descrid");
+			stm_selServicePropertiesIn = prepareLoaders(conn, "serviceproperty.serviceid, serviceproperty.propkey, serviceproperty.propval_str, serviceproperty.propval_obj", "service, serviceproperty", "serviceproperty.serviceid = service.id", "service.descrid");
 			
 			stm_insAgentDescr = conn.prepareStatement("INSERT INTO dfagentdescr VALUES (?, ?, ?)");
 			stm_insAgentAddress = conn.prepareStatement("INSERT INTO agentaddress VALUES (?, ?, ?)");
@@ -214,6 +226,18 @@ public class DFDBKB extends DBKB {
 			stm_delServiceProtocol = conn.prepareStatement("DELETE FROM serviceprotocol WHERE serviceid = ?");
 			stm_delServiceProperty = conn.prepareStatement("DELETE FROM serviceproperty WHERE serviceid = ?");
 			stm_delSubscription = conn.prepareStatement("DELETE FROM subscription WHERE id = ?");
+			
+			insStatements = new PreparedStatement[] {stm_insAgentDescr, stm_insAgentAddress, stm_insAgentUserDefSlot, stm_insAgentResolverAID,
+					stm_insLanguage, stm_insOntology, stm_insProtocol, stm_insService, 
+					stm_insServiceProtocol, stm_insServiceOntology, stm_insServiceLanguage, stm_insServiceProperty};
+		}
+		
+		private PreparedStatement[] prepareLoaders(Connection conn, String columns, String tables, String condition, String key) throws SQLException {
+			PreparedStatement[] stms = new PreparedStatement[LOAD_BATCH_SIZES.length];
+			for (int i = 0; i < stms.length; ++i) {
+				stms[i] = conn.prepareStatement(createLoadQuery(columns, tables, condition, key, LOAD_BATCH_SIZES[i]));
+			}
+			return stms;
 		}
 	}
 	
@@ -243,25 +267,31 @@ public class DFDBKB extends DBKB {
 			localIPAddress = "localhost";
 		} 
 		
-		ConnectionWrapper wrapper = getConnectionWrapper();
-		Connection conn = wrapper.getConnection();
+		beginOperation();
 		try {
-			conn.setAutoCommit(false); // deactivate auto commit for better performance
-		} catch (Exception e) {
-			if(logger.isLoggable(Logger.WARNING)) {
-				logger.log(Logger.WARNING, "Disabling auto-commit failed.");
+			ConnectionWrapper wrapper = getConnectionWrapper();
+			Connection conn = wrapper.getConnection();
+			try {
+				conn.setAutoCommit(false); // deactivate auto commit for better performance
+			} catch (Exception e) {
+				if(logger.isLoggable(Logger.WARNING)) {
+					logger.log(Logger.WARNING, "Disabling auto-commit failed.");
+				}
 			}
+			
+			if (cleanTables) {
+				// Drop all existing tables for the DF if required
+				dropDFTables();
+			}
+			createDFTables();
+			tablesReady = true;
+			PreparedStatements ps = new PreparedStatements(conn);
+			wrapper.setInfo(ps);
+			clean();
 		}
-		
-		if (cleanTables) {
-			// Drop all existing tables for the DF if required
-			dropDFTables();
+		finally {
+			endOperation();
 		}
-		createDFTables();
-		tablesReady = true;
-		PreparedStatements ps = new PreparedStatements(conn);
-		wrapper.setInfo(ps);
-		clean();
 	}
 	
 	protected void initConnectionWrapper(ConnectionWrapper wrapper) throws SQLException {
@@ -286,6 +316,26 @@ public class DFDBKB extends DBKB {
 		return (PreparedStatements)wrapper.getInfo();
 	}
 
+	/**
+	 * Returns the SQL query used to load the content of a table for a set of DFDs.
+	 * The query must select the given columns from the given tables for all rows
+	 * matching the given condition whose key column is equal to one of <code>size</code> 
+	 * values, passed as parameters. This implementation uses an IN list.
+	 * @param condition a join condition or <code>null</code>
+	 */
+	protected String createLoadQuery(String columns, String tables, String condition, String key, int size) {
+		StringBuffer sb = new StringBuffer("SELECT "+columns+" FROM "+tables+" WHERE ");
+		if (condition != null) {
+			sb.append(condition+" AND ");
+		}
+		sb.append(key+" IN (?");
+		for (int i = 1; i < size; ++i) {
+			sb.append(", ?");
+		}
+		sb.append(')');
+		return sb.toString();
+	}
+	
 	/**
 	 * Returns the name of the SQL type used in the
 	 * database to represent very long strings.
@@ -594,7 +644,8 @@ public class DFDBKB extends DBKB {
 	}
 	
 	/**
-	 * Stores the information of an AID of a resolver
+	 * Adds the rows storing the information of an AID of a resolver
+	 * to the batches of the insert statements
 	 */
 	private void saveResolverAID(AID aid, AID resolverAid) throws SQLException {
 		saveAID(resolverAid);
@@ -602,11 +653,12 @@ public class DFDBKB extends DBKB {
 		pss.stm_insAgentResolverAID.setString(1, getGUID());
 		pss.stm_insAgentResolverAID.setString(2, aid.getName());
 		pss.stm_insAgentResolverAID.setString(3, resolverAid.getName());
-		pss.stm_insAgentResolverAID.addBatch(); 
+		addBatch(pss, pss.stm_insAgentResolverAID);
 	}
 	
 	/**
-	 * Stores the information of an AID in the database
+	 * Adds the rows storing the information of an AID
+	 * to the batches of the insert statements
 	 */
 	private void saveAID(AID aid) throws SQLException {
 		String name = aid.getName();
@@ -614,44 +666,32 @@ public class DFDBKB extends DBKB {
 
 		// Addresses
 		Iterator iter = aid.getAllAddresses();
-		if (iter.hasNext()) {
-			pss.stm_insAgentAddress.clearBatch();
-			while( iter.hasNext()){
-				pss.stm_insAgentAddress.setString(1, getGUID());
-				pss.stm_insAgentAddress.setString(2, name);
-				pss.stm_insAgentAddress.setString(3, (String)iter.next());
-				pss.stm_insAgentAddress.addBatch();
-			}
-			pss.stm_insAgentAddress.executeBatch();
+		while( iter.hasNext()){
+			pss.stm_insAgentAddress.setString(1, getGUID());
+			pss.stm_insAgentAddress.setString(2, name);
+			pss.stm_insAgentAddress.setString(3, (String)iter.next());
+			addBatch(pss, pss.stm_insAgentAddress);
 		}
 		
 		
 		// User defined slots
 		Properties props = aid.getAllUserDefinedSlot();
-		if (props.size() > 0) {
-			pss.stm_insAgentUserDefSlot.clearBatch();
-			java.util.Iterator pIter = props.entrySet().iterator();
-			while (pIter.hasNext()) {
-				Map.Entry entry = (Map.Entry)pIter.next();
-				pss.stm_insAgentUserDefSlot.setString(1, getGUID());
-				pss.stm_insAgentUserDefSlot.setString(2, name);
-				pss.stm_insAgentUserDefSlot.setString(3, (String)entry.getKey());
-				pss.stm_insAgentUserDefSlot.setString(4, (String)entry.getValue());
-				pss.stm_insAgentUserDefSlot.addBatch();
-			}
-			pss.stm_insAgentUserDefSlot.executeBatch();
+		java.util.Iterator pIter = props.entrySet().iterator();
+		while (pIter.hasNext()) {
+			Map.Entry entry = (Map.Entry)pIter.next();
+			pss.stm_insAgentUserDefSlot.setString(1, getGUID());
+			pss.stm_insAgentUserDefSlot.setString(2, name);
+			pss.stm_insAgentUserDefSlot.setString(3, (String)entry.getKey());
+			pss.stm_insAgentUserDefSlot.setString(4, (String)entry.getValue());
+			addBatch(pss, pss.stm_insAgentUserDefSlot);
 		}
 		
 		// Resolvers
 		iter = aid.getAllResolvers();
-		if (iter.hasNext()) {
-			pss.stm_insAgentResolverAID.clearBatch();
-			while(iter.hasNext()){
-				AID resolverAID = (AID)iter.next();
-				saveResolverAID(aid, resolverAID);
-			}  
-			pss.stm_insAgentResolverAID.executeBatch();
-		}
+		while(iter.hasNext()){
+			AID resolverAID = (AID)iter.next();
+			saveResolverAID(aid, resolverAID);
+		}  
 	}
 	
 	/**
@@ -671,7 +711,8 @@ public class DFDBKB extends DBKB {
 	}
 	
 	/**
-	 * Stores a collection of services for a specific description Id in the database
+	 * Adds the rows storing a collection of services for a specific description Id
+	 * to the batches of the insert statements
 	 * @param descrId id of the DFD these services belong to
 	 * @param iter iterator for a collection of <code>ServiceDescription</code> instances
 	 * @throws SQLException
@@ -679,16 +720,6 @@ public class DFDBKB extends DBKB {
 	private void saveServices(String descrId, Iterator iter) throws SQLException {
 		if (iter.hasNext()) {
 			PreparedStatements pss = getPreparedStatements();
-			pss.stm_insService.clearBatch();
-			pss.stm_insServiceOntology.clearBatch();
-			pss.stm_insServiceOntology.clearBatch();
-			pss.stm_insServiceLanguage.clearBatch();
-			pss.stm_insServiceProperty.clearBatch();
-			
-			boolean executeProtocolsBatch = false;
-			boolean executeOntologiesBatch = false;
-			boolean executeLanguagesBatch = false;
-			boolean executePropertiesBatch = false;
 			
 			while(iter.hasNext()){
 				ServiceDescription service = (ServiceDescription)iter.next();
@@ -699,15 +730,14 @@ public class DFDBKB extends DBKB {
 				pss.stm_insService.setString(3, service.getName());
 				pss.stm_insService.setString(4, service.getType());
 				pss.stm_insService.setString(5, service.getOwnership());
-				pss.stm_insService.addBatch();
+				addBatch(pss, pss.stm_insService);
 				
 				// Service - Protocols
 				Iterator iterS = service.getAllProtocols();
 				while(iterS.hasNext()){
 					pss.stm_insServiceProtocol.setString(1, serviceId);
 					pss.stm_insServiceProtocol.setString(2, (String)iterS.next());
-					pss.stm_insServiceProtocol.addBatch();
-					executeProtocolsBatch = true;
+					addBatch(pss, pss.stm_insServiceProtocol);
 				}
 				
 				// Service - Ontologies
@@ -715,8 +745,7 @@ public class DFDBKB extends DBKB {
 				while(iterS.hasNext()){
 					pss.stm_insServiceOntology.setString(1, serviceId);
 					pss.stm_insServiceOntology.setString(2, (String)iterS.next());
-					pss.stm_insServiceOntology.addBatch();
-					executeOntologiesBatch = true;
+					addBatch(pss, pss.stm_insServiceOntology);
 				}
 				
 				// Service - Languages
@@ -724,8 +753,7 @@ public class DFDBKB extends DBKB {
 				while(iterS.hasNext()){
 					pss.stm_insServiceLanguage.setString(1, serviceId);
 					pss.stm_insServiceLanguage.setString(2, (String)iterS.next());
-					pss.stm_insServiceLanguage.addBatch();
-					executeLanguagesBatch = true;
+					addBatch(pss, pss.stm_insServiceLanguage);
 				}
 				
 				// Service - Properties
@@ -759,8 +787,7 @@ public class DFDBKB extends DBKB {
 							pss.stm_insServiceProperty.setString(5, null);
 						};
 						
-						pss.stm_insServiceProperty.addBatch();
-						executePropertiesBatch = true;            
+						addBatch(pss, pss.stm_insServiceProperty);
 					} catch (Exception e) {
 						if(logger.isLoggable(Logger.SEVERE))
 							logger.log(Logger.SEVERE,"Cannot serialize property '" + prop.getName() + 
@@ -768,19 +795,6 @@ public class DFDBKB extends DBKB {
 					}
 				}
 			}
-			pss.stm_insService.executeBatch();
-			if (executeProtocolsBatch) {
-				pss.stm_insServiceProtocol.executeBatch();
-			}
-			if (executeOntologiesBatch) {
-				pss.stm_insServiceOntology.executeBatch();
-			}
-			if (executeLanguagesBatch) {
-				pss.stm_insServiceLanguage.executeBatch();
-			}
-			if (executePropertiesBatch) {
-				pss.stm_insServiceProperty.executeBatch();
-			}
 		}
 	}
 	
@@ -793,118 +807,177 @@ public class DFDBKB extends DBKB {
 	 *  @return the previous DFD (if any) corresponding to the same AID
 	 */
 	protected Object insertSingle(Object name, Object fact) throws SQLException {
+		try {
+			Object dfdToReturn = insertInBatch(name, fact);
+			commitBatch();
+			return dfdToReturn;
+		} catch (SQLException sqle) {
+			// Rollback the transaction and re-throw the exception
+			rollbackBatch();
+			throw sqle;
+		}
+	}
+	
+	/**
+	 * Remove the DFD object corresponding to the indicated AID.
+	 * @return the removed DFD (if any) 
+	 */
+	protected Object removeSingle(Object name) throws SQLException {
+		try {
+			Object dfdToReturn = removeInBatch(name);
+			commitBatch();
+			return dfdToReturn;
+		} catch (SQLException sqle) {
+			// Rollback the transaction and re-throw the exception
+			rollbackBatch();
+			throw sqle;
+		}
+	}
+	
+	/**
+	 * Insert a new DFD object without committing. The rows of the new DFD 
+	 * are only added to the batches of the insert statements, that are 
+	 * executed all together by <code>commitBatch()</code>.
+	 * @return the previous DFD (if any) corresponding to the same AID
+	 */
+	protected Object insertInBatch(Object name, Object fact) throws SQLException {
 		DFAgentDescription dfd = (DFAgentDescription) fact;
 		AID agentAID = dfd.getName();
 		String agentName = agentAID.getName();
-		DFAgentDescription dfdToReturn = null;
-		String batchErrMsg = "";
-		
-		Connection conn = getConnectionWrapper().getConnection();
 		PreparedStatements pss = getPreparedStatements();
-		try {
-			// -- Remove the previous DFD if any
-			dfdToReturn = (DFAgentDescription) removeSingle(dfd.getName());
-
-			// -- add new DFD
-
-			// DF Agent Description
-			Date leaseTime = dfd.getLeaseTime();
-			long lt = (leaseTime != null ? leaseTime.getTime() : -1);
-			String descrId = getGUID();
-
-			pss.stm_insAgentDescr.setString(1, descrId);
-			pss.stm_insAgentDescr.setString(2, agentName);
-			pss.stm_insAgentDescr.setString(3, String.valueOf(lt));
-			pss.stm_insAgentDescr.executeUpdate();
-			
-			
-			// AID
-			saveAID(agentAID);
-			
-			// Languages
-			Iterator iter = dfd.getAllLanguages();
-			if (iter.hasNext()) {
-				pss.stm_insLanguage.clearBatch();
-				while(iter.hasNext()){
-					pss.stm_insLanguage.setString(1, descrId);
-					pss.stm_insLanguage.setString(2, (String)iter.next());
-					pss.stm_insLanguage.addBatch();
-				}
-				pss.stm_insLanguage.executeBatch();
-			}
-			
-			// Ontologies
-			iter = dfd.getAllOntologies();
-			if (iter.hasNext()) {
-				pss.stm_insOntology.clearBatch();
-				while(iter.hasNext()){
-					pss.stm_insOntology.setString(1, descrId);
-					pss.stm_insOntology.setString(2, (String)iter.next());
-					pss.stm_insOntology.addBatch();
-				}
-				pss.stm_insOntology.executeBatch();
-			}
-			
-			// Protocols
-			iter = dfd.getAllProtocols();
-			if (iter.hasNext()) {
-				pss.stm_insProtocol.clearBatch();
-				while(iter.hasNext()){
-					pss.stm_insProtocol.setString(1, descrId);
-					pss.stm_insProtocol.setString(2, (String)iter.next());
-					pss.stm_insProtocol.addBatch();
-				}
-				pss.stm_insProtocol.executeBatch();
-			}
-			
-			// Services
-			saveServices(descrId, dfd.getAllServices());    
-			
-			regsCnt++;
-			// clear outdated entries after a certain number of new registrations
-			if(regsCnt > MAX_REGISTER_WITHOUT_CLEAN){
-				regsCnt = 0;
-				clean();
-			}
-			
-			conn.commit();		
-		} catch (SQLException sqle) {
-			// Rollback the transaction
-			try {
-				conn.rollback();
-			} catch (SQLException se) {
-				logger.log(Logger.SEVERE,"Rollback for incomplete insertion of DFD for agent "+dfd.getName() + " failed.", se);
-			}
-			// Re-throw the exception
-			throw sqle;
-		} 
 		
+		// -- Remove the previous DFD if any
+		DFAgentDescription dfdToReturn = (DFAgentDescription) removeInBatch(agentAID);
+		
+		// -- add new DFD
+		
+		// DF Agent Description
+		Date leaseTime = dfd.getLeaseTime();
+		long lt = (leaseTime != null ? leaseTime.getTime() : -1);
+		String descrId = getGUID();
+		
+		pss.stm_insAgentDescr.setString(1, descrId);
+		pss.stm_insAgentDescr.setString(2, agentName);
+		pss.stm_insAgentDescr.setString(3, String.valueOf(lt));
+		addBatch(pss, pss.stm_insAgentDescr);
+		
+		// AID
+		saveAID(agentAID);
+		
+		// Languages
+		Iterator iter = dfd.getAllLanguages();
+		while(iter.hasNext()){
+			pss.stm_insLanguage.setString(1, descrId);
+			pss.stm_insLanguage.setString(2, (String)iter.next());
+			addBatch(pss, pss.stm_insLanguage);
+		}
+		
+		// Ontologies
+		iter = dfd.getAllOntologies();
+		while(iter.hasNext()){
+			pss.stm_insOntology.setString(1, descrId);
+			pss.stm_insOntology.setString(2, (String)iter.next());
+			addBatch(pss, pss.stm_insOntology);
+		}
+		
+		// Protocols
+		iter = dfd.getAllProtocols();
+		while(iter.hasNext()){
+			pss.stm_insProtocol.setString(1, descrId);
+			pss.stm_insProtocol.setString(2, (String)iter.next());
+			addBatch(pss, pss.stm_insProtocol);
+		}
+		
+		// Services
+		saveServices(descrId, dfd.getAllServices());
+		pss.pendingAIDs.add(agentName);
+		
+		// clear outdated entries after a certain number of new registrations
+		if(regsCnt.incrementAndGet() > MAX_REGISTER_WITHOUT_CLEAN){
+			regsCnt.set(0);
+			cleanRequired.set(true);
+		}
 		return dfdToReturn;
 	}
 	
 	/**
-	 * Remove the DFD object corresponding to the indicated AID.
+	 * Remove the DFD object corresponding to the indicated AID without committing.
 	 * @return the removed DFD (if any) 
 	 */
-	protected Object removeSingle(Object name) throws SQLException {
-		AID agentAID = (AID) name;
-		String n = agentAID.getName();
+	protected Object removeInBatch(Object name) throws SQLException {
+		String n = ((AID) name).getName();
+		PreparedStatements pss = getPreparedStatements();
+		if (pss.pendingAIDs.contains(n)) {
+			// The rows of the DFD to remove are still in the batches
+			flushBatch(pss);
+		}
 		
 		DFAgentDescription dfd = getDFD(n);
 		if (dfd != null) {
-			remove(n);
+			delete(n);
 		}
-		
 		return dfd;
 	}
-
+	
+	/**
+	 * Executes the batches of the insert statements and commits.
+	 * Expired registrations are then removed, in a separate transaction,  
+	 * each MAX_REGISTER_WITHOUT_CLEAN registrations.
+	 */
+	protected void commitBatch() throws SQLException {
+		flushBatch(getPreparedStatements());
+		getConnectionWrapper().getConnection().commit();
+		if (cleanRequired.compareAndSet(true, false)) {
+			clean();
+		}
+	}
+	
+	protected void rollbackBatch() {
+		try {
+			PreparedStatements pss = getPreparedStatements();
+			java.util.Iterator it = pss.pendingStatements.iterator();
+			while (it.hasNext()) {
+				((PreparedStatement) it.next()).clearBatch();
+			}
+			pss.pendingStatements.clear();
+			pss.pendingAIDs.clear();
+			getConnectionWrapper().getConnection().rollback();
+		} catch (SQLException se) {
+			logger.log(Logger.SEVERE,"Rollback for incomplete update of DFDs failed.", se);
+		}
+	}
+	
+	private void addBatch(PreparedStatements pss, PreparedStatement stm) throws SQLException {
+		stm.addBatch();
+		pss.pendingStatements.add(stm);
+	}
+	
+	/**
+	 * Executes the batches of the insert statements
+	 */
+	private void flushBatch(PreparedStatements pss) throws SQLException {
+		for (int i = 0; i < pss.insStatements.length; ++i) {
+			PreparedStatement stm = pss.insStatements[i];
+			if (pss.pendingStatements.contains(stm)) {
+				try {
+					stm.executeBatch();
+				}
+				catch (BatchUpdateException bue) {
+					if(logger.isLoggable(Logger.FINE))
+						logger.log(Logger.FINE, getBatchUpdateErroMsg(bue));
+					throw bue;
+				}
+				pss.pendingStatements.remove(stm);
+			}
+		}
+		pss.pendingAIDs.clear();
+	}
+	
 	/**
 	 * Retrieve the DFDs matching the given template
 	 */
 	protected List searchSingle(Object template, int maxResult) throws SQLException {
-		List matchingAIDs = new ArrayList();
-		
-		// Get the names of all DFDs matching the template
+		// Get all DFDs matching the template
 		String select = null;
 		ResultSet rs = null;
 		Statement s = null;
@@ -918,11 +991,7 @@ public class DFDBKB extends DBKB {
 				s.setFetchSize(maxResult);
 			}
 			rs = s.executeQuery(select);
-			
-			while(rs.next()) { 
-				String aidS = rs.getString("aid");
-				matchingAIDs.add(aidS);
-			}			
+			return loadDFDs(rs, -1);
 		} 
 		catch(SQLException sqle) {
 			// Let it through
@@ -937,61 +1006,8 @@ public class DFDBKB extends DBKB {
 			closeStatement(s);
 		}
 		
-		// For each matching AID reconstruct the complete DFD
-		List dfds = new ArrayList(matchingAIDs.size());
-		Iterator it = matchingAIDs.iterator();
-		// FIXME: Define a proper constant and possibly a proper configuration option
-		if (matchingAIDs.size() < 10) {
-			while (it.hasNext()) {
-				dfds.add(getDFD((String) it.next()));
-			}
-		}
-		else {
-			// If we found several matching agents we preload protocols languages and ontologies once for all 
-			// instead of making several queries one per agent.
-			PreparedStatements pss = getPreparedStatements();
-			Map allLanguages = preloadIdValueTable(pss.stm_selCountAllLanguages, pss.stm_selAllLanguages);
-			Map allOntologies = preloadIdValueTable(pss.stm_selCountAllOntologies, pss.stm_selAllOntologies);
-			Map allProtocols = preloadIdValueTable(pss.stm_selCountAllProtocols, pss.stm_selAllProtocols);
-			while (it.hasNext()) {
-				dfds.add(getDFD((String) it.next(), allLanguages, allOntologies, allProtocols));
-			}
-		}
-		
-		return dfds;
-	}
-	
-	private Map preloadIdValueTable(PreparedStatement cntStm, PreparedStatement stm) throws SQLException {
-		Map m = null;
-		ResultSet rs = cntStm.executeQuery();
-		rs.next();
-		long recordCount = rs.getLong(1);
-		closeResultSet(rs);
-		if (recordCount < MAX_PRELOAD_CNT) {
-			// If there are more than MAX_PRELOAD_CNT elements return null. In fact it is more time consuming constructing the preload Map 
-			// than performing all queries in the DB.
-			rs = stm.executeQuery();
-			
-			if (true) {
-				m = new HashMap();
-				String currentId = null;
-				List l = null;
-				while(rs.next()){
-					String id = rs.getString(1); // id (using the index is faster)
-					if (!id.equals(currentId)) {
-						l =  new ArrayList();
-						m.put(id, l);
-						currentId = id;
-					}
-					l.add(rs.getString(2)); // value (protocol, language, ontology ... depending on the passed statement)
-				}
-				closeResultSet(rs);
-			}
-		}
-		return m;
 	}
 
-
 	/**
 	 */
 	protected KBIterator iteratorSingle(Object template) throws SQLException {
@@ -1021,38 +1037,66 @@ public class DFDBKB extends DBKB {
 	
 	
 	/**
-	 Inner class DFDBKBIterator
+	 Inner class DFDBKBIterator.
+	 DFDs are loaded in batches of the largest of LOAD_BATCH_SIZES as the iteration proceeds.
+	 If they do not fit in the first batch, the connection its ResultSet belongs to is 
+	 detached from the pool until the last batch is loaded or the iterator is closed.
 	 */
 	private class DFDBKBIterator implements KBIterator {
 		private Statement s = null;
 		private ResultSet rs = null;
-		private boolean hasMoreElements = false;
+		private ConnectionWrapper wrapper = null;
+		private List batch = new ArrayList();
+		private int next = 0;
+		private boolean lastBatch = false;
 		
 		public DFDBKBIterator(Statement s, ResultSet rs) throws SQLException {
 			this.s = s;
 			this.rs = rs;
 			if (rs != null) {
-				// Move to the first row
-				hasMoreElements = rs.next();
+				// Load the first batch
+				loadBatch();
+				if (lastBatch) {
+					close();
+				}
+				else {
+					wrapper = detachConnectionWrapper();
+				}
 			}
 		}
 		
+		private void loadBatch() throws SQLException {
+			int size = LOAD_BATCH_SIZES[LOAD_BATCH_SIZES.length - 1];
+			batch = loadDFDs(rs, size);
+			next = 0;
+			lastBatch = batch.size() < size;
+		}
+		
 		public boolean hasNext() {
-			return hasMoreElements;
+			return next < batch.size();
 		}
 		
 		public Object next() {
-			if (hasMoreElements) {
-				try {
-					String name = rs.getString("aid");
-					DFAgentDescription dfd = getDFD(name);
-					hasMoreElements = rs.next();
-					return dfd;
-				}
-				catch (SQLException sqle) {
-					hasMoreElements = false;
-					throw new NoSuchElementException("DB Error. "+sqle.getMessage());
+			if (next < batch.size()) {
+				Object dfd = batch.get(next++);
+				if (next == batch.size() && !lastBatch) {
+					beginOperation(wrapper);
+					try {
+						loadBatch();
+					}
+					catch (SQLException sqle) {
+						batch = new ArrayList();
+						lastBatch = true;
+						throw new NoSuchElementException("DB Error. "+sqle.getMessage());
+					}
+					finally {
+						endOperation();
+						if (lastBatch) {
+							close();
+						}
+					}
 				}
+				return dfd;
 			}
 			throw new NoSuchElementException("");
 		}
@@ -1064,6 +1108,12 @@ public class DFDBKB extends DBKB {
 		public void close() {
 			closeResultSet(rs);
 			closeStatement(s);
+			rs = null;
+			s = null;
+			if (wrapper != null) {
+				releaseConnectionWrapper(wrapper);
+				wrapper = null;
+			}
 		}
 	} // END of inner class DFDBKBIterator
 	
@@ -1104,99 +1154,179 @@ public class DFDBKB extends DBKB {
 		return id;
 	}
 	
-	private DFAgentDescription getDFD(String aidN) throws SQLException {
-		return getDFD(aidN, null, null, null);
-	}
-	
 	/**
 	 Reconstruct the DFD corresponding to the given AID name (if any)
 	 */
-	private DFAgentDescription getDFD(String aidN, Map allLanguages, Map allOntologies, Map allProtocols) throws SQLException {
-		DFAgentDescription dfd = null;
-		AID id = null;
-		
+	private DFAgentDescription getDFD(String aidN) throws SQLException {
 		ResultSet rs = null;
-		ResultSet rsS = null;
-		String descrId = null;
-		
-		try{
+		try {
 			PreparedStatements pss = getPreparedStatements();
-			// Check if there is a DFD corresponding to aidN and get lease time
 			pss.stm_selLease.setString(1, aidN);
 			rs = pss.stm_selLease.executeQuery();
-			if (rs.next()) {
+			List dfds = loadDFDs(rs, 1);
+			return (dfds.size() > 0 ? (DFAgentDescription) dfds.get(0) : null);
+		}
+		finally {
+			closeResultSet(rs);
+		}
+	}
+	
+	/**
+	 * Reconstruct the DFDs corresponding to the rows of a result set including the 
+	 * id, aid and lease columns of the dfagentdescr table.
+	 * Rather than performing several queries for each DFD and each service, the content 
+	 * of each table is loaded with a single query for up to the largest of
+	 * LOAD_BATCH_SIZES DFDs at a time.
+	 * @param max the maximum number of rows to read or -1 to read all rows
+	 * @return the DFDs in the order of the rows
+	 */
+	private List loadDFDs(ResultSet rs, int max) throws SQLException {
+		java.util.List rows = new java.util.ArrayList();
+		Map dfdsById = new LinkedHashMap();
+		while ((max < 0 || rows.size() < max) && rs.next()) {
+			String descrId = rs.getString("id");
+			DFAgentDescription dfd = (DFAgentDescription) dfdsById.get(descrId);
+			if (dfd == null) {
 				dfd = new DFAgentDescription();
-				id = getAID(aidN);
-				dfd.setName(id);
-				String sLease = rs.getString("lease");
-				descrId = rs.getString("id");
-				long lease = Long.parseLong(sLease);
+				dfd.setName(new AID(rs.getString("aid"), AID.ISGUID));
+				long lease = Long.parseLong(rs.getString("lease"));
 				if (lease != -1) {
 					dfd.setLeaseTime(new Date(lease));
 				}
+				dfdsById.put(descrId, dfd);
 			}
-			else {
-				return null;
+			rows.add(dfd);
+		}
+		
+		java.util.List descrIds = new java.util.ArrayList(dfdsById.keySet());
+		int batchSize = LOAD_BATCH_SIZES[LOAD_BATCH_SIZES.length - 1];
+		for (int i = 0; i < descrIds.size(); i += batchSize) {
+			loadDFDs(descrIds.subList(i, Math.min(i + batchSize, descrIds.size())), dfdsById);
+		}
+		
+		List dfds = new ArrayList(rows.size());
+		for (int i = 0; i < rows.size(); ++i) {
+			dfds.add(rows.get(i));
+		}
+		return dfds;
+	}
+	
+	/**
+	 * Fill the DFDs with the given ids, that only hold the AID name and the lease time,
+	 * with the content of all other tables
+	 */
+	private void loadDFDs(java.util.List descrIds, Map dfdsById) throws SQLException {
+		int n = descrIds.size();
+		int b = 0;
+		while (LOAD_BATCH_SIZES[b] < n) {
+			b++;
+		}
+		
+		java.util.List aidNames = new java.util.ArrayList(n);
+		Map aids = new HashMap();
+		for (int i = 0; i < n; ++i) {
+			AID id = ((DFAgentDescription) dfdsById.get(descrIds.get(i))).getName();
+			aidNames.add(id.getName());
+			aids.put(id.getName(), id);
+		}
+		
+		ResultSet rs = null;
+		try {
+			PreparedStatements pss = getPreparedStatements();
+			// AID addresses
+			rs = executeIn(pss.stm_selAgentAddressesIn[b], aidNames, LOAD_BATCH_SIZES[b]);
+			while (rs.next()) {
+				((AID) aids.get(rs.getString(1))).addAddresses(rs.getString(2));
+			}
+			closeResultSet(rs);
+			
+			// AID resolvers
+			java.util.List resolvers = new java.util.ArrayList();
+			rs = executeIn(pss.stm_selAgentResolverAIDsIn[b], aidNames, LOAD_BATCH_SIZES[b]);
+			while (rs.next()) {
+				resolvers.add(new String[] {rs.getString(1), rs.getString(2)});
+			}
+			closeResultSet(rs);
+			// Resolvers are rare: rebuild them one by one
+			for (int i = 0; i < resolvers.size(); ++i) {
+				String[] r = (String[]) resolvers.get(i);
+				((AID) aids.get(r[0])).addResolvers(getAID(r[1]));
+			}
+			
+			// AID user defined slots
+			rs = executeIn(pss.stm_selAgentUserDefSlotsIn[b], aidNames, LOAD_BATCH_SIZES[b]);
+			while (rs.next()) {
+				((AID) aids.get(rs.getString(1))).addUserDefinedSlot(rs.getString(2), rs.getString(3));
 			}
 			closeResultSet(rs);
 			
 			// Protocols
-			loadProtocols(descrId, dfd, allProtocols);		
+			rs = executeIn(pss.stm_selProtocolsIn[b], descrIds, LOAD_BATCH_SIZES[b]);
+			while (rs.next()) {
+				((DFAgentDescription) dfdsById.get(rs.getString(1))).addProtocols(rs.getString(2));
+			}
+			closeResultSet(rs);
 			
 			// Languages
-			loadLanguages(descrId, dfd, allLanguages);
+			rs = executeIn(pss.stm_selLanguagesIn[b], descrIds, LOAD_BATCH_SIZES[b]);
+			while (rs.next()) {
+				((DFAgentDescription) dfdsById.get(rs.getString(1))).addLanguages(rs.getString(2));
+			}
+			closeResultSet(rs);
 			
 			// Ontologies
-			loadOntologies(descrId, dfd, allOntologies);
+			rs = executeIn(pss.stm_selOntologiesIn[b], descrIds, LOAD_BATCH_SIZES[b]);
+			while (rs.next()) {
+				((DFAgentDescription) dfdsById.get(rs.getString(1))).addOntologies(rs.getString(2));
+			}
+			closeResultSet(rs);
 			
 			// Services
-			pss.stm_selServices.setString(1, descrId);
-			rs = pss.stm_selServices.executeQuery();
-			while(rs.next()) {
+			Map services = new HashMap();
+			rs = executeIn(pss.stm_selServicesIn[b], descrIds, LOAD_BATCH_SIZES[b]);
+			while (rs.next()) {
 				ServiceDescription sd = new ServiceDescription();
-				String serviceId = rs.getString("id");
 				sd.setName(rs.getString("sname"));
 				sd.setType(rs.getString("stype"));
 				sd.setOwnership(rs.getString("sownership"));
-				
+				services.put(rs.getString("id"), sd);
+				((DFAgentDescription) dfdsById.get(rs.getString("descrid"))).addServices(sd);
+			}
+			closeResultSet(rs);
+			
+			if (services.size() > 0) {
 				// Service protocols
-				pss.stm_selServiceProtocols.setString(1, serviceId);
-				rsS = pss.stm_selServiceProtocols.executeQuery();
-				while(rsS.next()){
-					sd.addProtocols(rsS.getString(PROTOCOL));
-				}	
-				closeResultSet(rsS);
+				rs = executeIn(pss.stm_selServiceProtocolsIn[b], descrIds, LOAD_BATCH_SIZES[b]);
+				while (rs.next()) {
+					((ServiceDescription) services.get(rs.getString(1))).addProtocols(rs.getString(2));
+				}
+				closeResultSet(rs);
 				
 				// Service languages
-				pss.stm_selServiceLanguages.setString(1, serviceId);
-				rsS = pss.stm_selServiceLanguages.executeQuery();
-				while(rsS.next()){
-					sd.addOntologies(rsS.getString(ONTOLOGY));
-				}	
-				closeResultSet(rsS);
+				rs = executeIn(pss.stm_selServiceLanguagesIn[b], descrIds, LOAD_BATCH_SIZES[b]);
+				while (rs.next()) {
+					((ServiceDescription) services.get(rs.getString(1))).addLanguages(rs.getString(2));
+				}
+				closeResultSet(rs);
 				
 				// Service ontologies
-				pss.stm_selServiceOntologies.setString(1, serviceId);
-				rsS = pss.stm_selServiceOntologies.executeQuery();
-				while(rsS.next()){
-					sd.addLanguages(rsS.getString(LANGUAGE));
+				rs = executeIn(pss.stm_selServiceOntologiesIn[b], descrIds, LOAD_BATCH_SIZES[b]);
+				while (rs.next()) {
+					((ServiceDescription) services.get(rs.getString(1))).addOntologies(rs.getString(2));
 				}
-				closeResultSet(rsS);
+				closeResultSet(rs);
 				
 				// Service properties
-				pss.stm_selServiceProperties.setString(1, serviceId);
-				rsS = pss.stm_selServiceProperties.executeQuery();
-				while(rsS.next()){
+				rs = executeIn(pss.stm_selServicePropertiesIn[b], descrIds, LOAD_BATCH_SIZES[b]);
+				while (rs.next()) {
 					Property prop = new Property();
-					prop.setName(rsS.getString("propkey"));
-					String objStrVal = rsS.getString("propval_obj");
-					String strStrVal = rsS.getString("propval_str");
+					prop.setName(rs.getString(2));
+					String strStrVal = rs.getString(3);
+					String objStrVal = rs.getString(4);
 					Object value = ( objStrVal == null )? strStrVal : deserializeObj(objStrVal);
 					prop.setValue(value);
-					sd.addProperties(prop);
+					((ServiceDescription) services.get(rs.getString(1))).addProperties(prop);
 				}
-				
-				dfd.addServices(sd);
 			}
 		}
 		catch (SQLException sqle) {
@@ -1204,80 +1334,31 @@ public class DFDBKB extends DBKB {
 			throw sqle;
 		}
 		catch (Exception e) {
-			logger.log(Logger.SEVERE, "Unexpected error retrieving DFD for agent "+aidN, e);
-			throw new SQLException("Unexpected error retrieving DFD for agent "+aidN+". "+e.getMessage());
+			logger.log(Logger.SEVERE, "Unexpected error retrieving DFDs for agents "+aidNames, e);
+			throw new SQLException("Unexpected error retrieving DFDs for agents "+aidNames+". "+e.getMessage());
 		}
 		finally {
 			closeResultSet(rs);
-			closeResultSet(rsS);
 		}
-		return dfd;
 	}
 	
-	
-	private final void loadOntologies(String descrId, DFAgentDescription dfd, Map allOntologies) throws SQLException {
-		if (allOntologies != null) {
-			List ontos = (List) allOntologies.get(descrId);
-			if (ontos != null) {
-				Iterator it = ontos.iterator();
-				while (it.hasNext()) {
-					dfd.addOntologies((String) it.next());
-				}
-			}
-		}
-		else {
-			PreparedStatements pss = getPreparedStatements();
-			pss.stm_selOntologies.setString(1, descrId);
-			ResultSet rs = pss.stm_selOntologies.executeQuery();
-			while(rs.next()){
-				dfd.addOntologies(rs.getString(ONTOLOGY));
-			}
-			closeResultSet(rs);
-		}
-	}
-
-	private final void loadLanguages(String descrId, DFAgentDescription dfd, Map allLanguages) throws SQLException {
-		if (allLanguages != null) {
-			List langs = (List) allLanguages.get(descrId);
-			if (langs != null) {
-				Iterator it = langs.iterator();
-				while (it.hasNext()) {
-					dfd.addLanguages((String) it.next());
-				}
-			}
-		}
-		else {
-			PreparedStatements pss = getPreparedStatements();
-			pss.stm_selLanguages.setString(1, descrId);
-			ResultSet rs = pss.stm_selLanguages.executeQuery();
-			while(rs.next()){
-				dfd.addLanguages(rs.getString(LANGUAGE));
-			}
-			closeResultSet(rs);
-		}
-	}
-
-	private final void loadProtocols(String descrId, DFAgentDescription dfd, Map allProtocols) throws SQLException {
-		if (allProtocols != null) {
-			List protos = (List) allProtocols.get(descrId);
-			if (protos != null) {
-				Iterator it = protos.iterator();
-				while (it.hasNext()) {
-					dfd.addProtocols((String) it.next());
-				}
+	/**
+	 * Execute a statement prepared by <code>prepareLoaders()</code> for the given number
+	 * of key values with the given keys. The parameters exceeding the number of keys are
+	 * set to NULL, that does not match any row.
+	 */
+	private ResultSet executeIn(PreparedStatement stm, java.util.List keys, int size) throws SQLException {
+		for (int i = 0; i < size; ++i) {
+			if (i < keys.size()) {
+				stm.setString(i + 1, (String) keys.get(i));
 			}
-		}
-		else {
-			PreparedStatements pss = getPreparedStatements();
-			pss.stm_selProtocols.setString(1, descrId);
-			ResultSet rs = pss.stm_selProtocols.executeQuery();
-			while(rs.next()){
-				dfd.addProtocols(rs.getString(PROTOCOL));
+			else {
+				stm.setNull(i + 1, Types.VARCHAR);
 			}
-			closeResultSet(rs);
 		}
+		return stm.executeQuery();
 	}
-
+	
 	/**
 	 * Deletes the AID corresponding to the indicated agent name
 	 * including all its resolver AIDs (if there are no df descriptions left for them)
@@ -1359,11 +1440,10 @@ public class DFDBKB extends DBKB {
 
 
 	/**
-	 *  Delete the DFD object corresponding to the indicated agent name.
+	 *  Delete the DFD object corresponding to the indicated agent name without committing.
 	 */
-	private void remove(String aid) throws SQLException {  		
+	private void delete(String aid) throws SQLException {  		
 		ResultSet rs = null;
-		Connection conn = getConnectionWrapper().getConnection();
 		
 		try {   
 			PreparedStatements pss = getPreparedStatements();
@@ -1396,20 +1476,11 @@ public class DFDBKB extends DBKB {
 				
 				// AID
 				removeAID(aid);
-				conn.commit();
 				
 			} else {
 				if(logger.isLoggable(Logger.FINE))
 					logger.log(Logger.FINE,"No DF description found to remove for agent '"+aid+"'");
 			}
-		}
-		catch(SQLException sqle){
-			try {
-				conn.rollback();
-			} catch (SQLException se) {
-				logger.log(Logger.SEVERE,"Rollback for incomplete remotion of DFD for agent "+aid + " failed.", se);
-			}
-			throw sqle;
 		} finally {
 			closeResultSet(rs);
 		}
@@ -1418,12 +1489,12 @@ public class DFDBKB extends DBKB {
 	
 	/**
 	 * Convert a template DFAgentDescription into the SQL SELECT
-	 * operation that returns the AID names whose DFAgentDescriptions
-	 * match the given template.
+	 * operation that returns the ids, AID names and lease times of the 
+	 * DFAgentDescriptions matching the given template.
 	 */
 	private String createSelect(DFAgentDescription dfdTemplate) throws Exception {
 		
-		StringBuffer select = new StringBuffer("SELECT dfagentdescr.aid FROM dfagentdescr");
+		StringBuffer select = new StringBuffer("SELECT dfagentdescr.id, dfagentdescr.aid, dfagentdescr.lease FROM dfagentdescr");
 		
 		List lAs = new ArrayList();
 		List lWhere = new ArrayList();
@@ -1596,10 +1667,12 @@ public class DFDBKB extends DBKB {
 			rs = pss.stm_selExpiredDescr.executeQuery();
 			
 			while(rs.next()){
-				remove(rs.getString("aid"));
+				delete(rs.getString("aid"));
 			}
+			getConnectionWrapper().getConnection().commit();
 		}
 		catch(SQLException se){
+			rollbackBatch();
 			if(logger.isLoggable(Logger.WARNING))
 				logger.log(Logger.WARNING, "Error cleaning expired DF registrations", se);
 			
@@ -1666,6 +1739,7 @@ public class DFDBKB extends DBKB {
 		StringACLCodec codec = new StringACLCodec();
 		ResultSet rs = null;
 		
+		beginOperation();
 		try {
 			rs = getPreparedStatements().stm_selSubscriptions.executeQuery();
 			while (rs.next()) {
@@ -1681,6 +1755,7 @@ public class DFDBKB extends DBKB {
 			
 		} finally {
 			closeResultSet(rs);
+			endOperation();
 		}
 		return subscriptions.elements();
 	}
@@ -0,0 +1,221 @@
+package jade.domain;
+
+//#J2ME_EXCLUDE_FILE
+//#APIDOC_EXCLUDE_FILE
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import jade.core.AID;
+import jade.core.BenchmarkHarness;
+import jade.domain.FIPAAgentManagement.DFAgentDescription;
+import jade.domain.FIPAAgentManagement.Property;
+import jade.domain.FIPAAgentManagement.ServiceDescription;
+import jade.domain.KBManagement.DBKB;
+import jade.domain.KBManagement.LeaseManager;
+import jade.util.leap.Properties;
+
+/**
+ Measure how many registrations per second a <code>DFHSQLKB</code> serves
+ when an increasing number of threads (as the DF pool threads do) register 
+ new agents concurrently, with and without group commit, and how many 
+ statement executions and commits each registration costs.
+ As the embedded HSQL database answers without any network round trip and
+ does not flush its log at each commit, each statement execution and commit 
+ can be delayed to emulate a database server. Commit delays are serialized, 
+ as the log flushes of a database server are.
+ The HSQL database files are created in the current directory and their
+ tables are cleaned before each measurement. The HSQL driver must be in the classpath.
+ Usage:
+ <code>java jade.domain.DFDBKBRegisterBenchmark [-threads 1,4,16] [-latency 0] [-commit 0] [-t 3] [-warmup 2]</code>
+ where
+ <ul>
+ <li><code>threads</code> is the list of thread counts to measure</li>
+ <li><code>latency</code> is the delay added to each statement execution and commit in microseconds</li>
+ <li><code>commit</code> is the additional delay of each commit in microseconds</li>
+ </ul>
+ @see jade.core.BenchmarkHarness
+ */
+public class DFDBKBRegisterBenchmark {
+	private static final String THREADS = "threads";
+	private static final String DEFAULT_THREADS = "1,4,16";
+
+	private static final String LATENCY = "latency";
+
+	private static final String COMMIT = "commit";
+
+	private static final String[] MODES = new String[]{"direct", "group commit"};
+
+	private static AtomicLong roundTrips = new AtomicLong();
+	private static long latency;
+	private static long commitLatency;
+	private static Object commitLock = new Object();
+
+	// Used to give each registration a new agent name
+	private static AtomicLong agentCnt = new AtomicLong();
+
+	public static void main(String[] args) throws Exception {
+		Properties pp = BenchmarkHarness.parseArguments(args);
+		int duration = BenchmarkHarness.getDuration(pp);
+		int warmup = BenchmarkHarness.getWarmup(pp);
+		latency = BenchmarkHarness.getIntProperty(pp, LATENCY, 0) * 1000L;
+		commitLatency = BenchmarkHarness.getIntProperty(pp, COMMIT, 0) * 1000L;
+		String[] threads = pp.getProperty(THREADS, DEFAULT_THREADS).split(",");
+
+		System.out.println("----------------------------------");
+		System.out.println(BenchmarkHarness.pad("Threads", 9)+BenchmarkHarness.pad(MODES[0]+" registrations/s", 36)+MODES[1]+" registrations/s");
+		for (int i = 0; i < threads.length; ++i) {
+			int n = Integer.parseInt(threads[i].trim());
+			StringBuffer sb = new StringBuffer(BenchmarkHarness.pad(String.valueOf(n), 9));
+			for (int j = 0; j < MODES.length; ++j) {
+				DBKB kb = new CountingHSQLKB();
+				kb.setup();
+				kb.setLeaseManager(new BenchmarkLeaseManager());
+				kb.setMaxConnections(n + 1);
+				kb.setGroupCommit(j == 1);
+
+				run(kb, n, warmup);
+				roundTrips.set(0);
+				long regs = run(kb, n, duration);
+				double cost = ((double) roundTrips.get()) / regs;
+				kb.setGroupCommit(false);
+				String result = (regs / duration)+" ("+((int) (cost * 10)) / 10.0+" round trips)";
+				sb.append(j < MODES.length - 1 ? BenchmarkHarness.pad(result, 36) : result);
+			}
+			System.out.println(sb);
+		}
+		System.out.println("----------------------------------");
+		System.exit(0);
+	}
+
+	private static long run(final DBKB kb, int n, int duration) throws Exception {
+		final long end = System.currentTimeMillis() + duration * 1000L;
+		final long[] counters = new long[n];
+		final Throwable[] error = new Throwable[1];
+		Thread[] tt = new Thread[n];
+		for (int i = 0; i < n; ++i) {
+			final int index = i;
+			tt[i] = new Thread() {
+				public void run() {
+					try {
+						long cnt = 0;
+						while (System.currentTimeMillis() < end) {
+							DFAgentDescription dfd = createDescription(agentCnt.incrementAndGet());
+							if (kb.register(dfd.getName(), dfd) != null) {
+								throw new Exception("Agent "+dfd.getName().getName()+" already registered");
+							}
+							cnt++;
+						}
+						counters[index] = cnt;
+					}
+					catch (Throwable t) {
+						error[0] = t;
+					}
+				}
+			};
+			tt[i].start();
+		}
+		long total = 0;
+		for (int i = 0; i < n; ++i) {
+			tt[i].join();
+			total += counters[i];
+		}
+		if (error[0] != null) {
+			error[0].printStackTrace();
+			System.exit(1);
+		}
+		return total;
+	}
+
+	private static DFAgentDescription createDescription(long i) {
+		DFAgentDescription dfd = new DFAgentDescription();
+		AID id = new AID("agent"+i+"@benchmark", AID.ISGUID);
+		id.addAddresses("http://host.domain.com:7778/acc");
+		dfd.setName(id);
+		dfd.addLanguages(FIPANames.ContentLanguage.FIPA_SL);
+		dfd.addOntologies("benchmark-ontology");
+		dfd.addProtocols(FIPANames.InteractionProtocol.FIPA_REQUEST);
+		ServiceDescription sd = new ServiceDescription();
+		sd.setType("benchmark");
+		sd.setName("service-"+i);
+		sd.addOntologies("benchmark-ontology");
+		sd.addProperties(new Property("rank", String.valueOf(i)));
+		dfd.addServices(sd);
+		return dfd;
+	}
+
+	/**
+	 A <code>DFHSQLKB</code> that counts the statement executions and commits 
+	 it performs and delays each of them by the configured latencies
+	 */
+	private static class CountingHSQLKB extends DFHSQLKB {
+		CountingHSQLKB() throws SQLException {
+			super(-1, true);
+		}
+
+		protected Connection createDBConnection(String url, String user, String passwd) throws SQLException {
+			return (Connection) wrap(Connection.class, super.createDBConnection(url, user, passwd));
+		}
+
+		private static Object wrap(Class c, final Object target) {
+			return Proxy.newProxyInstance(c.getClassLoader(), new Class[]{c}, new InvocationHandler() {
+				public Object invoke(Object proxy, Method m, Object[] args) throws Throwable {
+					if ((target instanceof Statement && m.getName().startsWith("execute")) || m.getName().equals("commit")) {
+						roundTrips.incrementAndGet();
+						if (latency > 0) {
+							LockSupport.parkNanos(latency);
+						}
+					}
+					if (m.getName().equals("commit") && commitLatency > 0) {
+						synchronized (commitLock) {
+							LockSupport.parkNanos(commitLatency);
+						}
+					}
+					try {
+						Object result = m.invoke(target, args);
+						if (result instanceof PreparedStatement) {
+							return wrap(PreparedStatement.class, result);
+						}
+						if (result instanceof Statement) {
+							return wrap(Statement.class, result);
+						}
+						return result;
+					}
+					catch (InvocationTargetException ite) {
+						throw ite.getCause();
+					}
+				}
+			});
+		}
+	}
+
+	/**
+	 Grant all leases as requested like a DF with no maximum lease time
+	 */
+	private static class BenchmarkLeaseManager implements LeaseManager {
+		public Date getLeaseTime(Object item) {
+			return ((DFAgentDescription) item).getLeaseTime();
+		}
+
+		public void setLeaseTime(Object item, Date lease) {
+			((DFAgentDescription) item).setLeaseTime(lease);
+		}
+
+		public Object grantLeaseTime(Object item) {
+			return item;
+		}
+
+		public boolean isExpired(Date lease) {
+			return (lease != null && lease.getTime() <= System.currentTimeMillis());
+		}
+	}
+}
@@ -0,0 +1,259 @@
+package jade.domain;
+
+//#J2ME_EXCLUDE_FILE
+//#APIDOC_EXCLUDE_FILE
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Date;
+import java.util.concurrent.locks.LockSupport;
+
+import jade.content.onto.Ontology;
+import jade.core.AID;
+import jade.core.BenchmarkHarness;
+import jade.domain.FIPAAgentManagement.DFAgentDescription;
+import jade.domain.FIPAAgentManagement.FIPAManagementOntology;
+import jade.domain.FIPAAgentManagement.Property;
+import jade.domain.FIPAAgentManagement.ServiceDescription;
+import jade.domain.KBManagement.DBKB;
+import jade.domain.KBManagement.KBIterator;
+import jade.domain.KBManagement.LeaseManager;
+import jade.util.leap.Iterator;
+import jade.util.leap.Properties;
+
+/**
+ Measure how fast a <code>DFHSQLKB</code> serves searches, both plain and iterated, 
+ returning a given number of agent descriptions out of a catalogue of a given size,
+ and how many queries each search executes.
+ As the embedded HSQL database answers queries without any network round trip, 
+ each query can be delayed to emulate a database server.
+ The HSQL database files are created in the current directory and their
+ tables are cleaned at startup. The HSQL driver must be in the classpath.
+ Usage:
+ <code>java jade.domain.DFDBKBSearchBenchmark [-registrations 10000] [-results 1,100,5000] [-latency 0] [-t 3] [-warmup 2]</code>
+ where
+ <ul>
+ <li><code>registrations</code> is the number of agent descriptions in the catalogue</li>
+ <li><code>results</code> is the list of search result sizes to measure</li>
+ <li><code>latency</code> is the delay added to each query in microseconds</li>
+ </ul>
+ @see jade.core.BenchmarkHarness
+ */
+public class DFDBKBSearchBenchmark {
+	private static final String REGISTRATIONS = "registrations";
+	private static final int DEFAULT_REGISTRATIONS = 10000;
+
+	private static final String RESULTS = "results";
+	private static final String DEFAULT_RESULTS = "1,100,5000";
+
+	private static final String LATENCY = "latency";
+
+	// Prevent the JIT from discarding the results
+	private static long sink;
+
+	private static long queries;
+	private static long latency;
+
+	public static void main(String[] args) throws Exception {
+		Properties pp = BenchmarkHarness.parseArguments(args);
+		int registrations = BenchmarkHarness.getIntProperty(pp, REGISTRATIONS, DEFAULT_REGISTRATIONS);
+		int duration = BenchmarkHarness.getDuration(pp);
+		int warmup = BenchmarkHarness.getWarmup(pp);
+		latency = BenchmarkHarness.getIntProperty(pp, LATENCY, 0) * 1000L;
+		String[] sResults = pp.getProperty(RESULTS, DEFAULT_RESULTS).split(",");
+		int[] results = new int[sResults.length];
+		int[] groupStarts = new int[sResults.length];
+		int grouped = 0;
+		for (int i = 0; i < results.length; ++i) {
+			results[i] = Integer.parseInt(sResults[i].trim());
+			groupStarts[i] = grouped;
+			grouped += results[i];
+		}
+		if (grouped > registrations) {
+			throw new IllegalArgumentException("The result sizes add up to more than "+registrations+" registrations");
+		}
+
+		Ontology onto = FIPAManagementOntology.getInstance();
+		DBKB kb = new CountingHSQLKB();
+		kb.setup();
+		kb.setLeaseManager(new BenchmarkLeaseManager());
+
+		// The first registrations are split in groups with the requested 
+		// result sizes. Each group has its own service type.
+		long start = System.currentTimeMillis();
+		int group = 0;
+		int groupEnd = results[0];
+		for (int i = 0; i < registrations; ++i) {
+			while (group < results.length && i >= groupEnd) {
+				group++;
+				groupEnd += (group < results.length ? results[group] : 0);
+			}
+			DFAgentDescription dfd = createDescription(i, (group < results.length ? "group-"+group : "other"));
+			kb.register(dfd.getName(), dfd);
+		}
+		System.out.println("----------------------------------");
+		System.out.println(registrations+" registrations in "+(System.currentTimeMillis() - start)+" ms");
+
+		for (int i = 0; i < results.length; ++i) {
+			DFAgentDescription template = new DFAgentDescription();
+			ServiceDescription sd = new ServiceDescription();
+			sd.setType("group-"+i);
+			template.addServices(sd);
+
+			// Check that the descriptions are rebuilt completely
+			java.util.Set expected = new java.util.HashSet();
+			for (int j = groupStarts[i]; j < groupStarts[i] + results[i]; ++j) {
+				expected.add(describe(onto, createDescription(j, "group-"+i)));
+			}
+			java.util.Set actual = new java.util.HashSet();
+			Iterator it = kb.search(template, -1).iterator();
+			while (it.hasNext()) {
+				actual.add(describe(onto, (DFAgentDescription) it.next()));
+			}
+			if (!expected.equals(actual)) {
+				System.out.println("ERROR: wrong search result for group "+i+"\n"+expected+"\n"+actual);
+				System.exit(1);
+			}
+
+			queries = 0;
+			kb.search(template, -1);
+			long searchQueries = queries;
+
+			measureSearch(kb, template, warmup);
+			double search = ((double) measureSearch(kb, template, duration)) / duration;
+			measureIterator(kb, template, warmup);
+			double iterator = ((double) measureIterator(kb, template, duration)) / duration;
+			System.out.println("- "+BenchmarkHarness.pad(results[i]+" results", 14)+": "+BenchmarkHarness.pad(searchQueries+" queries", 15)+"search "+BenchmarkHarness.pad(search+"/s", 24)+"iterator "+iterator+"/s");
+		}
+		System.out.println("----------------------------------");
+		System.exit(0);
+	}
+
+	private static long measureSearch(DBKB kb, DFAgentDescription template, int duration) {
+		long end = System.currentTimeMillis() + duration * 1000L;
+		long cnt = 0;
+		while (System.currentTimeMillis() < end) {
+			sink += kb.search(template, -1).size();
+			cnt++;
+		}
+		return cnt;
+	}
+
+	private static long measureIterator(DBKB kb, DFAgentDescription template, int duration) {
+		long end = System.currentTimeMillis() + duration * 1000L;
+		long cnt = 0;
+		while (System.currentTimeMillis() < end) {
+			KBIterator it = kb.iterator(template);
+			while (it.hasNext()) {
+				sink += it.next().hashCode();
+			}
+			it.close();
+			cnt++;
+		}
+		return cnt;
+	}
+
+	/**
+	 Describe an agent description in a way that does not depend on the order of its services,
+	 that the database does not preserve. The services are removed from the description.
+	 */
+	private static String describe(Ontology onto, DFAgentDescription dfd) throws Exception {
+		java.util.List services = new java.util.ArrayList();
+		Iterator it = dfd.getAllServices();
+		while (it.hasNext()) {
+			services.add(onto.fromObject(it.next()).toString());
+		}
+		java.util.Collections.sort(services);
+		dfd.clearAllServices();
+		return onto.fromObject(dfd)+" "+services;
+	}
+
+	private static DFAgentDescription createDescription(int i, String type) {
+		DFAgentDescription dfd = new DFAgentDescription();
+		AID id = new AID("agent"+i+"@benchmark", AID.ISGUID);
+		id.addAddresses("http://host.domain.com:7778/acc");
+		dfd.setName(id);
+		dfd.addLanguages(FIPANames.ContentLanguage.FIPA_SL);
+		dfd.addOntologies("benchmark-ontology");
+		dfd.addProtocols(FIPANames.InteractionProtocol.FIPA_REQUEST);
+		ServiceDescription sd = new ServiceDescription();
+		sd.setType(type);
+		sd.setName("service-"+i);
+		sd.addOntologies("benchmark-ontology");
+		sd.addProperties(new Property("rank", String.valueOf(i)));
+		dfd.addServices(sd);
+		sd = new ServiceDescription();
+		sd.setType("monitoring");
+		sd.setName("monitor-"+i);
+		sd.addProtocols(FIPANames.InteractionProtocol.FIPA_QUERY);
+		dfd.addServices(sd);
+		return dfd;
+	}
+
+	/**
+	 A <code>DFHSQLKB</code> that counts the queries and updates it executes 
+	 and delays each of them by the configured latency
+	 */
+	private static class CountingHSQLKB extends DFHSQLKB {
+		CountingHSQLKB() throws SQLException {
+			super(-1, true);
+		}
+
+		protected Connection createDBConnection(String url, String user, String passwd) throws SQLException {
+			return (Connection) wrap(Connection.class, super.createDBConnection(url, user, passwd));
+		}
+
+		private static Object wrap(Class c, final Object target) {
+			return Proxy.newProxyInstance(c.getClassLoader(), new Class[]{c}, new InvocationHandler() {
+				public Object invoke(Object proxy, Method m, Object[] args) throws Throwable {
+					if (target instanceof Statement && m.getName().startsWith("execute")) {
+						queries++;
+						if (latency > 0) {
+							LockSupport.parkNanos(latency);
+						}
+					}
+					try {
+						Object result = m.invoke(target, args);
+						if (result instanceof PreparedStatement) {
+							return wrap(PreparedStatement.class, result);
+						}
+						if (result instanceof Statement) {
+							return wrap(Statement.class, result);
+						}
+						return result;
+					}
+					catch (InvocationTargetException ite) {
+						throw ite.getCause();
+					}
+				}
+			});
+		}
+	}
+
+	/**
+	 Grant all leases as requested like a DF with no maximum lease time
+	 */
+	private static class BenchmarkLeaseManager implements LeaseManager {
+		public Date getLeaseTime(Object item) {
+			return ((DFAgentDescription) item).getLeaseTime();
+		}
+
+		public void setLeaseTime(Object item, Date lease) {
+			((DFAgentDescription) item).setLeaseTime(lease);
+		}
+
+		public Object grantLeaseTime(Object item) {
+			return item;
+		}
+
+		public boolean isExpired(Date lease) {
+			return (lease != null && lease.getTime() <= System.currentTimeMillis());
+		}
+	}
+}
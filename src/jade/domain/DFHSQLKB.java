@@ -75,6 +75,23 @@ public class DFHSQLKB extends DFDBKB {
     return "LONGVARCHAR";
   }
   
+  /**
+   * HSQL does not use indexes to evaluate IN lists: select the rows for each
+   * key value with a separate equality condition and merge them with UNION ALL.
+   */
+  protected String createLoadQuery(String columns, String tables, String condition, String key, int size) {
+    StringBuffer sb = new StringBuffer();
+    for (int i = 0; i < size; i++) {
+      if (i > 0)
+        sb.append(" UNION ALL ");
+      sb.append("SELECT " + columns + " FROM " + tables + " WHERE ");
+      if (condition != null)
+        sb.append(condition + " AND ");
+      sb.append(key + " = ?");
+    }
+    return sb.toString();
+  }
+  
   protected void createTable(Statement stmt, String name, String[] entries) throws SQLException {
     String sql = "CREATE CACHED TABLE " + name + " (";
     for (int i = 0; i < entries.length; i++) {
@@ -0,0 +1,381 @@
+/*****************************************************************
+JADE - Java Agent DEvelopment Framework is a framework to develop 
+multi-agent systems in compliance with the FIPA specifications.
+Copyright (C) 2000 CSELT S.p.A. 
+
+GNU Lesser General Public License
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation, 
+version 2.1 of the License. 
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the
+Free Software Foundation, Inc., 59 Temple Place - Suite 330,
+Boston, MA  02111-1307, USA.
+*****************************************************************/
+
+package jade.domain;
+
+//#J2ME_EXCLUDE_FILE
+//#APIDOC_EXCLUDE_FILE
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import jade.core.AID;
+import jade.domain.FIPAAgentManagement.DFAgentDescription;
+import jade.domain.FIPAAgentManagement.ServiceDescription;
+import jade.util.leap.ArrayList;
+import jade.util.leap.Iterator;
+import jade.util.leap.List;
+
+/**
+ * A memory based DF knowledge base that keeps inverted indexes on the
+ * name, protocols, ontologies and languages of the registered agent
+ * descriptions and on the types and names of their services.
+ * <p>
+ * A search intersects the index entries selected by the template, starting
+ * from the smallest one, and matches only the resulting candidates
+ * with <code>DFMemKB.compare()</code>, so that it returns the same
+ * descriptions a full scan would return. Templates that do not specify any
+ * indexed attribute (e.g. templates with service properties only) are
+ * matched by scanning the registrations in parallel partitions.
+ * Index keys are case-folded character by character the same way
+ * <code>String.equalsIgnoreCase()</code> compares them.
+ * </p>
+ * <p>
+ * The DF uses this knowledge base instead of the <code>DFMemKB</code> when
+ * the <code>jade_domain_df_kb-indexed</code> parameter is set to <code>true</code>.
+ * </p>
+ * @see DFKBFactory#getIndexedDFMemKB(int)
+ */
+public class DFIndexedMemKB extends DFMemKB {
+	// Below this number of registrations handing a scan over to other threads is not worth it
+	private static final int PARALLEL_SCAN_THRESHOLD = 10000;
+	private static final long SCANNER_KEEP_ALIVE = 60000;
+
+	// Each index maps a case-folded key to the name the only registration with that 
+	// key was inserted with, or to the Set of the names of all registrations with that key
+	private final HashMap<String, Object> nameIndex = new HashMap<String, Object>();
+	private final HashMap<String, Object> protocolIndex = new HashMap<String, Object>();
+	private final HashMap<String, Object> ontologyIndex = new HashMap<String, Object>();
+	private final HashMap<String, Object> languageIndex = new HashMap<String, Object>();
+	private final HashMap<String, Object> serviceTypeIndex = new HashMap<String, Object>();
+	private final HashMap<String, Object> serviceNameIndex = new HashMap<String, Object>();
+
+	private final int parallelism;
+	private ThreadPoolExecutor scanners;
+
+	/**
+	 * Create an indexed KB that uses as many threads as the available
+	 * processors for parallel scans.
+	 * @param maxResultLimit JADE internal limit for maximum number of search results
+	 */
+	public DFIndexedMemKB(int maxResultLimit) {
+		this(maxResultLimit, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * @param maxResultLimit JADE internal limit for maximum number of search results
+	 * @param parallelism the number of threads used to scan the registrations
+	 * when the template does not specify any indexed attribute
+	 */
+	public DFIndexedMemKB(int maxResultLimit, int parallelism) {
+		super(maxResultLimit);
+		this.parallelism = parallelism;
+	}
+
+	protected Object insert(Object name, Object fact) {
+		Object previous = super.insert(name, fact);
+		if (previous != null) {
+			updateIndexes(name, (DFAgentDescription) previous, false);
+		}
+		updateIndexes(name, (DFAgentDescription) fact, true);
+		return previous;
+	}
+
+	protected Object remove(Object name) {
+		Object previous = super.remove(name);
+		if (previous != null) {
+			updateIndexes(name, (DFAgentDescription) previous, false);
+		}
+		return previous;
+	}
+
+	public List search(Object template, int maxResults) {
+		if (!(template instanceof DFAgentDescription)) {
+			return super.search(template, maxResults);
+		}
+		DFAgentDescription dfd = (DFAgentDescription) template;
+		java.util.ArrayList<Object> entries = new java.util.ArrayList<Object>();
+		if (!collectIndexEntries(dfd, entries)) {
+			// A value specified in the template is not in any registration
+			return new ArrayList();
+		}
+		if (entries.isEmpty()) {
+			return scan(dfd, maxResults);
+		}
+
+		// Iterate over the smallest entry and check the others by lookup
+		int smallest = 0;
+		for (int i = 1; i < entries.size(); ++i) {
+			if (size(entries.get(i)) < size(entries.get(smallest))) {
+				smallest = i;
+			}
+		}
+		Object entry = entries.remove(smallest);
+		java.util.Iterator<?> candidates = (entry instanceof Set ? ((Set<?>) entry).iterator() : java.util.Collections.singleton(entry).iterator());
+		List result = new ArrayList();
+		int found = 0;
+		while (candidates.hasNext() && ((maxResults < 0) || (found < maxResults))) {
+			Object name = candidates.next();
+			if (containedInAll(name, entries)) {
+				Object fact = facts.get(name);
+				if (fact != null && compare(dfd, fact)) {
+					result.add(fact);
+					found++;
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Add to <code>entries</code> the index entry of each value specified in
+	 * a template.
+	 * @return false if some value is not indexed, i.e. nothing can match
+	 */
+	private boolean collectIndexEntries(DFAgentDescription template, java.util.List<Object> entries) {
+		AID id = template.getName();
+		if (id != null && !collectIndexEntry(nameIndex, id.getName(), entries)) {
+			return false;
+		}
+		if (!collectIndexEntries(protocolIndex, template.getAllProtocols(), entries) || 
+				!collectIndexEntries(ontologyIndex, template.getAllOntologies(), entries) || 
+				!collectIndexEntries(languageIndex, template.getAllLanguages(), entries)) {
+			return false;
+		}
+		Iterator it = template.getAllServices();
+		while (it.hasNext()) {
+			ServiceDescription sd = (ServiceDescription) it.next();
+			if (!collectIndexEntry(serviceTypeIndex, sd.getType(), entries) || 
+					!collectIndexEntry(serviceNameIndex, sd.getName(), entries)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean collectIndexEntries(HashMap<String, Object> index, Iterator values, java.util.List<Object> entries) {
+		while (values.hasNext()) {
+			if (!collectIndexEntry(index, (String) values.next(), entries)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean collectIndexEntry(HashMap<String, Object> index, String value, java.util.List<Object> entries) {
+		if (value != null) {
+			Object entry = index.get(fold(value));
+			if (entry == null) {
+				return false;
+			}
+			entries.add(entry);
+		}
+		return true;
+	}
+
+	private static boolean containedInAll(Object name, java.util.List<Object> entries) {
+		for (int i = 0; i < entries.size(); ++i) {
+			Object entry = entries.get(i);
+			if (entry instanceof Set ? !((Set<?>) entry).contains(name) : !entry.equals(name)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static int size(Object entry) {
+		return (entry instanceof Set ? ((Set<?>) entry).size() : 1);
+	}
+
+	private void updateIndexes(Object name, DFAgentDescription dfd, boolean add) {
+		AID id = dfd.getName();
+		if (id != null) {
+			update(nameIndex, id.getName(), name, add);
+		}
+		update(protocolIndex, dfd.getAllProtocols(), name, add);
+		update(ontologyIndex, dfd.getAllOntologies(), name, add);
+		update(languageIndex, dfd.getAllLanguages(), name, add);
+		Iterator it = dfd.getAllServices();
+		while (it.hasNext()) {
+			ServiceDescription sd = (ServiceDescription) it.next();
+			update(serviceTypeIndex, sd.getType(), name, add);
+			update(serviceNameIndex, sd.getName(), name, add);
+		}
+	}
+
+	private static void update(HashMap<String, Object> index, Iterator values, Object name, boolean add) {
+		while (values.hasNext()) {
+			update(index, (String) values.next(), name, add);
+		}
+	}
+
+	private static void update(HashMap<String, Object> index, String value, Object name, boolean add) {
+		if (value == null) {
+			return;
+		}
+		String key = fold(value);
+		Object entry = index.get(key);
+		if (add) {
+			if (entry == null) {
+				index.put(key, name);
+			}
+			else if (entry instanceof Set) {
+				((Set<Object>) entry).add(name);
+			}
+			else if (!entry.equals(name)) {
+				Set<Object> names = new HashSet<Object>(4);
+				names.add(entry);
+				names.add(name);
+				index.put(key, names);
+			}
+		}
+		else {
+			if (entry instanceof Set) {
+				Set<?> names = (Set<?>) entry;
+				names.remove(name);
+				if (names.size() == 1) {
+					index.put(key, names.iterator().next());
+				}
+			}
+			else if (entry != null && entry.equals(name)) {
+				index.remove(key);
+			}
+		}
+	}
+
+	/**
+	 * Fold the case of each character the way <code>String.equalsIgnoreCase()</code>
+	 * does, so that two strings are equal ignoring case if and only if their
+	 * folded forms are equal.
+	 */
+	static String fold(String s) {
+		char[] cc = null;
+		for (int i = 0; i < s.length(); ++i) {
+			char c = s.charAt(i);
+			char f = Character.toLowerCase(Character.toUpperCase(c));
+			if (f != c) {
+				if (cc == null) {
+					cc = s.toCharArray();
+				}
+				cc[i] = f;
+			}
+		}
+		return (cc != null ? new String(cc) : s);
+	}
+
+	/**
+	 * Match all registrations against a template that does not specify
+	 * any indexed attribute, splitting them among the scanner threads
+	 * and the current thread.
+	 */
+	private List scan(final DFAgentDescription template, final int maxResults) {
+		int size = facts.size();
+		if (parallelism < 2 || size < PARALLEL_SCAN_THRESHOLD || maxResults == 0) {
+			return super.search(template, maxResults);
+		}
+
+		final Object[] all = new Object[size];
+		Iterator it = facts.values().iterator();
+		for (int i = 0; i < size; ++i) {
+			all[i] = it.next();
+		}
+		final AtomicInteger found = new AtomicInteger();
+		int partitionSize = (size + parallelism - 1) / parallelism;
+		Future<List>[] partitions = new Future[parallelism - 1];
+		ThreadPoolExecutor executor = getScanners();
+		for (int i = 0; i < partitions.length; ++i) {
+			final int from = (i + 1) * partitionSize;
+			final int to = Math.min(from + partitionSize, size);
+			partitions[i] = executor.submit(new Callable<List>() {
+				public List call() {
+					return scan(all, from, to, template, maxResults, found);
+				}
+			});
+		}
+		List result = scan(all, 0, partitionSize, template, maxResults, found);
+		try {
+			for (int i = 0; i < partitions.length; ++i) {
+				Iterator matches = partitions[i].get().iterator();
+				while (matches.hasNext() && ((maxResults < 0) || (result.size() < maxResults))) {
+					result.add(matches.next());
+				}
+			}
+			return result;
+		}
+		catch (ExecutionException ee) {
+			Throwable t = ee.getCause();
+			throw (t instanceof RuntimeException ? (RuntimeException) t : new RuntimeException(t));
+		}
+		catch (InterruptedException ie) {
+			// Give up the parallel scan, but preserve the interrupted status
+			Thread.currentThread().interrupt();
+			for (int i = 0; i < partitions.length; ++i) {
+				partitions[i].cancel(true);
+			}
+			return super.search(template, maxResults);
+		}
+	}
+
+	private static List scan(Object[] all, int from, int to, DFAgentDescription template, int maxResults, AtomicInteger found) {
+		List result = new ArrayList();
+		for (int i = from; i < to; ++i) {
+			// Check the results found by all partitions every 256 registrations only
+			if (maxResults >= 0 && (i & 0xff) == 0 && found.get() >= maxResults) {
+				break;
+			}
+			if (compare(template, all[i])) {
+				result.add(all[i]);
+				if (maxResults >= 0 && found.incrementAndGet() >= maxResults) {
+					break;
+				}
+			}
+		}
+		return result;
+	}
+
+	private synchronized ThreadPoolExecutor getScanners() {
+		if (scanners == null) {
+			scanners = new ThreadPoolExecutor(parallelism - 1, parallelism - 1, SCANNER_KEEP_ALIVE, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+				private int cnt = 0;
+
+				public synchronized Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "DF-KB-scanner-" + (cnt++));
+					t.setDaemon(true);
+					return t;
+				}
+			});
+			// Do not keep idle threads around if the DF rarely needs parallel scans
+			scanners.allowCoreThreadTimeOut(true);
+		}
+		return scanners;
+	}
+}
@@ -26,8 +26,10 @@ package jade.domain;
 //#MIDP_EXCLUDE_FILE
 
 import jade.content.Concept;
+import jade.content.Predicate;
 import jade.content.onto.basic.Action;
 import jade.content.onto.basic.Done;
+import jade.content.onto.basic.Result;
 import jade.lang.acl.ACLMessage;
 import jade.lang.acl.MessageTemplate;
 import jade.domain.JADEAgentManagement.*;
@@ -59,11 +61,28 @@ class DFJadeAgentManagementBehaviour extends RequestManagementBehaviour {
    */
   protected ACLMessage performAction(Action slAction, ACLMessage request) throws JADESecurityException, FIPAException {
   	Concept action = slAction.getAction();
+  	Object result = null;
   	
   	// SHOW_GUI
   	if (action instanceof ShowGui) {
   		theDF.showGuiAction((ShowGui) action, request.getSender());
   	}
+  	// BULK_REGISTER
+  	else if (action instanceof BulkRegister) {
+  		result = theDF.bulkRegisterAction((BulkRegister) action, request.getSender());
+  	}
+  	// BULK_DEREGISTER
+  	else if (action instanceof BulkDeregister) {
+  		result = theDF.bulkDeregisterAction((BulkDeregister) action, request.getSender());
+  	}
+  	// BULK_MODIFY
+  	else if (action instanceof BulkModify) {
+  		result = theDF.bulkModifyAction((BulkModify) action, request.getSender());
+  	}
+  	// BULK_SEARCH
+  	else if (action instanceof BulkSearch) {
+  		result = theDF.bulkSearchAction((BulkSearch) action, request.getSender());
+  	}
   	else {
   		throw new UnsupportedFunction();
   	}
@@ -71,9 +90,16 @@ class DFJadeAgentManagementBehaviour extends RequestManagementBehaviour {
   	// Prepare the notification
   	ACLMessage notification = request.createReply();
   	notification.setPerformative(ACLMessage.INFORM);
-  	Done d = new Done(slAction);
+  	Predicate p = null;
+  	if (result != null) {
+  		// The action produced a result
+  		p = new Result(slAction, result);
+  	}
+  	else {
+  		p = new Done(slAction);
+  	}
   	try {
-	  	theDF.getContentManager().fillContent(notification, d);
+	  	theDF.getContentManager().fillContent(notification, p);
   	}
   	catch (Exception e) {
   		// Should never happen
@@ -53,6 +53,15 @@ public class DFKBFactory {
 		return new DFMemKB(maxResultLimit);
 	}
 
+	/**
+	 * Returns the memory based knowledge base with secondary indexes which will 
+	 * be used by the DF when the <code>jade_domain_df_kb-indexed</code> parameter is set
+	 * @param maxResultLimit internal limit for the maximum number of search results
+	 */
+	protected MemKB getIndexedDFMemKB(int maxResultLimit) {
+		return new DFIndexedMemKB(maxResultLimit);
+	}
+
 	/**
 	 * Returns the database based knowledge base which will be used by the DF
 	 * @param maxResultLimit JADE internal limit for the maximum number of search results
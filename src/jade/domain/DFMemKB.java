@@ -79,7 +79,7 @@ public class DFMemKB extends MemKB {
 			}
 			iter = toBeRemoved.iterator();
 			while (iter.hasNext()) {
-				facts.remove((AID) iter.next());
+				remove((AID) iter.next());
 			}
 		}
 	}
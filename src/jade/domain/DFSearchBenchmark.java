@@ -0,0 +1,195 @@
+package jade.domain;
+
+//#J2ME_EXCLUDE_FILE
+//#APIDOC_EXCLUDE_FILE
+
+import java.util.Date;
+
+import jade.core.AID;
+import jade.core.BenchmarkHarness;
+import jade.domain.FIPAAgentManagement.DFAgentDescription;
+import jade.domain.FIPAAgentManagement.Property;
+import jade.domain.FIPAAgentManagement.ServiceDescription;
+import jade.domain.KBManagement.LeaseManager;
+import jade.domain.KBManagement.MemKB;
+import jade.util.leap.Iterator;
+import jade.util.leap.List;
+import jade.util.leap.Properties;
+
+/**
+ Measure the time to register a given number of agent descriptions and the 
+ search throughput of the <code>DFMemKB</code> and of the <code>DFIndexedMemKB</code>
+ with the templates agents typically pass to <code>DFService.search()</code>: a service
+ type, a service type and an ontology, an agent name, a value that is not registered
+ and a service property, that no index covers.
+ Before measuring, the benchmark checks that both knowledge bases return the same 
+ descriptions for all templates.
+ Usage:
+ <code>java -Xmx3g jade.domain.DFSearchBenchmark [-registrations 10000,100000,1000000] [-maxresults 100] [-threads 1] [-t 3] [-warmup 2]</code>
+ where
+ <ul>
+ <li><code>registrations</code> is the list of catalogue sizes to measure</li>
+ <li><code>maxresults</code> is the maximum number of results of each search</li>
+ <li><code>threads</code> is the number of threads the <code>DFIndexedMemKB</code> uses to scan the
+ catalogue (defaults to the number of available processors)</li>
+ </ul>
+ @see jade.core.BenchmarkHarness
+ */
+public class DFSearchBenchmark {
+	private static final String REGISTRATIONS = "registrations";
+	private static final String DEFAULT_REGISTRATIONS = "10000,100000,1000000";
+
+	private static final String MAX_RESULTS = "maxresults";
+	private static final int DEFAULT_MAX_RESULTS = 100;
+
+	private static final String THREADS = "threads";
+
+	private static final int SERVICE_TYPES = 1000;
+	private static final int ONTOLOGIES = 20;
+
+	private static final String[] TEMPLATES = new String[]{"type", "type+ontology", "agent name", "no match", "property"};
+
+	// Prevent the JIT from discarding the results
+	private static long sink;
+
+	public static void main(String[] args) throws Exception {
+		Properties pp = BenchmarkHarness.parseArguments(args);
+		int maxResults = BenchmarkHarness.getIntProperty(pp, MAX_RESULTS, DEFAULT_MAX_RESULTS);
+		int threads = BenchmarkHarness.getIntProperty(pp, THREADS, Runtime.getRuntime().availableProcessors());
+		int duration = BenchmarkHarness.getDuration(pp);
+		int warmup = BenchmarkHarness.getWarmup(pp);
+		String[] registrations = pp.getProperty(REGISTRATIONS, DEFAULT_REGISTRATIONS).split(",");
+
+		System.out.println("----------------------------------");
+		for (int i = 0; i < registrations.length; ++i) {
+			int n = Integer.parseInt(registrations[i].trim());
+			DFAgentDescription[] dfds = new DFAgentDescription[n];
+			for (int j = 0; j < n; ++j) {
+				dfds[j] = createDescription(j);
+			}
+			DFAgentDescription[] templates = createTemplates(n);
+
+			System.out.println(n+" registrations");
+			MemKB[] kbs = new MemKB[]{new DFMemKB(maxResults), new DFIndexedMemKB(maxResults, threads)};
+			for (int k = 0; k < kbs.length; ++k) {
+				kbs[k].setLeaseManager(new BenchmarkLeaseManager());
+				long start = System.currentTimeMillis();
+				for (int j = 0; j < n; ++j) {
+					kbs[k].register(dfds[j].getName(), dfds[j]);
+				}
+				System.out.println("- "+BenchmarkHarness.pad(kbs[k].getClass().getName(), 28)+": registered in "+(System.currentTimeMillis() - start)+" ms");
+			}
+			check(kbs, templates);
+
+			for (int t = 0; t < templates.length; ++t) {
+				StringBuffer sb = new StringBuffer("- "+BenchmarkHarness.pad(TEMPLATES[t], 28)+": ");
+				for (int k = 0; k < kbs.length; ++k) {
+					measure(kbs[k], templates[t], maxResults, warmup);
+					long ops = measure(kbs[k], templates[t], maxResults, duration);
+					sb.append(BenchmarkHarness.pad((k == 0 ? "scan " : "indexed ")+(((double) ops) / duration)+" searches/s", 36));
+				}
+				System.out.println(sb);
+			}
+			// Release the catalogue before building the next one
+			kbs = null;
+			dfds = null;
+		}
+		System.out.println("----------------------------------");
+	}
+
+	private static void check(MemKB[] kbs, DFAgentDescription[] templates) {
+		for (int t = 0; t < templates.length; ++t) {
+			java.util.Set expected = names(kbs[0].search(templates[t], -1));
+			for (int k = 1; k < kbs.length; ++k) {
+				java.util.Set actual = names(kbs[k].search(templates[t], -1));
+				if (!expected.equals(actual)) {
+					System.out.println("ERROR: "+kbs[k].getClass().getName()+" returned "+actual.size()+" descriptions instead of "+expected.size()+" for the "+TEMPLATES[t]+" template");
+					System.exit(1);
+				}
+			}
+		}
+	}
+
+	private static java.util.Set names(List l) {
+		java.util.Set s = new java.util.HashSet();
+		Iterator it = l.iterator();
+		while (it.hasNext()) {
+			s.add(((DFAgentDescription) it.next()).getName());
+		}
+		return s;
+	}
+
+	private static long measure(MemKB kb, DFAgentDescription template, int maxResults, int duration) {
+		long end = System.currentTimeMillis() + duration * 1000L;
+		long cnt = 0;
+		while (System.currentTimeMillis() < end) {
+			sink += kb.search(template, maxResults).size();
+			cnt++;
+		}
+		return cnt;
+	}
+
+	private static DFAgentDescription createDescription(int i) {
+		DFAgentDescription dfd = new DFAgentDescription();
+		AID id = new AID("agent"+i+"@benchmark", AID.ISGUID);
+		id.addAddresses("http://host.domain.com:7778/acc");
+		dfd.setName(id);
+		dfd.addLanguages(FIPANames.ContentLanguage.FIPA_SL);
+		dfd.addOntologies("ontology-"+(i % ONTOLOGIES));
+		dfd.addProtocols(FIPANames.InteractionProtocol.FIPA_REQUEST);
+		ServiceDescription sd = new ServiceDescription();
+		sd.setType("type-"+(i % SERVICE_TYPES));
+		sd.setName("service-"+i);
+		sd.addProperties(new Property("rank", String.valueOf(i)));
+		dfd.addServices(sd);
+		return dfd;
+	}
+
+	private static DFAgentDescription[] createTemplates(int n) {
+		DFAgentDescription[] templates = new DFAgentDescription[TEMPLATES.length];
+		for (int i = 0; i < templates.length; ++i) {
+			templates[i] = new DFAgentDescription();
+		}
+		ServiceDescription sd = new ServiceDescription();
+		sd.setType("TYPE-7");
+		templates[0].addServices(sd);
+
+		sd = new ServiceDescription();
+		sd.setType("type-7");
+		templates[1].addServices(sd);
+		templates[1].addOntologies("ontology-7");
+
+		templates[2].setName(new AID("Agent"+(n / 2)+"@benchmark", AID.ISGUID));
+
+		sd = new ServiceDescription();
+		sd.setType("unknown-type");
+		templates[3].addServices(sd);
+
+		// The only matching description is registered last
+		sd = new ServiceDescription();
+		sd.addProperties(new Property("rank", String.valueOf(n - 1)));
+		templates[4].addServices(sd);
+		return templates;
+	}
+
+	/**
+	 Grant all leases as requested like a DF with no maximum lease time
+	 */
+	private static class BenchmarkLeaseManager implements LeaseManager {
+		public Date getLeaseTime(Object item) {
+			return ((DFAgentDescription) item).getLeaseTime();
+		}
+
+		public void setLeaseTime(Object item, Date lease) {
+			((DFAgentDescription) item).setLeaseTime(lease);
+		}
+
+		public Object grantLeaseTime(Object item) {
+			return item;
+		}
+
+		public boolean isExpired(Date lease) {
+			return (lease != null && lease.getTime() <= System.currentTimeMillis());
+		}
+	}
+}
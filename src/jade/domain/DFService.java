@@ -37,6 +37,11 @@ import jade.lang.acl.ISO8601;
 import jade.content.lang.sl.SimpleSLTokenizer;
 import jade.content.lang.sl.SL0Vocabulary;
 
+//#MIDP_EXCLUDE_BEGIN
+import jade.domain.JADEAgentManagement.BulkItemResult;
+import jade.domain.JADEAgentManagement.JADEManagementVocabulary;
+//#MIDP_EXCLUDE_END
+
 import java.util.Date;
 
 /**
@@ -805,6 +810,11 @@ public class DFService extends FIPAService {
 				else if (next.equals(FIPAManagementVocabulary.PROPERTY)) {
 					l.add(parseProperty(parser));
 				}
+				//#MIDP_EXCLUDE_BEGIN
+				else if (next.equals(JADEManagementVocabulary.BULKITEMRESULT)) {
+					l.add(parseBulkItemResult(parser));
+				}
+				//#MIDP_EXCLUDE_END
 			}
 			next = parser.nextToken();
 		}
@@ -816,6 +826,34 @@ public class DFService extends FIPAService {
 	 S has the form:
 	 (sequence (DFD...) (DFD...)) <possibly something else>
 	 */
+	//#MIDP_EXCLUDE_BEGIN
+	/**
+	 The parser content has the form:
+	 bulk-item-result ......) <possibly something else>
+	 */
+	private static BulkItemResult parseBulkItemResult(SimpleSLTokenizer parser) throws Exception {
+		BulkItemResult r = new BulkItemResult();
+		// Skip "bulk-item-result"
+		parser.getElement();
+		while (parser.nextToken().startsWith(":")) {
+			String slotName = parser.getElement();
+			// Failure
+			if (slotName.equals(JADEManagementVocabulary.BULKITEMRESULT_FAILURE)) {
+				r.setFailure(parser.getElement());
+			}
+			// Descriptions
+			else if (slotName.equals(JADEManagementVocabulary.BULKITEMRESULT_DESCRIPTIONS)) {
+				Iterator it = parseAggregate(parser).iterator();
+				while (it.hasNext()) {
+					r.addDescriptions((DFAgentDescription) it.next());
+				}
+			}
+		}
+		parser.consumeChar(')');
+		return r;
+	}
+	//#MIDP_EXCLUDE_END
+	
 	private static DFAgentDescription[] decodeDfdSequence(String s) throws Exception {
 		List l = parseAggregate(new SimpleSLTokenizer(s));
 		// Convert the list into an array
@@ -926,6 +964,42 @@ public class DFService extends FIPAService {
 		return sb.toString();
 	}
 	
+	//#MIDP_EXCLUDE_BEGIN
+	/**
+	 Encode a bulk action of the JADE management ontology. 
+	 Constraints are only meaningful for the bulk-search action.
+	 */
+	static String encodeBulkAction(AID df, String actionName, DFAgentDescription[] dfds, SearchConstraints sc) {
+		StringBuffer sb = new StringBuffer("((");
+		sb.append(SL0Vocabulary.ACTION);
+		sb.append(' ');
+		sb.append(df.toString());
+		sb.append(SPACE_BRACKET);
+		sb.append(actionName);
+		sb.append(SPACE_COLON);
+		sb.append(JADEManagementVocabulary.BULKREGISTER_DESCRIPTIONS);
+		sb.append(SPACE_BRACKET);
+		sb.append(SL0Vocabulary.SEQUENCE);
+		for (int i = 0; i < dfds.length; ++i) {
+			sb.append(' ');
+			encodeDfd(sb, dfds[i]);
+		}
+		sb.append(')');
+		if (sc != null) {
+			sb.append(SPACE_COLON);
+			sb.append(JADEManagementVocabulary.BULKSEARCH_CONSTRAINTS);
+			sb.append(SPACE_BRACKET);
+			sb.append(FIPAManagementVocabulary.SEARCHCONSTRAINTS);
+			encodeField(sb, sc.getMaxResults(), FIPAManagementVocabulary.SEARCHCONSTRAINTS_MAX_RESULTS);
+			encodeField(sb, sc.getMaxDepth(), FIPAManagementVocabulary.SEARCHCONSTRAINTS_MAX_DEPTH);
+			encodeField(sb, sc.getSearchId(), FIPAManagementVocabulary.SEARCHCONSTRAINTS_SEARCH_ID);
+			sb.append(')');
+		}
+		sb.append(")))"); // Close <actionName>, action and content
+		return sb.toString();
+	}
+	//#MIDP_EXCLUDE_END
+	
 	private static void encodeDfd(StringBuffer sb, DFAgentDescription dfd) {
 		sb.append('(');
 		sb.append(FIPAManagementVocabulary.DFAGENTDESCRIPTION);
@@ -1016,6 +1090,125 @@ public class DFService extends FIPAService {
 	
 	
 	//#MIDP_EXCLUDE_BEGIN 
+	/**
+	 Register a number of DFAgentDescriptions with a <b>DF</b> agent by means 
+	 of a single request (the <code>bulk-register</code> action of the
+	 JADE management ontology).
+	 Unlike <code>register()</code>, descriptions are validated by the DF 
+	 and an invalid or already registered description does not prevent the 
+	 registration of the others: the outcome of each registration is 
+	 reported by the corresponding item of the returned array.
+	 @param dfName The AID of the <b>DF</b> agent to register with.
+	 @param dfds The descriptions to register. If the <code>name</code> 
+	 slot of a description is not set, it is set according to the 
+	 <code>a</code> parameter.
+	 @return An array holding, in the same order of <code>dfds</code>, a
+	 <code>BulkItemResult</code> including either the description actually 
+	 registered by the DF or the reason of the failure.
+	 @exception FIPAException If a <code>REFUSE</code>, 
+	 <code>FAILURE</code> or <code>NOT_UNDERSTOOD</code>
+	 message is received from the DF (to indicate some error condition). 
+	 @see #register(Agent, AID, DFAgentDescription)
+	 */
+	public static BulkItemResult[] bulkRegister(Agent a, AID dfName, DFAgentDescription[] dfds) throws FIPAException {
+		return doBulkAction(a, dfName, JADEManagementVocabulary.BULKREGISTER, setNames(a, dfds), null);
+	}
+	
+	/**
+	 Deregister a number of DFAgentDescriptions from a <b>DF</b> agent by 
+	 means of a single request (the <code>bulk-deregister</code> action of 
+	 the JADE management ontology).
+	 @return An array holding, in the same order of <code>dfds</code>, a
+	 <code>BulkItemResult</code> including the reason of the failure, if 
+	 any.
+	 @see #bulkRegister(Agent, AID, DFAgentDescription[])
+	 */
+	public static BulkItemResult[] bulkDeregister(Agent a, AID dfName, DFAgentDescription[] dfds) throws FIPAException {
+		return doBulkAction(a, dfName, JADEManagementVocabulary.BULKDEREGISTER, setNames(a, dfds), null);
+	}
+	
+	/**
+	 Modify a number of DFAgentDescriptions registered with a <b>DF</b> agent 
+	 by means of a single request (the <code>bulk-modify</code> action of 
+	 the JADE management ontology).
+	 @return An array holding, in the same order of <code>dfds</code>, a
+	 <code>BulkItemResult</code> including either the description actually 
+	 registered by the DF or the reason of the failure.
+	 @see #bulkRegister(Agent, AID, DFAgentDescription[])
+	 */
+	public static BulkItemResult[] bulkModify(Agent a, AID dfName, DFAgentDescription[] dfds) throws FIPAException {
+		return doBulkAction(a, dfName, JADEManagementVocabulary.BULKMODIFY, setNames(a, dfds), null);
+	}
+	
+	/**
+	 Perform a number of searches with a <b>DF</b> agent by means of a 
+	 single request (the <code>bulk-search</code> action of the JADE 
+	 management ontology). 
+	 Unlike <code>search()</code>, searches are never propagated to the 
+	 DFs federated with <code>dfName</code>.
+	 @param templates The templates to match data against.
+	 @param constraints The constraints applying to each search.
+	 @return An array holding, in the same order of <code>templates</code>, 
+	 a <code>BulkItemResult</code> including the descriptions matching 
+	 the corresponding template.
+	 @see #search(Agent, AID, DFAgentDescription, SearchConstraints)
+	 */
+	public static BulkItemResult[] bulkSearch(Agent a, AID dfName, DFAgentDescription[] templates, SearchConstraints constraints) throws FIPAException {
+		if (constraints == null) {
+			constraints = new SearchConstraints();
+			constraints.setMaxResults(MINUSONE);
+		}
+		return doBulkAction(a, dfName, JADEManagementVocabulary.BULKSEARCH, templates, constraints);
+	}
+	
+	private static DFAgentDescription[] setNames(Agent a, DFAgentDescription[] dfds) {
+		for (int i = 0; i < dfds.length; ++i) {
+			if (dfds[i].getName() == null) {
+				dfds[i].setName(a.getAID());
+			}
+		}
+		return dfds;
+	}
+	
+	private static BulkItemResult[] doBulkAction(Agent a, AID dfName, String actionName, DFAgentDescription[] dfds, SearchConstraints constraints) throws FIPAException {
+		if (dfName == null) {
+			dfName = a.getDefaultDF();
+		}
+		ACLMessage request = createRequestMessage(a, dfName);
+		request.setOntology(JADEManagementVocabulary.NAME);
+		request.setContent(encodeBulkAction(dfName, actionName, dfds, constraints));
+		ACLMessage inform = doFipaRequestClient(a,request);
+		if (inform == null) {
+			throw new FIPAException("Missing reply");
+		}
+		return decodeBulkResult(inform.getContent());
+	}
+	
+	/**
+	 Process the content of the final <code>inform (result)</code> message
+	 resulting from a bulk action requested to a DF agent, extracting the 
+	 array of <code>bulk-item-result</code> contained within.
+	 @exception FIPAException If some error occurs while decoding
+	 */
+	public static BulkItemResult[] decodeBulkResult(String s) throws FIPAException {
+		// S has the form: 
+		// ((result (action...)  (sequence (bulk-item-result...) (bulk-item-result...)) ) )
+		// We skip until we find "action", skip until the end of (action...) and start decoding from there.
+		try {
+			int start = s.indexOf(SL0Vocabulary.ACTION);
+			start += countUntilEnclosing(s, start);
+			List l = parseAggregate(new SimpleSLTokenizer(s.substring(start)));
+			BulkItemResult[] items = new BulkItemResult[l.size()];
+			for(int i = 0; i < l.size(); i++){
+				items[i] = (BulkItemResult)l.get(i);
+			}
+			return items;
+		}
+		catch (Exception e) {
+			throw new FIPAException("Error decoding INFORM Result. "+e.getMessage());
+		}	  	
+	}
+	
 	/**
 	 In some cases it is more convenient to execute this tasks in a non-blocking way. 
 	 This method returns a non-blocking behaviour that can be added to the queue of the agent behaviours, as usual, by using <code>Agent.addBehaviour()</code>.
@@ -52,9 +52,12 @@ public class FIPAManagementOntology  extends Ontology implements FIPAManagementV
   }
 
   private FIPAManagementOntology() {
-    //#MIDP_EXCLUDE_BEGIN
+    //#J2ME_EXCLUDE_BEGIN
+  	super(NAME, new Ontology[]{ExceptionOntology.getInstance(), SerializableOntology.getInstance()}, new BCMethodHandleIntrospector());
+    //#J2ME_EXCLUDE_END
+    /*#PJAVA_INCLUDE_BEGIN
   	super(NAME, new Ontology[]{ExceptionOntology.getInstance(), SerializableOntology.getInstance()}, new BCReflectiveIntrospector());
-    //#MIDP_EXCLUDE_END
+    #PJAVA_INCLUDE_END*/
     	
 		/*#MIDP_INCLUDE_BEGIN    	
   	super(NAME, ExceptionOntology.getInstance(), null);
@@ -0,0 +1,115 @@
+/*****************************************************************
+JADE - Java Agent DEvelopment Framework is a framework to develop 
+multi-agent systems in compliance with the FIPA specifications.
+Copyright (C) 2000 CSELT S.p.A. 
+
+GNU Lesser General Public License
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation, 
+version 2.1 of the License. 
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the
+Free Software Foundation, Inc., 59 Temple Place - Suite 330,
+Boston, MA  02111-1307, USA.
+*****************************************************************/
+
+package jade.domain.JADEAgentManagement;
+
+//#MIDP_EXCLUDE_FILE
+
+import jade.util.leap.List;
+import jade.util.leap.ArrayList;
+import jade.util.leap.Iterator;
+
+import jade.content.Concept;
+import jade.domain.FIPAAgentManagement.DFAgentDescription;
+
+/**
+   This class represents the <code>bulk-item-result</code> concept of 
+   the <code>JADE-agent-management ontology</code> i.e. the outcome of 
+   the operation on one of the descriptions of a <code>bulk-register</code>, 
+   <code>bulk-deregister</code>, <code>bulk-modify</code> or 
+   <code>bulk-search</code> action.
+   If the operation failed, the <code>failure</code> slot holds the 
+   reason as it would be expressed in the <code>FAILURE</code> or 
+   <code>REFUSE</code> message replying to the corresponding single action 
+   (e.g. <code>already-registered</code>). Otherwise the <code>descriptions</code> 
+   slot holds the description actually registered (that can have a 
+   shorter lease time than the requested one), nothing for a deregistration, 
+   or the descriptions found for a search.
+*/
+public class BulkItemResult implements Concept {
+
+	private String failure;
+	private List descriptions = new ArrayList();
+
+	/**
+	   Default constructor. A default constructor is necessary for
+	   ontological classes.
+	*/
+	public BulkItemResult() {
+	}
+
+	/**
+	   Set the <code>failure</code> slot of this object.
+	   @param failure The reason why the operation failed.
+	*/
+	public void setFailure(String failure) {
+		this.failure = failure;
+	}
+
+	/**
+	   Retrieve the value of the <code>failure</code> slot of this object.
+	   @return The reason why the operation failed or <code>null</code> 
+	   if it succeeded.
+	*/
+	public String getFailure() {
+		return failure;
+	}
+
+	/**
+	   Remove all descriptions from the <code>descriptions</code> 
+	   slot collection of this object.
+	*/
+	public void clearAllDescriptions() {
+		descriptions.clear();
+	}
+
+	/**
+	   Add a description to the <code>descriptions</code> slot 
+	   collection of this object.
+	   @param dfd The description to add to the collection.
+	*/
+	public void addDescriptions(DFAgentDescription dfd) {
+		descriptions.add(dfd);
+	}
+
+	/**
+	   Access all descriptions from the <code>descriptions</code> 
+	   slot collection of this object.
+	   @return An iterator over the descriptions collection.
+	*/
+	public Iterator getAllDescriptions() {
+		return descriptions.iterator();
+	}
+
+	/**
+	   Retrieve the descriptions of the <code>descriptions</code> 
+	   slot collection of this object as an array.
+	*/
+	public DFAgentDescription[] getDescriptionsArray() {
+		DFAgentDescription[] dfds = new DFAgentDescription[descriptions.size()];
+		for (int i = 0; i < dfds.length; ++i) {
+			dfds[i] = (DFAgentDescription) descriptions.get(i);
+		}
+		return dfds;
+	}
+}
@@ -0,0 +1,79 @@
+/*****************************************************************
+JADE - Java Agent DEvelopment Framework is a framework to develop 
+multi-agent systems in compliance with the FIPA specifications.
+Copyright (C) 2000 CSELT S.p.A. 
+
+GNU Lesser General Public License
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation, 
+version 2.1 of the License. 
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the
+Free Software Foundation, Inc., 59 Temple Place - Suite 330,
+Boston, MA  02111-1307, USA.
+*****************************************************************/
+
+package jade.domain.JADEAgentManagement;
+
+//#MIDP_EXCLUDE_FILE
+
+import jade.util.leap.List;
+import jade.util.leap.ArrayList;
+import jade.util.leap.Iterator;
+
+import jade.content.AgentAction;
+import jade.domain.FIPAAgentManagement.DFAgentDescription;
+
+/**
+   This class represents the <code>bulk-modify</code> action of 
+   the <code>JADE-agent-management ontology</code>.
+   This action can be requested to the JADE DF to modify a number of agent descriptions 
+   in a single request. The DF replies with a <code>Result</code> 
+   including a <code>BulkItemResult</code> for each description, in the same order.
+   @see jade.domain.DFService#bulkModify(jade.core.Agent, jade.core.AID, DFAgentDescription[])
+*/
+public class BulkModify implements AgentAction {
+
+	private List descriptions = new ArrayList();
+
+	/**
+	   Default constructor. A default constructor is necessary for
+	   ontological classes.
+	*/
+	public BulkModify() {
+	}
+
+	/**
+	   Remove all descriptions from the <code>descriptions</code> 
+	   slot collection of this object.
+	*/
+	public void clearAllDescriptions() {
+		descriptions.clear();
+	}
+
+	/**
+	   Add a description to the <code>descriptions</code> slot 
+	   collection of this object.
+	   @param dfd The description to add to the collection.
+	*/
+	public void addDescriptions(DFAgentDescription dfd) {
+		descriptions.add(dfd);
+	}
+
+	/**
+	   Access all descriptions from the <code>descriptions</code> 
+	   slot collection of this object.
+	   @return An iterator over the descriptions collection.
+	*/
+	public Iterator getAllDescriptions() {
+		return descriptions.iterator();
+	}
+}
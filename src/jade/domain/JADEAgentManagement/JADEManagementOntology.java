@@ -29,6 +29,8 @@ import jade.core.PlatformID;
 import jade.content.onto.*;
 import jade.content.schema.*;
 import jade.domain.FIPAAgentManagement.ExceptionOntology;
+import jade.domain.FIPAAgentManagement.FIPAManagementOntology;
+import jade.domain.FIPAAgentManagement.FIPAManagementVocabulary;
 import jade.domain.FIPAAgentManagement.NotRegistered;
 import jade.domain.FIPAAgentManagement.AlreadyRegistered;
 
@@ -39,7 +41,10 @@ import jade.domain.FIPAAgentManagement.AlreadyRegistered;
    <p>
    The actual <code>Ontology</code> object representing the 
    JADE-Agent-Management-ontology is a singleton and is accessible through 
-   the static method <code>getInstance()</code>
+   the static method <code>getInstance()</code>.
+   <p>
+   The bulk actions served by the DF refer to the agent descriptions of
+   the FIPA-Agent-Management-ontology, that this ontology therefore extends.
    @author Giovanni Caire -  TILAB
  */
 public class JADEManagementOntology extends Ontology implements JADEManagementVocabulary {
@@ -62,7 +67,7 @@ public class JADEManagementOntology extends Ontology implements JADEManagementVo
 	
   private JADEManagementOntology() {
     //#MIDP_EXCLUDE_BEGIN
-  	super(NAME, new Ontology[]{ExceptionOntology.getInstance(), SerializableOntology.getInstance()}, new BCReflectiveIntrospector());
+  	super(NAME, new Ontology[]{ExceptionOntology.getInstance(), FIPAManagementOntology.getInstance(), SerializableOntology.getInstance()}, new BCReflectiveIntrospector());
     //#MIDP_EXCLUDE_END
     	
 		/*#MIDP_INCLUDE_BEGIN    	
@@ -75,6 +80,7 @@ public class JADEManagementOntology extends Ontology implements JADEManagementVo
     	add(new ConceptSchema(LOCATION));
     	add(new ConceptSchema(CONTAINERID), ContainerID.class);
     	add(new ConceptSchema(PLATFORMID), PlatformID.class);
+    	add(new ConceptSchema(BULKITEMRESULT), BulkItemResult.class);
 
     	// AgentActions definitions
     	add(new AgentActionSchema(SHUTDOWNPLATFORM), ShutdownPlatform.class);
@@ -91,10 +97,30 @@ public class JADEManagementOntology extends Ontology implements JADEManagementVo
     	add(new AgentActionSchema(WHEREISAGENT), WhereIsAgentAction.class);
     	add(new AgentActionSchema(QUERYAGENTSONLOCATION), QueryAgentsOnLocation.class);
     	add(new AgentActionSchema(QUERY_PLATFORM_LOCATIONS), QueryPlatformLocationsAction.class);
+    	add(new AgentActionSchema(BULKREGISTER), BulkRegister.class);
+    	add(new AgentActionSchema(BULKDEREGISTER), BulkDeregister.class);
+    	add(new AgentActionSchema(BULKMODIFY), BulkModify.class);
+    	add(new AgentActionSchema(BULKSEARCH), BulkSearch.class);
 
     	// Predicates definitions
 	  	add(new PredicateSchema(ALREADYREGISTERED), AlreadyRegistered.class);
 	  	add(new PredicateSchema(NOTREGISTERED), NotRegistered.class);
+	  	
+	  	// Bulk actions slots definitions
+	  	ConceptSchema dfdSchema = (ConceptSchema) getSchema(FIPAManagementVocabulary.DFAGENTDESCRIPTION);
+	  	ConceptSchema bcs = (ConceptSchema) getSchema(BULKITEMRESULT);
+	  	bcs.add(BULKITEMRESULT_FAILURE, (PrimitiveSchema) getSchema(BasicOntology.STRING), ObjectSchema.OPTIONAL);
+	  	bcs.add(BULKITEMRESULT_DESCRIPTIONS, dfdSchema, 0, ObjectSchema.UNLIMITED);
+	  	
+	  	AgentActionSchema bas = (AgentActionSchema) getSchema(BULKREGISTER);
+	  	bas.add(BULKREGISTER_DESCRIPTIONS, dfdSchema, 1, ObjectSchema.UNLIMITED);
+	  	bas = (AgentActionSchema) getSchema(BULKDEREGISTER);
+	  	bas.add(BULKDEREGISTER_DESCRIPTIONS, dfdSchema, 1, ObjectSchema.UNLIMITED);
+	  	bas = (AgentActionSchema) getSchema(BULKMODIFY);
+	  	bas.add(BULKMODIFY_DESCRIPTIONS, dfdSchema, 1, ObjectSchema.UNLIMITED);
+	  	bas = (AgentActionSchema) getSchema(BULKSEARCH);
+	  	bas.add(BULKSEARCH_DESCRIPTIONS, dfdSchema, 1, ObjectSchema.UNLIMITED);
+	  	bas.add(BULKSEARCH_CONSTRAINTS, (ConceptSchema) getSchema(FIPAManagementVocabulary.SEARCHCONSTRAINTS), ObjectSchema.OPTIONAL);
     	//#MIDP_EXCLUDE_END
     	
 			/*#MIDP_INCLUDE_BEGIN    	
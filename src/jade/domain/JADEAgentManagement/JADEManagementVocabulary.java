@@ -110,6 +110,24 @@ public interface JADEManagementVocabulary extends ExceptionVocabulary {
 
   // actions supported by the DF
   public static final String SHOWGUI = "showgui";
+  
+  public static final String BULKREGISTER = "bulk-register";
+  public static final String BULKREGISTER_DESCRIPTIONS = "descriptions";
+  
+  public static final String BULKDEREGISTER = "bulk-deregister";
+  public static final String BULKDEREGISTER_DESCRIPTIONS = "descriptions";
+  
+  public static final String BULKMODIFY = "bulk-modify";
+  public static final String BULKMODIFY_DESCRIPTIONS = "descriptions";
+  
+  public static final String BULKSEARCH = "bulk-search";
+  public static final String BULKSEARCH_DESCRIPTIONS = "descriptions";
+  public static final String BULKSEARCH_CONSTRAINTS = "constraints";
+  
+  // The outcome of a bulk action on a single description
+  public static final String BULKITEMRESULT = "bulk-item-result";
+  public static final String BULKITEMRESULT_FAILURE = "failure";
+  public static final String BULKITEMRESULT_DESCRIPTIONS = "descriptions";
 
   // Exception Predicates
   public static final String NOTREGISTERED = jade.domain.FIPAAgentManagement.FIPAManagementVocabulary.NOTREGISTERED;
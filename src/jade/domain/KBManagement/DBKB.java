@@ -40,27 +40,49 @@ import java.sql.DatabaseMetaData;
 import java.sql.DriverManager;
 import java.sql.SQLException;
 import java.util.Enumeration;
+import java.util.LinkedList;
 import java.util.NoSuchElementException;
 
 /**
  * This class provides an abstract implementation of the 
  * <code>KB</code> interface where information are stored in
  * a database.
+ * <p>
+ * Connections to the database are taken from a pool, that can be bounded
+ * by means of the <code>setMaxConnections()</code> method, for the duration
+ * of each operation. Connections detached by iterators do not count against
+ * that limit.
+ * When group commit is active (see <code>setGroupCommit()</code>)
+ * insertions and removals requested by concurrent threads are queued and
+ * executed in order by a single writer thread, that applies all those
+ * pending at a given time in a single transaction.
  * 
  * @author Roland Mungenast - Profactor
  */
 public abstract class DBKB extends KB {
 	
+	// Maximum number of insertions and removals applied in a single transaction
+	private static final int MAX_GROUP_SIZE = 100;
+	
 	/**
 	 * Used database driver
 	 */
 	protected String driver = "sun.jdbc.odbc.JdbcOdbcDriver";
 	
 	/**
-	 * This ThreadLocal is used to hold connections and associated additional information
-	 * (such as prepared statements) currently used by each Thread
+	 * This ThreadLocal is used to hold the Lease of the connection (and associated
+	 * additional information such as prepared statements) currently used by each Thread
 	 */
-	private ThreadLocal connections = new ThreadLocal();
+	private ThreadLocal leases = new ThreadLocal();
+	
+	// The connections not currently leased by any Thread
+	private LinkedList idleConnections = new LinkedList();
+	private int connectionsCnt = 0;
+	private int maxConnections = -1;
+	
+	// The insertions and removals waiting for the writer thread
+	private LinkedList pendingWrites = new LinkedList();
+	private volatile boolean groupCommit = false;
 	
 	private String url, username, password;
 	
@@ -143,18 +165,24 @@ public abstract class DBKB extends KB {
 		this.password = password;
 		
 		// Activate cursors when using a SQL Server database
-		Connection conn = getConnectionWrapper().getConnection();
-		DatabaseMetaData md = conn.getMetaData();
-		String dbName = md.getDatabaseProductName();	
-		if (dbName.toLowerCase().indexOf("sql server") != -1) {  
-			if (url.toLowerCase().indexOf("selectmethod") == -1) {
-				if (!url.endsWith(";"))
-					url = url + ";";
-				url = url + "SelectMethod=cursor";
-				this.url = url;
-				invalidateConnectionWrapper();
+		beginOperation();
+		try {
+			Connection conn = getConnectionWrapper().getConnection();
+			DatabaseMetaData md = conn.getMetaData();
+			String dbName = md.getDatabaseProductName();
+			if (dbName.toLowerCase().indexOf("sql server") != -1) {
+				if (url.toLowerCase().indexOf("selectmethod") == -1) {
+					if (!url.endsWith(";"))
+						url = url + ";";
+					url = url + "SelectMethod=cursor";
+					this.url = url;
+					invalidateConnectionWrapper();
+				}
 			}
 		}
+		finally {
+			endOperation();
+		}
 	}
 	
 	/**
@@ -191,17 +219,162 @@ public abstract class DBKB extends KB {
 		}
 	}
 		
+	/**
+	 * Sets the maximum number of connections that can be open towards the database
+	 * at the same time. Threads needing a connection when all of them are in use 
+	 * wait until one is released. 
+	 * @param max the maximum number of connections or a value <= 0 to indicate
+	 * that there is no limit (default)
+	 */
+	public void setMaxConnections(int max) {
+		synchronized (idleConnections) {
+			maxConnections = max;
+			idleConnections.notifyAll();
+		}
+	}
+	
+	/**
+	 * Returns the connection leased by the calling thread, leasing one from 
+	 * the pool if needed. Code using the returned connection must be executed 
+	 * between a call to <code>beginOperation()</code> and the corresponding call
+	 * to <code>endOperation()</code>, that makes the connection available 
+	 * to other threads. 
+	 */
 	protected final ConnectionWrapper getConnectionWrapper() throws SQLException {
-		ConnectionWrapper wrapper = (ConnectionWrapper) connections.get();
-		if (wrapper == null) {
+		Lease lease = getLease();
+		if (lease.wrapper == null) {
+			lease.wrapper = acquireConnectionWrapper();
+		}
+		return lease.wrapper;
+	}
+	
+	/**
+	 * Marks the beginning of an operation using the connection leased by the
+	 * calling thread. Operations can be nested. 
+	 */
+	protected final void beginOperation() {
+		getLease().depth++;
+	}
+	
+	/**
+	 * Marks the end of an operation started by <code>beginOperation()</code>.
+	 * When the outermost operation ends, the connection leased by the calling thread
+	 * (if any) goes back to the pool. 
+	 */
+	protected final void endOperation() {
+		Lease lease = getLease();
+		lease.depth--;
+		if (lease.depth <= 0 && lease.outer != null) {
+			// End of an operation using a detached connection: it does not belong to the pool
+			leases.set(lease.outer);
+		}
+		else if (lease.depth <= 0 && lease.wrapper != null) {
+			lease.depth = 0;
+			synchronized (idleConnections) {
+				idleConnections.addLast(lease.wrapper);
+				idleConnections.notifyAll();
+			}
+			lease.wrapper = null;
+		}
+	}
+	
+	private Lease getLease() {
+		Lease lease = (Lease) leases.get();
+		if (lease == null) {
+			lease = new Lease();
+			leases.set(lease);
+		}
+		return lease;
+	}
+	
+	private ConnectionWrapper acquireConnectionWrapper() throws SQLException {
+		synchronized (idleConnections) {
+			while (idleConnections.isEmpty() && maxConnections > 0 && connectionsCnt >= maxConnections) {
+				try {
+					idleConnections.wait();
+				}
+				catch (InterruptedException ie) {
+					Thread.currentThread().interrupt();
+					throw new SQLException("Interrupted while waiting for a DB connection");
+				}
+			}
+			if (!idleConnections.isEmpty()) {
+				return (ConnectionWrapper) idleConnections.removeFirst();
+			}
+			connectionsCnt++;
+		}
+		
+		// Open a new connection outside the lock
+		try {
 			Connection conn = createDBConnection(url, username, password);
-			wrapper = new ConnectionWrapper(conn);
+			ConnectionWrapper wrapper = new ConnectionWrapper(conn);
 			initConnectionWrapper(wrapper);
-			connections.set(wrapper);
+			return wrapper;
+		}
+		catch (SQLException sqle) {
+			discardConnection();
+			throw sqle;
+		}
+	}
+	
+	/**
+	 * Detaches the connection leased by the calling thread (if any) from it, so that
+	 * it does not go back to the pool at the end of the current operation. 
+	 * This is used by iterators that keep reading from a ResultSet of that connection 
+	 * after the operation that created them ended. The connection must be given back 
+	 * by means of <code>releaseConnectionWrapper()</code>.
+	 * Since the iterator may be held for an arbitrary time (e.g. until a client 
+	 * asks for more results) the detached connection does not count against 
+	 * the maximum number of connections: threads waiting for one are not blocked by it.
+	 */
+	protected final ConnectionWrapper detachConnectionWrapper() {
+		Lease lease = getLease();
+		ConnectionWrapper wrapper = lease.wrapper;
+		lease.wrapper = null;
+		if (wrapper != null) {
+			discardConnection();
 		}
 		return wrapper;
 	}
 	
+	/**
+	 * Marks the beginning of an operation using a connection previously detached
+	 * by means of <code>detachConnectionWrapper()</code>. Until the corresponding 
+	 * call to <code>endOperation()</code> the calling thread uses that connection
+	 * instead of the one it leased (if any). 
+	 */
+	protected final void beginOperation(ConnectionWrapper wrapper) {
+		Lease lease = new Lease();
+		lease.wrapper = wrapper;
+		lease.depth = 1;
+		lease.outer = getLease();
+		leases.set(lease);
+	}
+	
+	/**
+	 * Gives a connection detached by means of <code>detachConnectionWrapper()</code> 
+	 * back to the pool. If in the meanwhile other connections were opened up to 
+	 * the maximum, the connection is closed instead.
+	 */
+	protected final void releaseConnectionWrapper(ConnectionWrapper wrapper) {
+		synchronized (idleConnections) {
+			if (maxConnections <= 0 || connectionsCnt < maxConnections) {
+				connectionsCnt++;
+				idleConnections.addLast(wrapper);
+				idleConnections.notifyAll();
+				return;
+			}
+		}
+		try {wrapper.getConnection().close();} catch (Exception e) {}
+	}
+	
+	private void discardConnection() {
+		synchronized (idleConnections) {
+			connectionsCnt--;
+			idleConnections.notifyAll();
+		}
+	}
+	
 	/**
 	 * Subclasses can redefine this method to provide implementation specific ConnectionWrapper initializations
 	 */  
@@ -209,125 +382,231 @@ public abstract class DBKB extends KB {
 	}
 	
 	private void invalidateConnectionWrapper() throws SQLException {
-		ConnectionWrapper wrapper = (ConnectionWrapper) connections.get();
-		if (wrapper != null) {
-			try {wrapper.getConnection().close();} catch (Exception e) {}
-			// FIXME: For JDK1.4 compatibility we can't use remove(). For our purposes there is no difference  
-			connections.set(null);
+		Lease lease = getLease();
+		if (lease.wrapper != null) {
+			try {lease.wrapper.getConnection().close();} catch (Exception e) {}
+			lease.wrapper = null;
+			discardConnection();
 		}
 	}
 	
 	
+	/**
+	 * @throws KBException if the fact could not be stored in the database
+	 */
 	protected Object insert(Object name, Object fact) {
-		try {
-			return insertSingle(name, fact);
+		if (groupCommit) {
+			WriteRequest r = new WriteRequest(name, fact);
+			if (submit(r)) {
+				return r.getResult();
+			}
 		}
-		catch (SQLException sqle) {
+		beginOperation();
+		try {
 			try {
-				// Refresh the connection and retry.
-				logger.log(Logger.WARNING, "Invalidating DB connection...");
-				invalidateConnectionWrapper();
-				//logger.log(Logger.INFO, "DB connection correctly refreshed");
 				return insertSingle(name, fact);
 			}
-			catch (Exception e) {
-				// Log the original error
-				logger.log(Logger.SEVERE,"DB error inserting DFD for agent "+((DFAgentDescription) fact).getName().getName(), sqle); 
-				try {invalidateConnectionWrapper();} catch(Exception e1) {}
+			catch (SQLException sqle) {
+				try {
+					// Refresh the connection and retry.
+					logger.log(Logger.WARNING, "Invalidating DB connection...");
+					invalidateConnectionWrapper();
+					//logger.log(Logger.INFO, "DB connection correctly refreshed");
+					return insertSingle(name, fact);
+				}
+				catch (Exception e) {
+					// Log the original error
+					logger.log(Logger.SEVERE,"DB error inserting DFD for agent "+((DFAgentDescription) fact).getName().getName(), sqle); 
+					try {invalidateConnectionWrapper();} catch(Exception e1) {}
+					throw new KBException("DB error inserting DFD for agent "+((DFAgentDescription) fact).getName().getName());
+				}
 			}
 		}
-		return null;
+		finally {
+			endOperation();
+		}
 	}
 	
 	protected abstract Object insertSingle(Object name, Object fact) throws SQLException;
 	
+	/**
+	 * @throws KBException if the fact could not be removed from the database
+	 */
 	protected Object remove(Object name) {
-		try {
-			return removeSingle(name);
+		if (groupCommit) {
+			WriteRequest r = new WriteRequest(name, null);
+			if (submit(r)) {
+				return r.getResult();
+			}
 		}
-		catch (SQLException sqle) {
+		beginOperation();
+		try {
 			try {
-				// Refresh the connection and retry.
-				logger.log(Logger.WARNING, "Invalidating DB connection...");
-				invalidateConnectionWrapper();
-				//logger.log(Logger.INFO, "DB connection correctly refreshed");
 				return removeSingle(name);
 			}
-			catch (Exception e) {
-				// Log the original error
-				logger.log(Logger.SEVERE,"DB error removing DFD for agent "+((AID) name).getName(), sqle); 
-				try {invalidateConnectionWrapper();} catch(Exception e1) {}
+			catch (SQLException sqle) {
+				try {
+					// Refresh the connection and retry.
+					logger.log(Logger.WARNING, "Invalidating DB connection...");
+					invalidateConnectionWrapper();
+					//logger.log(Logger.INFO, "DB connection correctly refreshed");
+					return removeSingle(name);
+				}
+				catch (Exception e) {
+					// Log the original error
+					logger.log(Logger.SEVERE,"DB error removing DFD for agent "+((AID) name).getName(), sqle); 
+					try {invalidateConnectionWrapper();} catch(Exception e1) {}
+					throw new KBException("DB error removing DFD for agent "+((AID) name).getName());
+				}
 			}
 		}
-		return null;
+		finally {
+			endOperation();
+		}
 	}
 
 	protected abstract Object removeSingle(Object name) throws SQLException;
 	
+	/**
+	 * Inserts a number of facts in a single transaction (see 
+	 * <code>setGroupCommit()</code>). If the transaction fails, each 
+	 * fact is inserted in a transaction of its own. 
+	 */
+	protected Object[] insert(Object[] names, Object[] facts) {
+		return write(names, facts);
+	}
+	
+	/**
+	 * Removes a number of facts in a single transaction (see 
+	 * <code>setGroupCommit()</code>). If the transaction fails, each 
+	 * fact is removed in a transaction of its own. 
+	 */
+	protected Object[] remove(Object[] names) {
+		return write(names, null);
+	}
+	
+	private Object[] write(Object[] names, Object[] facts) {
+		java.util.List bulk = new java.util.ArrayList(names.length);
+		for (int i = 0; i < names.length; ++i) {
+			WriteRequest r = new WriteRequest(names[i], (facts != null ? facts[i] : null));
+			r.bulk = bulk;
+			bulk.add(r);
+		}
+		if (!submit(bulk)) {
+			// No writer thread: apply the requests directly
+			executeGroup(bulk);
+			for (int i = 0; i < bulk.size(); ++i) {
+				((WriteRequest) bulk.get(i)).setDone();
+			}
+		}
+		
+		Object[] results = new Object[names.length];
+		for (int i = 0; i < results.length; ++i) {
+			try {
+				results[i] = ((WriteRequest) bulk.get(i)).getResult();
+			}
+			catch (KBException kbe) {
+				results[i] = kbe;
+			}
+		}
+		return results;
+	}
+	
 	public List search(Object template, int maxResult) {
+		beginOperation();
 		try {
-			return searchSingle(template, maxResult);
-		}
-		catch (SQLException sqle) {
 			try {
-				// Refresh the connection and retry.
-				logger.log(Logger.WARNING, "Invalidating DB connection...");
-				invalidateConnectionWrapper();
-				//logger.log(Logger.INFO, "DB connection correctly refreshed");
 				return searchSingle(template, maxResult);
 			}
-			catch (Exception e) {
-				// Log the original error
-				logger.log(Logger.SEVERE,"DB error during search operation.", sqle); 
-				try {invalidateConnectionWrapper();} catch(Exception e1) {}
+			catch (SQLException sqle) {
+				try {
+					// Refresh the connection and retry.
+					logger.log(Logger.WARNING, "Invalidating DB connection...");
+					invalidateConnectionWrapper();
+					//logger.log(Logger.INFO, "DB connection correctly refreshed");
+					return searchSingle(template, maxResult);
+				}
+				catch (Exception e) {
+					// Log the original error
+					logger.log(Logger.SEVERE,"DB error during search operation.", sqle); 
+					try {invalidateConnectionWrapper();} catch(Exception e1) {}
+				}
 			}
+			return new ArrayList();
+		}
+		finally {
+			endOperation();
 		}
-		return new ArrayList();
 	}
 
 	protected abstract List searchSingle(Object template, int maxResult) throws SQLException;
 	
-	public KBIterator iterator(Object template) {
+	/**
+	 * Performs all searches using the same connection
+	 */
+	public List[] search(Object[] templates, int maxResult) {
+		beginOperation();
 		try {
-			return iteratorSingle(template);
+			return super.search(templates, maxResult);
 		}
-		catch (SQLException sqle) {
+		finally {
+			endOperation();
+		}
+	}
+	
+	public KBIterator iterator(Object template) {
+		beginOperation();
+		try {
 			try {
-				// Refresh the connection and retry.
-				logger.log(Logger.WARNING, "Invalidating DB connection...");
-				invalidateConnectionWrapper();
-				//logger.log(Logger.INFO, "DB connection correctly refreshed");
 				return iteratorSingle(template);
 			}
-			catch (Exception e) {
-				// Log the original error
-				logger.log(Logger.SEVERE,"DB error during iterated search operation.", sqle); 
-				try {invalidateConnectionWrapper();} catch(Exception e1) {}
+			catch (SQLException sqle) {
+				try {
+					// Refresh the connection and retry.
+					logger.log(Logger.WARNING, "Invalidating DB connection...");
+					invalidateConnectionWrapper();
+					//logger.log(Logger.INFO, "DB connection correctly refreshed");
+					return iteratorSingle(template);
+				}
+				catch (Exception e) {
+					// Log the original error
+					logger.log(Logger.SEVERE,"DB error during iterated search operation.", sqle); 
+					try {invalidateConnectionWrapper();} catch(Exception e1) {}
+				}
 			}
+			return new EmptyKBIterator();
+		}
+		finally {
+			endOperation();
 		}
-		return new EmptyKBIterator();
 	}
 
 	protected abstract KBIterator iteratorSingle(Object template) throws SQLException;
 	
 	public void subscribe(Object template, SubscriptionResponder.Subscription s) throws NotUnderstoodException{
+		beginOperation();
 		try {
-			subscribeSingle(template, s);
-		}
-		catch (SQLException sqle) {
 			try {
-				// Refresh the connection and retry.
-				logger.log(Logger.WARNING, "Invalidating DB connection...");
-				invalidateConnectionWrapper();
-				//logger.log(Logger.INFO, "DB connection correctly refreshed");
 				subscribeSingle(template, s);
 			}
-			catch (Exception e) {
-				// Log the original error
-				logger.log(Logger.SEVERE,"DB error during iterated search operation.", sqle); 
-				try {invalidateConnectionWrapper();} catch(Exception e1) {}
+			catch (SQLException sqle) {
+				try {
+					// Refresh the connection and retry.
+					logger.log(Logger.WARNING, "Invalidating DB connection...");
+					invalidateConnectionWrapper();
+					//logger.log(Logger.INFO, "DB connection correctly refreshed");
+					subscribeSingle(template, s);
+				}
+				catch (Exception e) {
+					// Log the original error
+					logger.log(Logger.SEVERE,"DB error during iterated search operation.", sqle); 
+					try {invalidateConnectionWrapper();} catch(Exception e1) {}
+				}
 			}
 		}
+		finally {
+			endOperation();
+		}
 	}
 
 	protected abstract void subscribeSingle(Object template, SubscriptionResponder.Subscription s) throws SQLException, NotUnderstoodException;
@@ -337,28 +616,298 @@ public abstract class DBKB extends KB {
 	public abstract Enumeration getSubscriptions();
 	
 	public void unsubscribe(SubscriptionResponder.Subscription s) {
+		beginOperation();
 		try {
-			unsubscribeSingle(s);
-		}
-		catch (SQLException sqle) {
 			try {
-				// Refresh the connection and retry.
-				logger.log(Logger.WARNING, "Invalidating DB connection...");
-				invalidateConnectionWrapper();
-				//logger.log(Logger.INFO, "DB connection correctly refreshed");
 				unsubscribeSingle(s);
 			}
-			catch (Exception e) {
-				// Log the original error
-				logger.log(Logger.SEVERE,"DB error during iterated search operation.", sqle); 
-				try {invalidateConnectionWrapper();} catch(Exception e1) {}
+			catch (SQLException sqle) {
+				try {
+					// Refresh the connection and retry.
+					logger.log(Logger.WARNING, "Invalidating DB connection...");
+					invalidateConnectionWrapper();
+					//logger.log(Logger.INFO, "DB connection correctly refreshed");
+					unsubscribeSingle(s);
+				}
+				catch (Exception e) {
+					// Log the original error
+					logger.log(Logger.SEVERE,"DB error during iterated search operation.", sqle); 
+					try {invalidateConnectionWrapper();} catch(Exception e1) {}
+				}
 			}
 		}
+		finally {
+			endOperation();
+		}
 	}
 
 	protected abstract void unsubscribeSingle(SubscriptionResponder.Subscription s) throws SQLException;
 	
 	
+	/////////////////////////////////////////
+	// Group commit
+	/////////////////////////////////////////
+	
+	/**
+	 * Activates or deactivates group commit. When active, insertions and removals 
+	 * are executed in order by a dedicated writer thread, while the requesting 
+	 * threads wait for their outcome. The writer applies all the requests pending 
+	 * at a given time (up to 100) in a single transaction by means of the 
+	 * <code>insertInBatch()</code>, <code>removeInBatch()</code> and 
+	 * <code>commitBatch()</code> methods. If the transaction fails each request
+	 * of the group is applied again in a transaction of its own, so that 
+	 * only the failing requests are affected.
+	 * Bulk insertions and removals are always applied in a transaction 
+	 * of their own, regardless of their size.
+	 * When deactivated, the writer thread terminates as soon as all pending 
+	 * requests have been served.
+	 */
+	public void setGroupCommit(boolean on) {
+		synchronized (pendingWrites) {
+			if (on && !groupCommit) {
+				groupCommit = true;
+				Thread writer = new Thread(new Writer());
+				writer.setName("DBKB-writer");
+				writer.setDaemon(true);
+				writer.start();
+			}
+			else if (!on) {
+				groupCommit = false;
+				pendingWrites.notifyAll();
+			}
+		}
+	}
+	
+	/**
+	 * Inserts a fact as part of a group of insertions and removals that are 
+	 * committed together by <code>commitBatch()</code>. 
+	 * This default implementation just calls <code>insertSingle()</code>. 
+	 * Subclasses should redefine it together with <code>removeInBatch()</code>, 
+	 * <code>commitBatch()</code> and <code>rollbackBatch()</code> 
+	 * to take advantage of group commit. 
+	 * @return the previous fact with the same name (if any)
+	 */
+	protected Object insertInBatch(Object name, Object fact) throws SQLException {
+		return insertSingle(name, fact);
+	}
+	
+	/**
+	 * Removes a fact as part of a group of insertions and removals that are 
+	 * committed together by <code>commitBatch()</code>. 
+	 * This default implementation just calls <code>removeSingle()</code>.
+	 * @return the removed fact (if any)
+	 */
+	protected Object removeInBatch(Object name) throws SQLException {
+		return removeSingle(name);
+	}
+	
+	/**
+	 * Commits all insertions and removals performed by <code>insertInBatch()</code>
+	 * and <code>removeInBatch()</code> since the last commit or rollback.
+	 */
+	protected void commitBatch() throws SQLException {
+	}
+	
+	/**
+	 * Discards all insertions and removals performed by <code>insertInBatch()</code>
+	 * and <code>removeInBatch()</code> since the last commit or rollback.
+	 */
+	protected void rollbackBatch() {
+	}
+	
+	/**
+	 * Queue a request for the writer thread
+	 * @return false if group commit is not active
+	 */
+	private boolean submit(WriteRequest r) {
+		synchronized (pendingWrites) {
+			if (!groupCommit) {
+				return false;
+			}
+			pendingWrites.addLast(r);
+			pendingWrites.notifyAll();
+			return true;
+		}
+	}
+	
+	/**
+	 * Queue the requests of a bulk insertion or removal for the writer thread
+	 * @return false if group commit is not active
+	 */
+	private boolean submit(java.util.List bulk) {
+		synchronized (pendingWrites) {
+			if (!groupCommit) {
+				return false;
+			}
+			pendingWrites.addAll(bulk);
+			pendingWrites.notifyAll();
+			return true;
+		}
+	}
+	
+	/**
+	 * Apply a group of requests in a single transaction. If this fails, 
+	 * apply each request in a transaction of its own.
+	 */
+	private void executeGroup(java.util.List group) {
+		beginOperation();
+		try {
+			try {
+				execute(group);
+			}
+			catch (SQLException sqle) {
+				rollbackBatch();
+				if (group.size() > 1) {
+					if (logger.isLoggable(Logger.FINE)) {
+						logger.log(Logger.FINE, "DB error applying a group of "+group.size()+" DF updates. Applying them one by one", sqle);
+					}
+					for (int i = 0; i < group.size(); ++i) {
+						executeGroup(group.subList(i, i+1));
+					}
+				}
+				else {
+					WriteRequest r = (WriteRequest) group.get(0);
+					try {
+						// Refresh the connection and retry.
+						logger.log(Logger.WARNING, "Invalidating DB connection...");
+						invalidateConnectionWrapper();
+						execute(group);
+					}
+					catch (Exception e) {
+						// Log the original error
+						logger.log(Logger.SEVERE,"DB error "+(r.fact != null ? "inserting" : "removing")+" DFD for agent "+((AID) r.name).getName(), sqle); 
+						try {invalidateConnectionWrapper();} catch(Exception e1) {}
+						r.failed = true;
+					}
+				}
+			}
+		}
+		finally {
+			endOperation();
+		}
+	}
+	
+	private void execute(java.util.List group) throws SQLException {
+		for (int i = 0; i < group.size(); ++i) {
+			WriteRequest r = (WriteRequest) group.get(i);
+			r.result = (r.fact != null ? insertInBatch(r.name, r.fact) : removeInBatch(r.name));
+		}
+		commitBatch();
+	}
+	
+	
+	/**
+	 * Inner class Writer.
+	 * Serves the queued insertions and removals in groups
+	 */
+	private class Writer implements Runnable {
+		public void run() {
+			while (true) {
+				java.util.List group = new java.util.ArrayList();
+				synchronized (pendingWrites) {
+					while (pendingWrites.isEmpty()) {
+						if (!groupCommit) {
+							return;
+						}
+						try {
+							pendingWrites.wait();
+						}
+						catch (InterruptedException ie) {
+							// Go on until group commit is deactivated
+						}
+					}
+					// Never split a bulk request across groups
+					while (!pendingWrites.isEmpty() && (group.size() < MAX_GROUP_SIZE || continuesBulk(group))) {
+						group.add(pendingWrites.removeFirst());
+					}
+				}
+				
+				try {
+					executeGroup(group);
+				}
+				catch (Throwable t) {
+					logger.log(Logger.SEVERE, "Unexpected error applying DF updates", t);
+					for (int i = 0; i < group.size(); ++i) {
+						((WriteRequest) group.get(i)).failed = true;
+					}
+				}
+				for (int i = 0; i < group.size(); ++i) {
+					((WriteRequest) group.get(i)).setDone();
+				}
+			}
+		}
+		
+		private boolean continuesBulk(java.util.List group) {
+			java.util.List bulk = ((WriteRequest) pendingWrites.getFirst()).bulk;
+			return bulk != null && bulk == ((WriteRequest) group.get(group.size()-1)).bulk;
+		}
+	} // END of inner class Writer
+	
+	
+	/**
+	 * Inner class WriteRequest.
+	 * An insertion (if fact is not null) or removal waiting for the writer thread
+	 */
+	private class WriteRequest {
+		private Object name;
+		private Object fact;
+		private Object result;
+		private boolean failed = false;
+		private boolean done = false;
+		// The requests of the bulk insertion or removal this request is part of (if any)
+		private java.util.List bulk;
+		
+		private WriteRequest(Object name, Object fact) {
+			this.name = name;
+			this.fact = fact;
+		}
+		
+		private synchronized void setDone() {
+			done = true;
+			notifyAll();
+		}
+		
+		/**
+		 * Wait for the writer thread to apply this request
+		 * @return the previous or removed fact (if any)
+		 * @throws KBException if the request could not be applied
+		 */
+		private synchronized Object getResult() {
+			boolean interrupted = false;
+			while (!done) {
+				try {
+					wait();
+				}
+				catch (InterruptedException ie) {
+					// The request is already queued: wait for it anyway
+					interrupted = true;
+				}
+			}
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+			if (failed) {
+				throw new KBException("DB error "+(fact != null ? "inserting" : "removing")+" DFD for agent "+((AID) name).getName());
+			}
+			return result;
+		}
+	} // END of inner class WriteRequest
+	
+	
+	/**
+	 * Inner class Lease.
+	 * The connection currently leased by a thread and the number of 
+	 * nested operations using it. If the connection is a detached one, 
+	 * <code>outer</code> is the Lease to restore when those operations end.
+	 */
+	private static class Lease {
+		private ConnectionWrapper wrapper;
+		private int depth = 0;
+		private Lease outer;
+	} // END of inner class Lease
+	
+	
+	
 	/**
 	 * Inner class EmptyKBIterator
 	 */
@@ -87,14 +87,124 @@ public abstract class KB {
 		return obj;
 	}
 	
+	/**
+	 * Registers a number of facts at once. Facts whose lease time has already 
+	 * expired are skipped as in <code>register(Object, Object)</code>. 
+	 * Knowledge bases supporting transactions apply all registrations in a 
+	 * single transaction.
+	 * @return for each fact, the previous fact with the same name (if any) or
+	 * the <code>KBException</code> that prevented its registration
+	 */
+	public Object[] register(Object[] names, Object[] facts) {
+		Object[] results = new Object[facts.length];
+		int[] indexes = new int[facts.length];
+		int cnt = 0;
+		for (int i = 0; i < facts.length; ++i) {
+			if (lm.isExpired(lm.getLeaseTime(facts[i]))) {
+				if(logger.isLoggable(Logger.WARNING))
+					logger.log(Logger.WARNING,"Fact with lease time already expired");
+			}
+			else {
+				lm.grantLeaseTime(facts[i]);
+				indexes[cnt++] = i;
+			}
+		}
+		
+		Object[] nn = new Object[cnt];
+		Object[] ff = new Object[cnt];
+		for (int j = 0; j < cnt; ++j) {
+			nn[j] = names[indexes[j]];
+			ff[j] = facts[indexes[j]];
+		}
+		Object[] previous = insert(nn, ff);
+		for (int j = 0; j < cnt; ++j) {
+			Object p = previous[j];
+			if (p != null && !(p instanceof KBException) && lm.isExpired(lm.getLeaseTime(p))) {
+				p = null;
+			}
+			results[indexes[j]] = p;
+		}
+		return results;
+	}
+	
+	/**
+	 * Deregisters a number of facts at once. 
+	 * Knowledge bases supporting transactions apply all deregistrations in a 
+	 * single transaction.
+	 * @return for each name, the removed fact (if any) or the 
+	 * <code>KBException</code> that prevented its deregistration
+	 */
+	public Object[] deregister(Object[] names) {
+		Object[] results = remove(names);
+		for (int i = 0; i < results.length; ++i) {
+			Object obj = results[i];
+			if (obj != null && !(obj instanceof KBException) && lm.isExpired(lm.getLeaseTime(obj))) {
+				results[i] = null;
+			}
+		}
+		return results;
+	}
+	
 	protected abstract Object insert(Object name, Object fact);
 	protected abstract Object remove(Object name);
 	
+	/**
+	 * Inserts a number of facts. This default implementation inserts 
+	 * them one by one.
+	 * @return for each fact, the previous fact with the same name (if any) or
+	 * the <code>KBException</code> that prevented its insertion
+	 */
+	protected Object[] insert(Object[] names, Object[] facts) {
+		Object[] results = new Object[facts.length];
+		for (int i = 0; i < facts.length; ++i) {
+			try {
+				results[i] = insert(names[i], facts[i]);
+			}
+			catch (KBException kbe) {
+				results[i] = kbe;
+			}
+		}
+		return results;
+	}
+	
+	/**
+	 * Removes a number of facts. This default implementation removes 
+	 * them one by one.
+	 * @return for each name, the removed fact (if any) or the 
+	 * <code>KBException</code> that prevented its removal
+	 */
+	protected Object[] remove(Object[] names) {
+		Object[] results = new Object[names.length];
+		for (int i = 0; i < names.length; ++i) {
+			try {
+				results[i] = remove(names[i]);
+			}
+			catch (KBException kbe) {
+				results[i] = kbe;
+			}
+		}
+		return results;
+	}
+	
 	public List search(Object template) {
 		return search(template, maxResultLimit);
 	}
 	
 	public abstract List search(Object template, int maxResult);
+	
+	/**
+	 * Performs a search for each template.
+	 * This default implementation performs them one by one.
+	 * @return the facts matching each template
+	 */
+	public List[] search(Object[] templates, int maxResult) {
+		List[] results = new List[templates.length];
+		for (int i = 0; i < templates.length; ++i) {
+			results[i] = search(templates[i], maxResult);
+		}
+		return results;
+	}
+	
 	public abstract KBIterator iterator(Object template);
 	
 	public abstract void subscribe(Object template, SubscriptionResponder.Subscription s) throws NotUnderstoodException;
@@ -30,11 +30,12 @@ package jade.domain;
 import java.util.Enumeration;
 
 import jade.util.leap.ArrayList;
-import jade.util.leap.Collection;
 import jade.util.leap.List;
 import jade.util.leap.Iterator;
 import jade.util.leap.Map;
 import jade.util.leap.HashMap;
+import jade.util.leap.Set;
+import jade.util.leap.HashSet;
 import jade.util.Logger;
 
 import jade.domain.FIPAAgentManagement.*;
@@ -44,11 +45,19 @@ import jade.lang.acl.ACLMessage;
 import jade.proto.SubscriptionResponder;
 
 import jade.content.*;
+import jade.content.lang.Codec;
 import jade.content.lang.sl.*;
 import jade.content.onto.*;
 import jade.content.abs.*;
 
 /**
+ * Subscriptions are indexed by one of the items their template requires 
+ * (a service name or type, an ontology, a protocol or a language) so that, 
+ * when a registration changes, only the subscriptions indexed by an item of 
+ * the new or old description are matched against it. When the subscription 
+ * language is SL, the search result is encoded once per change and the 
+ * notifications are built by combining it with the encoded iota expression
+ * of each subscription.
  * @author Elisabetta Cortese - TILab
  *
  */
@@ -56,7 +65,11 @@ class KBSubscriptionManager implements SubscriptionResponder.SubscriptionManager
 	private Logger myLogger = Logger.getMyLogger(getClass().getName());
 	
 	private Map subscriptionsCache = new HashMap();
-	private SubscriptionInfo[] subscriptions = null;
+	// Maps an index key (see indexKey()) to the List of the SubscriptionInfo indexed by that key.
+	// Null until the cache is loaded.
+	private Map subscriptionsIndex = null;
+	// The SubscriptionInfo whose template requires no indexable item
+	private List unindexedSubscriptions = new ArrayList();
 	
 	KB kBase;
 	ContentManager cm;
@@ -74,7 +87,7 @@ class KBSubscriptionManager implements SubscriptionResponder.SubscriptionManager
 		
 		DFAgentDescription dfdTemplate = null;
 		SearchConstraints constraints = null;
-		AbsIRE absIota = null;
+		SubscriptionInfo info = null;
 		
 		try {
 			// Get DFD template and search constraints from the subscription message 
@@ -83,7 +96,7 @@ class KBSubscriptionManager implements SubscriptionResponder.SubscriptionManager
 				myLogger.log(Logger.CONFIG, "Registering subscription "+subMessage.getConversationId()+". Agent is "+subMessage.getSender().getName());
 			}
 			
-			absIota = (AbsIRE) cm.extractAbsContent(subMessage);
+			AbsIRE absIota = (AbsIRE) cm.extractAbsContent(subMessage);
 			AbsPredicate absResult = absIota.getProposition();
 			AbsAgentAction absAction = (AbsAgentAction) absResult.getAbsObject(BasicOntology.RESULT_ACTION);
 			AbsAgentAction absSearch = (AbsAgentAction) absAction.getAbsObject(BasicOntology.ACTION_ACTION);
@@ -96,10 +109,10 @@ class KBSubscriptionManager implements SubscriptionResponder.SubscriptionManager
 			kBase.subscribe(dfdTemplate, sub);
 			
 			// Update the cache
+			info = new SubscriptionInfo(sub, dfdTemplate, absIota);
 			synchronized (subscriptionsCache) {
-				if (subscriptions != null) {
-					subscriptionsCache.put(subMessage.getConversationId(), new SubscriptionInfo(sub, dfdTemplate, absIota));
-					subscriptions = toArray(subscriptionsCache);
+				if (subscriptionsIndex != null) {
+					addSubscription(subMessage.getConversationId(), info);
 				}
 			}
 		}
@@ -115,7 +128,7 @@ class KBSubscriptionManager implements SubscriptionResponder.SubscriptionManager
 		
 		// If some DFD matches the template, notify the subscribed agent 
 		if(results.size() > 0){
-			notify(sub, results, absIota);
+			notify(info, results, new HashMap());
 			return true;
 		}
 		return false;
@@ -131,9 +144,8 @@ class KBSubscriptionManager implements SubscriptionResponder.SubscriptionManager
 		
 		// Update the cache
 		synchronized (subscriptionsCache) {
-			if (subscriptions != null) {
-				subscriptionsCache.remove(sub.getMessage().getConversationId());
-				subscriptions = toArray(subscriptionsCache);
+			if (subscriptionsIndex != null) {
+				removeSubscription(sub.getMessage().getConversationId());
 			}
 		}
 		return false;
@@ -147,30 +159,52 @@ class KBSubscriptionManager implements SubscriptionResponder.SubscriptionManager
 	 --> This is the reason for the synchronized blocks
 	 */
 	void handleChange(DFAgentDescription dfd, DFAgentDescription oldDfd) {
+		// Collect the candidate subscriptions i.e. those indexed by an item of 
+		// the new or old description and those that are not indexed at all.
+		// Since each subscription is indexed by a single key, there are no duplicates.
+		List candidates = new ArrayList();
 		synchronized (subscriptionsCache) {
-			if (subscriptions == null) {
-				subscriptionsCache = loadSubscriptionsCache();
-				subscriptions = toArray(subscriptionsCache);
+			if (subscriptionsIndex == null) {
+				loadSubscriptionsCache();
 			}
+			Set keys = new HashSet();
+			addIndexKeys(dfd, keys);
+			if (oldDfd != null) {
+				addIndexKeys(oldDfd, keys);
+			}
+			Iterator it = keys.iterator();
+			while (it.hasNext()) {
+				List l = (List) subscriptionsIndex.get(it.next());
+				if (l != null) {
+					addAll(l, candidates);
+				}
+			}
+			addAll(unindexedSubscriptions, candidates);
 		}
-		for (int i = 0; i < subscriptions.length; ++i) {
-			SubscriptionInfo info = subscriptions[i];
+		
+		List results = null;
+		// The encoded results for each content language and ontology
+		Map encodedResults = new HashMap();
+		for (int i = 0; i < candidates.size(); ++i) {
+			SubscriptionInfo info = (SubscriptionInfo) candidates.get(i);
 			DFAgentDescription template = info.getTemplate();
 			if ( DFMemKB.compare(template, dfd) || ((oldDfd!=null) && DFMemKB.compare(template, oldDfd))) {
 				// This subscriber must be notified
-				List results = new ArrayList();
-				results.add(dfd);
+				if (results == null) {
+					results = new ArrayList();
+					results.add(dfd);
+				}
 				if (myLogger.isLoggable(Logger.FINE)) {
 					ACLMessage subMessage = info.getSubscription().getMessage();
 					myLogger.log(Logger.FINE, "Notifying subscribed agent "+subMessage.getSender().getName()+" ["+subMessage.getConversationId()+"] ");
 				}
-				notify(info.getSubscription(), results, info.getAbsIota());
+				notify(info, results, encodedResults);
 			}
 		}
 	}
 	
-	private Map loadSubscriptionsCache() {
-		Map m = new HashMap();
+	private void loadSubscriptionsCache() {
+		subscriptionsIndex = new HashMap();
 		Enumeration e = kBase.getSubscriptions();
 		while (e.hasMoreElements()) {
 			SubscriptionResponder.Subscription sub = (SubscriptionResponder.Subscription) e.nextElement();
@@ -183,26 +217,170 @@ class KBSubscriptionManager implements SubscriptionResponder.SubscriptionManager
 				Search search = (Search) FIPAManagementOntology.getInstance().toObject(absSearch);		
 				DFAgentDescription template = (DFAgentDescription) search.getDescription();
 				
-				m.put(sub.getMessage().getConversationId(), new SubscriptionInfo(sub, template, absIota));
+				addSubscription(sub.getMessage().getConversationId(), new SubscriptionInfo(sub, template, absIota));
 			}
 			catch (Exception ex) {
 				// Should never happen since, this has already been decoded correctly once
 				ex.printStackTrace();
 			}
 		}
-		return m;
 	}
-
-	private void notify(SubscriptionResponder.Subscription sub, List results, AbsIRE absIota) {
+	
+	/**
+	 Add a subscription to the cache and to the index. 
+	 Must be called holding the lock on the cache.
+	 */
+	private void addSubscription(String convId, SubscriptionInfo info) {
+		removeSubscription(convId);
+		subscriptionsCache.put(convId, info);
+		String key = info.getIndexKey();
+		if (key != null) {
+			List l = (List) subscriptionsIndex.get(key);
+			if (l == null) {
+				l = new ArrayList();
+				subscriptionsIndex.put(key, l);
+			}
+			l.add(info);
+		}
+		else {
+			unindexedSubscriptions.add(info);
+		}
+	}
+	
+	/**
+	 Remove a subscription from the cache and from the index. 
+	 Must be called holding the lock on the cache.
+	 */
+	private void removeSubscription(String convId) {
+		SubscriptionInfo info = (SubscriptionInfo) subscriptionsCache.remove(convId);
+		if (info != null) {
+			String key = info.getIndexKey();
+			if (key != null) {
+				List l = (List) subscriptionsIndex.get(key);
+				l.remove(info);
+				if (l.isEmpty()) {
+					subscriptionsIndex.remove(key);
+				}
+			}
+			else {
+				unindexedSubscriptions.remove(info);
+			}
+		}
+	}
+	
+	/**
+	 Return the key a subscription whose template is <code>template</code> is 
+	 indexed by, or null if the template requires no indexable item. 
+	 Service names are preferred since they are the most selective.
+	 */
+	private static String getIndexKey(DFAgentDescription template) {
+		Iterator it = template.getAllServices();
+		String type = null;
+		while (it.hasNext()) {
+			ServiceDescription sd = (ServiceDescription) it.next();
+			if (sd.getName() != null) {
+				return indexKey('N', sd.getName());
+			}
+			if (type == null && sd.getType() != null) {
+				type = indexKey('T', sd.getType());
+			}
+		}
+		if (type != null) {
+			return type;
+		}
+		it = template.getAllOntologies();
+		if (it.hasNext()) {
+			return indexKey('O', (String) it.next());
+		}
+		it = template.getAllProtocols();
+		if (it.hasNext()) {
+			return indexKey('P', (String) it.next());
+		}
+		it = template.getAllLanguages();
+		if (it.hasNext()) {
+			return indexKey('L', (String) it.next());
+		}
+		return null;
+	}
+	
+	/**
+	 Add to <code>keys</code> the keys of all the items of a description i.e. 
+	 the keys of the subscriptions the description may match.
+	 */
+	private static void addIndexKeys(DFAgentDescription dfd, Set keys) {
+		Iterator it = dfd.getAllServices();
+		while (it.hasNext()) {
+			ServiceDescription sd = (ServiceDescription) it.next();
+			if (sd.getName() != null) {
+				keys.add(indexKey('N', sd.getName()));
+			}
+			if (sd.getType() != null) {
+				keys.add(indexKey('T', sd.getType()));
+			}
+		}
+		addIndexKeys('O', dfd.getAllOntologies(), keys);
+		addIndexKeys('P', dfd.getAllProtocols(), keys);
+		addIndexKeys('L', dfd.getAllLanguages(), keys);
+	}
+	
+	private static void addIndexKeys(char kind, Iterator it, Set keys) {
+		while (it.hasNext()) {
+			keys.add(indexKey(kind, (String) it.next()));
+		}
+	}
+	
+	/**
+	 Templates are matched ignoring case: fold each character the same way
+	 <code>String.equalsIgnoreCase()</code> compares them.
+	 */
+	private static String indexKey(char kind, String value) {
+		StringBuffer sb = new StringBuffer(value.length() + 1);
+		sb.append(kind);
+		for (int i = 0; i < value.length(); ++i) {
+			sb.append(Character.toLowerCase(Character.toUpperCase(value.charAt(i))));
+		}
+		return sb.toString();
+	}
+	
+	private static void addAll(List src, List dest) {
+		for (int i = 0; i < src.size(); ++i) {
+			dest.add(src.get(i));
+		}
+	}
+	
+	/**
+	 Notify a subscriber. 
+	 @param encodedResults The SL encodings of <code>results</code> computed so far,
+	 keyed by content language and ontology. They are shared by all the subscribers 
+	 notified with the same results.
+	 */
+	private void notify(SubscriptionInfo info, List results, Map encodedResults) {
+		SubscriptionResponder.Subscription sub = info.getSubscription();
 		try {
 			ACLMessage notification = sub.getMessage().createReply();
 			notification.addUserDefinedParameter(ACLMessage.IGNORE_FAILURE, "true");
 			notification.setPerformative(ACLMessage.INFORM);
-			AbsPredicate absEquals = new AbsPredicate(SLVocabulary.EQUALS);
-			absEquals.set(SLVocabulary.EQUALS_LEFT, absIota);
-			absEquals.set(SLVocabulary.EQUALS_RIGHT, FIPAManagementOntology.getInstance().fromObject(results));
-			
-			cm.fillContent(notification, absEquals);
+			Codec codec = cm.lookupLanguage(notification.getLanguage());
+			if (codec instanceof SLCodec) {
+				// The content is (= <iota> <results>): encode the two terms 
+				// separately and put them together as the SLCodec would
+				SLCodec slCodec = (SLCodec) codec;
+				String key = notification.getLanguage()+" "+notification.getOntology();
+				String encoded = (String) encodedResults.get(key);
+				if (encoded == null) {
+					AbsTerm absResults = (AbsTerm) FIPAManagementOntology.getInstance().fromObject(results);
+					encoded = slCodec.encodeTerm(cm.getOntology(notification), absResults);
+					encodedResults.put(key, encoded);
+				}
+				notification.setContent("(("+SLVocabulary.EQUALS+" "+info.getEncodedIota(slCodec, notification)+" "+encoded+"))");
+			}
+			else {
+				AbsPredicate absEquals = new AbsPredicate(SLVocabulary.EQUALS);
+				absEquals.set(SLVocabulary.EQUALS_LEFT, info.getAbsIota());
+				absEquals.set(SLVocabulary.EQUALS_RIGHT, FIPAManagementOntology.getInstance().fromObject(results));
+				
+				cm.fillContent(notification, absEquals);
+			}
 			//pass to Subscription the message to send
 			sub.notify(notification);
 		}
@@ -212,18 +390,6 @@ class KBSubscriptionManager implements SubscriptionResponder.SubscriptionManager
 		}
 	}
 	
-	private static final SubscriptionInfo[] toArray(Map m) {
-		Collection c = m.values();
-		SubscriptionInfo[] result = new SubscriptionInfo[c.size()];
-		Iterator it = c.iterator();
-		int i = 0;
-		while (it.hasNext()) {
-			result[i] = (SubscriptionInfo) it.next();
-			++i;
-		}
-		return result;
-	}
-	
 	/**
 	 * Inner class SubscriptionInfo
 	 * This class associates a Subscription object with the DFAgentDescription that acts as
@@ -233,11 +399,15 @@ class KBSubscriptionManager implements SubscriptionResponder.SubscriptionManager
 		private SubscriptionResponder.Subscription subscription;
 		private DFAgentDescription template;
 		private AbsIRE absIota;
+		private String indexKey;
+		// The SL encoding of absIota, computed when the first notification is sent
+		private String encodedIota;
 		
 		private SubscriptionInfo(SubscriptionResponder.Subscription subscription, DFAgentDescription template, AbsIRE absIota) {
 			this.subscription = subscription;
 			this.template = template;
 			this.absIota = absIota;
+			indexKey = KBSubscriptionManager.getIndexKey(template);
 		}
 		
 		public SubscriptionResponder.Subscription getSubscription() {
@@ -251,5 +421,18 @@ class KBSubscriptionManager implements SubscriptionResponder.SubscriptionManager
 		public AbsIRE getAbsIota() {
 			return absIota;
 		}
+		
+		public String getIndexKey() {
+			return indexKey;
+		}
+		
+		public String getEncodedIota(SLCodec codec, ACLMessage notification) throws Codec.CodecException {
+			// Notifications have the same language and ontology of the subscription 
+			// message: the encoding never changes
+			if (encodedIota == null) {
+				encodedIota = codec.encodeTerm(cm.getOntology(notification), absIota);
+			}
+			return encodedIota;
+		}
 	}
 }
@@ -0,0 +1,217 @@
+package jade.domain;
+
+//#J2ME_EXCLUDE_FILE
+//#APIDOC_EXCLUDE_FILE
+
+import jade.content.ContentManager;
+import jade.content.abs.AbsIRE;
+import jade.content.abs.AbsPredicate;
+import jade.content.lang.sl.SLCodec;
+import jade.content.lang.sl.SLVocabulary;
+import jade.core.AID;
+import jade.core.Agent;
+import jade.core.BenchmarkHarness;
+import jade.domain.FIPAAgentManagement.DFAgentDescription;
+import jade.domain.FIPAAgentManagement.FIPAManagementOntology;
+import jade.domain.FIPAAgentManagement.Property;
+import jade.domain.FIPAAgentManagement.ServiceDescription;
+import jade.domain.KBManagement.KB;
+import jade.lang.acl.ACLMessage;
+import jade.lang.acl.MessageTemplate;
+import jade.proto.SubscriptionResponder;
+import jade.util.leap.ArrayList;
+import jade.util.leap.List;
+import jade.util.leap.Properties;
+
+/**
+ Measure how many registration changes per second the DF can process
+ when a given number of agents are subscribed to it, as
+ <code>KBSubscriptionManager.handleChange()</code> does, compared with
+ matching the changed description against all subscriptions and
+ encoding each notification from scratch.
+ Subscription templates require one of <code>types</code> service types
+ so that each change matches <code>subscriptions / types</code>
+ subscriptions. Before measuring, the benchmark checks that both
+ approaches send the same notifications.
+ Usage:
+ <code>java jade.domain.KBSubscriptionManagerBenchmark [-subscriptions 20000] [-types 2000] [-t 3] [-warmup 2]</code>
+ where
+ <ul>
+ <li><code>subscriptions</code> is the number of subscriptions</li>
+ <li><code>types</code> is the number of distinct service types the subscriptions refer to</li>
+ </ul>
+ @see jade.core.BenchmarkHarness
+ */
+public class KBSubscriptionManagerBenchmark {
+	private static final String SUBSCRIPTIONS = "subscriptions";
+	private static final int DEFAULT_SUBSCRIPTIONS = 20000;
+
+	private static final String TYPES = "types";
+	private static final int DEFAULT_TYPES = 2000;
+
+	private static final AID df = new AID("df@benchmark", AID.ISGUID);
+
+	public static void main(String[] args) throws Exception {
+		Properties pp = BenchmarkHarness.parseArguments(args);
+		int n = BenchmarkHarness.getIntProperty(pp, SUBSCRIPTIONS, DEFAULT_SUBSCRIPTIONS);
+		int types = BenchmarkHarness.getIntProperty(pp, TYPES, DEFAULT_TYPES);
+		int duration = BenchmarkHarness.getDuration(pp);
+		int warmup = BenchmarkHarness.getWarmup(pp);
+
+		// Set up the content manager as the DF does
+		ContentManager cm = new ContentManager();
+		SLCodec codec = new SLCodec();
+		cm.registerLanguage(codec, FIPANames.ContentLanguage.FIPA_SL0);
+		cm.registerLanguage(codec, FIPANames.ContentLanguage.FIPA_SL);
+		cm.registerOntology(FIPAManagementOntology.getInstance());
+
+		// The notifications are collected by the SubscriptionResponder and sent
+		// (i.e. discarded since the agent is not running) when it is executed
+		Agent a = new Agent();
+		SubscriptionResponder responder = new SubscriptionResponder(a, MessageTemplate.MatchAll());
+		KB kb = new DFKBFactory().getDFMemKB(100);
+		KBSubscriptionManager manager = new KBSubscriptionManager(kb);
+		manager.setContentManager(cm);
+
+		Scanner scanner = new Scanner(cm);
+		for (int i = 0; i < n; ++i) {
+			DFAgentDescription template = new DFAgentDescription();
+			ServiceDescription sd = new ServiceDescription();
+			sd.setType("service-type-"+(i % types));
+			template.addServices(sd);
+			ACLMessage msg = DFService.createSubscriptionMessage(a, df, template, null);
+			msg.setSender(new AID("subscriber"+i+"@benchmark", AID.ISGUID));
+			msg.setConversationId("C"+i);
+			SubscriptionResponder.Subscription sub = responder.createSubscription(msg);
+			manager.register(sub);
+			scanner.add(sub, template, (AbsIRE) cm.extractAbsContent(msg));
+		}
+
+		// Check that both approaches send the same notifications
+		DFAgentDescription dfd = createDescription(0);
+		manager.handleChange(dfd, null);
+		List expected = getContents(responder);
+		scanner.handleChange(dfd, null);
+		List actual = getContents(responder);
+		if (expected.size() != n / types || !expected.toString().equals(actual.toString())) {
+			System.out.println("ERROR: different notifications\n"+expected+"\n"+actual);
+			System.exit(1);
+		}
+
+		System.out.println("----------------------------------");
+		System.out.println(n+" subscriptions, "+(n / types)+" notifications per change");
+		measure(manager, null, responder, types, warmup);
+		long ops = measure(manager, null, responder, types, duration);
+		System.out.println("- "+BenchmarkHarness.pad("indexed", 10)+": "+(ops / duration)+" changes/s");
+		measure(null, scanner, responder, types, warmup);
+		ops = measure(null, scanner, responder, types, duration);
+		System.out.println("- "+BenchmarkHarness.pad("scan", 10)+": "+(ops / duration)+" changes/s");
+		System.out.println("----------------------------------");
+	}
+
+	private static long measure(KBSubscriptionManager manager, Scanner scanner, SubscriptionResponder responder, int types, int duration) throws Exception {
+		DFAgentDescription[] dfds = new DFAgentDescription[types];
+		for (int i = 0; i < types; ++i) {
+			dfds[i] = createDescription(i);
+		}
+		long end = System.currentTimeMillis() + duration * 1000L;
+		long cnt = 0;
+		while (System.currentTimeMillis() < end) {
+			// Check the time every 10 operations only
+			for (int i = 0; i < 10; ++i) {
+				DFAgentDescription dfd = dfds[(int) (cnt % types)];
+				if (manager != null) {
+					manager.handleChange(dfd, null);
+				}
+				else {
+					scanner.handleChange(dfd, null);
+				}
+				flush(responder);
+				cnt++;
+			}
+		}
+		return cnt;
+	}
+
+	private static DFAgentDescription createDescription(int i) {
+		DFAgentDescription dfd = new DFAgentDescription();
+		AID id = new AID("provider"+i+"@benchmark", AID.ISGUID);
+		id.addAddresses("http://host.domain.com:7778/acc");
+		dfd.setName(id);
+		dfd.addLanguages(FIPANames.ContentLanguage.FIPA_SL);
+		dfd.addOntologies("service-ontology");
+		dfd.addProtocols(FIPANames.InteractionProtocol.FIPA_REQUEST);
+		ServiceDescription sd = new ServiceDescription();
+		sd.setType("service-type-"+i);
+		sd.setName("Provider "+i);
+		sd.addProperties(new Property("area", "Europe"));
+		dfd.addServices(sd);
+		return dfd;
+	}
+
+	/**
+	 Let the SubscriptionResponder go through its send-notifications state
+	 */
+	private static void flush(SubscriptionResponder responder) {
+		responder.action();
+		responder.action();
+	}
+
+	private static List getContents(SubscriptionResponder responder) throws Exception {
+		java.lang.reflect.Field f = SubscriptionResponder.class.getDeclaredField("notifications");
+		f.setAccessible(true);
+		List notifications = (List) f.get(responder);
+		java.util.TreeSet sorted = new java.util.TreeSet();
+		for (int i = 0; i < notifications.size(); ++i) {
+			ACLMessage msg = ((ACLMessage[]) notifications.get(i))[0];
+			sorted.add(msg.getConversationId()+" "+msg.getContent());
+		}
+		flush(responder);
+		List l = new ArrayList();
+		java.util.Iterator it = sorted.iterator();
+		while (it.hasNext()) {
+			l.add(it.next());
+		}
+		return l;
+	}
+
+	/**
+	 Match a change against all subscriptions and encode each notification
+	 separately
+	 */
+	private static class Scanner {
+		private ContentManager cm;
+		private java.util.List subscriptions = new java.util.ArrayList();
+		private java.util.List templates = new java.util.ArrayList();
+		private java.util.List iotas = new java.util.ArrayList();
+
+		private Scanner(ContentManager cm) {
+			this.cm = cm;
+		}
+
+		private void add(SubscriptionResponder.Subscription sub, DFAgentDescription template, AbsIRE absIota) {
+			subscriptions.add(sub);
+			templates.add(template);
+			iotas.add(absIota);
+		}
+
+		private void handleChange(DFAgentDescription dfd, DFAgentDescription oldDfd) throws Exception {
+			for (int i = 0; i < templates.size(); ++i) {
+				DFAgentDescription template = (DFAgentDescription) templates.get(i);
+				if (DFMemKB.compare(template, dfd) || (oldDfd != null && DFMemKB.compare(template, oldDfd))) {
+					List results = new ArrayList();
+					results.add(dfd);
+					SubscriptionResponder.Subscription sub = (SubscriptionResponder.Subscription) subscriptions.get(i);
+					ACLMessage notification = sub.getMessage().createReply();
+					notification.addUserDefinedParameter(ACLMessage.IGNORE_FAILURE, "true");
+					notification.setPerformative(ACLMessage.INFORM);
+					AbsPredicate absEquals = new AbsPredicate(SLVocabulary.EQUALS);
+					absEquals.set(SLVocabulary.EQUALS_LEFT, (AbsIRE) iotas.get(i));
+					absEquals.set(SLVocabulary.EQUALS_RIGHT, FIPAManagementOntology.getInstance().fromObject(results));
+					cm.fillContent(notification, absEquals);
+					sub.notify(notification);
+				}
+			}
+		}
+	}
+}
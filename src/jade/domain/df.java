@@ -192,13 +192,36 @@ import jade.content.onto.basic.*;
  </tr>
  <tr>
  <td>
+ <code>jade_domain_df_kb-indexed</code>
+ </td>
+ <td>
+ If set to <code>true</code>, indicates that the volatile (in-memory) knowledge base keeps indexes
+ on the agent names, protocols, ontologies, languages and service types and names of the registered
+ descriptions to serve searches without scanning the whole catalogue. This parameter is ignored 
+ if the catalogue is stored in a database.
+ </td>
+ </tr>
+ <tr>
+ <td>
  <code>jade_domain_df_poolsize</code>
  </td> 
  <td> 
  The dimension of the pool of thread dedicated to serving registration, deregistration and search
  requests. If <code>0</code> (default) is specified then registration, deregistration and search 
- requests are served directly by the df agent Thread. This parameter is ignored when using a 
- volatile (in-memory) knowledge base.
+ requests are served directly by the df agent Thread. Otherwise the registrations, deregistrations 
+ and modifications requested at the same time are applied to the database in a single transaction. 
+ This parameter is ignored when using a volatile (in-memory) knowledge base.
+ </td>
+ </tr>
+ <tr>
+ <td>
+ <code>jade_domain_df_db-maxconnections</code>
+ </td> 
+ <td> 
+ The maximum number of connections the DF opens towards its database. Threads needing a connection 
+ when all of them are in use wait until one is available. Connections kept by iterated searches 
+ waiting for their clients do not count. If not specified there is no limit.
+ This parameter is ignored if the catalogue is not stored in a database.
  </td>
  </tr>
  </table>
@@ -275,6 +298,8 @@ public class df extends GuiAgent implements DFGUIAdapter {
 	private static final String DB_DEFAULT = "jade_domain_df_db-default";
 	private static final String DB_CLEANTABLES = "jade_domain_df_db-cleantables";
 	private static final String DB_ABORTONERROR = "jade_domain_df_db-abortonerror";
+	private static final String DB_MAXCONNECTIONS = "jade_domain_df_db-maxconnections";
+	private static final String KB_INDEXED = "jade_domain_df_kb-indexed";
 	
 	// Limit of searchConstraints.maxresult
 	// FIPA Agent Management Specification doc num: SC00023J (6.1.4 Search Constraints)
@@ -333,6 +358,8 @@ public class df extends GuiAgent implements DFGUIAdapter {
 		String sDBDefault = getProperty(DB_DEFAULT, null);
 		String sCleanTables = getProperty(DB_CLEANTABLES, null);
 		String sDBAbortOnError = getProperty(DB_ABORTONERROR, null);
+		String sDBMaxConnections = getProperty(DB_MAXCONNECTIONS, null);
+		String sKBIndexed = getProperty(KB_INDEXED, null);
 		
 		Object[] args = this.getArguments();
 		if(args != null && args.length > 0) {
@@ -352,6 +379,8 @@ public class df extends GuiAgent implements DFGUIAdapter {
 				sDBDefault = p.getProperty(DB_DEFAULT, sDBDefault);
 				sCleanTables = p.getProperty(DB_CLEANTABLES, sCleanTables);
 				sDBAbortOnError = p.getProperty(DB_ABORTONERROR, sDBAbortOnError);
+				sDBMaxConnections = p.getProperty(DB_MAXCONNECTIONS, sDBMaxConnections);
+				sKBIndexed = p.getProperty(KB_INDEXED, sKBIndexed);
 			}
 			catch (Exception e) {
 				logger.log(Logger.SEVERE,"Error loading configuration from file "+args[0]+" ["+e+"].");
@@ -461,8 +490,14 @@ public class df extends GuiAgent implements DFGUIAdapter {
 
 		// ---------- Volatile (in-memory) KB ----------
 		if (agentDescriptions == null){
-			sb.append("- Type = volatile\n");
-			agentDescriptions = kbFactory.getDFMemKB(maxResultLimit);
+			if (getBooleanProperty(sKBIndexed, KB_INDEXED)) {
+				sb.append("- Type = volatile indexed\n");
+				agentDescriptions = kbFactory.getIndexedDFMemKB(maxResultLimit);
+			}
+			else {
+				sb.append("- Type = volatile\n");
+				agentDescriptions = kbFactory.getDFMemKB(maxResultLimit);
+			}
 			if (sPoolsize != null) {
 				logger.log(Logger.WARNING, "Ignoring pool-size indication ("+sPoolsize+"). Parameter not supported when using volatile KB");
 				sPoolsize = null;
@@ -503,6 +538,18 @@ public class df extends GuiAgent implements DFGUIAdapter {
 		mt1 = MessageTemplate.and(mt1, MessageTemplate.not(MessageTemplate.MatchProtocol(FIPANames.InteractionProtocol.ITERATED_FIPA_REQUEST)));
 		//#PJAVA_EXCLUDE_BEGIN
 		int poolSize = getIntegerProperty(sPoolsize, POOLSIZE);
+		if (agentDescriptions instanceof DBKB) {
+			int maxConnections = getIntegerProperty(sDBMaxConnections, DB_MAXCONNECTIONS);
+			if (maxConnections > 0) {
+				logger.log(Logger.CONFIG, "DF DB max connections = "+maxConnections);
+				((DBKB) agentDescriptions).setMaxConnections(maxConnections);
+			}
+			if (poolSize > 0) {
+				// Apply registrations, deregistrations and modifications requested by 
+				// the pool threads at the same time in a single transaction
+				((DBKB) agentDescriptions).setGroupCommit(true);
+			}
+		}
 		if (poolSize == 0) {
 			DFFipaAgentManagementBehaviour fipaRequestResponder = new DFFipaAgentManagementBehaviour(this, mt1);
 			addBehaviour(fipaRequestResponder);
@@ -704,6 +751,10 @@ public class df extends GuiAgent implements DFGUIAdapter {
 		if (tbf != null) {
 			tbf.interrupt();
 		}
+		
+		if (agentDescriptions instanceof DBKB) {
+			((DBKB) agentDescriptions).setGroupCommit(false);
+		}
 		//#PJAVA_EXCLUDE_END
 		
 		if(gui != null) {
@@ -900,13 +951,23 @@ public class df extends GuiAgent implements DFGUIAdapter {
 	// Methods actually accessing the DF Knowledge base
 	//////////////////////////////////////////////////////
 	
-	void DFRegister(DFAgentDescription dfd) throws AlreadyRegistered {
+	void DFRegister(DFAgentDescription dfd) throws FIPAException {
 		
 		//checkMandatorySlots(FIPAAgentManagementOntology.REGISTER, dfd);
-		Object old = agentDescriptions.register(dfd.getName(), dfd);
+		Object old = null;
+		try {
+			old = agentDescriptions.register(dfd.getName(), dfd);
+		}
+		catch (KBException kbe) {
+			throw new InternalError(kbe.getMessage());
+		}
 		if(old != null)
 			throw new AlreadyRegistered();
 		
+		registered(dfd);
+	}
+	
+	private void registered(DFAgentDescription dfd) {
 		if(isADF(dfd)) {
 			if(logger.isLoggable(Logger.INFO))
 				logger.log(Logger.INFO,"Added federation "+dfd.getName().getName()+" --> "+getName());
@@ -926,20 +987,30 @@ public class df extends GuiAgent implements DFGUIAdapter {
 	}
 	
 	//this method is called into the prepareResponse of the DFFipaAgentManagementBehaviour to perform a Deregister action
-	void DFDeregister(DFAgentDescription dfd) throws NotRegistered {
+	void DFDeregister(DFAgentDescription dfd) throws FIPAException {
 		//checkMandatorySlots(FIPAAgentManagementOntology.DEREGISTER, dfd);
-		Object old = agentDescriptions.deregister(dfd.getName());
+		Object old = null;
+		try {
+			old = agentDescriptions.deregister(dfd.getName());
+		}
+		catch (KBException kbe) {
+			throw new InternalError(kbe.getMessage());
+		}
 		
 		if(old == null)
 			throw new NotRegistered();
 		
+		deregistered(dfd, (DFAgentDescription) old);
+	}
+	
+	private void deregistered(DFAgentDescription dfd, DFAgentDescription old) {
 		if (children.remove(dfd.getName()))
 			try {
 				gui.removeChildren(dfd.getName());
 			} catch (Exception e) {}
 			// for subscriptions
 			dfd.clearAllServices(); //clear all services since we are deregistering
-			subManager.handleChange(dfd, (DFAgentDescription)old);
+			subManager.handleChange(dfd, old);
 			try{
 				// refresh the GUI if shown, exception thrown if the GUI was not shown
 				// this refresh must be here, otherwise the GUI is not synchronized with
@@ -950,16 +1021,26 @@ public class df extends GuiAgent implements DFGUIAdapter {
 	}
 	
 	
-	void DFModify(DFAgentDescription dfd) throws NotRegistered {
+	void DFModify(DFAgentDescription dfd) throws FIPAException {
 		//checkMandatorySlots(FIPAAgentManagementOntology.MODIFY, dfd);
-		Object old = agentDescriptions.register(dfd.getName(), dfd);
-		if(old == null) {
-			// Rollback
-			agentDescriptions.deregister(dfd.getName());
-			throw new NotRegistered();
+		Object old = null;
+		try {
+			old = agentDescriptions.register(dfd.getName(), dfd);
+			if(old == null) {
+				// Rollback
+				agentDescriptions.deregister(dfd.getName());
+				throw new NotRegistered();
+			}
 		}
+		catch (KBException kbe) {
+			throw new InternalError(kbe.getMessage());
+		}
+		modified(dfd, (DFAgentDescription) old);
+	}
+	
+	private void modified(DFAgentDescription dfd, DFAgentDescription old) {
 		// for subscription
-		subManager.handleChange(dfd, (DFAgentDescription)old);
+		subManager.handleChange(dfd, old);
 		try{
 			gui.removeAgentDesc(dfd.getName(), df.this.getAID());
 			gui.addAgentDesc(dfd.getName());
@@ -972,6 +1053,114 @@ public class df extends GuiAgent implements DFGUIAdapter {
 		return agentDescriptions.search(dfd, maxResults);
 	}
 	
+	/**
+	 Register a number of descriptions in a single KB operation.
+	 @param failures Holds, for each description, the exception that prevents 
+	 its registration (if any). The exceptions occurred registering the other
+	 descriptions are added.
+	 */
+	void DFRegister(DFAgentDescription[] dfds, FIPAException[] failures) {
+		int[] indexes = getValidIndexes(failures);
+		Object[] old = agentDescriptions.register(getNames(dfds, indexes), getDescriptions(dfds, indexes));
+		for (int j = 0; j < indexes.length; ++j) {
+			int i = indexes[j];
+			if (old[j] instanceof KBException) {
+				failures[i] = new InternalError(((KBException) old[j]).getMessage());
+			}
+			else if (old[j] != null) {
+				failures[i] = new AlreadyRegistered();
+			}
+			else {
+				registered(dfds[i]);
+			}
+		}
+	}
+	
+	/**
+	 Deregister a number of descriptions in a single KB operation.
+	 @see #DFRegister(DFAgentDescription[], FIPAException[])
+	 */
+	void DFDeregister(DFAgentDescription[] dfds, FIPAException[] failures) {
+		int[] indexes = getValidIndexes(failures);
+		Object[] old = agentDescriptions.deregister(getNames(dfds, indexes));
+		for (int j = 0; j < indexes.length; ++j) {
+			int i = indexes[j];
+			if (old[j] instanceof KBException) {
+				failures[i] = new InternalError(((KBException) old[j]).getMessage());
+			}
+			else if (old[j] == null) {
+				failures[i] = new NotRegistered();
+			}
+			else {
+				dfds[i].clearAllServices(); //clear all services since we are deregistering
+				deregistered(dfds[i], (DFAgentDescription) old[j]);
+			}
+		}
+	}
+	
+	/**
+	 Modify a number of descriptions in a single KB operation.
+	 @see #DFRegister(DFAgentDescription[], FIPAException[])
+	 */
+	void DFModify(DFAgentDescription[] dfds, FIPAException[] failures) {
+		int[] indexes = getValidIndexes(failures);
+		Object[] old = agentDescriptions.register(getNames(dfds, indexes), getDescriptions(dfds, indexes));
+		List rollback = new ArrayList();
+		for (int j = 0; j < indexes.length; ++j) {
+			int i = indexes[j];
+			if (old[j] instanceof KBException) {
+				failures[i] = new InternalError(((KBException) old[j]).getMessage());
+			}
+			else if (old[j] == null) {
+				rollback.add(dfds[i].getName());
+				failures[i] = new NotRegistered();
+			}
+			else {
+				modified(dfds[i], (DFAgentDescription) old[j]);
+			}
+		}
+		if (rollback.size() > 0) {
+			agentDescriptions.deregister(rollback.toArray());
+		}
+	}
+	
+	List[] DFSearch(DFAgentDescription[] dfds, int maxResults) {
+		return agentDescriptions.search(dfds, maxResults);
+	}
+	
+	private static int[] getValidIndexes(FIPAException[] failures) {
+		int cnt = 0;
+		for (int i = 0; i < failures.length; ++i) {
+			if (failures[i] == null) {
+				cnt++;
+			}
+		}
+		int[] indexes = new int[cnt];
+		cnt = 0;
+		for (int i = 0; i < failures.length; ++i) {
+			if (failures[i] == null) {
+				indexes[cnt++] = i;
+			}
+		}
+		return indexes;
+	}
+	
+	private static Object[] getNames(DFAgentDescription[] dfds, int[] indexes) {
+		Object[] names = new Object[indexes.length];
+		for (int j = 0; j < indexes.length; ++j) {
+			names[j] = dfds[indexes[j]].getName();
+		}
+		return names;
+	}
+	
+	private static Object[] getDescriptions(DFAgentDescription[] dfds, int[] indexes) {
+		Object[] descriptions = new Object[indexes.length];
+		for (int j = 0; j < indexes.length; ++j) {
+			descriptions[j] = dfds[indexes[j]];
+		}
+		return descriptions;
+	}
+	
 	KBIterator DFIteratedSearch(DFAgentDescription dfd) {
 		return agentDescriptions.iterator(dfd);
 	}
@@ -1111,6 +1300,134 @@ public class df extends GuiAgent implements DFGUIAdapter {
 		}
 	}
 	
+	/**
+	 Serve the BulkRegister action of the JADE management ontology.
+	 Package scoped since it is called by DFJadeAgentManagementBehaviour.
+	 @return the List of the BulkItemResult of each registration
+	 */
+	List bulkRegisterAction(BulkRegister br, AID requester) {
+		DFAgentDescription[] dfds = toArray(br.getAllDescriptions());
+		if(logger.isLoggable(Logger.CONFIG))
+			logger.log(Logger.CONFIG,"Agent "+requester.getName()+" requesting action BulkRegister for "+dfds.length+" descriptions");
+		
+		FIPAException[] failures = checkAll(dfds, true);
+		for (int i = 0; i < dfds.length; ++i) {
+			// Avoid autoregistration
+			if (failures[i] == null && dfds[i].getName().equals(getAID())) {
+				failures[i] = new Unauthorised();
+			}
+		}
+		DFRegister(dfds, failures);
+		return getBulkResults(dfds, failures, true);
+	}
+	
+	/**
+	 Serve the BulkDeregister action of the JADE management ontology.
+	 Package scoped since it is called by DFJadeAgentManagementBehaviour.
+	 @return the List of the BulkItemResult of each deregistration
+	 */
+	List bulkDeregisterAction(BulkDeregister bd, AID requester) {
+		DFAgentDescription[] dfds = toArray(bd.getAllDescriptions());
+		if(logger.isLoggable(Logger.CONFIG))
+			logger.log(Logger.CONFIG,"Agent "+requester.getName()+" requesting action BulkDeregister for "+dfds.length+" descriptions");
+		
+		FIPAException[] failures = checkAll(dfds, false);
+		DFDeregister(dfds, failures);
+		return getBulkResults(dfds, failures, false);
+	}
+	
+	/**
+	 Serve the BulkModify action of the JADE management ontology.
+	 Package scoped since it is called by DFJadeAgentManagementBehaviour.
+	 @return the List of the BulkItemResult of each modification
+	 */
+	List bulkModifyAction(BulkModify bm, AID requester) {
+		DFAgentDescription[] dfds = toArray(bm.getAllDescriptions());
+		if(logger.isLoggable(Logger.CONFIG))
+			logger.log(Logger.CONFIG,"Agent "+requester.getName()+" requesting action BulkModify for "+dfds.length+" descriptions");
+		
+		FIPAException[] failures = checkAll(dfds, true);
+		DFModify(dfds, failures);
+		return getBulkResults(dfds, failures, true);
+	}
+	
+	/**
+	 Serve the BulkSearch action of the JADE management ontology.
+	 Package scoped since it is called by DFJadeAgentManagementBehaviour.
+	 Unlike the Search action, searches are never propagated to federated DFs.
+	 @return the List of the BulkItemResult holding the descriptions 
+	 matching each template
+	 */
+	List bulkSearchAction(BulkSearch bs, AID requester) {
+		DFAgentDescription[] templates = toArray(bs.getAllDescriptions());
+		SearchConstraints constraints = bs.getConstraints();
+		if (constraints == null) {
+			constraints = new SearchConstraints();
+		}
+		if(logger.isLoggable(Logger.CONFIG))
+			logger.log(Logger.CONFIG,"Agent "+requester.getName()+" requesting action BulkSearch for "+templates.length+" templates");
+		
+		List[] found = DFSearch(templates, getActualMaxResults(constraints));
+		List results = new ArrayList(found.length);
+		for (int i = 0; i < found.length; ++i) {
+			BulkItemResult r = new BulkItemResult();
+			Iterator it = found[i].iterator();
+			while (it.hasNext()) {
+				r.addDescriptions((DFAgentDescription) it.next());
+			}
+			results.add(r);
+		}
+		return results;
+	}
+	
+	private static DFAgentDescription[] toArray(Iterator it) {
+		List l = new ArrayList();
+		while (it.hasNext()) {
+			l.add(it.next());
+		}
+		DFAgentDescription[] dfds = new DFAgentDescription[l.size()];
+		for (int i = 0; i < dfds.length; ++i) {
+			dfds[i] = (DFAgentDescription) l.get(i);
+		}
+		return dfds;
+	}
+	
+	/**
+	 Check the mandatory slots of all descriptions of a bulk action
+	 @return the exception for each invalid description
+	 */
+	private static FIPAException[] checkAll(DFAgentDescription[] dfds, boolean checkServices) {
+		FIPAException[] failures = new FIPAException[dfds.length];
+		for (int i = 0; i < dfds.length; ++i) {
+			try {
+				DFService.checkIsValid(dfds[i], checkServices);
+			}
+			catch (FIPAException fe) {
+				failures[i] = fe;
+			}
+		}
+		return failures;
+	}
+	
+	/**
+	 @param includeDescriptions Whether successful items must include the description
+	 as actually registered
+	 */
+	private static List getBulkResults(DFAgentDescription[] dfds, FIPAException[] failures, boolean includeDescriptions) {
+		List results = new ArrayList(dfds.length);
+		for (int i = 0; i < dfds.length; ++i) {
+			BulkItemResult r = new BulkItemResult();
+			if (failures[i] != null) {
+				r.setFailure(failures[i].getMessage());
+			}
+			else if (includeDescriptions) {
+				r.addDescriptions(dfds[i]);
+			}
+			results.add(r);
+		}
+		return results;
+	}
+	
 	//////////////////////////////////////////////////////////
 	// Methods serving the actions of the DF-Applet ontology
 	//////////////////////////////////////////////////////////
@@ -60,6 +60,15 @@ public abstract class Connection {
 	
   //#MIDP_EXCLUDE_BEGIN
   public abstract String getRemoteHost() throws Exception;
+
+	/**
+	   Send small packets immediately, without waiting for the 
+	   acknowledgement of the previous ones, if the underlying transport
+	   supports it. This is needed when more packets are in flight on 
+	   the connection (see <code>MultiplexedConnection</code>).
+	 */
+	public void setNoDelay() throws IOException {
+	}
   //#MIDP_EXCLUDE_END
 }
 
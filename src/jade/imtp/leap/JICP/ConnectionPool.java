@@ -48,28 +48,54 @@ import jade.imtp.leap.http.HTTPProtocol;
  */
 class ConnectionPool {
 	private HashMap connections = new HashMap();
+	private HashMap multiplexedConnections = new HashMap();
+	// Destination --> Number of multiplexed connections being created
+	private HashMap pendingCreations = new HashMap();
 	private TransportProtocol myProtocol;
 	private ConnectionFactory myFactory;
 	private int maxSize;
 	private int size;
+	private int maxMultiplexed;
+	private int window;
+	private int responseTimeout;
 	private boolean closed = false;
 	
 	private long hitCnt = 0;
 	private long missCnt = 0;
 	
 	ConnectionPool(TransportProtocol p, ConnectionFactory f, int ms) {
+		this(p, f, ms, 0, 0, 0);
+	}
+	
+	/**
+	 * @param mm The maximum number of multiplexed connections towards a 
+	 * given destination. 0 means that commands are not multiplexed.
+	 * @param w The maximum number of in-flight commands on each 
+	 * multiplexed connection
+	 * @param rt The time in ms a multiplexed command waits for its
+	 * response (0 means forever)
+	 */
+	ConnectionPool(TransportProtocol p, ConnectionFactory f, int ms, int mm, int w, int rt) {
 		myProtocol = p;
 		myFactory = f;
 		// Temporary hack for HTTP since HTTP connections cannot be re-used
 		if (myProtocol instanceof HTTPProtocol) {
 			maxSize = 0;
+			maxMultiplexed = 0;
 		}
 		else {
 			maxSize = ms;
+			maxMultiplexed = mm;
 		}
+		window = w;
+		responseTimeout = rt;
 		size = 0;
 	}
 	
+	final boolean isMultiplexed() {
+		return maxMultiplexed > 0;
+	}
+	
 	// The actual connection creation operation must NOT be included in the synchronized block. In facts
 	// in certain cases it may take a lot of time due to TCP timeouts expiration.
 	ConnectionWrapper acquire(TransportAddress ta, boolean requireFreshConnection) throws ICPException {
@@ -92,6 +118,7 @@ class ConnectionPool {
 				// --> In order to avoid keeping invalid connections that can lead to very long waiting times, 
 				// close all non-used connections towards this destination.
 				closeConnections(l);
+				closeMultiplexedConnections(url);
 			}
 			else {
 				Iterator it = l.iterator();
@@ -158,6 +185,130 @@ class ConnectionPool {
 		}
 	}
 
+	/**
+	 * Get a multiplexed connection towards a given destination. 
+	 * The least loaded connection is returned unless all connections
+	 * have a full in-flight window and the maximum number of connections
+	 * towards the destination has not been reached yet.
+	 */
+	MultiplexedConnection acquireMultiplexed(TransportAddress ta) throws ICPException {
+		String url = myProtocol.addrToString(ta);
+		synchronized (this) {
+			while (true) {
+				if (closed) {
+					throw new ICPException("Pool closed");			
+				}
+				
+				MultiplexedConnection best = null;
+				List l = (List) multiplexedConnections.get(url);
+				if (l != null) {
+					Iterator it = l.iterator();
+					while (it.hasNext()) {
+						MultiplexedConnection mc = (MultiplexedConnection) it.next();
+						if (mc.isClosed()) {
+							// Closed by the peer
+							it.remove();
+						}
+						else if (best == null || mc.getInFlight() < best.getInFlight()) {
+							best = mc;
+						}
+					}
+				}
+				int cnt = (l != null ? l.size() : 0) + getPendingCreations(url);
+				if (best != null && (best.getInFlight() < window || cnt >= maxMultiplexed)) {
+					hitCnt++;
+					return best;
+				}
+				if (cnt < maxMultiplexed) {
+					// We need a new connection
+					pendingCreations.put(url, new Integer(getPendingCreations(url) + 1));
+					break;
+				}
+				// All connections towards this destination are being created --> Wait for them
+				try {
+					wait();
+				}
+				catch (InterruptedException ie) {
+					throw new ICPException("Interrupted waiting for a connection");
+				}
+			}
+		}
+		
+		// If we get here we need a new connection. As in acquire() the actual connection 
+		// creation must NOT be included in the synchronized block.
+		MultiplexedConnection mc = null;
+		try {
+			mc = new MultiplexedConnection(myFactory.createConnection(ta), ta, window, responseTimeout);
+			return mc;
+		}
+		catch (IOException ioe) {
+			throw new ICPException("Error creating connection. ", ioe);
+		}
+		finally {
+			synchronized (this) {
+				int cnt = getPendingCreations(url) - 1;
+				if (cnt > 0) {
+					pendingCreations.put(url, new Integer(cnt));
+				}
+				else {
+					pendingCreations.remove(url);
+				}
+				if (mc != null && closed) {
+					// The pool was shut down in the meanwhile
+					mc.close(new IOException("Pool closed"));
+				}
+				else if (mc != null) {
+					List l = (List) multiplexedConnections.get(url);
+					if (l == null) {
+						l = new ArrayList();
+						multiplexedConnections.put(url, l);
+					}
+					l.add(mc);
+					missCnt++;
+				}
+				notifyAll();
+			}
+		}
+	}
+	
+	private int getPendingCreations(String url) {
+		Integer cnt = (Integer) pendingCreations.get(url);
+		return (cnt != null ? cnt.intValue() : 0);
+	}
+	
+	synchronized void remove(MultiplexedConnection mc) {
+		try {
+			String url = myProtocol.addrToString(mc.getDestAddress());
+			List l = (List) multiplexedConnections.get(url);
+			if (l != null) {
+				l.remove(mc);
+				if (l.isEmpty()) {
+					multiplexedConnections.remove(url);
+				}
+			}
+		}
+		catch (Exception e) {
+			// Just ignore it
+		}
+		mc.close(new IOException("Connection removed from pool"));
+	}
+	
+	private void closeMultiplexedConnections(String url) {
+		List l = (List) multiplexedConnections.get(url);
+		if (l != null) {
+			Iterator it = l.iterator();
+			while (it.hasNext()) {
+				MultiplexedConnection mc = (MultiplexedConnection) it.next();
+				if (mc.closeIfIdle()) {
+					it.remove();
+				}
+			}
+			if (l.isEmpty()) {
+				multiplexedConnections.remove(url);
+			}
+		}
+	}
+	
 	synchronized void release(ConnectionWrapper cw) {
 		cw.unlock();
 	}
@@ -193,7 +344,18 @@ class ConnectionPool {
 			l.clear();
 		} 
 		connections.clear();
+		
+		it = multiplexedConnections.values().iterator();
+		while (it.hasNext()) {
+			List l = (List) it.next();
+			for (int i = 0; i < l.size(); i++) {
+				MultiplexedConnection mc = (MultiplexedConnection) l.get(i);
+				mc.close(new IOException("Pool closed"));
+			}
+		}
+		multiplexedConnections.clear();
 		closed = true;
+		notifyAll();
 	}
 	
 	void clearExpiredConnections(long currentTime) {
@@ -205,15 +367,31 @@ class ConnectionPool {
 				cw.unlock();
 			}
 		}
+		
+		it = getMultiplexedConnectionsList().iterator();
+		while (it.hasNext()) {
+			MultiplexedConnection mc = (MultiplexedConnection) it.next();
+			if (mc.isExpired(currentTime) && mc.closeIfIdle()) {
+				remove(mc);
+			}
+		}
 	}
 	
 	public String toString() {
-		return "[Connection-pool: total-hit="+hitCnt+", total-miss="+missCnt+", current-size="+size+" connections="+connections+"]";
+		return "[Connection-pool: total-hit="+hitCnt+", total-miss="+missCnt+", current-size="+size+" connections="+connections+" multiplexed-connections="+multiplexedConnections+"]";
 	}
 	
 	private synchronized List getConnectionsList() {
+		return flatten(connections);
+	}
+	
+	private synchronized List getMultiplexedConnectionsList() {
+		return flatten(multiplexedConnections);
+	}
+	
+	private List flatten(HashMap m) {
 		List cc = new ArrayList();
-		Iterator it = connections.values().iterator();
+		Iterator it = m.values().iterator();
 		while (it.hasNext()) {
 			List l = (List) it.next();
 			Iterator it1 = l.iterator();
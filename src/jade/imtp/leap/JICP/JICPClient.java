@@ -60,9 +60,22 @@ class JICPClient {
 	 * Constructor declaration
 	 */
 	public JICPClient(TransportProtocol tp, ConnectionFactory f, int max) {
+		this(tp, f, max, 0, 0, 0);
+	} 
+	
+	/**
+	 * Constructor declaration
+	 * @param maxMultiplexed The maximum number of multiplexed connections 
+	 * per destination. If 0, commands are not multiplexed.
+	 * @param window The maximum number of in-flight commands on each
+	 * multiplexed connection
+	 * @param responseTimeout The time in ms a multiplexed command waits 
+	 * for its response (0 means forever)
+	 */
+	public JICPClient(TransportProtocol tp, ConnectionFactory f, int max, int maxMultiplexed, int window, int responseTimeout) {
 		protocol = tp;
 		connFactory = f;
-		pool = new ConnectionPool(protocol, connFactory, max);
+		pool = new ConnectionPool(protocol, connFactory, max, maxMultiplexed, window, responseTimeout);
 	} 
 	
 	/**
@@ -75,6 +88,10 @@ class JICPClient {
 	 * @throws ICPException
 	 */
 	public byte[] send(TransportAddress ta, byte dataType, byte[] data, boolean requireFreshConnection) throws ICPException {
+		if (dataType == JICPProtocol.COMMAND_TYPE && !requireFreshConnection && pool.isMultiplexed()) {
+			return sendMultiplexed(ta, data);
+		}
+		
 		ConnectionWrapper cw = null;
 		boolean done = false;
 		
@@ -148,6 +165,39 @@ class JICPClient {
 		}
 	} 
 	
+	/**
+	 * Send a command over a connection shared with other in-flight
+	 * commands towards the same destination
+	 */
+	private byte[] sendMultiplexed(TransportAddress ta, byte[] data) throws ICPException {
+		while (true) {
+			MultiplexedConnection mc = pool.acquireMultiplexed(ta);
+			boolean reused = mc.isReused();
+			try {
+				JICPPacket request = new JICPPacket(JICPProtocol.COMMAND_TYPE, JICPProtocol.DEFAULT_INFO, ta.getFile(), data);
+				JICPPacket reply = mc.request(request);
+				if (reply.getType() == JICPProtocol.ERROR_TYPE) {
+					throw new ICPException(new String(reply.getData()));
+				} 
+				byte[] bb = reply.getData();
+				if (bb == null) {
+					throw new ICPException("Null response from server");
+				}
+				return bb;
+			}
+			catch (InterruptedIOException iioe) {
+				// The connection is still valid for the other commands
+				throw new ICPException("Interrupted sending/receiving data to "+ta.getHost()+":"+ta.getPort(), iioe);
+			}
+			catch (IOException ioe) {
+				pool.remove(mc);
+				if (!reused) {
+					throw new ICPException("I/O error sending/receiving data to "+ta.getHost()+":"+ta.getPort(), ioe);
+				}
+			}
+		}
+	}
+	
 	public void shutdown() {
 		pool.shutdown();
 	}
@@ -84,7 +84,7 @@ public class JICPConnection extends Connection {
 				/*#PJAVA_INCLUDE_BEGIN
 				sc = new Socket(ta.getHost(), Integer.parseInt(ta.getPort()));
 				#PJAVA_INCLUDE_END*/
-				is = sc.getInputStream();
+				is = getInputStream();
 				os = getOutputStream();
 				break;
 			}
@@ -109,6 +109,12 @@ public class JICPConnection extends Connection {
 		}
 	}
 
+	public void setNoDelay() throws IOException {
+		if (sc != null) {
+			sc.setTcpNoDelay(true);
+		}
+	}
+
 	/**
 	 * Constructor declaration
 	 */
@@ -121,7 +127,7 @@ public class JICPConnection extends Connection {
 		if (sc != null) {
 			if (is == null) {
 				//#MIDP_EXCLUDE_BEGIN
-				is = sc.getInputStream();
+				is = getInputStream();
 				//#MIDP_EXCLUDE_END
 				/*#MIDP_INCLUDE_BEGIN
 	  		is = sc.openInputStream();
@@ -148,6 +154,17 @@ public class JICPConnection extends Connection {
 		}
 	}
 
+	//#MIDP_EXCLUDE_BEGIN
+	/**
+	 * The socket input stream is buffered so that reading a packet 
+	 * (whose header is read in more steps) does not result in a system 
+	 * call per step.
+	 */
+	protected InputStream getInputStream() throws IOException {
+		return new BufferedInputStream(sc.getInputStream());
+	}
+	//#MIDP_EXCLUDE_END
+
 	/**
 	 */
 	protected OutputStream getOutputStream() throws IOException {
@@ -45,6 +45,11 @@ import jade.util.Logger;
  */
 public class JICPPacket {
 	public static final int MAX_SIZE = 1000000;
+	/**
+	 * The maximum size of a packet header: 
+	 * type+info+session+recipient-length+recipient(255)+payload-length(4)
+	 */
+	public static final int MAX_HEADER_SIZE = 263;
 
   /**
    * The type of data included in the packet
@@ -218,56 +223,75 @@ public class JICPPacket {
    * data should be retrieved and deserialized with the
    * <code>readFrom()</code> static method below. The output stream is flushed
    * but not opened nor closed by this method.
+   * The header and the payload are written by means of a single 
+   * <code>write()</code> call each.
    * 
    * @param out The  <code>OutputStream</code> to write the data in
    * @exception May send a large bunch of exceptions, mainly in the IO
    * package.
    */
   public int writeTo(OutputStream out) throws IOException {
-  	int cnt = 2;
+  	byte[] header = new byte[MAX_HEADER_SIZE];
+  	int cnt = writeHeader(header);
+  	out.write(header, 0, cnt);
+
+    // Write data only if != null
+    if (data != null && data.length > 0) {
+    	out.write(data, 0, data.length);
+    	cnt += data.length;
+    }
+  	// DEBUG
+  	//System.out.println(getLength()+" bytes written");
+    return cnt;
+  } 
+
+  /**
+   * Writes the header of this packet, i.e. all fields but the payload
+   * (that is not copied) into a given buffer. This allows writing the 
+   * header and the payload by means of a gathering write.
+   * @param buf The buffer to write the header in. It must be at least
+   * <code>MAX_HEADER_SIZE</code> bytes long.
+   * @return The number of bytes written into the buffer
+   */
+  public int writeHeader(byte[] buf) {
+  	int cnt = 0;
     // Write the packet type
-    out.write(type);
+    buf[cnt++] = type;
 
     // Write the packet info
-    out.write(info);
+    buf[cnt++] = info;
 
     // Write the session ID if present
     if ((info & JICPProtocol.SESSION_ID_PRESENT_INFO) != 0) {
-      out.write(sessionID);
-      cnt++;
+      buf[cnt++] = sessionID;
     }
 
     // Write recipient ID only if != null
     if ((info & JICPProtocol.RECIPIENT_ID_PRESENT_INFO) != 0) {
-    	out.write(recipientID.length());
-    	out.write(recipientID.getBytes());
-    	cnt += (1 + recipientID.length());
+    	byte[] bb = recipientID.getBytes();
+    	buf[cnt++] = (byte) bb.length;
+    	System.arraycopy(bb, 0, buf, cnt, bb.length);
+    	cnt += bb.length;
     } 
 
-    // Write data only if != null
+    // Write the payload size only if data != null
     if (data != null) {
-      // Size
     	int size = data.length;
-    	out.write(size);
-    	out.write(size >> 8);      	
-    	out.write(size >> 16);      	
-    	out.write(size >> 24);      	
-    	cnt += 4;
-    	// Payload
-    	if (size > 0) {
-      	out.write(data, 0, size);
-      	cnt += size;
-    	}
+    	buf[cnt++] = (byte) size;
+    	buf[cnt++] = (byte) (size >> 8);
+    	buf[cnt++] = (byte) (size >> 16);
+    	buf[cnt++] = (byte) (size >> 24);
     }
-  	// DEBUG
-  	//System.out.println(getLength()+" bytes written");
     return cnt;
-  } 
+  }
 
   /**
    * This static method reads from a given
    * <code>DataInputStream</code> and returns the JICPPacket that
    * it reads. The input stream is not opened nor closed by this method.
+   * The header is read by means of (at most) three <code>read()</code> 
+   * calls and the payload by means of a single call if the stream 
+   * makes it available.
    * 
    * @param in The <code>InputStream</code> to read from
    * @exception May send a large bunch of exceptions, mainly in the IO
@@ -275,34 +299,33 @@ public class JICPPacket {
    */
   public static JICPPacket readFrom(InputStream in) throws IOException {
     JICPPacket p = new JICPPacket();
-
-    // Read packet type
-    p.type = read(in);
-
-    // Read the packet info
-    p.info = read(in);
-
-    // Read session ID if present
-    if ((p.info & JICPProtocol.SESSION_ID_PRESENT_INFO) != 0) {
-    	p.sessionID = read(in);
+    byte[] header = new byte[MAX_HEADER_SIZE];
+
+    // Read packet type and info
+    readHeader(in, header, 2);
+    p.type = header[0];
+    p.info = header[1];
+    boolean sessionIDPresent = (p.info & JICPProtocol.SESSION_ID_PRESENT_INFO) != 0;
+    boolean recipientIDPresent = (p.info & JICPProtocol.RECIPIENT_ID_PRESENT_INFO) != 0;
+    boolean dataPresent = (p.info & JICPProtocol.DATA_PRESENT_INFO) != 0;
+
+    // Read session ID and recipient ID length if present
+    readHeader(in, header, (sessionIDPresent ? 1 : 0) + (recipientIDPresent ? 1 : 0));
+    if (sessionIDPresent) {
+    	p.sessionID = header[0];
     }
-    	
-    // Read recipient ID if present
-    if ((p.info & JICPProtocol.RECIPIENT_ID_PRESENT_INFO) != 0) {
-    	int size = (read(in) & 0x000000ff);
-    	byte[] bb = new byte[size];
-    	in.read(bb, 0, size);
-      p.recipientID = new String(bb);
+    int recipientIDLength = (recipientIDPresent ? (header[sessionIDPresent ? 1 : 0] & 0x000000ff) : 0);
+
+    // Read recipient ID and data size if present
+    readHeader(in, header, recipientIDLength + (dataPresent ? 4 : 0));
+    if (recipientIDPresent) {
+      p.recipientID = new String(header, 0, recipientIDLength);
     } 
 
     // Read data if present
-    if ((p.info & JICPProtocol.DATA_PRESENT_INFO) != 0) {
-    	int b1 = read(in);
-    	int b2 = read(in);
-    	int size = ((b2 << 8) & 0x0000ff00) | (b1 & 0x000000ff);
-    	int b3 = read(in);
-    	int b4 = read(in);
-    	size |= ((b4 << 24) & 0xff000000) | ((b3 << 16) & 0x00ff0000);
+    if (dataPresent) {
+    	int i = recipientIDLength;
+    	int size = (header[i] & 0x000000ff) | ((header[i+1] << 8) & 0x0000ff00) | ((header[i+2] << 16) & 0x00ff0000) | ((header[i+3] << 24) & 0xff000000);
     	if (size == 0) {
       	p.data = new byte[0];
     	} 
@@ -329,12 +352,15 @@ public class JICPPacket {
     return p;
   } 
 
-  private static final byte read(InputStream in) throws IOException {
-  	int i = in.read();
-  	if (i == -1) {
-  		throw new EOFException("EOF reading packet header");
+  private static final void readHeader(InputStream in, byte[] buf, int length) throws IOException {
+  	int cnt = 0;
+  	while (cnt < length) {
+  		int n = in.read(buf, cnt, length-cnt);
+  		if (n == -1) {
+  			throw new EOFException("EOF reading packet header");
+  		}
+  		cnt += n;
   	}
-  	return (byte) i;
   }
   
   public int getLength() {
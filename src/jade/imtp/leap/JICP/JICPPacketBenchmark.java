@@ -0,0 +1,167 @@
+package jade.imtp.leap.JICP;
+
+//#J2ME_EXCLUDE_FILE
+//#APIDOC_EXCLUDE_FILE
+
+import jade.core.BenchmarkHarness;
+import jade.util.leap.Properties;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Arrays;
+
+/**
+ Measure the round trip throughput of JICP packets exchanged over a 
+ loopback socket between two <code>JICPConnection</code>s, one of which 
+ echoes all packets it receives, comparing the current packet framing with 
+ the previous one that read the packet header one byte at a time from the 
+ (unbuffered) socket input stream.
+ Usage:
+ <code>java jade.imtp.leap.JICP.JICPPacketBenchmark [-t 3] [-warmup 2]</code>
+ @see jade.core.BenchmarkHarness
+ */
+public class JICPPacketBenchmark {
+
+	private static final int[] PAYLOAD_SIZES = new int[]{64, 1024, 64 * 1024};
+	private static final String[] NAMES = new String[]{"per-byte header", "buffered      "};
+
+	public static void main(String[] args) throws Exception {
+		Properties pp = BenchmarkHarness.parseArguments(args);
+		int duration = BenchmarkHarness.getDuration(pp);
+		int warmup = BenchmarkHarness.getWarmup(pp);
+
+		System.out.println("----------------------------------");
+		for (int i = 0; i < PAYLOAD_SIZES.length; ++i) {
+			byte[] payload = new byte[PAYLOAD_SIZES[i]];
+			for (int j = 0; j < payload.length; ++j) {
+				payload[j] = (byte) j;
+			}
+			JICPPacket pkt = new JICPPacket(JICPProtocol.COMMAND_TYPE, JICPProtocol.DEFAULT_INFO, "mediator-1234", payload);
+			pkt.setSessionID((byte) 7);
+			System.out.println(payload.length+" bytes payload");
+			for (int mode = 0; mode < NAMES.length; ++mode) {
+				run(mode == 0, pkt, warmup);
+				long ops = run(mode == 0, pkt, duration);
+				System.out.println("- "+NAMES[mode]+": "+(ops / duration)+" round trips/s");
+			}
+		}
+		System.out.println("----------------------------------");
+	}
+
+	private static long run(boolean legacy, JICPPacket pkt, int duration) throws Exception {
+		final ServerSocket ss = new ServerSocket(0, 1, InetAddress.getByName("127.0.0.1"));
+		Socket s = new Socket("127.0.0.1", ss.getLocalPort());
+		s.setTcpNoDelay(true);
+		Socket accepted = ss.accept();
+		accepted.setTcpNoDelay(true);
+		ss.close();
+		final Connection server = (legacy ? new LegacyConnection(accepted) : new JICPConnection(accepted));
+		Connection client = (legacy ? new LegacyConnection(s) : new JICPConnection(s));
+
+		Thread echo = new Thread() {
+			public void run() {
+				try {
+					while (true) {
+						server.writePacket(server.readPacket());
+					}
+				}
+				catch (IOException ioe) {
+					// Connection closed by the client
+				}
+			}
+		};
+		echo.start();
+
+		try {
+			// Check that packets survive a round trip
+			client.writePacket(pkt);
+			JICPPacket reply = client.readPacket();
+			if (reply.getType() != pkt.getType() || reply.getInfo() != pkt.getInfo() || reply.getSessionID() != pkt.getSessionID() ||
+					!pkt.getRecipientID().equals(reply.getRecipientID()) || !Arrays.equals(pkt.getData(), reply.getData())) {
+				System.out.println("ERROR: wrong round trip");
+				System.exit(1);
+			}
+
+			long end = System.currentTimeMillis() + duration * 1000L;
+			long cnt = 0;
+			while (System.currentTimeMillis() < end) {
+				// Check the time every 100 operations only
+				for (int i = 0; i < 100; ++i) {
+					client.writePacket(pkt);
+					client.readPacket();
+				}
+				cnt += 100;
+			}
+			return cnt;
+		}
+		finally {
+			client.close();
+			echo.join();
+			server.close();
+		}
+	}
+
+	/**
+	 Inner class LegacyConnection.
+	 A JICPConnection that reads packets as JICPPacket.readFrom() used 
+	 to do: one byte at a time directly from the socket input stream.
+	 */
+	private static class LegacyConnection extends JICPConnection {
+		private InputStream rawIs;
+
+		LegacyConnection(Socket s) throws IOException {
+			super(s);
+			rawIs = s.getInputStream();
+		}
+
+		public JICPPacket readPacket() throws IOException {
+			InputStream in = rawIs;
+			byte type = read(in);
+			byte info = read(in);
+			byte sessionID = -1;
+			if ((info & JICPProtocol.SESSION_ID_PRESENT_INFO) != 0) {
+				sessionID = read(in);
+			}
+			String recipientID = null;
+			if ((info & JICPProtocol.RECIPIENT_ID_PRESENT_INFO) != 0) {
+				int size = (read(in) & 0x000000ff);
+				byte[] bb = new byte[size];
+				in.read(bb, 0, size);
+				recipientID = new String(bb);
+			}
+			byte[] data = null;
+			if ((info & JICPProtocol.DATA_PRESENT_INFO) != 0) {
+				int b1 = read(in);
+				int b2 = read(in);
+				int size = ((b2 << 8) & 0x0000ff00) | (b1 & 0x000000ff);
+				int b3 = read(in);
+				int b4 = read(in);
+				size |= ((b4 << 24) & 0xff000000) | ((b3 << 16) & 0x00ff0000);
+				data = new byte[size];
+				int cnt = 0;
+				while (cnt < size) {
+					int n = in.read(data, cnt, size-cnt);
+					if (n == -1) {
+						throw new EOFException("EOF reading packet data");
+					}
+					cnt += n;
+				}
+			}
+			JICPPacket pkt = new JICPPacket(type, info, recipientID, data);
+			pkt.setSessionID(sessionID);
+			return pkt;
+		}
+
+		private static byte read(InputStream in) throws IOException {
+			int i = in.read();
+			if (i == -1) {
+				throw new EOFException("EOF reading packet header");
+			}
+			return (byte) i;
+		}
+	}
+}
@@ -62,6 +62,31 @@ public class JICPPeer implements ICP, ProtocolManager {
 	private int connectionTimeout = 0;
 
 	public static final String CONNECTION_TIMEOUT = "jade_imtp_leap_JICP_JICPPeer_connectiontimeout";
+	/**
+	 * The maximum number of connections towards a given destination that 
+	 * are shared by multiplexed commands. Default is 0, i.e. commands are 
+	 * not multiplexed and each command locks a connection until the 
+	 * response is received.
+	 */
+	public static final String MULTIPLEXED_CONNECTIONS = "jade_imtp_leap_JICP_JICPPeer_multiplexedconnections";
+	/**
+	 * The maximum number of in-flight commands on a multiplexed connection
+	 * (at most 128)
+	 */
+	public static final String MULTIPLEXING_WINDOW = "jade_imtp_leap_JICP_JICPPeer_multiplexingwindow";
+	private static final int DEFAULT_MULTIPLEXING_WINDOW = 16;
+	/**
+	 * The time in ms a multiplexed command waits for its response before
+	 * failing (0 means forever). Default is 120000. 
+	 */
+	public static final String MULTIPLEXING_RESPONSE_TIMEOUT = "jade_imtp_leap_JICP_JICPPeer_multiplexingresponsetimeout";
+	private static final int DEFAULT_MULTIPLEXING_RESPONSE_TIMEOUT = 120000;
+	/**
+	 * If true, incoming connections are served by a <code>NIOJICPServer</code>, 
+	 * i.e. by a single selector thread and a bounded pool of worker threads, 
+	 * instead of a thread per connection. Default is false.
+	 */
+	public static final String NIO_SERVER = "jade_imtp_leap_JICP_JICPPeer_nioserver";
 	/**
 	 * Start listening for internal platform messages on the specified port
 	 */
@@ -70,10 +95,20 @@ public class JICPPeer implements ICP, ProtocolManager {
 
 		connectionTimeout = Integer.parseInt(p.getParameter(CONNECTION_TIMEOUT, "0"));
 
+		int multiplexedConnections = Integer.parseInt(p.getParameter(MULTIPLEXED_CONNECTIONS, "0"));
+		int window = Integer.parseInt(p.getParameter(MULTIPLEXING_WINDOW, String.valueOf(DEFAULT_MULTIPLEXING_WINDOW)));
+		int responseTimeout = Integer.parseInt(p.getParameter(MULTIPLEXING_RESPONSE_TIMEOUT, String.valueOf(DEFAULT_MULTIPLEXING_RESPONSE_TIMEOUT)));
+		
 		// Start the client
-		client = new JICPClient(getProtocol(), getConnectionFactory(), POOL_SIZE);
+		client = new JICPClient(getProtocol(), getConnectionFactory(), POOL_SIZE, multiplexedConnections, window, responseTimeout);
 
 		// Start the server listening for connections
+		//#J2ME_EXCLUDE_BEGIN
+		if (p.getBooleanProperty(NIO_SERVER, false) && isNIOServerSupported()) {
+			server = new NIOJICPServer(p, this, l, getConnectionFactory(), POOL_SIZE);
+		}
+		else
+		//#J2ME_EXCLUDE_END
 		server = new JICPServer(p, this, l, getConnectionFactory(), POOL_SIZE);
 		server.start();
 
@@ -164,6 +199,16 @@ public class JICPPeer implements ICP, ProtocolManager {
 		};
 	}  
 
+	/**
+     Subclasses whose connections do not carry plain JICP packets over 
+     TCP (e.g. SSL or HTTP connections) must re-define this method to 
+     return false, since the NIOJICPServer reads JICP packets directly 
+     from socket channels
+	 */
+	protected boolean isNIOServerSupported() {
+		return true;
+	}
+	
 	protected ServerSocket getServerSocket(String host, int port, boolean changePortIfBusy) throws ICPException {
 		try {
 			return new ServerSocket(port, 50, (host != null ? InetAddress.getByName(host) : null));
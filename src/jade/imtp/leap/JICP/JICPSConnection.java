@@ -91,7 +91,7 @@ public class JICPSConnection extends JICPConnection {
             try {
                 sc = scsf.createSocket(ta.getHost(), Integer.parseInt(ta.getPort()));
                 ((SSLSocket) sc).setEnabledCipherSuites(SSLHelper.getSupportedKeys());
-                is = sc.getInputStream();
+                is = getInputStream();
                 os = getOutputStream();
                 break;
             } catch (BindException be) {
@@ -120,7 +120,7 @@ public class JICPSConnection extends JICPConnection {
         while (true) {
             try {
                 sc = scsf.createSocket(ta.getHost(), Integer.parseInt(ta.getPort()));
-                is = sc.getInputStream();
+                is = getInputStream();
                 os = getOutputStream();
                 break;
             } catch (BindException be) {
@@ -102,6 +102,13 @@ public class JICPSPeer extends JICPPeer {
 		};
 	}
 
+	/**
+     SSL connections can't be served by the NIOJICPServer
+	 */
+	protected boolean isNIOServerSupported() {
+		return false;
+	}
+
 	protected ServerSocket getServerSocket(String host, int port, boolean changePortIfBusy) throws ICPException {
 		// socket to be created
 		ServerSocket sss = null;
@@ -51,6 +51,13 @@ import java.net.*;
 import java.util.Enumeration;
 import java.util.Hashtable;
 import java.util.Vector;
+//#J2ME_EXCLUDE_BEGIN
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ThreadFactory;
+//#J2ME_EXCLUDE_END
 
 /**
  * Class declaration
@@ -92,6 +99,10 @@ implements PDPContextManager.Listener, JICPMediatorManager
 	
 	private int maxHandlers;
 	private Vector connectionHandlers;
+	//#J2ME_EXCLUDE_BEGIN
+	// The threads serving multiplexed commands
+	private ExecutorService workers;
+	//#J2ME_EXCLUDE_END
 	
 	private ConnectionFactory connFactory;
 	
@@ -203,12 +214,24 @@ implements PDPContextManager.Listener, JICPMediatorManager
 		//#J2ME_EXCLUDE_END
 		
 		// Create the ServerSocket.  
-		server = myPeer.getServerSocket((acceptLocalHostOnly ? host : null), port, changePortIfBusy);
+		server = createServerSocket(myPeer, (acceptLocalHostOnly ? host : null), port, changePortIfBusy);
 		
 		setDaemon(true);
 		setName("JICPServer-" + getLocalPort());
 	}
 	
+	/**
+	 Create the server socket this server accepts connections on.
+	 Note that this method is called by the constructor.
+	 */
+	ServerSocket createServerSocket(JICPPeer myPeer, String host, int port, boolean changePortIfBusy) throws ICPException {
+		return myPeer.getServerSocket(host, port, changePortIfBusy);
+	}
+	
+	final ServerSocket getServerSocket() {
+		return server;
+	}
+	
 	public int getLocalPort() {
 		return server.getLocalPort();
 	}
@@ -261,14 +284,7 @@ implements PDPContextManager.Listener, JICPMediatorManager
 					myLogger.log(Logger.FINEST,"Incoming connection from "+addr+":"+port);
 				
 				Connection c = connFactory.createConnection(s);
-				ConnectionHandler ch = new ConnectionHandler(c, addr, port);
-
-				if(myLogger.isLoggable(Logger.FINEST))
-					myLogger.log(Logger.FINEST,"Create new ConnectionHandler ("+ch+")");
-				
-				connectionHandlers.addElement(ch);
-				
-				ch.start();    // start a handler and go back to listening
+				startConnectionHandler(c, addr, port, null);    // start a handler and go back to listening
 			} 
 			catch (InterruptedIOException e) {
 				// These can be generated by socket timeout (just ignore
@@ -303,6 +319,26 @@ implements PDPContextManager.Listener, JICPMediatorManager
 		
 		server = null;
 
+		closeConnectionHandlersAndMediators();
+	} 
+	
+	/**
+	 Start a thread handling the packets received over a given connection
+	 @param firstPkt The first packet if it was already read from the
+	 connection, or null
+	 */
+	void startConnectionHandler(Connection c, InetAddress addr, int port, JICPPacket firstPkt) {
+		ConnectionHandler ch = new ConnectionHandler(c, addr, port, firstPkt);
+
+		if(myLogger.isLoggable(Logger.FINEST))
+			myLogger.log(Logger.FINEST,"Create new ConnectionHandler ("+ch+")");
+		
+		connectionHandlers.addElement(ch);
+		
+		ch.start();
+	}
+	
+	void closeConnectionHandlersAndMediators() {
 		// Close all connection handler
 		synchronized (connectionHandlers) {
 			ConnectionHandler ch;
@@ -313,6 +349,15 @@ implements PDPContextManager.Listener, JICPMediatorManager
 			}
 		}
 		
+		//#J2ME_EXCLUDE_BEGIN
+		synchronized (this) {
+			if (workers != null) {
+				workers.shutdown();
+				workers = null;
+			}
+		}
+		//#J2ME_EXCLUDE_END
+		
 		//#J2ME_EXCLUDE_BEGIN
 		// Close all mediators
 		Enumeration e = mediators.elements();
@@ -339,6 +384,29 @@ implements PDPContextManager.Listener, JICPMediatorManager
 		//#J2ME_EXCLUDE_END
 	}
 	
+	//#J2ME_EXCLUDE_BEGIN
+	/**
+	 * The pool serving multiplexed commands is bounded by the maximum 
+	 * number of connection handlers as the pool of the NIOJICPServer.
+	 * Commands exceeding it wait in the queue.
+	 */
+	private synchronized ExecutorService getWorkers() {
+		if (workers == null) {
+			ThreadPoolExecutor tpe = new ThreadPoolExecutor(maxHandlers, maxHandlers, 60, TimeUnit.SECONDS, new LinkedBlockingQueue(), new ThreadFactory() {
+				private int cnt = 0;
+				public synchronized Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "JICPServer-" + getLocalPort() + "-worker-" + (cnt++));
+					t.setDaemon(true);
+					return t;
+				}
+			});
+			tpe.allowCoreThreadTimeOut(true);
+			workers = tpe;
+		}
+		return workers;
+	}
+	//#J2ME_EXCLUDE_END
+	
 	/**
 	 Inner class ConnectionHandler.
 	 Handle a connection accepted by this JICPServer
@@ -350,16 +418,20 @@ implements PDPContextManager.Listener, JICPMediatorManager
 		private boolean loop = false;
 		private int status = INIT;
 		private boolean closeConnection = true;
+		private Object writeLock = new Object();
+		private boolean multiplexed = false;
+		private JICPPacket firstPkt;
 		
 		
 		/**
 		 * Constructor declaration
 		 * @param s
 		 */
-		public ConnectionHandler(Connection c, InetAddress addr, int port) {
+		public ConnectionHandler(Connection c, InetAddress addr, int port, JICPPacket firstPkt) {
 			this.c = c;
 			this.addr = addr;
 			this.port = port;
+			this.firstPkt = firstPkt;
 		}
 
 		/**
@@ -399,8 +471,9 @@ implements PDPContextManager.Listener, JICPMediatorManager
 			byte type = (byte) 0;
 			try {
 				do {
-					// Read the incoming JICPPacket
-					JICPPacket pkt = c.readPacket();
+					// Read the incoming JICPPacket (unless already read)
+					JICPPacket pkt = (firstPkt != null ? firstPkt : c.readPacket());
+					firstPkt = null;
 					JICPPacket reply = null;
 					status = REQUEST_READ;
 					
@@ -432,7 +505,12 @@ implements PDPContextManager.Listener, JICPMediatorManager
 						else {
 							// The recipient is my ICP.Listener (the local CommandDispatcher)
 							loop = true;
-							if (type == JICPProtocol.COMMAND_TYPE) { 
+							if (type == JICPProtocol.COMMAND_TYPE && (pkt.getInfo() & JICPProtocol.SESSION_ID_PRESENT_INFO) != 0) {
+								// Multiplexed command: more commands may be in flight on this connection
+								// --> Serve it asynchronously. The response will carry the same session-id
+								serveMultiplexedCommand(pkt);
+							}
+							else if (type == JICPProtocol.COMMAND_TYPE) { 
 								if(myLogger.isLoggable(Logger.FINEST))
 									myLogger.log(Logger.FINEST,"Passing incoming COMMAND to local listener");
 								
@@ -588,7 +666,7 @@ implements PDPContextManager.Listener, JICPMediatorManager
 					// Send the actual response data
 					if (reply != null) {
 						//reply.writeTo(out);
-						c.writePacket(reply);
+						writePacket(reply);
 					}
 					status = RESPONSE_SENT;
 				} while (loop); 
@@ -609,7 +687,7 @@ implements PDPContextManager.Listener, JICPMediatorManager
 					// to send back a generic error response
 					if (type == JICPProtocol.COMMAND_TYPE && c != null) {
 						try {
-							c.writePacket(new JICPPacket("Unexpected error", e));
+							writePacket(new JICPPacket("Unexpected error", e));
 						} 
 						catch (IOException ioe) {   
 							// Just print a warning
@@ -656,6 +734,61 @@ implements PDPContextManager.Listener, JICPMediatorManager
 					myLogger.log(Logger.FINEST,"ConnectionHandler closed ("+this+")");
 			} 
 		} 
+		
+		private void serveMultiplexedCommand(final JICPPacket pkt) {
+			if (!multiplexed) {
+				// More responses may be in flight on this connection
+				multiplexed = true;
+				try {
+					c.setNoDelay();
+				}
+				catch (IOException ioe) {
+					// Just ignore it
+				}
+			}
+			//#J2ME_EXCLUDE_BEGIN
+			getWorkers().execute(new Runnable() {
+				public void run() {
+					serveCommand(pkt);
+				}
+			});
+			//#J2ME_EXCLUDE_END
+			/*#J2ME_INCLUDE_BEGIN
+			serveCommand(pkt);
+			#J2ME_INCLUDE_END*/
+		}
+		
+		private void serveCommand(JICPPacket pkt) {
+			if(myLogger.isLoggable(Logger.FINEST))
+				myLogger.log(Logger.FINEST,"Passing incoming multiplexed COMMAND "+pkt.getSessionID()+" to local listener");
+			
+			JICPPacket reply = null;
+			try {
+				byte[] rsp = cmdListener.handleCommand(pkt.getData());
+				reply = new JICPPacket(JICPProtocol.RESPONSE_TYPE, JICPProtocol.DEFAULT_INFO, rsp);
+			}
+			catch (Exception e) {
+				if(myLogger.isLoggable(Logger.SEVERE))
+					myLogger.log(Logger.SEVERE,"Error handling incoming multiplexed command", e);
+				reply = new JICPPacket("Unexpected error", e);
+			}
+			reply.setSessionID(pkt.getSessionID());
+			try {
+				writePacket(reply);
+			}
+			catch (IOException ioe) {
+				// The reader loop will detect the broken connection
+				if(myLogger.isLoggable(Logger.FINE))
+					myLogger.log(Logger.FINE,"Communication error writing return packet to "+addr+":"+port+" ["+ioe.toString()+"]");
+			}
+		}
+		
+		private void writePacket(JICPPacket pkt) throws IOException {
+			// Responses to multiplexed commands are written by worker threads
+			synchronized (writeLock) {
+				c.writePacket(pkt);
+			}
+		}
 	} // END of inner class ConnectionHandler
 	
 	//#J2ME_EXCLUDE_BEGIN
@@ -0,0 +1,141 @@
+package jade.imtp.leap.JICP;
+
+//#J2ME_EXCLUDE_FILE
+//#APIDOC_EXCLUDE_FILE
+
+import jade.core.BenchmarkHarness;
+import jade.core.Profile;
+import jade.core.ProfileImpl;
+import jade.imtp.leap.ICP;
+import jade.mtp.TransportAddress;
+import jade.util.leap.Properties;
+import java.net.Socket;
+
+/**
+ Compare the <code>JICPServer</code> and the <code>NIOJICPServer</code>:
+ the number of threads they need to keep a given number of idle
+ connections open (as those of the peripheral containers of a large
+ platform) and the throughput of the commands they serve meanwhile
+ to an increasing number of concurrent senders.
+ Usage:
+ <code>java jade.imtp.leap.JICP.JICPServerBenchmark [-idle 500] [-threads 1,4,16] [-size 512] [-t 3] [-warmup 2]</code>
+ where
+ <ul>
+ <li><code>idle</code> is the number of idle connections</li>
+ <li><code>threads</code> is the list of sender thread counts to measure</li>
+ <li><code>size</code> is the size of commands and responses in bytes</li>
+ </ul>
+ @see jade.core.BenchmarkHarness
+ */
+public class JICPServerBenchmark {
+	private static final String IDLE = "idle";
+	private static final int DEFAULT_IDLE = 500;
+
+	private static final String THREADS = "threads";
+	private static final String DEFAULT_THREADS = "1,4,16";
+
+	private static final String SIZE = "size";
+	private static final int DEFAULT_SIZE = 512;
+
+	private static final int SERVER_PORT = 1599;
+	private static final int CLIENT_PORT = 1600;
+
+	public static void main(String[] args) throws Exception {
+		Properties pp = BenchmarkHarness.parseArguments(args);
+		int idle = BenchmarkHarness.getIntProperty(pp, IDLE, DEFAULT_IDLE);
+		String[] threads = pp.getProperty(THREADS, DEFAULT_THREADS).split(",");
+		int size = BenchmarkHarness.getIntProperty(pp, SIZE, DEFAULT_SIZE);
+		int duration = BenchmarkHarness.getDuration(pp);
+		int warmup = BenchmarkHarness.getWarmup(pp);
+
+		String[] labels = new String[]{"JICPServer", "NIOJICPServer"};
+		System.out.println("Server         Idle   Threads   Senders   Commands/s");
+		for (int j = 0; j < labels.length; ++j) {
+			int baseThreads = Thread.activeCount();
+			JICPPeer server = new JICPPeer();
+			TransportAddress ta = server.activate(new ICP.Listener() {
+				public byte[] handleCommand(byte[] cmdPayload) {
+					return cmdPayload;
+				}
+			}, null, createProfile(SERVER_PORT, j == 1));
+			JICPPeer client = new JICPPeer();
+			client.activate(null, null, createProfile(CLIENT_PORT, false));
+
+			Socket[] idleConnections = new Socket[idle];
+			for (int i = 0; i < idle; ++i) {
+				idleConnections[i] = new Socket("localhost", SERVER_PORT);
+			}
+			// Let the server accept all connections
+			Thread.sleep(1000);
+			int serverThreads = Thread.activeCount() - baseThreads;
+
+			for (int i = 0; i < threads.length; ++i) {
+				int n = Integer.parseInt(threads[i].trim());
+				run(client, ta, size, n, warmup);
+				long ops = run(client, ta, size, n, duration);
+				System.out.println(BenchmarkHarness.pad(labels[j], 15)+BenchmarkHarness.pad(String.valueOf(idle), 7)+BenchmarkHarness.pad(String.valueOf(serverThreads), 10)+BenchmarkHarness.pad(String.valueOf(n), 10)+(ops / duration));
+			}
+
+			for (int i = 0; i < idle; ++i) {
+				idleConnections[i].close();
+			}
+			client.deactivate();
+			server.deactivate();
+			// Let all threads of this round terminate
+			Thread.sleep(1000);
+		}
+	}
+
+	private static long run(final JICPPeer peer, final TransportAddress ta, final int size, int n, int duration) throws Exception {
+		final long end = System.currentTimeMillis() + duration * 1000L;
+		final long[] counters = new long[n];
+		final Throwable[] error = new Throwable[1];
+		Thread[] tt = new Thread[n];
+		for (int i = 0; i < n; ++i) {
+			final int index = i;
+			tt[i] = new Thread() {
+				public void run() {
+					try {
+						byte[] payload = new byte[size];
+						payload[0] = (byte) index;
+						long cnt = 0;
+						while (System.currentTimeMillis() < end) {
+							// Check the time every 10 operations only
+							for (int j = 0; j < 10; ++j) {
+								byte[] rsp = peer.deliverCommand(ta, payload, false);
+								if (rsp.length != size || rsp[0] != (byte) index) {
+									throw new Exception("Wrong response");
+								}
+							}
+							cnt += 10;
+						}
+						counters[index] = cnt;
+					}
+					catch (Throwable t) {
+						error[0] = t;
+					}
+				}
+			};
+			tt[i].start();
+		}
+		long total = 0;
+		for (int i = 0; i < n; ++i) {
+			tt[i].join();
+			total += counters[i];
+		}
+		if (error[0] != null) {
+			error[0].printStackTrace();
+			System.exit(1);
+		}
+		return total;
+	}
+
+	private static Profile createProfile(int port, boolean nio) {
+		ProfileImpl p = new ProfileImpl();
+		p.setParameter(JICPProtocol.LOCAL_HOST_KEY, "localhost");
+		p.setParameter(JICPProtocol.LOCAL_PORT_KEY, String.valueOf(port));
+		p.setParameter(JICPServer.ACCEPT_MEDIATORS, "false");
+		p.setParameter(JICPPeer.NIO_SERVER, String.valueOf(nio));
+		return p;
+	}
+}
@@ -0,0 +1,365 @@
+/*****************************************************************
+JADE - Java Agent DEvelopment Framework is a framework to develop 
+multi-agent systems in compliance with the FIPA specifications.
+Copyright (C) 2000 CSELT S.p.A. 
+
+GNU Lesser General Public License
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation, 
+version 2.1 of the License. 
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the
+Free Software Foundation, Inc., 59 Temple Place - Suite 330,
+Boston, MA  02111-1307, USA.
+*****************************************************************/
+
+package jade.imtp.leap.JICP;
+
+//#MIDP_EXCLUDE_FILE
+
+import jade.mtp.TransportAddress;
+import jade.util.Logger;
+import java.io.*;
+import java.net.SocketTimeoutException;
+
+/**
+ * A connection shared by all commands directed to a given destination.
+ * Each command is tagged with a request-id (carried in the session-id
+ * field of the JICP packet) and is written as soon as a slot in the
+ * in-flight window is available, without waiting for the responses
+ * to previous commands. A reader thread matches incoming responses 
+ * to pending commands by means of the request-id. 
+ * Responses without a request-id (i.e. coming from a JICPServer that
+ * does not support multiplexing and therefore serves commands one 
+ * at a time) are matched in sending order. For this reason commands are
+ * numbered when they are actually written.
+ * <br>
+ * A command whose response does not arrive within the response timeout
+ * fails and releases its slot in the window. Its request-id is not reused
+ * until the late response (if any) arrives and is discarded. If nothing
+ * at all was received since the command was written the peer is considered 
+ * unresponsive and the connection is closed.
+ * <br>
+ * Locks are always acquired in the order <code>writeLock</code>, this.
+ */
+class MultiplexedConnection {
+	/**
+	 * The maximum number of in-flight commands: request-ids must fit 
+	 * the (non-negative) session-id byte
+	 */
+	static final int MAX_WINDOW = 128;
+
+	private static Logger myLogger = Logger.getMyLogger(MultiplexedConnection.class.getName());
+
+	private Connection myConnection;
+	private TransportAddress destAddr;
+	private int window;
+	private Request[] pending;
+	private int inFlight = 0;
+	// Commands that stopped waiting for their responses
+	private int abandoned = 0;
+	private int responseTimeout;
+	private int nextId = 0;
+	private long nextSeq = 0;
+	private boolean closed = false;
+	private long lastUsage;
+	private long nUsages = 0;
+	private Object writeLock = new Object();
+
+	MultiplexedConnection(Connection c, TransportAddress ta, int window, int responseTimeout) {
+		myConnection = c;
+		destAddr = ta;
+		this.window = (window > 0 && window <= MAX_WINDOW ? window : MAX_WINDOW);
+		this.responseTimeout = responseTimeout;
+		pending = new Request[MAX_WINDOW];
+		lastUsage = System.currentTimeMillis();
+		try {
+			c.setNoDelay();
+		}
+		catch (IOException ioe) {
+			// Just ignore it
+		}
+
+		Thread reader = new Thread() {
+			public void run() {
+				readResponses();
+			}
+		};
+		reader.setDaemon(true);
+		reader.setName("JICPReader-"+ta.getHost()+":"+ta.getPort());
+		reader.start();
+	}
+
+	final TransportAddress getDestAddress() {
+		return destAddr;
+	}
+
+	/**
+	 * Send a command and wait for the matching response.
+	 * @throws IOException if the connection fails before the response
+	 * is received. 
+	 * @throws InterruptedIOException if the response is not received
+	 * within the response timeout or the calling thread is interrupted.
+	 */
+	JICPPacket request(JICPPacket pkt) throws IOException {
+		Request r = null;
+		synchronized (this) {
+			// Abandoned commands do not take a slot in the window, but still hold their request-id
+			while ((inFlight >= window || inFlight + abandoned >= MAX_WINDOW) && !closed) {
+				try {
+					wait();
+				}
+				catch (InterruptedException ie) {
+					throw new InterruptedIOException("Interrupted waiting for an in-flight slot");
+				}
+			}
+			if (closed) {
+				throw new IOException("Connection closed");
+			}
+			while (pending[nextId] != null) {
+				nextId = (nextId + 1) % MAX_WINDOW;
+			}
+			r = new Request(nextId);
+			pending[nextId] = r;
+			nextId = (nextId + 1) % MAX_WINDOW;
+			inFlight++;
+		}
+
+		pkt.setSessionID((byte) r.id);
+		try {
+			synchronized (writeLock) {
+				// The write order must be the seq order 
+				synchronized (this) {
+					r.seq = nextSeq++;
+					r.writeTime = System.currentTimeMillis();
+				}
+				myConnection.writePacket(pkt);
+			}
+		}
+		catch (IOException ioe) {
+			close(ioe);
+		}
+		try {
+			return r.waitForResponse(responseTimeout);
+		}
+		catch (InterruptedIOException iioe) {
+			abandon(r, iioe);
+			throw iioe;
+		}
+	}
+
+	/**
+	 * Release the slot of a command that stopped waiting for its response.
+	 * If nothing was received since the command was written because of a
+	 * timeout, close the connection.
+	 */
+	private void abandon(Request r, InterruptedIOException cause) {
+		boolean silent = false;
+		synchronized (this) {
+			if (pending[r.id] != r || r.abandoned) {
+				// Completed or failed in the meanwhile
+				return;
+			}
+			r.abandoned = true;
+			inFlight--;
+			abandoned++;
+			silent = (cause instanceof SocketTimeoutException) && lastUsage < r.writeTime;
+			notifyAll();
+		}
+		if (silent) {
+			myLogger.log(Logger.WARNING, "No response from "+destAddr.getHost()+":"+destAddr.getPort()+" in "+responseTimeout+" ms. Closing multiplexed connection");
+			close(new IOException("No response from "+destAddr.getHost()+":"+destAddr.getPort()));
+		}
+	}
+
+	/**
+	 * @return true if at least one response was received on this
+	 * connection, i.e. a failure may be due to the peer having closed
+	 * a connection that it considered idle.
+	 */
+	synchronized boolean isReused() {
+		return nUsages > 0;
+	}
+
+	synchronized boolean isClosed() {
+		return closed;
+	}
+
+	synchronized int getInFlight() {
+		return inFlight;
+	}
+
+	/**
+	 * Close this connection if it is idle.
+	 * @return true if the connection was closed
+	 */
+	boolean closeIfIdle() {
+		synchronized (this) {
+			if (closed || inFlight > 0) {
+				return false;
+			}
+			closed = true;
+		}
+		closeConnection();
+		return true;
+	}
+
+	synchronized boolean isExpired(long currentTime) {
+		return inFlight == 0 && (currentTime - lastUsage) > 120000;
+	}
+
+	/**
+	 * Close the connection and make all pending commands fail
+	 */
+	void close(IOException cause) {
+		Request[] rr = null;
+		synchronized (this) {
+			if (!closed || inFlight > 0) {
+				closed = true;
+				rr = new Request[inFlight + abandoned];
+				int k = 0;
+				for (int i = 0; i < MAX_WINDOW; ++i) {
+					if (pending[i] != null) {
+						rr[k++] = pending[i];
+						pending[i] = null;
+					}
+				}
+				inFlight = 0;
+				abandoned = 0;
+				notifyAll();
+			}
+		}
+		closeConnection();
+		if (rr != null) {
+			for (int i = 0; i < rr.length; ++i) {
+				rr[i].fail(cause);
+			}
+		}
+	}
+
+	private void closeConnection() {
+		try {
+			myConnection.close();
+		}
+		catch (Exception e) {
+			// Just ignore it
+		}
+	}
+
+	private void readResponses() {
+		try {
+			while (true) {
+				JICPPacket rsp = myConnection.readPacket();
+				Request r = null;
+				synchronized (this) {
+					if ((rsp.getInfo() & JICPProtocol.SESSION_ID_PRESENT_INFO) != 0) {
+						if (rsp.getSessionID() >= 0) {
+							r = pending[rsp.getSessionID()];
+						}
+					}
+					else {
+						// The server does not support multiplexing --> It served the oldest command written.
+						// Commands not written yet have the maximum seq
+						for (int i = 0; i < MAX_WINDOW; ++i) {
+							if (pending[i] != null && (r == null || pending[i].seq < r.seq)) {
+								r = pending[i];
+							}
+						}
+					}
+					if (r == null) {
+						throw new IOException("Unexpected response "+rsp.getSessionID()+" from "+destAddr.getHost()+":"+destAddr.getPort());
+					}
+					pending[r.id] = null;
+					if (r.abandoned) {
+						// Late response: just discard it
+						abandoned--;
+					}
+					else {
+						inFlight--;
+					}
+					nUsages++;
+					lastUsage = System.currentTimeMillis();
+					if ((rsp.getInfo() & JICPProtocol.TERMINATED_INFO) != 0) {
+						// The server is going to close the connection --> Don't send more commands
+						closed = true;
+					}
+					notifyAll();
+				}
+				r.complete(rsp);
+			}
+		}
+		catch (IOException ioe) {
+			if (myLogger.isLoggable(Logger.FINE)) {
+				myLogger.log(Logger.FINE, "Multiplexed connection to "+destAddr.getHost()+":"+destAddr.getPort()+" closed. "+ioe);
+			}
+			close(ioe);
+		}
+	}
+
+	public String toString() {
+		return "[MC: inFlight="+inFlight+", nUsages="+nUsages+", lastUsage="+lastUsage+"]";
+	}
+
+
+	/**
+	 * Inner class Request.
+	 * A command waiting for its response
+	 */
+	private static class Request {
+		private int id;
+		// Guarded by the enclosing MultiplexedConnection
+		private long seq = Long.MAX_VALUE;
+		private long writeTime;
+		private boolean abandoned = false;
+		private JICPPacket response;
+		private IOException failure;
+
+		private Request(int id) {
+			this.id = id;
+		}
+
+		private synchronized void complete(JICPPacket rsp) {
+			response = rsp;
+			notifyAll();
+		}
+
+		private synchronized void fail(IOException cause) {
+			failure = cause;
+			notifyAll();
+		}
+
+		/**
+		 * @param timeout the maximum time to wait in ms (0 means forever)
+		 */
+		private synchronized JICPPacket waitForResponse(long timeout) throws IOException {
+			long deadline = System.currentTimeMillis() + timeout;
+			while (response == null && failure == null) {
+				long toWait = 0;
+				if (timeout > 0) {
+					toWait = deadline - System.currentTimeMillis();
+					if (toWait <= 0) {
+						throw new SocketTimeoutException("No response received in "+timeout+" ms");
+					}
+				}
+				try {
+					wait(toWait);
+				}
+				catch (InterruptedException ie) {
+					throw new InterruptedIOException("Interrupted waiting for response");
+				}
+			}
+			if (response != null) {
+				return response;
+			}
+			throw failure;
+		}
+	}
+}
@@ -0,0 +1,171 @@
+package jade.imtp.leap.JICP;
+
+//#J2ME_EXCLUDE_FILE
+//#APIDOC_EXCLUDE_FILE
+
+import jade.core.BenchmarkHarness;
+import jade.core.Profile;
+import jade.core.ProfileImpl;
+import jade.imtp.leap.ICP;
+import jade.mtp.TransportAddress;
+import jade.util.leap.Properties;
+import java.io.IOException;
+import java.net.Socket;
+
+/**
+ Measure the throughput and the number of connections opened when an
+ increasing number of threads concurrently send commands to the same
+ destination through a <code>JICPPeer</code>, with and without command
+ multiplexing. The destination serves each command in a given time,
+ as a remote container executing a horizontal command would do.
+ Usage:
+ <code>java jade.imtp.leap.JICP.MultiplexingBenchmark [-threads 1,4,16,64] [-size 512] [-delay 1] [-connections 2] [-window 16] [-t 3] [-warmup 2]</code>
+ where
+ <ul>
+ <li><code>threads</code> is the list of thread counts to measure</li>
+ <li><code>size</code> is the size of commands and responses in bytes</li>
+ <li><code>delay</code> is the time the destination takes to serve a command in milliseconds</li>
+ <li><code>connections</code> is the maximum number of multiplexed connections towards the destination</li>
+ <li><code>window</code> is the maximum number of in-flight commands on each multiplexed connection</li>
+ </ul>
+ @see jade.core.BenchmarkHarness
+ */
+public class MultiplexingBenchmark {
+	private static final String THREADS = "threads";
+	private static final String DEFAULT_THREADS = "1,4,16,64";
+
+	private static final String SIZE = "size";
+	private static final int DEFAULT_SIZE = 512;
+
+	private static final String DELAY = "delay";
+	private static final int DEFAULT_DELAY = 1;
+
+	private static final String CONNECTIONS = "connections";
+	private static final int DEFAULT_CONNECTIONS = 2;
+
+	private static final String WINDOW = "window";
+	private static final int DEFAULT_WINDOW = 16;
+
+	private static final int SERVER_PORT = 1499;
+	private static final int CLIENT_PORT = 1500;
+
+	public static void main(String[] args) throws Exception {
+		Properties pp = BenchmarkHarness.parseArguments(args);
+		String[] threads = pp.getProperty(THREADS, DEFAULT_THREADS).split(",");
+		int size = BenchmarkHarness.getIntProperty(pp, SIZE, DEFAULT_SIZE);
+		final int delay = BenchmarkHarness.getIntProperty(pp, DELAY, DEFAULT_DELAY);
+		int connections = BenchmarkHarness.getIntProperty(pp, CONNECTIONS, DEFAULT_CONNECTIONS);
+		int window = BenchmarkHarness.getIntProperty(pp, WINDOW, DEFAULT_WINDOW);
+		int duration = BenchmarkHarness.getDuration(pp);
+		int warmup = BenchmarkHarness.getWarmup(pp);
+
+		// The destination: echo each command after the given delay
+		CountingPeer server = new CountingPeer();
+		TransportAddress ta = server.activate(new ICP.Listener() {
+			public byte[] handleCommand(byte[] cmdPayload) {
+				try {
+					Thread.sleep(delay);
+				}
+				catch (InterruptedException ie) {
+				}
+				return cmdPayload;
+			}
+		}, null, createProfile(SERVER_PORT, 0, window));
+
+		String[] labels = new String[]{"classic", "multiplexed"};
+		System.out.println("Threads    Mode         Commands/s  Connections");
+		for (int i = 0; i < threads.length; ++i) {
+			int n = Integer.parseInt(threads[i].trim());
+			for (int j = 0; j < labels.length; ++j) {
+				CountingPeer client = new CountingPeer();
+				client.activate(null, null, createProfile(CLIENT_PORT, (j == 0 ? 0 : connections), window));
+				try {
+					run(client, ta, size, n, warmup);
+					long ops = run(client, ta, size, n, duration);
+					System.out.println(BenchmarkHarness.pad(String.valueOf(n), 11)+BenchmarkHarness.pad(labels[j], 13)+BenchmarkHarness.pad(String.valueOf(ops / duration), 12)+client.getConnectionsCnt());
+				}
+				finally {
+					client.deactivate();
+				}
+			}
+		}
+		server.deactivate();
+	}
+
+	private static long run(final JICPPeer peer, final TransportAddress ta, final int size, int n, int duration) throws Exception {
+		final long end = System.currentTimeMillis() + duration * 1000L;
+		final long[] counters = new long[n];
+		final Throwable[] error = new Throwable[1];
+		Thread[] tt = new Thread[n];
+		for (int i = 0; i < n; ++i) {
+			final int index = i;
+			tt[i] = new Thread() {
+				public void run() {
+					try {
+						byte[] payload = new byte[size];
+						payload[0] = (byte) index;
+						long cnt = 0;
+						while (System.currentTimeMillis() < end) {
+							byte[] rsp = peer.deliverCommand(ta, payload, false);
+							if (rsp.length != size || rsp[0] != (byte) index) {
+								throw new Exception("Wrong response");
+							}
+							cnt++;
+						}
+						counters[index] = cnt;
+					}
+					catch (Throwable t) {
+						error[0] = t;
+					}
+				}
+			};
+			tt[i].start();
+		}
+		long total = 0;
+		for (int i = 0; i < n; ++i) {
+			tt[i].join();
+			total += counters[i];
+		}
+		if (error[0] != null) {
+			error[0].printStackTrace();
+			System.exit(1);
+		}
+		return total;
+	}
+
+	private static Profile createProfile(int port, int connections, int window) {
+		ProfileImpl p = new ProfileImpl();
+		p.setParameter(JICPProtocol.LOCAL_HOST_KEY, "localhost");
+		p.setParameter(JICPProtocol.LOCAL_PORT_KEY, String.valueOf(port));
+		p.setParameter(JICPServer.ACCEPT_MEDIATORS, "false");
+		p.setParameter(JICPPeer.MULTIPLEXED_CONNECTIONS, String.valueOf(connections));
+		p.setParameter(JICPPeer.MULTIPLEXING_WINDOW, String.valueOf(window));
+		return p;
+	}
+
+	/**
+	 A JICPPeer counting the outgoing connections it opens
+	 */
+	private static class CountingPeer extends JICPPeer {
+		private int connectionsCnt = 0;
+
+		public ConnectionFactory getConnectionFactory() {
+			final ConnectionFactory f = super.getConnectionFactory();
+			return new ConnectionFactory() {
+				public Connection createConnection(Socket s) {
+					return f.createConnection(s);
+				}
+				public Connection createConnection(TransportAddress ta) throws IOException {
+					synchronized (CountingPeer.this) {
+						connectionsCnt++;
+					}
+					return f.createConnection(ta);
+				}
+			};
+		}
+
+		private synchronized int getConnectionsCnt() {
+			return connectionsCnt;
+		}
+	}
+}
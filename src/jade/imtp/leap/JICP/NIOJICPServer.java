@@ -0,0 +1,494 @@
+/*****************************************************************
+JADE - Java Agent DEvelopment Framework is a framework to develop 
+multi-agent systems in compliance with the FIPA specifications.
+Copyright (C) 2000 CSELT S.p.A. 
+
+GNU Lesser General Public License
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation, 
+version 2.1 of the License. 
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the
+Free Software Foundation, Inc., 59 Temple Place - Suite 330,
+Boston, MA  02111-1307, USA.
+*****************************************************************/
+
+package jade.imtp.leap.JICP;
+
+//#J2ME_EXCLUDE_FILE
+
+import jade.core.Profile;
+import jade.imtp.leap.ICP;
+import jade.imtp.leap.ICPException;
+import jade.util.Logger;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A <code>JICPServer</code> that waits for I/O events on all its 
+ * connections by means of a single thread and a <code>Selector</code>
+ * instead of dedicating a thread to each connection. Incoming commands
+ * are executed by a bounded pool of worker threads, so that idle 
+ * connections (e.g. those from the peripheral containers of a large 
+ * platform) do not hold any thread.
+ * Connections carrying other packets (mediator creation and connection
+ * requests, packets directed to mediators) are switched back to blocking 
+ * mode and passed to a regular connection handler, since mediators 
+ * take over the connection of their front-end.
+ * <br>
+ * The <code>JICPPeer</code> uses this server when the 
+ * <code>jade_imtp_leap_JICP_JICPPeer_nioserver</code> option is set to 
+ * <code>true</code>. The <code>jade_imtp_leap_JICP_NIOJICPServer_poolsize</code>
+ * option specifies the maximum number of worker threads.
+ */
+public class NIOJICPServer extends JICPServer {
+	public static final String POOL_SIZE = "jade_imtp_leap_JICP_NIOJICPServer_poolsize";
+
+	private static final int INITIAL_BUFFER_SIZE = 1024;
+
+	private ServerSocketChannel mySSChannel;
+	private Selector mySelector;
+	private ThreadPoolExecutor workers;
+	private ICP.Listener cmdListener;
+	private ConnectionFactory connFactory;
+	private volatile boolean active = true;
+	// Channels to be passed to regular connection handlers. Only accessed by the selector thread 
+	private List detachedChannels = new ArrayList();
+
+	private Logger myLogger = Logger.getMyLogger(getClass().getName());
+
+	/**
+	 * Constructor declaration
+	 */
+	public NIOJICPServer(Profile p, JICPPeer myPeer, ICP.Listener l, ConnectionFactory f, int max) throws ICPException {
+		super(p, myPeer, l, f, max);
+		cmdListener = l;
+		connFactory = f;
+		setName("NIOJICPServer-" + getLocalPort());
+
+		int poolSize = max;
+		try {
+			poolSize = Integer.parseInt(p.getParameter(POOL_SIZE, null));
+		}
+		catch (Exception e) {
+			// Keep default
+		}
+		workers = new ThreadPoolExecutor(poolSize, poolSize, 60, TimeUnit.SECONDS, new LinkedBlockingQueue(), new ThreadFactory() {
+			private int cnt = 0;
+			public synchronized Thread newThread(Runnable r) {
+				Thread t = new Thread(r, getName() + "-worker-" + (cnt++));
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		workers.allowCoreThreadTimeOut(true);
+
+		try {
+			mySSChannel = getServerSocket().getChannel();
+			mySSChannel.configureBlocking(false);
+			mySelector = Selector.open();
+			mySSChannel.register(mySelector, SelectionKey.OP_ACCEPT);
+		}
+		catch (IOException ioe) {
+			throw new ICPException("Cannot register server socket channel for asynchronous IO. ", ioe);
+		}
+	}
+
+	ServerSocket createServerSocket(JICPPeer myPeer, String host, int port, boolean changePortIfBusy) throws ICPException {
+		try {
+			InetAddress addr = (host != null ? InetAddress.getByName(host) : null);
+			ServerSocketChannel ssc = ServerSocketChannel.open();
+			try {
+				ssc.socket().bind(new InetSocketAddress(addr, port), 50);
+			}
+			catch (SocketException be) {
+				// As in JICPPeer.getServerSocket() we can't rely on a BindException only
+				ssc.close();
+				if (changePortIfBusy) {
+					// The specified port is busy. Let the system find a free one
+					ssc = ServerSocketChannel.open();
+					ssc.socket().bind(new InetSocketAddress(addr, 0), 50);
+				}
+				else {
+					throw new ICPException("Cannot bind server socket to "+(host != null ? "host "+host : "localhost")+ " port " + port);
+				}
+			}
+			return ssc.socket();
+		}
+		catch (IOException ioe) {
+			throw new ICPException("Cannot create server socket. ", ioe);
+		}
+	}
+
+	/**
+	 Shut down this server
+	 */
+	public synchronized void shutdown() {
+		if(myLogger.isLoggable(Logger.FINE))
+			myLogger.log(Logger.FINE,"Shutting down NIOJICPServer...");
+
+		active = false;
+		mySelector.wakeup();
+		try {
+			// Wait for the selector thread to complete
+			this.join();
+		}
+		catch (InterruptedException ie) {
+			ie.printStackTrace();
+		}
+	}
+
+	/**
+	 * NIOJICPServer thread entry point. Accept incoming connections 
+	 * and read incoming packets from all of them.
+	 */
+	public void run() {
+		while (active) {
+			try {
+				mySelector.select();
+				processSelectedKeys();
+				while (!detachedChannels.isEmpty()) {
+					// Let the selector deregister the cancelled keys so that the 
+					// detached channels can be switched to blocking mode. This 
+					// may select more keys that must be processed at once.
+					mySelector.selectNow();
+					detachChannels();
+					processSelectedKeys();
+				}
+			}
+			catch (Exception e) {
+				if (active) {
+					if(myLogger.isLoggable(Logger.WARNING))
+						myLogger.log(Logger.WARNING,"Error selecting next IO event", e);
+					
+					// Stop listening
+					active = false;
+				}
+			}
+		}
+
+		if(myLogger.isLoggable(Logger.FINE))
+			myLogger.log(Logger.FINE,"NIOJICPServer terminated");
+
+		// Close all connections and release the server socket
+		Iterator it = new ArrayList(mySelector.keys()).iterator();
+		while (it.hasNext()) {
+			ChannelHandler h = (ChannelHandler) ((SelectionKey) it.next()).attachment();
+			if (h != null) {
+				h.close();
+			}
+		}
+		try {
+			mySSChannel.close();
+			mySelector.close();
+		}
+		catch (IOException io) {
+			if(myLogger.isLoggable(Logger.WARNING))
+				myLogger.log(Logger.WARNING,"I/O error closing the server socket");
+			io.printStackTrace();
+		}
+		workers.shutdown();
+
+		closeConnectionHandlersAndMediators();
+	}
+
+	private void processSelectedKeys() {
+		Iterator it = mySelector.selectedKeys().iterator();
+		while (it.hasNext()) {
+			SelectionKey key = (SelectionKey) it.next();
+			it.remove();
+			if (key.isValid()) {
+				if (key.isAcceptable()) {
+					handleAccept();
+				}
+				else if (key.isReadable()) {
+					((ChannelHandler) key.attachment()).read();
+				}
+			}
+		}
+	}
+
+	private void handleAccept() {
+		try {
+			SocketChannel sc = mySSChannel.accept();
+			if (sc != null) {
+				if(myLogger.isLoggable(Logger.FINEST))
+					myLogger.log(Logger.FINEST,"Incoming connection from "+sc.socket().getInetAddress()+":"+sc.socket().getPort());
+				
+				sc.configureBlocking(false);
+				// Responses are written as soon as they are ready and may be pipelined
+				sc.socket().setTcpNoDelay(true);
+				ChannelHandler h = new ChannelHandler(sc);
+				h.key = sc.register(mySelector, SelectionKey.OP_READ, h);
+			}
+		}
+		catch (IOException ioe) {
+			if(myLogger.isLoggable(Logger.WARNING))
+				myLogger.log(Logger.WARNING,"Problems accepting a new connection. "+ioe);
+		}
+	}
+
+	private void detachChannels() {
+		for (int i = 0; i < detachedChannels.size(); ++i) {
+			((ChannelHandler) detachedChannels.get(i)).detach();
+		}
+		detachedChannels.clear();
+	}
+
+	/**
+	 * @return The length of the JICP packet at the current position of
+	 * a buffer or -1 if the header of the packet is not complete yet.
+	 */
+	static int getPacketLength(ByteBuffer b) throws IOException {
+		int p = b.position();
+		int r = b.remaining();
+		if (r < 2) {
+			return -1;
+		}
+		byte info = b.get(p + 1);
+		int length = 2;
+		if ((info & JICPProtocol.SESSION_ID_PRESENT_INFO) != 0) {
+			length++;
+		}
+		if ((info & JICPProtocol.RECIPIENT_ID_PRESENT_INFO) != 0) {
+			if (r < length + 1) {
+				return -1;
+			}
+			length += 1 + (b.get(p + length) & 0x000000ff);
+		}
+		if ((info & JICPProtocol.DATA_PRESENT_INFO) != 0) {
+			if (r < length + 4) {
+				return -1;
+			}
+			int i = p + length;
+			int size = (b.get(i) & 0x000000ff) | ((b.get(i+1) << 8) & 0x0000ff00) | ((b.get(i+2) << 16) & 0x00ff0000) | ((b.get(i+3) << 24) & 0xff000000);
+			if (size < 0 || size > JICPPacket.MAX_SIZE) {
+				throw new IOException("Packet size greater than maximum allowed size. " + size);
+			}
+			length += 4 + size;
+		}
+		return length;
+	}
+
+
+	/**
+	 Inner class ChannelHandler.
+	 Handle a connection accepted by this NIOJICPServer
+	 */
+	private class ChannelHandler {
+		private SocketChannel sc;
+		private SelectionKey key;
+		private InetAddress addr;
+		private int port;
+		private ByteBuffer in = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+		private JICPPacket detachedPkt;
+		private volatile boolean closed = false;
+
+		// Buffers reused to write all responses. Guarded by the ChannelHandler lock
+		private byte[] header = new byte[JICPPacket.MAX_HEADER_SIZE];
+		private ByteBuffer headerBuf = ByteBuffer.wrap(header);
+		private volatile Selector writeSelector;
+
+		private ChannelHandler(SocketChannel sc) {
+			this.sc = sc;
+			addr = sc.socket().getInetAddress();
+			port = sc.socket().getPort();
+		}
+
+		/**
+		 Read the available data and serve all the packets completed by them.
+		 This is executed by the selector thread.
+		 */
+		private void read() {
+			try {
+				if (sc.read(in) == -1) {
+					throw new EOFException("Channel closed");
+				}
+				in.flip();
+				int length;
+				while ((length = getPacketLength(in)) >= 0 && length <= in.remaining()) {
+					JICPPacket pkt = JICPPacket.readFrom(new ByteArrayInputStream(in.array(), in.arrayOffset() + in.position(), length));
+					in.position(in.position() + length);
+					if (!serve(pkt)) {
+						// The connection has been detached
+						if (in.hasRemaining()) {
+							if(myLogger.isLoggable(Logger.WARNING))
+								myLogger.log(Logger.WARNING,"Discarding "+in.remaining()+" bytes received from "+addr+":"+port+" after a packet of type "+pkt.getType());
+						}
+						return;
+					}
+				}
+				in.compact();
+				if (length > in.capacity()) {
+					// The packet being received does not fit the buffer --> Enlarge it
+					ByteBuffer b = ByteBuffer.allocate(length);
+					in.flip();
+					b.put(in);
+					in = b;
+				}
+				else if (in.position() == 0 && in.capacity() > INITIAL_BUFFER_SIZE) {
+					// Don't keep a large buffer for a possibly idle connection
+					in = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+				}
+			}
+			catch (IOException ioe) {
+				if(myLogger.isLoggable(Logger.FINE))
+					myLogger.log(Logger.FINE,"Connection with "+addr+":"+port+" closed. "+ioe);
+				close();
+			}
+		}
+
+		/**
+		 @return false if the connection was detached to serve the packet
+		 */
+		private boolean serve(final JICPPacket pkt) {
+			if (pkt.getType() == JICPProtocol.COMMAND_TYPE && pkt.getRecipientID() == null) {
+				// A command for the local listener
+				workers.execute(new Runnable() {
+					public void run() {
+						serveCommand(pkt);
+					}
+				});
+				return true;
+			}
+			else {
+				// Let a regular ConnectionHandler serve the packet as it may
+				// require passing the connection to a mediator
+				key.cancel();
+				detachedPkt = pkt;
+				detachedChannels.add(this);
+				return false;
+			}
+		}
+
+		/**
+		 Serve a command and send back the response.
+		 This is executed by one of the worker threads.
+		 */
+		private void serveCommand(JICPPacket pkt) {
+			if(myLogger.isLoggable(Logger.FINEST))
+				myLogger.log(Logger.FINEST,"Passing incoming COMMAND to local listener");
+
+			JICPPacket reply = null;
+			try {
+				byte[] rsp = cmdListener.handleCommand(pkt.getData());
+				reply = new JICPPacket(JICPProtocol.RESPONSE_TYPE, JICPProtocol.DEFAULT_INFO, rsp);
+			}
+			catch (Exception e) {
+				if(myLogger.isLoggable(Logger.SEVERE))
+					myLogger.log(Logger.SEVERE,"Error handling incoming command", e);
+				reply = new JICPPacket("Unexpected error", e);
+			}
+			// Responses to multiplexed commands carry the session-id of the command
+			reply.setSessionID(pkt.getSessionID());
+			try {
+				write(reply);
+				if ((pkt.getInfo() & JICPProtocol.TERMINATED_INFO) != 0) {
+					close();
+				}
+			}
+			catch (IOException ioe) {
+				if(myLogger.isLoggable(Logger.FINE))
+					myLogger.log(Logger.FINE,"Communication error writing return packet to "+addr+":"+port+" ["+ioe.toString()+"]");
+				close();
+			}
+		}
+
+		/**
+		 Write a packet by means of a gathering write. If the socket 
+		 send buffer is full, wait until the channel is writable again.
+		 */
+		private synchronized void write(JICPPacket pkt) throws IOException {
+			int headerLength = pkt.writeHeader(header);
+			headerBuf.clear();
+			headerBuf.limit(headerLength);
+			byte[] data = pkt.getData();
+			ByteBuffer[] bbs = (data != null && data.length > 0 ? new ByteBuffer[]{headerBuf, ByteBuffer.wrap(data)} : new ByteBuffer[]{headerBuf});
+			long remaining = headerLength + (data != null ? data.length : 0);
+			while (remaining > 0) {
+				long n = sc.write(bbs);
+				remaining -= n;
+				if (remaining > 0 && n == 0) {
+					waitWritable();
+				}
+			}
+		}
+
+		private void waitWritable() throws IOException {
+			if (closed) {
+				throw new IOException("Connection closed");
+			}
+			try {
+				if (writeSelector == null) {
+					writeSelector = Selector.open();
+					sc.register(writeSelector, SelectionKey.OP_WRITE);
+				}
+				writeSelector.select();
+				writeSelector.selectedKeys().clear();
+			}
+			catch (ClosedSelectorException cse) {
+				throw new IOException("Connection closed");
+			}
+		}
+
+		/**
+		 Switch the connection to blocking mode and pass it to a regular
+		 ConnectionHandler. This is executed by the selector thread once
+		 the key of the channel has been deregistered.
+		 */
+		private void detach() {
+			try {
+				sc.configureBlocking(true);
+				Connection c = connFactory.createConnection(sc.socket());
+				startConnectionHandler(c, addr, port, detachedPkt);
+			}
+			catch (IOException ioe) {
+				if(myLogger.isLoggable(Logger.WARNING))
+					myLogger.log(Logger.WARNING,"Cannot pass connection with "+addr+":"+port+" to a connection handler. "+ioe);
+				close();
+			}
+		}
+
+		private void close() {
+			closed = true;
+			if (key != null) {
+				key.cancel();
+			}
+			try {
+				sc.close();
+			}
+			catch (IOException ioe) {
+				// Just ignore it
+			}
+			Selector s = writeSelector;
+			if (s != null) {
+				try {
+					s.close();
+				}
+				catch (IOException ioe) {
+					// Just ignore it
+				}
+			}
+		}
+	} // END of inner class ChannelHandler
+}
@@ -70,5 +70,12 @@ public class HTTPPeer extends JICPPeer {
 			}
     };
   }  
+  
+  /**
+     HTTP connections can't be served by the NIOJICPServer
+   */
+  protected boolean isNIOServerSupported() {
+    return false;
+  }
 }
 
@@ -6,7 +6,6 @@ import jade.imtp.leap.JICP.*;
 
 import java.io.IOException;
 import java.io.EOFException;
-import java.io.ByteArrayOutputStream;
 import java.nio.*;
 import java.nio.channels.*;
 import java.util.LinkedList;
@@ -20,7 +19,7 @@ import java.util.logging.Logger;
  */
 public class NIOJICPConnection extends Connection {
 	// type+info+session+recipient-length+recipient(255)+payload-length(4)
-	public static final int MAX_HEADER_SIZE = 263;
+	public static final int MAX_HEADER_SIZE = JICPPacket.MAX_HEADER_SIZE;
 	// TODO 5k, why? configurable?
 	public static final int INITIAL_BUFFER_SIZE = 5120;
 	// TODO 5k, why? configurable?
@@ -28,6 +27,10 @@ public class NIOJICPConnection extends Connection {
 	private SocketChannel myChannel;
 	private ByteBuffer socketData = ByteBuffer.allocateDirect(INITIAL_BUFFER_SIZE);
 	private ByteBuffer payloadBuf = ByteBuffer.allocateDirect(INITIAL_BUFFER_SIZE);
+	// Buffers reused to write all packets
+	private byte[] headerBytes = new byte[MAX_HEADER_SIZE];
+	private ByteBuffer headerBuf = ByteBuffer.wrap(headerBytes);
+	private ByteBuffer writeBuf = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
 
 	private byte type;
 	private byte info;
@@ -221,14 +224,41 @@ public class NIOJICPConnection extends Connection {
 	 * @return number of application bytes written to the socket
 	 */
 	public final synchronized int writePacket(JICPPacket pkt) throws IOException {
-		ByteArrayOutputStream os = new ByteArrayOutputStream();
-		int n = pkt.writeTo(os);
+		int headerLength = pkt.writeHeader(headerBytes);
+		byte[] data = pkt.getData();
+		int payloadLength = (data != null ? data.length : 0);
+		int n = headerLength + payloadLength;
 		if (log.isLoggable(Level.FINE)) {
 			log.fine("writePacket: number of bytes before preprocessing: " + n);
 		}
-		ByteBuffer toSend = ByteBuffer.wrap(os.toByteArray());
+		headerBuf.clear();
+		headerBuf.limit(headerLength);
+		if (transformers.size() == 0) {
+			// Write header and payload by means of a gathering write without copying them
+			ByteBuffer[] bbs = (payloadLength > 0 ? new ByteBuffer[]{headerBuf, ByteBuffer.wrap(data)} : new ByteBuffer[]{headerBuf});
+			long m = myChannel.write(bbs);
+			if (log.isLoggable(Level.FINE)) {
+				log.fine("writePacket: bytes written " + m + ", needed to write: " + n);
+			}
+			if (m != n) {
+				throw new IOException("writePacket: bytes written " + m + ", needed to write: " + n);
+			}
+			return n;
+		}
+
+		// Transformers need the whole packet in a single buffer: reuse the same buffer for all packets
+		if (writeBuf.capacity() < n) {
+			writeBuf = ByteBuffer.allocate(Math.max(n, writeBuf.capacity() + INCREASE_STEP));
+		}
+		writeBuf.clear();
+		writeBuf.put(headerBuf);
+		if (payloadLength > 0) {
+			writeBuf.put(data);
+		}
+		writeBuf.flip();
+		ByteBuffer toSend = writeBuf;
 		ByteBuffer bb = transformBeforeWrite(toSend);
-		if (toSend.hasRemaining() && transformers.size() > 0) {
+		if (toSend.hasRemaining()) {
 			// for direct JICPConnections the data from the packet are used directly
 			// for subclasses the subsequent transformers must transform all data from the packet before sending
 			throw new IOException("still need to transform: " + toSend.remaining());
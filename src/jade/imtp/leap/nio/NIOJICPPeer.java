@@ -35,6 +35,11 @@ public class NIOJICPPeer extends JICPPeer {
         };
     }
 
-
-
+    /**
+     * NIOJICPConnections are used by the BEManagementService only and 
+     * can't be served by the NIOJICPServer
+     */
+    protected boolean isNIOServerSupported() {
+        return false;
+    }
 }
@@ -277,6 +277,11 @@ public class ACLMessage implements Serializable {
 	private Properties userDefProps = null; 
 	//#CUSTOM_EXCLUDE_BEGIN
 	private Envelope messageEnvelope;
+	
+	//#J2ME_EXCLUDE_BEGIN
+	// The encoded form of the slots that have not been decoded yet (see LEAPACLCodec.decodeLazily())
+	private transient volatile LEAPACLSerializer.LazySlots lazySlots;
+	//#J2ME_EXCLUDE_END
 	//#CUSTOM_EXCLUDE_END
 	
 	/**
@@ -327,6 +332,7 @@ public class ACLMessage implements Serializable {
 	 @param r The value to add to the slot value set.
 	 */
 	public void addReceiver(AID r) {
+		materialize();
 		if(r != null) {
 			//#MIDP_EXCLUDE_BEGIN
 			dests.add(r);
@@ -345,6 +351,7 @@ public class ACLMessage implements Serializable {
 	 @return true if the AID has been found and removed, false otherwise
 	 */
 	public boolean removeReceiver(AID r) {
+		materialize();
 		if (r != null) {
 			//#MIDP_EXCLUDE_BEGIN
 			return dests.remove(r);
@@ -364,6 +371,7 @@ public class ACLMessage implements Serializable {
 	 value.</em> 
 	 */
 	public void clearAllReceiver() {
+		materialize();
 		//#MIDP_EXCLUDE_BEGIN
 		dests.clear();
 		//#MIDP_EXCLUDE_END
@@ -380,6 +388,7 @@ public class ACLMessage implements Serializable {
 	 @param dest The value to add to the slot value set.
 	 */
 	public void addReplyTo(AID dest) {
+		materialize();
 		if (dest != null) { 
 			//#MIDP_EXCLUDE_BEGIN
 			reply_to = (reply_to == null ? new ArrayList(REPLYTO_EXPECTED_SIZE) : reply_to);
@@ -400,6 +409,7 @@ public class ACLMessage implements Serializable {
 	 @return true if the AID has been found and removed, false otherwise
 	 */
 	public boolean removeReplyTo(AID dest) {
+		materialize();
 		if ((dest != null) && (reply_to != null) ) {
 			//#MIDP_EXCLUDE_BEGIN
 			return reply_to.remove(dest);
@@ -419,6 +429,7 @@ public class ACLMessage implements Serializable {
 	 value.</em> 
 	 */
 	public void clearAllReplyTo() {
+		materialize();
 		if (reply_to != null) {
 			//#MIDP_EXCLUDE_BEGIN
 			reply_to.clear();
@@ -455,6 +466,7 @@ public class ACLMessage implements Serializable {
 	 * @see jade.lang.acl.ACLMessage#setContentObject(Serializable s)
 	 */
 	public void setContent(String content) {
+		materialize();
 		byteSequenceContent = null; 
 		if (content != null) {
 			this.content = new StringBuffer(content);
@@ -480,6 +492,7 @@ public class ACLMessage implements Serializable {
 	 * @see jade.lang.acl.ACLMessage#setContentObject(Serializable s)
 	 */
 	public void setByteSequenceContent(byte[] byteSequenceContent) {
+		materialize();
 		content = null; 
 		this.byteSequenceContent = byteSequenceContent;
 	}
@@ -557,6 +570,7 @@ public class ACLMessage implements Serializable {
 	 @see jade.lang.acl.ACLMessage#getReplyWith()
 	 */
 	public void setReplyWith(String reply) {
+		materialize();
 		reply_with = reply; 
 	}
 	
@@ -577,6 +591,7 @@ public class ACLMessage implements Serializable {
 	 @see jade.lang.acl.ACLMessage#getEncoding()
 	 */
 	public void setEncoding(String str) {
+		materialize();
 		encoding = str;
 	}
 	
@@ -587,6 +602,7 @@ public class ACLMessage implements Serializable {
 	 @see jade.lang.acl.ACLMessage#getLanguage()
 	 */
 	public void setLanguage(String str) {
+		materialize();
 		language = str;
 	}
 	
@@ -608,6 +624,7 @@ public class ACLMessage implements Serializable {
 	 @see jade.lang.acl.ACLMessage#getReplyByDate()
 	 */
 	public void setReplyByDate(Date date) {
+		materialize();
 		reply_byInMillisec = (date==null?0:date.getTime());
 	}
 	
@@ -639,6 +656,7 @@ public class ACLMessage implements Serializable {
 	 receiver agents for this message.
 	 */
 	public Iterator getAllReceiver() {
+		materialize();
 		//#MIDP_EXCLUDE_BEGIN
 		return dests.iterator();
 		//#MIDP_EXCLUDE_END
@@ -653,6 +671,7 @@ public class ACLMessage implements Serializable {
 	 reply_to agents for this message.
 	 */
 	public Iterator getAllReplyTo() {
+		materialize();
 		if (reply_to == null) {
 			return EmptyIterator.getInstance();
 		}
@@ -717,6 +736,7 @@ public class ACLMessage implements Serializable {
 	 * @return true if it is a byteSequence, false if it is a String
 	 */
 	public boolean hasByteSequenceContent(){
+		materialize();
 		return (byteSequenceContent != null);
 	}
 	
@@ -735,6 +755,7 @@ public class ACLMessage implements Serializable {
 	 * @see jade.lang.acl.ACLMessage#getContentObject()
 	 */
 	public String getContent() {
+		materialize();
 		if(content != null)
 			return new String(content);
 		else if (byteSequenceContent != null)
@@ -757,6 +778,7 @@ public class ACLMessage implements Serializable {
 	 * @see jade.lang.acl.ACLMessage#getContentObject()
 	 */
 	public byte[] getByteSequenceContent() {
+		materialize();
 		if (content != null) 
 			return content.toString().getBytes();
 		else if (byteSequenceContent != null)
@@ -770,6 +792,7 @@ public class ACLMessage implements Serializable {
 	 @see jade.lang.acl.ACLMessage#setReplyWith(String).
 	 */
 	public String getReplyWith() {
+		materialize();
 		return reply_with;
 	}
 	
@@ -790,6 +813,7 @@ public class ACLMessage implements Serializable {
 	 @see jade.lang.acl.ACLMessage#setEncoding(String).
 	 */
 	public String getEncoding() {
+		materialize();
 		return encoding;
 	}
 	
@@ -799,6 +823,7 @@ public class ACLMessage implements Serializable {
 	 @see jade.lang.acl.ACLMessage#setLanguage(String).
 	 */
 	public String getLanguage() {
+		materialize();
 		return language;
 	}
 	
@@ -820,6 +845,7 @@ public class ACLMessage implements Serializable {
 	 the <code>getReplyByDate</code> should be used that returns a Date
 	 */
 	public String getReplyBy() {
+		materialize();
 		if(reply_byInMillisec != 0)
 			return ISO8601.toString(new Date(reply_byInMillisec));
 		else
@@ -834,6 +860,7 @@ public class ACLMessage implements Serializable {
 	 @see jade.lang.acl.ACLMessage#setReplyByDate(Date).
 	 */
 	public Date getReplyByDate() {
+		materialize();
 		if(reply_byInMillisec != 0)
 			return new Date(reply_byInMillisec);
 		else
@@ -869,6 +896,7 @@ public class ACLMessage implements Serializable {
 	 * @param value the property value
 	 */
 	public void addUserDefinedParameter(String key, String value) {
+		materialize();
 		userDefProps = (userDefProps == null ? new Properties() : userDefProps);
 		userDefProps.setProperty(key,value);
 	}
@@ -882,6 +910,7 @@ public class ACLMessage implements Serializable {
 	 * @return  the value in this ACLMessage with the specified key value.
 	 */
 	public String getUserDefinedParameter(String key){
+		materialize();
 		if (userDefProps == null)
 			return null;
 		else
@@ -892,6 +921,7 @@ public class ACLMessage implements Serializable {
 	 * Return all user defined parameters of this ACLMessage in form of a Properties object
 	 **/
 	public Properties getAllUserDefinedParameters() {
+		materialize();
 		userDefProps = (userDefProps == null ? new Properties() : userDefProps);
 		return userDefProps; 
 	}
@@ -900,6 +930,7 @@ public class ACLMessage implements Serializable {
 	 * Replace all user defined parameters of this ACLMessage with the specified Properties object.
 	 **/
 	public void setAllUserDefinedParameters(Properties userDefProps) {
+		materialize();
 		this.userDefProps = userDefProps; 
 	}
 	
@@ -920,6 +951,7 @@ public class ACLMessage implements Serializable {
 	 * @return the value to which the key had been mapped or null if the key was not present
 	 */
 	public Object clearUserDefinedParameter(String key) {
+		materialize();
 		if (userDefProps == null)
 			return null;
 		else
@@ -948,6 +980,7 @@ public class ACLMessage implements Serializable {
 	 @see jade.lang.acl#getEnvelope()
 	 */
 	public void setDefaultEnvelope() {
+		materialize();
 		messageEnvelope = new Envelope();
 		messageEnvelope.setFrom(source);
 		//#MIDP_EXCLUDE_BEGIN
@@ -1077,6 +1110,9 @@ public class ACLMessage implements Serializable {
 	 * Resets all the message slots.
 	 */
 	public void reset() {   
+		//#J2ME_EXCLUDE_BEGIN
+		lazySlots = null;
+		//#J2ME_EXCLUDE_END
 		source = null;
 		//#MIDP_EXCLUDE_BEGIN
 		dests.clear();
@@ -1198,35 +1234,86 @@ public class ACLMessage implements Serializable {
 	
 	// For persistence service
 	private void setReceivers(ArrayList al) {
+		materialize();
 		dests = al;
 	}
 	
 	// For persistence service
 	private ArrayList getReceivers() {
+		materialize();
 		return dests;
 	}
 	
 	// For persistence service
 	private void setReplyTo(ArrayList al) {
+		materialize();
 		reply_to = al;
 	}
 	
 	// For persistence service
 	private ArrayList getReplyTo() {
+		materialize();
 		return reply_to;
 	}
 	
 	// For persistence service
 	private void setUserDefinedProperties(Serializable p) {
+		materialize();
 		userDefProps = (Properties)p;
 	}
 	
 	// For persistence service
 	private Serializable getUserDefinedProperties() {
+		materialize();
 		return userDefProps;
 	}
 	
 	
 	//#MIDP_EXCLUDE_END
 	
+	/**
+	 Decode the slots that have not been decoded yet, if any
+	 */
+	private final void materialize() {
+		//#J2ME_EXCLUDE_BEGIN
+		if (lazySlots != null) {
+			materializeLazySlots();
+		}
+		//#J2ME_EXCLUDE_END
+	}
+	
+	//#J2ME_EXCLUDE_BEGIN
+	final void setLazySlots(LEAPACLSerializer.LazySlots slots) {
+		lazySlots = slots;
+	}
+	
+	private synchronized void materializeLazySlots() {
+		LEAPACLSerializer.LazySlots slots = lazySlots;
+		if (slots != null) {
+			try {
+				ACLMessage tmp = slots.decode();
+				language = tmp.language;
+				encoding = tmp.encoding;
+				reply_with = tmp.reply_with;
+				reply_byInMillisec = tmp.reply_byInMillisec;
+				userDefProps = tmp.userDefProps;
+				dests = tmp.dests;
+				reply_to = tmp.reply_to;
+				content = tmp.content;
+				byteSequenceContent = tmp.byteSequenceContent;
+			}
+			catch (IOException ioe) {
+				// Data were checked when the message was received: this should never happen
+				jade.util.Logger.getMyLogger(getClass().getName()).log(jade.util.Logger.WARNING, "Error decoding message slots", ioe);
+			}
+			lazySlots = null;
+		}
+	}
+	
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		materialize();
+		out.defaultWriteObject();
+	}
+	//#J2ME_EXCLUDE_END
+	
 }
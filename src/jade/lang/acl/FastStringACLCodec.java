@@ -0,0 +1,919 @@
+/*****************************************************************
+JADE - Java Agent DEvelopment Framework is a framework to develop
+multi-agent systems in compliance with the FIPA specifications.
+Copyright (C) 2000 CSELT S.p.A.
+
+GNU Lesser General Public License
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation,
+version 2.1 of the License.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the
+Free Software Foundation, Inc., 59 Temple Place - Suite 330,
+Boston, MA  02111-1307, USA.
+ *****************************************************************/
+
+package jade.lang.acl;
+
+//#J2ME_EXCLUDE_FILE
+
+import java.util.Date;
+import java.util.Enumeration;
+
+import jade.core.AID;
+import jade.util.leap.Iterator;
+import jade.util.leap.Properties;
+
+import org.apache.commons.codec.binary.Base64;
+
+/**
+ An alternative implementation of the FIPA String codec for ACLMessages.
+ Messages are parsed by a hand-written, single pass parser working directly
+ on the decoded text instead of by the JavaCC generated
+ <code>ACLParser</code>, and are encoded into a single
+ <code>StringBuilder</code> with no intermediate strings.
+ <br>
+ This codec has the same name of the <code>StringACLCodec</code> and
+ accepts and produces exactly the same messages: it can therefore replace
+ it by simply listing it among the ACL codecs to be installed, e.g.
+ <code>-aclcodecs jade.lang.acl.FastStringACLCodec</code>.
+ The parser reproduces the lexical rules of <code>ACLParser.jj</code>
+ (longest match, case insensitive keywords, lexical states): the two
+ implementations must be kept aligned.
+ @see StringACLCodec
+ @see StringACLCodecBenchmark
+ */
+public class FastStringACLCodec implements ACLCodec {
+
+	private static final String BASE64ENCODING_KEY = "JADE-Encoding";
+	private static final String BASE64ENCODING_VALUE = "Base64";
+
+	// Message parameters in the order they are checked by the parser
+	private static final String[] PARAMETERS = new String[] {
+		":sender", ":receiver", ":content", ":reply-with", ":reply-by", ":in-reply-to",
+		":reply-to", ":encoding", ":language", ":ontology", ":protocol", ":conversation-id"
+	};
+	private static final int SENDER = 0;
+	private static final int RECEIVER = 1;
+	private static final int CONTENT = 2;
+	private static final int REPLY_WITH = 3;
+	private static final int REPLY_BY = 4;
+	private static final int IN_REPLY_TO = 5;
+	private static final int REPLY_TO = 6;
+	private static final int ENCODING = 7;
+	private static final int LANGUAGE = 8;
+	private static final int ONTOLOGY = 9;
+	private static final int PROTOCOL = 10;
+	private static final int CONVERSATION_ID = 11;
+
+	// Lower case performative names as accepted by the parser
+	private static final String[] PERFORMATIVES;
+	static {
+		String[] names = ACLMessage.getAllPerformativeNames();
+		PERFORMATIVES = new String[names.length];
+		for (int i = 0; i < names.length; ++i) {
+			PERFORMATIVES[i] = names[i].toLowerCase();
+		}
+	}
+
+	/**
+	 @see ACLCodec#encode(ACLMessage, String)
+	 */
+	public byte[] encode(ACLMessage msg, String charset) {
+		try {
+			return toString(msg).getBytes(charset);
+		}
+		catch (java.io.IOException ioe) {
+			ioe.printStackTrace();
+			return new byte[0];
+		}
+	}
+
+	/**
+	 @see ACLCodec#decode(byte[], String)
+	 */
+	public ACLMessage decode(byte[] data, String charset) throws ACLCodec.CodecException {
+		try {
+			return decode(new String(data, charset));
+		}
+		catch (ACLCodec.CodecException ce) {
+			throw ce;
+		}
+		catch (Exception e) {
+			throw new ACLCodec.CodecException(getName()+" ACLMessage decoding exception", e);
+		}
+	}
+
+	/**
+	 Parse an ACLMessage in the FIPA String representation
+	 */
+	public ACLMessage decode(String text) throws ACLCodec.CodecException {
+		try {
+			ACLMessage msg = new Parser(text).message();
+			StringACLCodec.checkBase64Encoding(msg);
+			return msg;
+		}
+		catch (Exception e) {
+			throw new ACLCodec.CodecException(getName()+" ACLMessage decoding exception", e);
+		}
+	}
+
+	/**
+	 @return the name of this encoding according to the FIPA specifications
+	 */
+	public String getName() {
+		return StringACLCodec.NAME;
+	}
+
+	/**
+	 Encode an ACLMessage in the FIPA String representation. The result
+	 is the same returned by <code>StringACLCodec.toString()</code>.
+	 */
+	public static String toString(ACLMessage msg) {
+		StringBuilder sb = new StringBuilder(256);
+		sb.append('(');
+		sb.append(ACLMessage.getPerformative(msg.getPerformative()));
+		sb.append('\n');
+		AID sender = msg.getSender();
+		if (sender != null) {
+			sb.append(" :sender  ");
+			appendAID(sb, sender);
+			sb.append('\n');
+		}
+		Iterator it = msg.getAllReceiver();
+		if (it.hasNext()) {
+			sb.append(" :receiver  (set ");
+			while (it.hasNext()) {
+				appendAID(sb, (AID) it.next());
+				sb.append(' ');
+			}
+			sb.append(")\n");
+		}
+		it = msg.getAllReplyTo();
+		if (it.hasNext()) {
+			sb.append(" :reply-to  (set \n");
+			while (it.hasNext()) {
+				appendAID(sb, (AID) it.next());
+				sb.append(' ');
+			}
+			sb.append(")\n");
+		}
+		if (msg.hasByteSequenceContent()) {
+			sb.append(":X-").append(BASE64ENCODING_KEY).append(' ').append(BASE64ENCODING_VALUE).append('\n');
+			try {
+				byte[] b64 = Base64.encodeBase64(msg.getByteSequenceContent());
+				sb.ensureCapacity(sb.length() + b64.length + 16);
+				sb.append(" :content  \"");
+				for (int i = 0; i < b64.length; ++i) {
+					sb.append((char) b64[i]);
+				}
+				sb.append("\" \n");
+			}
+			catch (NoClassDefFoundError ncdfe) {
+				System.err.println("Missing support for Base64 conversions");
+			}
+		}
+		else {
+			String content = msg.getContent();
+			if (content != null) {
+				content = content.trim();
+				if (content.length() > 0) {
+					sb.ensureCapacity(sb.length() + content.length() + 16);
+					sb.append(" :content  \"");
+					appendEscaped(sb, content);
+					sb.append("\" \n");
+				}
+			}
+		}
+		appendExpression(sb, " :reply-with ", msg.getReplyWith());
+		appendExpression(sb, " :in-reply-to ", msg.getInReplyTo());
+		appendExpression(sb, " :encoding ", msg.getEncoding());
+		appendExpression(sb, " :language ", msg.getLanguage());
+		appendExpression(sb, " :ontology ", msg.getOntology());
+		Date d = msg.getReplyByDate();
+		if (d != null) {
+			sb.append(" :reply-by  ").append(ISO8601.toString(d)).append('\n');
+		}
+		String tmp = msg.getProtocol();
+		if (tmp != null) {
+			tmp = tmp.trim();
+			if (tmp.length() > 0) {
+				sb.append(" :protocol  ").append(tmp).append('\n');
+			}
+		}
+		appendExpression(sb, " :conversation-id ", msg.getConversationId());
+		Properties userDefProps = msg.getAllUserDefinedParameters();
+		if (userDefProps != null) {
+			Enumeration e = userDefProps.propertyNames();
+			while (e.hasMoreElements()) {
+				String key = (String) e.nextElement();
+				if (key.indexOf(' ') == -1) {
+					String value = userDefProps.getProperty(key);
+					if (value != null && value.length() > 0) {
+						sb.append(':');
+						if (!key.startsWith("X-") && !key.startsWith("x-")) {
+							sb.append("X-");
+						}
+						sb.append(key);
+						sb.append(' ');
+						appendValue(sb, value);
+						sb.append(' ');
+					}
+				}
+				else {
+					System.err.println("WARNING: The slotName of user-defined parameters cannot contain blanks inside. Therefore "+key+" is not being encoded");
+				}
+			}
+		}
+		sb.append(')');
+		return sb.toString();
+	}
+
+	// Same as AID.toString()
+	private static void appendAID(StringBuilder sb, AID id) {
+		if (id.getClass() != AID.class) {
+			// Subclasses may redefine the representation
+			sb.append(id.toString());
+			return;
+		}
+		sb.append("( agent-identifier ");
+		appendExpression(sb, ":name", id.getName());
+		Iterator it = id.getAllAddresses();
+		if (it.hasNext()) {
+			sb.append(" :addresses (sequence ");
+			while (it.hasNext()) {
+				sb.append((String) it.next());
+				sb.append(' ');
+			}
+			sb.append(')');
+		}
+		it = id.getAllResolvers();
+		if (it.hasNext()) {
+			sb.append(" :resolvers (sequence ");
+			while (it.hasNext()) {
+				appendAID(sb, (AID) it.next());
+				sb.append(' ');
+			}
+			sb.append(')');
+		}
+		Properties slots = id.getAllUserDefinedSlot();
+		Enumeration e = slots.propertyNames();
+		while (e.hasMoreElements()) {
+			String key = (String) e.nextElement();
+			sb.append(" :X-");
+			appendExpression(sb, key, slots.getProperty(key));
+		}
+		sb.append(')');
+	}
+
+	// Same as StringACLCodec.appendACLExpression()
+	private static void appendExpression(StringBuilder sb, String slotName, String slotValue) {
+		if (slotValue != null && slotValue.length() > 0) {
+			sb.append(slotName);
+			sb.append(' ');
+			appendValue(sb, slotValue);
+			sb.append(' ');
+		}
+	}
+
+	private static void appendValue(StringBuilder sb, String value) {
+		if (isAWord(value) || isANumber(value)) {
+			sb.append(value);
+		}
+		else {
+			sb.append('"');
+			appendEscaped(sb, value);
+			sb.append('"');
+		}
+	}
+
+	private static void appendEscaped(StringBuilder sb, String s) {
+		int start = 0;
+		int len = s.length();
+		for (int i = 0; i < len; ++i) {
+			if (s.charAt(i) == '"') {
+				sb.append(s, start, i);
+				sb.append("\\\"");
+				start = i + 1;
+			}
+		}
+		sb.append(s, start, len);
+	}
+
+	// Same as StringACLCodec.isAWord()
+	private static boolean isAWord(String s) {
+		char c = s.charAt(0);
+		if (c == '#' || c == '-' || (c >= '0' && c <= '9')) {
+			return false;
+		}
+		for (int i = 0; i < s.length(); ++i) {
+			c = s.charAt(i);
+			if (c == '"' || c == '(' || c == ')' || c <= 0x20) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 Same as checking that <code>Double.valueOf()</code> succeeds, but
+	 avoids creating a NumberFormatException for values that obviously
+	 are not numbers.
+	 */
+	private static boolean isANumber(String s) {
+		// Double.valueOf() ignores leading and trailing blanks
+		int i = 0;
+		while (i < s.length() && s.charAt(i) <= ' ') {
+			i++;
+		}
+		if (i == s.length()) {
+			return false;
+		}
+		char c = s.charAt(i);
+		if ((c < '0' || c > '9') && c != '+' && c != '-' && c != '.' && c != 'N' && c != 'I') {
+			return false;
+		}
+		try {
+			Double.valueOf(s);
+			return true;
+		}
+		catch (NumberFormatException nfe) {
+			return false;
+		}
+	}
+
+
+	/**
+	 Inner class Parser.
+	 A recursive descent parser for the ACL String representation.
+	 The parser scans the text only once and creates no objects other than
+	 the resulting slot values. Token recognition follows the rules of the
+	 lexical states of <code>ACLParser.jj</code>.
+	 */
+	private static final class Parser {
+		// Content token kinds. In case of a tie in length, the kind
+		// declared first in ACLParser.jj wins.
+		private static final int DATETIME = 0;
+		private static final int WORD = 1;
+		private static final int STRING = 2;
+		private static final int NUMBER = 3;
+		private static final int BYTE_LENGTH_STRING = 4;
+		private static final int LBRACE = 5;
+		private static final int RBRACE = 6;
+
+		private final String text;
+		private final int len;
+		private int pos = 0;
+
+		// The last scanned content token
+		private int kind;
+		private int start;
+		private int end;
+
+		private Parser(String text) {
+			this.text = text;
+			len = text.length();
+		}
+
+		private ACLMessage message() throws ParseException {
+			ACLMessage msg = new ACLMessage(ACLMessage.NOT_UNDERSTOOD);
+			msg.reset();
+			expect('(');
+			skipBlanks();
+			String perf = null;
+			for (int i = 0; i < PERFORMATIVES.length; ++i) {
+				// Longest match (e.g. inform-if vs inform)
+				if (matches(PERFORMATIVES[i]) && (perf == null || PERFORMATIVES[i].length() > perf.length())) {
+					perf = PERFORMATIVES[i];
+				}
+			}
+			if (perf == null) {
+				throw error("performative");
+			}
+			pos += perf.length();
+			msg.setPerformative(ACLMessage.getInteger(perf));
+
+			while (true) {
+				skipBlanks();
+				if (pos < len && text.charAt(pos) == ')') {
+					pos++;
+					return msg;
+				}
+				if (matchesUserDefined()) {
+					String name = userDefinedName();
+					msg.addUserDefinedParameter(name, expression());
+					continue;
+				}
+				int p = 0;
+				while (p < PARAMETERS.length && !matches(PARAMETERS[p])) {
+					p++;
+				}
+				if (p == PARAMETERS.length) {
+					throw error("message parameter");
+				}
+				pos += PARAMETERS[p].length();
+				switch (p) {
+				case SENDER:
+					msg.setSender(agentIdentifier());
+					break;
+				case RECEIVER:
+					msg.clearAllReceiver();
+					expectSet();
+					while (!closed()) {
+						msg.addReceiver(agentIdentifier());
+					}
+					break;
+				case REPLY_TO:
+					msg.clearAllReplyTo();
+					expectSet();
+					while (!closed()) {
+						msg.addReplyTo(agentIdentifier());
+					}
+					break;
+				case CONTENT:
+					msg.setContent(content());
+					break;
+				case REPLY_BY:
+					nextToken();
+					if (kind != DATETIME) {
+						throw error("date-time");
+					}
+					try {
+						msg.setReplyByDate(ISO8601.toDate(text.substring(start, end)));
+					}
+					catch (Exception e) {
+						// Ignore malformed dates as ACLParser does
+					}
+					break;
+				case PROTOCOL:
+					nextToken();
+					if (kind != WORD) {
+						throw error("word");
+					}
+					msg.setProtocol(trimQuotes());
+					break;
+				case REPLY_WITH:
+					msg.setReplyWith(expression());
+					break;
+				case IN_REPLY_TO:
+					msg.setInReplyTo(expression());
+					break;
+				case ENCODING:
+					msg.setEncoding(expression());
+					break;
+				case LANGUAGE:
+					msg.setLanguage(expression());
+					break;
+				case ONTOLOGY:
+					msg.setOntology(expression());
+					break;
+				default:
+					msg.setConversationId(expression());
+				}
+			}
+		}
+
+		private AID agentIdentifier() throws ParseException {
+			expect('(');
+			expectKeyword("agent-identifier");
+			AID id = new AID();
+			int slots = 0;
+			while (true) {
+				skipBlanks();
+				if (pos < len && text.charAt(pos) == ')' && slots > 0) {
+					pos++;
+					return id;
+				}
+				if (matches(":name")) {
+					pos += 5;
+					id.setName(content());
+				}
+				else if (matches(":addresses")) {
+					pos += 10;
+					expect('(');
+					expectKeyword("sequence");
+					while (true) {
+						nextToken();
+						if (kind == RBRACE) {
+							break;
+						}
+						if (kind != WORD) {
+							throw error("word");
+						}
+						id.addAddresses(trimQuotes());
+					}
+				}
+				else if (matches(":resolvers")) {
+					pos += 10;
+					expect('(');
+					expectKeyword("sequence");
+					while (!closed()) {
+						id.addResolvers(agentIdentifier());
+					}
+				}
+				else if (matchesUserDefined()) {
+					String name = userDefinedName();
+					id.addUserDefinedSlot(name, expression());
+				}
+				else {
+					throw error("agent-identifier slot");
+				}
+				slots++;
+			}
+		}
+
+		private void expectSet() throws ParseException {
+			expect('(');
+			expectKeyword("set");
+		}
+
+		// Skip blanks and consume a closing brace if present
+		private boolean closed() {
+			skipBlanks();
+			if (pos < len && text.charAt(pos) == ')') {
+				pos++;
+				return true;
+			}
+			return false;
+		}
+
+		private String content() throws ParseException {
+			nextToken();
+			switch (kind) {
+			case WORD:
+			case STRING:
+				return trimQuotes();
+			case BYTE_LENGTH_STRING:
+				return text.substring(start, end);
+			default:
+				throw error("content");
+			}
+		}
+
+		private String expression() throws ParseException {
+			nextToken();
+			if (kind == LBRACE) {
+				StringBuilder sb = new StringBuilder();
+				appendList(sb);
+				return sb.toString();
+			}
+			if (kind == RBRACE) {
+				throw error("expression");
+			}
+			return tokenValue();
+		}
+
+		// The opening brace has just been scanned
+		private void appendList(StringBuilder sb) throws ParseException {
+			sb.append('(');
+			while (true) {
+				nextToken();
+				if (kind == RBRACE) {
+					break;
+				}
+				if (kind == LBRACE) {
+					appendList(sb);
+				}
+				else if (kind == WORD || kind == STRING) {
+					appendUnquoted(sb);
+				}
+				else {
+					sb.append(text, start, end);
+				}
+				sb.append(' ');
+			}
+			sb.append(')');
+		}
+
+		private String tokenValue() {
+			if (kind == WORD || kind == STRING) {
+				return trimQuotes();
+			}
+			return text.substring(start, end);
+		}
+
+		/**
+		 Scan the next token according to the rules of the CONTENTSTATE
+		 lexical state, setting <code>kind</code>, <code>start</code> and
+		 <code>end</code>.
+		 */
+		private void nextToken() throws ParseException {
+			skipBlanks();
+			if (pos >= len) {
+				throw error("token");
+			}
+			char c = text.charAt(pos);
+			if (c == '(' || c == ')') {
+				kind = (c == '(' ? LBRACE : RBRACE);
+				start = pos;
+				end = ++pos;
+				return;
+			}
+			if (c == '#') {
+				byteLengthString();
+				return;
+			}
+			// Longest match among the other tokens
+			int best = 0;
+			kind = -1;
+			if (c == '+' || c == '-' || (c >= '0' && c <= '9')) {
+				best = dateTimeLength(pos);
+				if (best > 0) {
+					kind = DATETIME;
+				}
+			}
+			if (isWordStart(c)) {
+				int l = wordLength(pos);
+				if (l > best) {
+					best = l;
+					kind = WORD;
+				}
+			}
+			if (c == '"') {
+				int l = stringLength(pos);
+				if (l > best) {
+					best = l;
+					kind = STRING;
+				}
+			}
+			if (c == '+' || c == '-' || c == '.' || (c >= '0' && c <= '9')) {
+				int l = numberLength(pos);
+				if (l > best) {
+					best = l;
+					kind = NUMBER;
+				}
+			}
+			if (best == 0) {
+				throw error("token");
+			}
+			start = pos;
+			pos += best;
+			end = pos;
+		}
+
+		// #<integer>" followed by <integer> characters
+		private void byteLengthString() throws ParseException {
+			int i = pos + 1;
+			if (i < len && (text.charAt(i) == '+' || text.charAt(i) == '-')) {
+				i++;
+			}
+			int digits = digits(i);
+			i += digits;
+			if (digits == 0 || i >= len || text.charAt(i) != '"') {
+				throw error("byte length encoded string");
+			}
+			int n;
+			try {
+				n = Integer.parseInt(text.substring(pos + 1, i));
+			}
+			catch (NumberFormatException nfe) {
+				throw error("byte length encoded string");
+			}
+			if (n < 0 || n > len - i - 1) {
+				throw error("byte length encoded string");
+			}
+			kind = BYTE_LENGTH_STRING;
+			start = i + 1;
+			end = start + n;
+			pos = end;
+		}
+
+		private int wordLength(int p) {
+			int i = p + 1;
+			while (i < len && isWordPart(text.charAt(i))) {
+				i++;
+			}
+			return i - p;
+		}
+
+		/**
+		 A string literal ends at the first quote not preceded by a
+		 backslash or, if there is no such quote, at the last quote.
+		 */
+		private int stringLength(int p) {
+			int last = -1;
+			for (int i = p + 1; i < len; ++i) {
+				if (text.charAt(i) == '"') {
+					last = i;
+					if (text.charAt(i - 1) != '\\') {
+						break;
+					}
+				}
+			}
+			return (last > 0 ? last - p + 1 : 0);
+		}
+
+		// [+-]? 8 digits [tT] 9 digits [a-zA-Z]?
+		private int dateTimeLength(int p) {
+			int i = p;
+			char c = text.charAt(i);
+			if (c == '+' || c == '-') {
+				i++;
+			}
+			if (digits(i) < 8) {
+				return 0;
+			}
+			i += 8;
+			if (i >= len || (text.charAt(i) != 't' && text.charAt(i) != 'T')) {
+				return 0;
+			}
+			i++;
+			if (digits(i) < 9) {
+				return 0;
+			}
+			i += 9;
+			if (i < len) {
+				c = text.charAt(i);
+				if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')) {
+					i++;
+				}
+			}
+			return i - p;
+		}
+
+		// The longest among DIGIT, INTEGER, FLOATONE and FLOATTWO
+		private int numberLength(int p) {
+			int i = p;
+			char c = text.charAt(i);
+			if (c == '+' || c == '-') {
+				i++;
+			}
+			int intDigits = digits(i);
+			i += intDigits;
+			int best = (intDigits > 0 ? i - p : 0);
+			if (intDigits > 0) {
+				int exp = exponentLength(i);
+				if (exp > 0) {
+					best = i + exp - p;
+				}
+			}
+			if (i < len && text.charAt(i) == '.') {
+				int j = i + 1;
+				int fracDigits = digits(j);
+				if (intDigits > 0 || fracDigits > 0) {
+					j += fracDigits;
+					int l = j + exponentLength(j) - p;
+					if (l > best) {
+						best = l;
+					}
+				}
+			}
+			return best;
+		}
+
+		private int exponentLength(int p) {
+			if (p >= len || (text.charAt(p) != 'e' && text.charAt(p) != 'E')) {
+				return 0;
+			}
+			int i = p + 1;
+			if (i < len && (text.charAt(i) == '+' || text.charAt(i) == '-')) {
+				i++;
+			}
+			int d = digits(i);
+			return (d > 0 ? i + d - p : 0);
+		}
+
+		private int digits(int p) {
+			int i = p;
+			while (i < len && text.charAt(i) >= '0' && text.charAt(i) <= '9') {
+				i++;
+			}
+			return i - p;
+		}
+
+		/**
+		 Same as ACLParser.trimQuotes() applied to the current token
+		 */
+		private String trimQuotes() {
+			int s = start;
+			int e = end;
+			if (text.charAt(s) == '"' && text.charAt(e - 1) == '"') {
+				if (e - s < 2) {
+					// A lonely quote: ACLParser fails too
+					throw new StringIndexOutOfBoundsException("Unbalanced quote at "+s);
+				}
+				s++;
+				e--;
+			}
+			// Most values do not contain escaped quotes
+			for (int i = s; i < e - 1; ++i) {
+				if (text.charAt(i) == '\\' && text.charAt(i + 1) == '"') {
+					StringBuilder sb = new StringBuilder(e - s);
+					unescape(sb, s, e);
+					return sb.toString();
+				}
+			}
+			return text.substring(s, e);
+		}
+
+		private void appendUnquoted(StringBuilder sb) {
+			int s = start;
+			int e = end;
+			if (text.charAt(s) == '"' && text.charAt(e - 1) == '"') {
+				if (e - s < 2) {
+					throw new StringIndexOutOfBoundsException("Unbalanced quote at "+s);
+				}
+				s++;
+				e--;
+			}
+			unescape(sb, s, e);
+		}
+
+		// Replace each \" with "
+		private void unescape(StringBuilder sb, int s, int e) {
+			int from = s;
+			for (int i = s; i < e - 1; ++i) {
+				if (text.charAt(i) == '\\' && text.charAt(i + 1) == '"') {
+					sb.append(text, from, i);
+					from = ++i;
+				}
+			}
+			sb.append(text, from, e);
+		}
+
+		private boolean matchesUserDefined() {
+			return pos + 3 < len && text.charAt(pos) == ':' && (text.charAt(pos + 1) == 'x' || text.charAt(pos + 1) == 'X') && text.charAt(pos + 2) == '-' && isNamePart(text.charAt(pos + 3));
+		}
+
+		private String userDefinedName() {
+			int s = pos + 3;
+			pos = s + 1;
+			while (pos < len && isNamePart(text.charAt(pos))) {
+				pos++;
+			}
+			return text.substring(s, pos);
+		}
+
+		// Case insensitive match of a lower case keyword
+		private boolean matches(String keyword) {
+			int n = keyword.length();
+			if (pos + n > len) {
+				return false;
+			}
+			for (int i = 0; i < n; ++i) {
+				char c = text.charAt(pos + i);
+				if (c >= 'A' && c <= 'Z') {
+					c += 'a' - 'A';
+				}
+				if (c != keyword.charAt(i)) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		private void expectKeyword(String keyword) throws ParseException {
+			skipBlanks();
+			if (!matches(keyword)) {
+				throw error(keyword);
+			}
+			pos += keyword.length();
+		}
+
+		private void expect(char c) throws ParseException {
+			skipBlanks();
+			if (pos >= len || text.charAt(pos) != c) {
+				throw error("\""+c+"\"");
+			}
+			pos++;
+		}
+
+		private void skipBlanks() {
+			while (pos < len) {
+				char c = text.charAt(pos);
+				if (c != ' ' && c != '\t' && c != '\n' && c != '\r') {
+					return;
+				}
+				pos++;
+			}
+		}
+
+		private ParseException error(String expected) {
+			if (pos >= len) {
+				return new ParseException("Unexpected end of message. Expected "+expected);
+			}
+			return new ParseException("Unexpected character '"+text.charAt(pos)+"' at position "+pos+". Expected "+expected);
+		}
+
+		private static boolean isWordStart(char c) {
+			return c == '!' || c == '"' || (c >= '$' && c <= '\'') || c == '*' || c == '+' || c == ',' || c == '.' || c == '/' || (c >= ':' && c <= '~');
+		}
+
+		private static boolean isWordPart(char c) {
+			return (c >= '!' && c <= '\'') || (c >= '*' && c <= '~');
+		}
+
+		// Characters allowed in the name of user defined parameters and slots
+		private static boolean isNamePart(char c) {
+			return c > ' ' && c != '(' && c != ')';
+		}
+	} // END of inner class Parser
+}
@@ -53,6 +53,15 @@ public class LEAPACLCodec implements ACLCodec {
 	 * @return a byte array, containing the encoded message.
 	 */
 	public byte[] encode(ACLMessage msg, String charset){
+		//#J2ME_EXCLUDE_BEGIN
+		try{
+			return LEAPACLSerializer.encode(msg);
+		} catch (IOException ioe){
+			ioe.printStackTrace();
+		} 
+		return new byte[0];
+		//#J2ME_EXCLUDE_END
+		/*#J2ME_INCLUDE_BEGIN
 		ByteArrayOutputStream baos = new ByteArrayOutputStream();
 		DataOutputStream dos = new DataOutputStream(baos);
 		try{
@@ -62,6 +71,7 @@ public class LEAPACLCodec implements ACLCodec {
 			ioe.printStackTrace();
 		} 
 		return new byte[0];
+		#J2ME_INCLUDE_END*/
 	}
 
 	/**
@@ -75,13 +85,42 @@ public class LEAPACLCodec implements ACLCodec {
 	 * @exception CodecException If some kind of syntax error occurs.
 	 */
 	public ACLMessage decode(byte[] data, String charset) throws CodecException{
-		DataInputStream din = new DataInputStream(new ByteArrayInputStream(data));
 		try{
+			//#J2ME_EXCLUDE_BEGIN
+			return LEAPACLSerializer.decode(data);
+			//#J2ME_EXCLUDE_END
+			/*#J2ME_INCLUDE_BEGIN
+			DataInputStream din = new DataInputStream(new ByteArrayInputStream(data));
 			return deserializeACL(din);
+			#J2ME_INCLUDE_END*/
+		} catch (IOException ioe){
+			throw new CodecException(getName()+" ACLMessage decoding exception",ioe);
+		}
+	}
+
+	//#J2ME_EXCLUDE_BEGIN
+	/**
+	 * Recovers an <code>ACLMessage</code> object back from raw data
+	 * decoding only the <code>:performative</code>, <code>:sender</code>,
+	 * <code>:ontology</code>, <code>:protocol</code>, <code>:conversation-id</code> 
+	 * and <code>:in-reply-to</code> slots. The other slots are decoded 
+	 * the first time they are accessed. This saves time and memory when
+	 * most received messages are filtered or dropped by looking at these 
+	 * slots only.
+	 * @param data The byte sequence containing the encoded message. 
+	 * It must not be modified afterwards.
+	 * @return A new <code>ACLMessage</code> object, built from the raw
+	 * data.
+	 * @exception CodecException If some kind of syntax error occurs.
+	 */
+	public ACLMessage decodeLazily(byte[] data) throws CodecException {
+		try{
+			return LEAPACLSerializer.decodeLazily(data);
 		} catch (IOException ioe){
 			throw new CodecException(getName()+" ACLMessage decoding exception",ioe);
 		}
 	}
+	//#J2ME_EXCLUDE_END
 
 	/**
 	 * Query the name of the message representation handled by this
@@ -95,6 +134,8 @@ public class LEAPACLCodec implements ACLCodec {
 
 
 	/**
+	 * Serialize an ACLMessage into a stream according to the LEAP representation.
+	 * On J2SE <code>encode()</code> produces the same bytes without using streams.
 	 */
 	public final static void serializeACL(ACLMessage msg, DataOutputStream dos) throws IOException {
 		dos.writeByte(msg.getPerformative());
@@ -0,0 +1,132 @@
+package jade.lang.acl;
+
+//#J2ME_EXCLUDE_FILE
+//#APIDOC_EXCLUDE_FILE
+
+import jade.core.AID;
+import jade.core.BenchmarkHarness;
+import jade.util.leap.Properties;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.Arrays;
+import java.util.Date;
+
+/**
+ Measure the throughput of the LEAP ACL codec when encoding and decoding
+ messages with small, medium and large contents, comparing the stream based
+ implementation (<code>LEAPACLCodec.serializeACL()/deserializeACL()</code>)
+ with the buffer based one used by <code>LEAPACLCodec.encode()/decode()</code>.
+ Lazy decoding (<code>LEAPACLCodec.decodeLazily()</code>) is measured too,
+ accessing the performative and conversation-id only, as a receiver
+ filtering messages by means of a MessageTemplate typically does.
+ Before measuring, the benchmark checks that the two implementations produce
+ the same bytes.
+ Usage:
+ <code>java jade.lang.acl.LEAPACLCodecBenchmark [-t 3] [-warmup 2]</code>
+ @see jade.core.BenchmarkHarness
+ */
+public class LEAPACLCodecBenchmark {
+
+	private static final String[] SIZES = new String[]{"small", "medium", "large"};
+	private static final int[] CONTENT_LENGTHS = new int[]{16, 1024, 64 * 1024};
+
+	private static final int STREAM_ENCODE = 0;
+	private static final int CODEC_ENCODE = 1;
+	private static final int STREAM_DECODE = 2;
+	private static final int CODEC_DECODE = 3;
+	private static final int LAZY_DECODE = 4;
+	private static final String[] NAMES = new String[]{"stream encode", "codec encode ", "stream decode", "codec decode ", "lazy decode  "};
+
+	// Prevent the JIT from discarding the results
+	private static long sink;
+
+	public static void main(String[] args) throws Exception {
+		Properties pp = BenchmarkHarness.parseArguments(args);
+		int duration = BenchmarkHarness.getDuration(pp);
+		int warmup = BenchmarkHarness.getWarmup(pp);
+
+		LEAPACLCodec codec = new LEAPACLCodec();
+		System.out.println("----------------------------------");
+		for (int i = 0; i < SIZES.length; ++i) {
+			ACLMessage msg = createMessage(CONTENT_LENGTHS[i]);
+			byte[] expected = streamEncode(msg);
+			byte[] actual = codec.encode(msg, null);
+			if (!Arrays.equals(expected, actual)) {
+				System.out.println("ERROR: different encodings for the "+SIZES[i]+" message");
+				System.exit(1);
+			}
+			if (!Arrays.equals(expected, streamEncode(codec.decode(expected, null)))) {
+				System.out.println("ERROR: wrong decoding of the "+SIZES[i]+" message");
+				System.exit(1);
+			}
+
+			System.out.println(SIZES[i]+" message ("+expected.length+" bytes)");
+			for (int mode = STREAM_ENCODE; mode <= LAZY_DECODE; ++mode) {
+				measure(mode, codec, msg, expected, warmup);
+				long ops = measure(mode, codec, msg, expected, duration);
+				System.out.println("- "+NAMES[mode]+": "+(ops / duration)+" msg/s");
+			}
+		}
+		System.out.println("----------------------------------");
+	}
+
+	private static long measure(int mode, LEAPACLCodec codec, ACLMessage msg, byte[] data, int duration) throws Exception {
+		long end = System.currentTimeMillis() + duration * 1000L;
+		long cnt = 0;
+		while (System.currentTimeMillis() < end) {
+			// Check the time every 100 operations only
+			for (int i = 0; i < 100; ++i) {
+				switch (mode) {
+				case STREAM_ENCODE:
+					sink += streamEncode(msg).length;
+					break;
+				case CODEC_ENCODE:
+					sink += codec.encode(msg, null).length;
+					break;
+				case STREAM_DECODE:
+					sink += LEAPACLCodec.deserializeACL(new DataInputStream(new ByteArrayInputStream(data))).getPerformative();
+					break;
+				case CODEC_DECODE:
+					sink += codec.decode(data, null).getPerformative();
+					break;
+				default:
+					ACLMessage m = codec.decodeLazily(data);
+					sink += m.getPerformative() + m.getConversationId().length();
+				}
+			}
+			cnt += 100;
+		}
+		return cnt;
+	}
+
+	private static byte[] streamEncode(ACLMessage msg) throws Exception {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		DataOutputStream dos = new DataOutputStream(baos);
+		LEAPACLCodec.serializeACL(msg, dos);
+		return baos.toByteArray();
+	}
+
+	private static ACLMessage createMessage(int contentLength) {
+		ACLMessage msg = new ACLMessage(ACLMessage.REQUEST);
+		AID sender = new AID("sender@Platform", AID.ISGUID);
+		sender.addAddresses("http://host.domain.com:7778/acc");
+		msg.setSender(sender);
+		msg.addReceiver(new AID("receiver@Platform", AID.ISGUID));
+		msg.setLanguage("fipa-sl");
+		msg.setOntology("FIPA-Agent-Management");
+		msg.setProtocol("fipa-request");
+		msg.setConversationId("C-1234567890");
+		msg.setReplyWith("R-1234567890");
+		msg.setReplyByDate(new Date(0));
+		msg.addUserDefinedParameter("priority", "high");
+		StringBuffer sb = new StringBuffer(contentLength);
+		for (int i = 0; i < contentLength; ++i) {
+			sb.append((char) ('a' + (i % 26)));
+		}
+		msg.setContent(sb.toString());
+		return msg;
+	}
+}
@@ -0,0 +1,647 @@
+/*****************************************************************
+JADE - Java Agent DEvelopment Framework is a framework to develop
+multi-agent systems in compliance with the FIPA specifications.
+Copyright (C) 2000 CSELT S.p.A.
+
+GNU Lesser General Public License
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation,
+version 2.1 of the License.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the
+Free Software Foundation, Inc., 59 Temple Place - Suite 330,
+Boston, MA  02111-1307, USA.
+ *****************************************************************/
+
+package jade.lang.acl;
+
+//#J2ME_EXCLUDE_FILE
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UTFDataFormatException;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Enumeration;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import jade.core.AID;
+import jade.util.leap.Iterator;
+import jade.util.leap.Properties;
+
+/**
+ This class encodes and decodes ACLMessages according to the LEAP
+ representation working directly on byte arrays.
+ Encoding is performed into a buffer taken from a small pool shared by all
+ threads and reused across messages, so that no intermediate streams
+ and growing arrays are allocated.
+ Decoding reads slot values directly from the encoded data with no
+ intermediate streams or copies.
+ <br>
+ The produced bytes are the same produced by
+ <code>LEAPACLCodec.serializeACL()</code> and any data produced by that
+ method can be decoded: the two implementations must be kept aligned.
+ */
+final class LEAPACLSerializer {
+	private static final int INITIAL_SIZE = 1024;
+	// Buffers that grew larger than this are not kept for reuse
+	private static final int MAX_RETAINED_SIZE = 256 * 1024;
+	private static final int POOL_SIZE = 16;
+
+	private static final Charset DEFAULT_CHARSET = Charset.defaultCharset();
+	private static final Charset ASCII = Charset.forName("US-ASCII");
+
+	private static final ConcurrentLinkedQueue<byte[]> pool = new ConcurrentLinkedQueue<byte[]>();
+	private static final AtomicInteger poolSize = new AtomicInteger();
+
+	private byte[] buf;
+	private int pos;
+
+	private LEAPACLSerializer(byte[] buf) {
+		this.buf = buf;
+	}
+
+	/**
+	 Encode an ACLMessage according to the LEAP representation
+	 */
+	static byte[] encode(ACLMessage msg) throws IOException {
+		byte[] b = pool.poll();
+		if (b != null) {
+			poolSize.decrementAndGet();
+		}
+		else {
+			b = new byte[INITIAL_SIZE];
+		}
+		LEAPACLSerializer w = new LEAPACLSerializer(b);
+		try {
+			w.writeACL(msg);
+			return Arrays.copyOf(w.buf, w.pos);
+		}
+		finally {
+			release(w.buf);
+		}
+	}
+
+	private static void release(byte[] b) {
+		if (b.length <= MAX_RETAINED_SIZE && poolSize.incrementAndGet() <= POOL_SIZE) {
+			pool.offer(b);
+		}
+		else {
+			poolSize.decrementAndGet();
+		}
+	}
+
+	/**
+	 Decode an ACLMessage encoded according to the LEAP representation
+	 */
+	static ACLMessage decode(byte[] data) throws IOException {
+		return new LEAPACLSerializer(data).readACL();
+	}
+
+	/**
+	 Decode the performative, sender, ontology, protocol, conversation-id
+	 and in-reply-to slots of an ACLMessage encoded according to the LEAP
+	 representation. The other slots are decoded when first accessed.
+	 The whole data are checked to be well formed anyway.
+	 */
+	static ACLMessage decodeLazily(byte[] data) throws IOException {
+		LEAPACLSerializer r = new LEAPACLSerializer(data);
+		ACLMessage msg = new ACLMessage((int) r.readByte());
+
+		byte presence1 = r.readByte();
+		byte presence2 = r.readByte();
+
+		if ((presence1 & 0x80) != 0) { msg.setSender(r.readAID()); }
+		int languageOffset = r.pos;
+		if ((presence1 & 0x40) != 0) { r.skipUTF(); }
+		if ((presence1 & 0x20) != 0) { msg.setOntology(r.readUTF()); }
+		int encodingOffset = r.pos;
+		if ((presence1 & 0x10) != 0) { r.skipUTF(); }
+		if ((presence1 & 0x08) != 0) { msg.setProtocol(r.readUTF()); }
+		if ((presence1 & 0x04) != 0) { msg.setConversationId(r.readUTF()); }
+		if ((presence1 & 0x02) != 0) { msg.setInReplyTo(r.readUTF()); }
+		int tailOffset = r.pos;
+		r.skipTail(presence1, presence2);
+
+		msg.setLazySlots(new LazySlots(data, presence1, presence2, languageOffset, encodingOffset, tailOffset));
+		return msg;
+	}
+
+
+	/////////////////////////////////////////
+	// Encoding
+	/////////////////////////////////////////
+	private void writeACL(ACLMessage msg) throws IOException {
+		writeByte(msg.getPerformative());
+
+		byte presence1 = 0;
+		byte presence2 = 0;
+		AID sender = msg.getSender();
+		String language = msg.getLanguage();
+		String ontology = msg.getOntology();
+		String encoding = msg.getEncoding();
+		String protocol = msg.getProtocol();
+		String conversationId = msg.getConversationId();
+		String inReplyTo = msg.getInReplyTo();
+		String replyWith = msg.getReplyWith();
+		Date replyBy = msg.getReplyByDate();
+		Properties props = msg.getAllUserDefinedParameters();
+		if (props.size() > 63) {
+			throw new IOException("Cannot serialize more than 63 params");
+		}
+
+		if (sender != null) { presence1 |= 0x80; }
+		if (language != null) { presence1 |= 0x40; }
+		if (ontology != null) { presence1 |= 0x20; }
+		if (encoding != null) { presence1 |= 0x10; }
+		if (protocol != null) { presence1 |= 0x08; }
+		if (conversationId != null) { presence1 |= 0x04; }
+		if (inReplyTo != null) { presence1 |= 0x02; }
+		if (replyWith != null) { presence1 |= 0x01; }
+		if (replyBy != null) { presence2 |= 0x80; }
+		presence2 |= (props.size() & 0x3F);
+		writeByte(presence1);
+		writeByte(presence2);
+
+		if (sender != null) { writeAID(sender); }
+		if (language != null) { writeUTF(language); }
+		if (ontology != null) { writeUTF(ontology); }
+		if (encoding != null) { writeUTF(encoding); }
+		if (protocol != null) { writeUTF(protocol); }
+		if (conversationId != null) { writeUTF(conversationId); }
+		if (inReplyTo != null) { writeUTF(inReplyTo); }
+		if (replyWith != null) { writeUTF(replyWith); }
+		if (replyBy != null) { writeLong(replyBy.getTime()); }
+
+		// User defined parameters
+		writeProperties(props);
+		// Receivers
+		Iterator it = msg.getAllReceiver();
+		while (it.hasNext()) {
+			writeBoolean(true);
+			writeAID((AID) it.next());
+		}
+		writeBoolean(false);
+
+		// Reply-to
+		it = msg.getAllReplyTo();
+		while (it.hasNext()) {
+			writeBoolean(true);
+			writeAID((AID) it.next());
+		}
+		writeBoolean(false);
+
+		// Content
+		if (msg.hasByteSequenceContent()) {
+			// Content present in bynary form
+			writeByte(2);
+			byte[] content = msg.getByteSequenceContent();
+			writeInt(content.length);
+			write(content, 0, content.length);
+		}
+		else {
+			String content = msg.getContent();
+			if (content != null) {
+				// Content present in String form
+				writeByte(1);
+				writeContent(content);
+			}
+			else {
+				// Content NOT present
+				writeByte(0);
+			}
+		}
+	}
+
+	private void writeAID(AID id) throws IOException {
+		byte presence = 0;
+		String name = id.getName();
+		Iterator addresses = id.getAllAddresses();
+		Iterator resolvers = id.getAllResolvers();
+		Properties props = id.getAllUserDefinedSlot();
+		if (props.size() > 31) {
+			throw new IOException("Cannot serialize more than 31 slots");
+		}
+		if (name != null) { presence |= 0x80; }
+		if (addresses.hasNext()) { presence |= 0x40; }
+		if (resolvers.hasNext()) { presence |= 0x20; }
+		presence |= (props.size() & 0x1F);
+		writeByte(presence);
+
+		if (name != null) { writeUTF(name); }
+		// Addresses
+		while (addresses.hasNext()) {
+			writeUTF((String) addresses.next());
+			writeBoolean(addresses.hasNext());
+		}
+		// Resolvers
+		while (resolvers.hasNext()) {
+			writeAID((AID) resolvers.next());
+			writeBoolean(resolvers.hasNext());
+		}
+		// User defined slots
+		writeProperties(props);
+	}
+
+	private void writeProperties(Properties props) throws IOException {
+		Enumeration e = props.keys();
+		while (e.hasMoreElements()) {
+			String key = (String) e.nextElement();
+			writeUTF(key);
+			writeUTF(props.getProperty(key));
+		}
+	}
+
+	private void ensureCapacity(int n) {
+		if (pos + n > buf.length) {
+			buf = Arrays.copyOf(buf, Math.max(buf.length << 1, pos + n));
+		}
+	}
+
+	private void writeByte(int b) {
+		ensureCapacity(1);
+		buf[pos++] = (byte) b;
+	}
+
+	private void writeBoolean(boolean b) {
+		writeByte(b ? 1 : 0);
+	}
+
+	private void writeInt(int v) {
+		ensureCapacity(4);
+		buf[pos++] = (byte) (v >>> 24);
+		buf[pos++] = (byte) (v >>> 16);
+		buf[pos++] = (byte) (v >>> 8);
+		buf[pos++] = (byte) v;
+	}
+
+	private void writeLong(long v) {
+		writeInt((int) (v >>> 32));
+		writeInt((int) v);
+	}
+
+	private void write(byte[] b, int off, int len) {
+		ensureCapacity(len);
+		System.arraycopy(b, off, buf, pos, len);
+		pos += len;
+	}
+
+	/**
+	 Write a String in modified UTF-8 exactly as
+	 <code>DataOutputStream.writeUTF()</code> does
+	 */
+	private void writeUTF(String s) throws UTFDataFormatException {
+		int len = s.length();
+		int utflen = 0;
+		for (int i = 0; i < len; ++i) {
+			char c = s.charAt(i);
+			if (c >= 0x0001 && c <= 0x007F) {
+				utflen++;
+			}
+			else if (c > 0x07FF) {
+				utflen += 3;
+			}
+			else {
+				utflen += 2;
+			}
+		}
+		if (utflen > 65535) {
+			throw new UTFDataFormatException("encoded string too long: "+utflen+" bytes");
+		}
+		ensureCapacity(utflen + 2);
+		buf[pos++] = (byte) (utflen >>> 8);
+		buf[pos++] = (byte) utflen;
+		if (utflen == len) {
+			// Plain ASCII
+			for (int i = 0; i < len; ++i) {
+				buf[pos++] = (byte) s.charAt(i);
+			}
+			return;
+		}
+		for (int i = 0; i < len; ++i) {
+			char c = s.charAt(i);
+			if (c >= 0x0001 && c <= 0x007F) {
+				buf[pos++] = (byte) c;
+			}
+			else if (c > 0x07FF) {
+				buf[pos++] = (byte) (0xE0 | ((c >> 12) & 0x0F));
+				buf[pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+				buf[pos++] = (byte) (0x80 | (c & 0x3F));
+			}
+			else {
+				buf[pos++] = (byte) (0xC0 | ((c >> 6) & 0x1F));
+				buf[pos++] = (byte) (0x80 | (c & 0x3F));
+			}
+		}
+	}
+
+	/**
+	 Write a String content as its length followed by its bytes in the
+	 default charset (as <code>LEAPACLCodec.serializeACL()</code> does).
+	 */
+	private void writeContent(String content) {
+		byte[] bscontent = content.getBytes(DEFAULT_CHARSET);
+		writeInt(bscontent.length);
+		write(bscontent, 0, bscontent.length);
+	}
+
+
+	/////////////////////////////////////////
+	// Decoding
+	/////////////////////////////////////////
+	private ACLMessage readACL() throws IOException {
+		ACLMessage msg = new ACLMessage((int) readByte());
+
+		byte presence1 = readByte();
+		byte presence2 = readByte();
+
+		if ((presence1 & 0x80) != 0) { msg.setSender(readAID()); }
+		if ((presence1 & 0x40) != 0) { msg.setLanguage(readUTF()); }
+		if ((presence1 & 0x20) != 0) { msg.setOntology(readUTF()); }
+		if ((presence1 & 0x10) != 0) { msg.setEncoding(readUTF()); }
+		if ((presence1 & 0x08) != 0) { msg.setProtocol(readUTF()); }
+		if ((presence1 & 0x04) != 0) { msg.setConversationId(readUTF()); }
+		if ((presence1 & 0x02) != 0) { msg.setInReplyTo(readUTF()); }
+		readTail(msg, presence1, presence2);
+		return msg;
+	}
+
+	/**
+	 Read the slots following the in-reply-to slot
+	 */
+	private void readTail(ACLMessage msg, byte presence1, byte presence2) throws IOException {
+		if ((presence1 & 0x01) != 0) { msg.setReplyWith(readUTF()); }
+		if ((presence2 & 0x80) != 0) { msg.setReplyByDate(new Date(readLong())); }
+		// User defined properties
+		int propsSize = presence2 & 0x3F;
+		for (int i = 0; i < propsSize; ++i) {
+			String key = readUTF();
+			String val = readUTF();
+			msg.addUserDefinedParameter(key, val);
+		}
+
+		// Receivers
+		while (readBoolean()) {
+			msg.addReceiver(readAID());
+		}
+
+		// Reply-to
+		while (readBoolean()) {
+			msg.addReplyTo(readAID());
+		}
+
+		// Content
+		byte type = readByte();
+		if (type == 2) {
+			// Content present in bynary form
+			int len = readLength();
+			msg.setByteSequenceContent(Arrays.copyOfRange(buf, pos, pos + len));
+			pos += len;
+		}
+		else if (type == 1) {
+			// Content present in String form
+			int len = readLength();
+			msg.setContent(new String(buf, pos, len, DEFAULT_CHARSET));
+			pos += len;
+		}
+	}
+
+	/**
+	 Skip the slots following the in-reply-to slot checking they are well formed
+	 */
+	private void skipTail(byte presence1, byte presence2) throws IOException {
+		if ((presence1 & 0x01) != 0) { skipUTF(); }
+		if ((presence2 & 0x80) != 0) { skip(8); }
+		int propsSize = presence2 & 0x3F;
+		for (int i = 0; i < 2 * propsSize; ++i) {
+			skipUTF();
+		}
+		while (readBoolean()) {
+			skipAID();
+		}
+		while (readBoolean()) {
+			skipAID();
+		}
+		byte type = readByte();
+		if (type == 1 || type == 2) {
+			skip(readLength());
+		}
+	}
+
+	private void skipAID() throws IOException {
+		byte presence = readByte();
+		if ((presence & 0x80) != 0) {
+			skipUTF();
+		}
+		if ((presence & 0x40) != 0) {
+			do {
+				skipUTF();
+			} while (readBoolean());
+		}
+		if ((presence & 0x20) != 0) {
+			do {
+				skipAID();
+			} while (readBoolean());
+		}
+		int propsSize = presence & 0x1F;
+		for (int i = 0; i < 2 * propsSize; ++i) {
+			skipUTF();
+		}
+	}
+
+	private AID readAID() throws IOException {
+		byte presence = readByte();
+		AID id = ((presence & 0x80) != 0 ? new AID(readUTF(), AID.ISGUID) : new AID());
+
+		// Addresses
+		if ((presence & 0x40) != 0) {
+			do {
+				id.addAddresses(readUTF());
+			} while (readBoolean());
+		}
+		// Resolvers
+		if ((presence & 0x20) != 0) {
+			do {
+				id.addResolvers(readAID());
+			} while (readBoolean());
+		}
+		// User defined slots
+		int propsSize = presence & 0x1F;
+		for (int i = 0; i < propsSize; ++i) {
+			String key = readUTF();
+			String val = readUTF();
+			id.addUserDefinedSlot(key, val);
+		}
+		return id;
+	}
+
+	private void require(int n) throws EOFException {
+		if (n < 0 || pos + n > buf.length) {
+			throw new EOFException();
+		}
+	}
+
+	private byte readByte() throws EOFException {
+		require(1);
+		return buf[pos++];
+	}
+
+	private boolean readBoolean() throws EOFException {
+		return readByte() != 0;
+	}
+
+	private int readInt() throws EOFException {
+		require(4);
+		int v = ((buf[pos] & 0xFF) << 24) | ((buf[pos + 1] & 0xFF) << 16) | ((buf[pos + 2] & 0xFF) << 8) | (buf[pos + 3] & 0xFF);
+		pos += 4;
+		return v;
+	}
+
+	private long readLong() throws EOFException {
+		long high = readInt();
+		long low = readInt() & 0xFFFFFFFFL;
+		return (high << 32) | low;
+	}
+
+	private void skip(int n) throws EOFException {
+		require(n);
+		pos += n;
+	}
+
+	private void skipUTF() throws EOFException {
+		require(2);
+		int utflen = ((buf[pos] & 0xFF) << 8) | (buf[pos + 1] & 0xFF);
+		pos += 2;
+		skip(utflen);
+	}
+
+	// Read the length of a content and check it is actually available
+	private int readLength() throws EOFException {
+		int len = readInt();
+		require(len);
+		return len;
+	}
+
+	/**
+	 Read a String in modified UTF-8 exactly as
+	 <code>DataInputStream.readUTF()</code> does
+	 */
+	private String readUTF() throws IOException {
+		require(2);
+		int utflen = ((buf[pos] & 0xFF) << 8) | (buf[pos + 1] & 0xFF);
+		pos += 2;
+		require(utflen);
+		int start = pos;
+		int end = start + utflen;
+		int i = start;
+		while (i < end && buf[i] >= 0) {
+			i++;
+		}
+		if (i == end) {
+			// Plain ASCII
+			pos = end;
+			return new String(buf, start, utflen, ASCII);
+		}
+
+		char[] chars = new char[utflen];
+		int cnt = 0;
+		for (int j = start; j < i; ++j) {
+			chars[cnt++] = (char) buf[j];
+		}
+		while (i < end) {
+			int c = buf[i] & 0xFF;
+			switch (c >> 4) {
+			case 0: case 1: case 2: case 3: case 4: case 5: case 6: case 7:
+				// 0xxxxxxx
+				i++;
+				chars[cnt++] = (char) c;
+				break;
+			case 12: case 13: {
+				// 110x xxxx   10xx xxxx
+				if (i + 2 > end) {
+					throw new UTFDataFormatException("malformed input: partial character at end");
+				}
+				int c2 = buf[i + 1];
+				if ((c2 & 0xC0) != 0x80) {
+					throw new UTFDataFormatException("malformed input around byte "+(i - start));
+				}
+				chars[cnt++] = (char) (((c & 0x1F) << 6) | (c2 & 0x3F));
+				i += 2;
+				break;
+			}
+			case 14: {
+				// 1110 xxxx  10xx xxxx  10xx xxxx
+				if (i + 3 > end) {
+					throw new UTFDataFormatException("malformed input: partial character at end");
+				}
+				int c2 = buf[i + 1];
+				int c3 = buf[i + 2];
+				if (((c2 & 0xC0) != 0x80) || ((c3 & 0xC0) != 0x80)) {
+					throw new UTFDataFormatException("malformed input around byte "+(i - start));
+				}
+				chars[cnt++] = (char) (((c & 0x0F) << 12) | ((c2 & 0x3F) << 6) | (c3 & 0x3F));
+				i += 3;
+				break;
+			}
+			default:
+				// 10xx xxxx,  1111 xxxx
+				throw new UTFDataFormatException("malformed input around byte "+(i - start));
+			}
+		}
+		pos = end;
+		return new String(chars, 0, cnt);
+	}
+
+	/**
+	 Inner class LazySlots.
+	 The encoded form of the slots of an ACLMessage that were not decoded
+	 by <code>decodeLazily()</code>. Instances are immutable and can be
+	 shared by the clones of a message.
+	 */
+	static final class LazySlots {
+		private final byte[] data;
+		private final byte presence1;
+		private final byte presence2;
+		private final int languageOffset;
+		private final int encodingOffset;
+		private final int tailOffset;
+
+		private LazySlots(byte[] data, byte presence1, byte presence2, int languageOffset, int encodingOffset, int tailOffset) {
+			this.data = data;
+			this.presence1 = presence1;
+			this.presence2 = presence2;
+			this.languageOffset = languageOffset;
+			this.encodingOffset = encodingOffset;
+			this.tailOffset = tailOffset;
+		}
+
+		/**
+		 Decode the slots into a new ACLMessage where all other slots are empty
+		 */
+		ACLMessage decode() throws IOException {
+			ACLMessage msg = new ACLMessage();
+			LEAPACLSerializer r = new LEAPACLSerializer(data);
+			if ((presence1 & 0x40) != 0) {
+				r.pos = languageOffset;
+				msg.setLanguage(r.readUTF());
+			}
+			if ((presence1 & 0x10) != 0) {
+				r.pos = encodingOffset;
+				msg.setEncoding(r.readUTF());
+			}
+			r.pos = tailOffset;
+			r.readTail(msg, presence1, presence2);
+			return msg;
+		}
+	} // END of inner class LazySlots
+}
@@ -78,6 +78,29 @@ public class MessageTemplate implements Serializable {
 	private static final int SENDER = 13;
 	private static final int REPLY_BY_DATE = 14;
 	
+	//#MIDP_EXCLUDE_BEGIN
+	/**
+	 Position of the <code>:conversation-id</code> key in the array returned by <code>getIndexKeys()</code>.
+	 */
+	public static final int INDEX_CONVERSATION_ID = 0;
+	/**
+	 Position of the <code>:in-reply-to</code> key in the array returned by <code>getIndexKeys()</code>.
+	 */
+	public static final int INDEX_IN_REPLY_TO = 1;
+	/**
+	 Position of the performative key in the array returned by <code>getIndexKeys()</code>.
+	 */
+	public static final int INDEX_PERFORMATIVE = 2;
+	/**
+	 Position of the <code>:sender</code> key in the array returned by <code>getIndexKeys()</code>.
+	 */
+	public static final int INDEX_SENDER = 3;
+	/**
+	 The length of the array returned by <code>getIndexKeys()</code>.
+	 */
+	public static final int INDEX_SIZE = 4;
+	//#MIDP_EXCLUDE_END
+	
 	/**
 	 This interface must be overriden in order to define an application 
 	 specific MessageTemplate.
@@ -510,6 +533,10 @@ public class MessageTemplate implements Serializable {
 	 */
 	private MatchExpression toMatch;
 	
+	//#MIDP_EXCLUDE_BEGIN
+	private transient Object[] indexKeys;
+	//#MIDP_EXCLUDE_END
+	
 	/** Public constructor to use when the user needs to define 
 	 an application specific pattern.	 
 	 */
@@ -771,6 +798,87 @@ public class MessageTemplate implements Serializable {
 		return toMatch.match(msg);
 	}
 	
+	//#MIDP_EXCLUDE_BEGIN
+	/**
+	 Retrieve the values that the <code>:conversation-id</code>, <code>:in-reply-to</code>,
+	 performative and <code>:sender</code> slots of an ACL message must have in order to 
+	 match this template. Only literals reachable through <code>and</code> operators are
+	 considered as these are the only ones every matching message is required to satisfy.
+	 This is used by indexed message queues to restrict the set of messages a template is
+	 matched against.
+	 @return An array of <code>INDEX_SIZE</code> elements. The elements at positions 
+	 <code>INDEX_CONVERSATION_ID</code> and <code>INDEX_IN_REPLY_TO</code> are 
+	 <code>CaseInsensitiveString</code> objects, the one at position <code>INDEX_PERFORMATIVE</code> 
+	 is an <code>Integer</code> and the one at position <code>INDEX_SENDER</code> is an 
+	 <code>AID</code>. Slots this template does not constrain are <code>null</code>.
+	 The returned array must not be modified.
+	 @see #getIndexKeys(ACLMessage)
+	 */
+	public Object[] getIndexKeys() {
+		Object[] keys = indexKeys;
+		if (keys == null) {
+			keys = new Object[INDEX_SIZE];
+			collectIndexKeys(toMatch, keys);
+			indexKeys = keys;
+		}
+		return keys;
+	}
+	
+	/**
+	 Retrieve the index keys of a given ACL message in the same form returned by 
+	 <code>getIndexKeys()</code>.
+	 @param msg The ACL message whose index keys must be retrieved.
+	 @return An array of <code>INDEX_SIZE</code> elements. Slots that are not set in the 
+	 message are <code>null</code>.
+	 */
+	public static Object[] getIndexKeys(ACLMessage msg) {
+		Object[] keys = new Object[INDEX_SIZE];
+		String s = msg.getConversationId();
+		if (s != null) {
+			keys[INDEX_CONVERSATION_ID] = new CaseInsensitiveString(s);
+		}
+		s = msg.getInReplyTo();
+		if (s != null) {
+			keys[INDEX_IN_REPLY_TO] = new CaseInsensitiveString(s);
+		}
+		keys[INDEX_PERFORMATIVE] = new Integer(msg.getPerformative());
+		keys[INDEX_SENDER] = msg.getSender();
+		return keys;
+	}
+	
+	private static void collectIndexKeys(MatchExpression e, Object[] keys) {
+		if (e instanceof AndExpression) {
+			collectIndexKeys(((AndExpression) e).op1, keys);
+			collectIndexKeys(((AndExpression) e).op2, keys);
+		}
+		else if (e instanceof Literal) {
+			Literal l = (Literal) e;
+			switch (l.slotName) {
+			case CONVERSATION_ID:
+				if (l.matchValue != null && keys[INDEX_CONVERSATION_ID] == null) {
+					keys[INDEX_CONVERSATION_ID] = new CaseInsensitiveString((String) l.matchValue);
+				}
+				break;
+			case IN_REPLY_TO:
+				if (l.matchValue != null && keys[INDEX_IN_REPLY_TO] == null) {
+					keys[INDEX_IN_REPLY_TO] = new CaseInsensitiveString((String) l.matchValue);
+				}
+				break;
+			case PERFORMATIVE:
+				if (keys[INDEX_PERFORMATIVE] == null) {
+					keys[INDEX_PERFORMATIVE] = new Integer(l.perfValue);
+				}
+				break;
+			case SENDER:
+				if (l.matchValue != null && keys[INDEX_SENDER] == null) {
+					keys[INDEX_SENDER] = l.matchValue;
+				}
+				break;
+			}
+		}
+	}
+	//#MIDP_EXCLUDE_END
+	
 	/**
 	 Retrieve a string representation of this message template.
 	 @return A string describing the syntactic structure of this
@@ -105,7 +105,7 @@ public class StringACLCodec implements ACLCodec {
      * if there was an automatical Base64 encoding, then it performs
      * automatic decoding.
      **/
-    private void checkBase64Encoding(ACLMessage msg) {
+    static void checkBase64Encoding(ACLMessage msg) {
 	String encoding = msg.getUserDefinedParameter(BASE64ENCODING_KEY);
 	if (CaseInsensitiveString.equalsIgnoreCase(BASE64ENCODING_VALUE,encoding)) {
 	    try { // decode Base64
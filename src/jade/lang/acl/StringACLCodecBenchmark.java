@@ -0,0 +1,533 @@
+package jade.lang.acl;
+
+//#J2ME_EXCLUDE_FILE
+//#APIDOC_EXCLUDE_FILE
+
+import jade.core.AID;
+import jade.core.BenchmarkHarness;
+import jade.util.leap.Iterator;
+import jade.util.leap.Properties;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Enumeration;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ Check the <code>FastStringACLCodec</code> against the
+ <code>StringACLCodec</code> and measure the throughput of both when encoding
+ and decoding messages with small, medium and large contents.
+ <br>
+ The check is differential: a corpus of valid messages (all performatives,
+ user defined parameters, escaped and Base64 contents, nested AIDs with
+ resolvers) and randomly generated messages are encoded by both codecs
+ and the results must be identical. The encoded messages, lightly mutated
+ copies of them (that are mostly still valid), heavily mutated copies and
+ random sequences of ACL tokens are then decoded by both codecs and the
+ two must either both fail or produce messages with the same slots.
+ The valid messages must also be decoded back to the original slots.
+ Usage:
+ <code>java jade.lang.acl.StringACLCodecBenchmark [-fuzz 20000] [-seed 1] [-t 3] [-warmup 2]</code>
+ where
+ <ul>
+ <li><code>fuzz</code> is the number of generated messages and token sequences of the differential check</li>
+ <li><code>seed</code> is the seed of the random generator</li>
+ <li><code>t</code> is the duration of each measurement in seconds (0 to perform the differential check only)</li>
+ </ul>
+ @see jade.core.BenchmarkHarness
+ */
+public class StringACLCodecBenchmark {
+	private static final String FUZZ = "fuzz";
+	private static final int DEFAULT_FUZZ = 20000;
+
+	private static final String SEED = "seed";
+	private static final int DEFAULT_SEED = 1;
+
+	private static final String CHARSET = "UTF-8";
+
+	private static final String[] SIZES = new String[]{"small", "medium", "large"};
+	private static final int[] CONTENT_LENGTHS = new int[]{16, 1024, 64 * 1024};
+
+	private static final int STRING_ENCODE = 0;
+	private static final int FAST_ENCODE = 1;
+	private static final int STRING_DECODE = 2;
+	private static final int FAST_DECODE = 3;
+	private static final String[] NAMES = new String[]{"string encode", "fast encode  ", "string decode", "fast decode  "};
+
+	// Characters slot values are made of. Quotes, backslashes, braces and blanks
+	// stress quoting and escaping
+	private static final String CHARS = "abcXYZ019 .-+#:\"\\()\t\n\u00e9\u20ac";
+	private static final String[] VALUES = new String[] {
+		"", " ", "x", "\"", "\\\"", "NaN", "Infinity", "-1", "1e5", " 12", ".5", "0x1p3", "#3", "a b", "(a b)",
+		"20001010T101010101", "+20001010T101010101Z", "fipa-request", "\"quoted\""
+	};
+	// Contents of the valid messages, with SL expressions, characters to escape and non ASCII characters
+	private static final String[] CONTENTS = new String[] {
+		"((action (agent-identifier :name df@Platform) (register (df-agent-description :name (agent-identifier :name a@Platform)))))",
+		"say \"hello\" to C:\\temp\\x and (\"bye\")\n\tend",
+		"\u00e9t\u00e9 \u20ac 100 \"\u00fc\"",
+		"(done (action (set a b)) true)"
+	};
+	// The codecs add the X- prefix when encoding and remove it when decoding
+	private static final String[] PARAMS = new String[] {"priority", "conversation-state", "JADE-mtp", "owner", "hops"};
+	private static final String[] PARAM_VALUES = new String[] {"high", "a b", "\"quoted\"", "(nested (list))", "42", "back\\slash"};
+	// Fragments token sequences are made of
+	private static final String[] TOKENS = new String[] {
+		" ", "\n", "\t", "(", ")", ":sender", ":receiver", ":reply-to", "(set", "( agent-identifier", ":name", ":NAME",
+		":addresses", "(sequence", ":resolvers", ":X-slot", ":x-", ":content", ":reply-with", ":in-reply-to", ":reply-by",
+		":encoding", ":language", ":ontology", ":protocol", ":conversation-id", ":X-JADE-Encoding", "Base64",
+		"word", "Word\"", "\"a b\"", "\"a\\\"b\"", "\"", "\\\"", "#3\"abc", "#0\"", "#-1\"", "#2\"", "#+1\"x",
+		"20001010T101010101", "+20001010t101010101Z", "19991231T235959999x", "12", "-1.5e3", ".5", "+7", "5.", "1E+2",
+		"-", "+", ".", "inform", "INFORM-IF", "request-whenever", "x", "\u00e9", "\u0001", "\f", "aGVsbG8="
+	};
+
+	private static final StringACLCodec stringCodec = new StringACLCodec();
+	private static final FastStringACLCodec fastCodec = new FastStringACLCodec();
+
+	// Prevent the JIT from discarding the results
+	private static long sink;
+
+	public static void main(String[] args) throws Exception {
+		Properties pp = BenchmarkHarness.parseArguments(args);
+		int fuzz = BenchmarkHarness.getIntProperty(pp, FUZZ, DEFAULT_FUZZ);
+		int seed = BenchmarkHarness.getIntProperty(pp, SEED, DEFAULT_SEED);
+		int duration = BenchmarkHarness.getDuration(pp);
+		int warmup = BenchmarkHarness.getWarmup(pp);
+
+		System.out.println("----------------------------------");
+		if (!check(new Random(seed), fuzz)) {
+			System.exit(1);
+		}
+		if (duration > 0) {
+			for (int i = 0; i < SIZES.length; ++i) {
+				ACLMessage msg = createMessage(CONTENT_LENGTHS[i]);
+				byte[] data = stringCodec.encode(msg, CHARSET);
+				System.out.println(SIZES[i]+" message ("+data.length+" bytes)");
+				for (int mode = STRING_ENCODE; mode <= FAST_DECODE; ++mode) {
+					measure(mode, msg, data, warmup);
+					long ops = measure(mode, msg, data, duration);
+					System.out.println("- "+NAMES[mode]+": "+(ops / duration)+" msg/s");
+				}
+			}
+		}
+		System.out.println("----------------------------------");
+	}
+
+	private static boolean check(Random r, int n) {
+		int encoded = 0;
+		// Texts decoded and rejected by both codecs: valid messages first, then random ones
+		int[] decoded = new int[2];
+		int[] failed = new int[2];
+		int errors = 0;
+		ACLMessage[] corpus = corpus();
+		for (int i = 0; i < n && errors < 10; ++i) {
+			// Three valid messages of the corpus for each random message
+			boolean valid = (i % 4 != 3);
+			ACLMessage msg = (valid ? corpus[(i - i / 4) % corpus.length] : randomMessage(r));
+			String expected = StringACLCodec.toString(msg);
+			String actual = FastStringACLCodec.toString(msg);
+			if (!expected.equals(actual)) {
+				System.out.println("ERROR: different encodings\n"+expected+"\n"+actual);
+				errors++;
+			}
+			encoded++;
+
+			String[] texts;
+			if (valid) {
+				String res = compareDecoding(expected);
+				if (res == null || res.length() > 0 || !describe(msg).equals(describeDecoded(expected))) {
+					System.out.println("ERROR: valid message not decoded back\n"+expected+(res != null ? "\n"+res : ""));
+					errors++;
+				}
+				String light = mutateLightly(r, expected);
+				texts = new String[] {light, mutateLightly(r, light), mutateLightly(r, mutateLightly(r, light))};
+			}
+			else {
+				texts = new String[] {expected, mutateLightly(r, expected), mutate(r, expected), randomTokens(r)};
+			}
+			for (int j = 0; j < texts.length; ++j) {
+				if (hasHugeByteLength(texts[j])) {
+					// ACLParser would allocate a huge buffer
+					continue;
+				}
+				String res = compareDecoding(texts[j]);
+				if (res == null) {
+					failed[valid ? 0 : 1]++;
+				}
+				else if (res.length() > 0) {
+					System.out.println("ERROR: different decodings of\n"+texts[j]+"\n"+res);
+					errors++;
+				}
+				decoded[valid ? 0 : 1]++;
+			}
+		}
+		System.out.println("Differential check: "+encoded+" messages encoded, "+errors+" errors");
+		System.out.println("- valid messages: "+decoded[0]+" mutated texts decoded ("+failed[0]+" rejected by both codecs)");
+		System.out.println("- random messages: "+decoded[1]+" texts decoded ("+failed[1]+" rejected by both codecs)");
+		return errors == 0;
+	}
+
+	/**
+	 @return <code>null</code> if both codecs reject the text, an empty
+	 string if they decode it the same way, a description of the difference
+	 otherwise
+	 */
+	private static String compareDecoding(String text) {
+		byte[] data;
+		try {
+			data = text.getBytes(CHARSET);
+		}
+		catch (Exception e) {
+			return e.toString();
+		}
+		String expected = null;
+		String actual = null;
+		try {
+			expected = describe(stringCodec.decode(data, CHARSET));
+		}
+		catch (Throwable t) {
+			// Rejected
+		}
+		try {
+			actual = describe(fastCodec.decode(data, CHARSET));
+		}
+		catch (Throwable t) {
+			// Rejected
+		}
+		if (expected == null && actual == null) {
+			return null;
+		}
+		if (expected != null && expected.equals(actual)) {
+			return "";
+		}
+		return "StringACLCodec:     "+expected+"\nFastStringACLCodec: "+actual;
+	}
+
+	private static String describeDecoded(String text) {
+		try {
+			return describe(stringCodec.decode(text.getBytes(CHARSET), CHARSET));
+		}
+		catch (Exception e) {
+			return e.toString();
+		}
+	}
+
+	private static String describe(ACLMessage msg) {
+		StringBuffer sb = new StringBuffer();
+		sb.append(msg.getPerformative());
+		sb.append("|sender=").append(describe(msg.getSender()));
+		sb.append("|receivers=").append(describe(msg.getAllReceiver()));
+		sb.append("|reply-to=").append(describe(msg.getAllReplyTo()));
+		if (msg.hasByteSequenceContent()) {
+			sb.append("|bytes=").append(Arrays.toString(msg.getByteSequenceContent()));
+		}
+		else {
+			sb.append("|content=").append(msg.getContent());
+		}
+		sb.append("|reply-with=").append(msg.getReplyWith());
+		sb.append("|in-reply-to=").append(msg.getInReplyTo());
+		sb.append("|encoding=").append(msg.getEncoding());
+		sb.append("|language=").append(msg.getLanguage());
+		sb.append("|ontology=").append(msg.getOntology());
+		sb.append("|reply-by=").append(msg.getReplyByDate());
+		sb.append("|protocol=").append(msg.getProtocol());
+		sb.append("|conversation-id=").append(msg.getConversationId());
+		sb.append("|params=").append(describe(msg.getAllUserDefinedParameters()));
+		return sb.toString();
+	}
+
+	private static String describe(AID id) {
+		if (id == null) {
+			return "null";
+		}
+		return "["+id.getName()+" "+describe(id.getAllAddresses())+" "+describe(id.getAllResolvers())+" "+describe(id.getAllUserDefinedSlot())+"]";
+	}
+
+	private static String describe(Iterator it) {
+		StringBuffer sb = new StringBuffer("{");
+		while (it.hasNext()) {
+			Object o = it.next();
+			sb.append(o instanceof AID ? describe((AID) o) : o).append(',');
+		}
+		return sb.append('}').toString();
+	}
+
+	private static String describe(Properties p) {
+		TreeMap sorted = new TreeMap();
+		Enumeration e = p.propertyNames();
+		while (e.hasMoreElements()) {
+			String key = (String) e.nextElement();
+			sorted.put(key, p.getProperty(key));
+		}
+		return sorted.toString();
+	}
+
+	/**
+	 Build messages that both codecs must encode and decode losslessly: one
+	 per performative, rotating contents, user defined parameters and
+	 receivers with nested resolvers.
+	 */
+	private static ACLMessage[] corpus() {
+		int cnt = ACLMessage.getAllPerformativeNames().length;
+		ACLMessage[] corpus = new ACLMessage[cnt];
+		for (int i = 0; i < cnt; ++i) {
+			ACLMessage msg = new ACLMessage(i);
+			msg.setSender(corpusAID("sender"+i, i % 3));
+			for (int j = 0; j <= i % 3; ++j) {
+				msg.addReceiver(corpusAID("receiver"+j, 2 - j));
+			}
+			if (i % 2 == 1) {
+				msg.addReplyTo(corpusAID("reply-to", 1));
+			}
+			if (i % (CONTENTS.length + 1) == CONTENTS.length) {
+				byte[] b = new byte[i * 7];
+				for (int j = 0; j < b.length; ++j) {
+					b[j] = (byte) (j * 31 + i);
+				}
+				// Encoded in Base64
+				msg.setByteSequenceContent(b);
+			}
+			else {
+				msg.setContent(CONTENTS[i % (CONTENTS.length + 1)]);
+			}
+			msg.setLanguage(i % 2 == 0 ? "fipa-sl" : "fipa-sl2");
+			msg.setOntology("FIPA-Agent-Management");
+			msg.setProtocol("fipa-request");
+			msg.setConversationId("C-"+(1000000 + i * 7919));
+			msg.setReplyWith("R-"+i);
+			if (i % 3 == 0) {
+				msg.setInReplyTo("R-"+(i + 1));
+				msg.setEncoding("String");
+			}
+			if (i % 4 != 3) {
+				msg.setReplyByDate(new Date(1000000000000L + i * 86400000L));
+			}
+			for (int j = 0; j < i % PARAMS.length; ++j) {
+				msg.addUserDefinedParameter(PARAMS[j], PARAM_VALUES[(i + j) % PARAM_VALUES.length]);
+			}
+			corpus[i] = msg;
+		}
+		return corpus;
+	}
+
+	private static AID corpusAID(String name, int depth) {
+		AID id = new AID(name+"@Platform", AID.ISGUID);
+		id.addAddresses("http://host.domain.com:7778/acc");
+		if (depth % 2 == 0) {
+			id.addAddresses("iiop://host.domain.com:1099/acc");
+		}
+		if (depth > 0) {
+			id.addResolvers(corpusAID("resolver"+depth, depth - 1));
+			id.addUserDefinedSlot("role", "df");
+		}
+		return id;
+	}
+
+	private static ACLMessage randomMessage(Random r) {
+		ACLMessage msg = new ACLMessage(r.nextInt(ACLMessage.getAllPerformativeNames().length));
+		if (r.nextBoolean()) {
+			msg.setSender(randomAID(r, 2));
+		}
+		for (int i = r.nextInt(3); i > 0; --i) {
+			msg.addReceiver(randomAID(r, 2));
+		}
+		for (int i = r.nextInt(2); i > 0; --i) {
+			msg.addReplyTo(randomAID(r, 1));
+		}
+		if (r.nextInt(4) == 0) {
+			byte[] b = new byte[r.nextInt(32)];
+			r.nextBytes(b);
+			msg.setByteSequenceContent(b);
+		}
+		else if (r.nextBoolean()) {
+			msg.setContent(randomValue(r, 40));
+		}
+		msg.setReplyWith(randomOptionalValue(r));
+		msg.setInReplyTo(randomOptionalValue(r));
+		msg.setEncoding(randomOptionalValue(r));
+		msg.setLanguage(randomOptionalValue(r));
+		msg.setOntology(randomOptionalValue(r));
+		msg.setProtocol(randomOptionalValue(r));
+		msg.setConversationId(randomOptionalValue(r));
+		if (r.nextBoolean()) {
+			// Only dates with no milliseconds are encoded and decoded losslessly
+			msg.setReplyByDate(new Date((r.nextLong() % 100000000000L) / 1000 * 1000));
+		}
+		for (int i = r.nextInt(3); i > 0; --i) {
+			msg.addUserDefinedParameter((r.nextBoolean() ? "X-" : "")+randomName(r), randomValue(r, 10));
+		}
+		return msg;
+	}
+
+	private static AID randomAID(Random r, int depth) {
+		AID id = new AID(randomValue(r, 12), AID.ISGUID);
+		for (int i = r.nextInt(3); i > 0; --i) {
+			id.addAddresses(r.nextBoolean() ? "http://host"+r.nextInt(10)+":7778/acc" : randomValue(r, 8));
+		}
+		if (depth > 0) {
+			for (int i = r.nextInt(2); i > 0; --i) {
+				id.addResolvers(randomAID(r, depth - 1));
+			}
+		}
+		if (r.nextInt(4) == 0) {
+			id.addUserDefinedSlot(randomName(r), randomValue(r, 8));
+		}
+		return id;
+	}
+
+	private static String randomOptionalValue(Random r) {
+		return (r.nextBoolean() ? null : randomValue(r, 16));
+	}
+
+	private static String randomValue(Random r, int maxLength) {
+		if (r.nextInt(3) == 0) {
+			return VALUES[r.nextInt(VALUES.length)];
+		}
+		int l = 1 + r.nextInt(maxLength);
+		StringBuffer sb = new StringBuffer(l);
+		for (int i = 0; i < l; ++i) {
+			// Mostly letters
+			sb.append(r.nextInt(3) == 0 ? CHARS.charAt(r.nextInt(CHARS.length())) : (char) ('a' + r.nextInt(26)));
+		}
+		return sb.toString();
+	}
+
+	private static String randomName(Random r) {
+		StringBuffer sb = new StringBuffer();
+		for (int i = 1 + r.nextInt(8); i > 0; --i) {
+			sb.append(r.nextInt(8) == 0 ? ':' : (char) ('a' + r.nextInt(26)));
+		}
+		return sb.toString();
+	}
+
+	private static String mutate(Random r, String s) {
+		if (s.length() == 0) {
+			return s;
+		}
+		int p = r.nextInt(s.length());
+		int q = Math.min(s.length(), p + 1 + r.nextInt(8));
+		switch (r.nextInt(5)) {
+		case 0:
+			// Delete
+			return s.substring(0, p) + s.substring(q);
+		case 1:
+			// Insert a token
+			return s.substring(0, p) + TOKENS[r.nextInt(TOKENS.length)] + s.substring(p);
+		case 2:
+			// Replace a character
+			return s.substring(0, p) + CHARS.charAt(r.nextInt(CHARS.length())) + s.substring(p + 1);
+		case 3:
+			// Change case
+			return s.substring(0, p) + s.substring(p, q).toUpperCase() + s.substring(q);
+		default:
+			// Truncate
+			return s.substring(0, p);
+		}
+	}
+
+	/**
+	 Apply a change that keeps most encodings valid: add blanks before a
+	 brace or slot name, change the case of a letter or replace a letter
+	 or a digit with another one.
+	 */
+	private static String mutateLightly(Random r, String s) {
+		if (s.length() == 0) {
+			return s;
+		}
+		int p = r.nextInt(s.length());
+		char c = s.charAt(p);
+		switch (r.nextInt(3)) {
+		case 0:
+			// Blanks before the next brace or slot name
+			for (int i = p; i < s.length(); ++i) {
+				if (s.charAt(i) == '(' || s.charAt(i) == ':') {
+					return s.substring(0, i) + " \n\t".substring(r.nextInt(3)) + s.substring(i);
+				}
+			}
+			return s;
+		case 1:
+			// Change case
+			c = (Character.isUpperCase(c) ? Character.toLowerCase(c) : Character.toUpperCase(c));
+			break;
+		default:
+			// Replace a letter with a letter, a digit with a digit
+			if (Character.isDigit(c)) {
+				c = (char) ('0' + r.nextInt(10));
+			}
+			else if (c >= 'a' && c <= 'z') {
+				c = (char) ('a' + r.nextInt(26));
+			}
+		}
+		return s.substring(0, p) + c + s.substring(p + 1);
+	}
+
+	private static String randomTokens(Random r) {
+		StringBuffer sb = new StringBuffer("(");
+		sb.append(ACLMessage.getPerformative(r.nextInt(ACLMessage.getAllPerformativeNames().length)).toLowerCase());
+		for (int i = r.nextInt(30); i > 0; --i) {
+			sb.append(' ').append(TOKENS[r.nextInt(TOKENS.length)]);
+		}
+		return sb.append(')').toString();
+	}
+
+	private static boolean hasHugeByteLength(String s) {
+		for (int i = s.indexOf('#'); i >= 0; i = s.indexOf('#', i + 1)) {
+			int j = i + 1;
+			while (j < s.length() && (Character.isDigit(s.charAt(j)) || s.charAt(j) == '+' || s.charAt(j) == '-')) {
+				j++;
+			}
+			if (j - i > 5) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static long measure(int mode, ACLMessage msg, byte[] data, int duration) throws Exception {
+		long end = System.currentTimeMillis() + duration * 1000L;
+		long cnt = 0;
+		while (System.currentTimeMillis() < end) {
+			// Check the time every 100 operations only
+			for (int i = 0; i < 100; ++i) {
+				switch (mode) {
+				case STRING_ENCODE:
+					sink += stringCodec.encode(msg, CHARSET).length;
+					break;
+				case FAST_ENCODE:
+					sink += fastCodec.encode(msg, CHARSET).length;
+					break;
+				case STRING_DECODE:
+					sink += stringCodec.decode(data, CHARSET).getPerformative();
+					break;
+				default:
+					sink += fastCodec.decode(data, CHARSET).getPerformative();
+				}
+			}
+			cnt += 100;
+		}
+		return cnt;
+	}
+
+	private static ACLMessage createMessage(int contentLength) {
+		ACLMessage msg = new ACLMessage(ACLMessage.REQUEST);
+		AID sender = new AID("sender@Platform", AID.ISGUID);
+		sender.addAddresses("http://host.domain.com:7778/acc");
+		msg.setSender(sender);
+		msg.addReceiver(new AID("receiver@Platform", AID.ISGUID));
+		msg.setLanguage("fipa-sl");
+		msg.setOntology("FIPA-Agent-Management");
+		msg.setProtocol("fipa-request");
+		msg.setConversationId("C-1234567890");
+		msg.setReplyWith("R-1234567890");
+		msg.setReplyByDate(new Date(0));
+		msg.addUserDefinedParameter("priority", "high");
+		StringBuffer sb = new StringBuffer(contentLength);
+		for (int i = 0; i < contentLength; ++i) {
+			// An SL-like content with blanks, braces and some quotes
+			sb.append(i % 64 == 63 ? '"' : (i % 8 == 7 ? ' ' : (char) ('a' + (i % 26))));
+		}
+		msg.setContent("(("+sb.toString()+"))");
+		return msg;
+	}
+}
@@ -0,0 +1,104 @@
+/*****************************************************************
+ JADE - Java Agent DEvelopment Framework is a framework to develop
+ multi-agent systems in compliance with the FIPA specifications.
+ Copyright (C) 2000 CSELT S.p.A.
+
+ GNU Lesser General Public License
+
+ This library is free software; you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public
+ License as published by the Free Software Foundation,
+ version 2.1 of the License.
+
+ This library is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ Lesser General Public License for more details.
+
+ You should have received a copy of the GNU Lesser General Public
+ License along with this library; if not, write to the
+ Free Software Foundation, Inc., 59 Temple Place - Suite 330,
+ Boston, MA  02111-1307, USA.
+ *****************************************************************/
+
+package jade.util;
+
+//#J2ME_EXCLUDE_FILE
+//#APIDOC_EXCLUDE_FILE
+
+import java.lang.reflect.Method;
+
+/**
+ Utility class to create virtual threads on JVMs that support them
+ (Java 21 or later). The virtual thread API is accessed by means of
+ reflection so that JADE can still be compiled and executed on older JVMs:
+ there <code>isSupported()</code> returns false and <code>newThread()</code>
+ returns null.
+ */
+public class VirtualThreads {
+	private static Method ofVirtualMethod;
+	private static Method nameMethod;
+	private static Method unstartedMethod;
+	private static Method isVirtualMethod;
+	private static boolean supported = false;
+
+	static {
+		try {
+			ofVirtualMethod = Thread.class.getMethod("ofVirtual", new Class[0]);
+			Class builderClass = Class.forName("java.lang.Thread$Builder");
+			nameMethod = builderClass.getMethod("name", new Class[]{String.class});
+			unstartedMethod = builderClass.getMethod("unstarted", new Class[]{Runnable.class});
+			isVirtualMethod = Thread.class.getMethod("isVirtual", new Class[0]);
+			// Virtual threads may be there, but disabled (preview feature in Java 19 and 20)
+			ofVirtualMethod.invoke(null, new Object[0]);
+			supported = true;
+		}
+		catch (Throwable t) {
+			// Virtual threads not supported by this JVM
+		}
+	}
+
+	/**
+	 @return true if the current JVM supports virtual threads
+	 */
+	public static boolean isSupported() {
+		return supported;
+	}
+
+	/**
+	 Create a virtual thread without starting it.
+	 @param name The name of the thread
+	 @param r The <code>Runnable</code> object the thread will execute
+	 @return The new thread or null if the current JVM does not support
+	 virtual threads
+	 */
+	public static Thread newThread(String name, Runnable r) {
+		if (supported) {
+			try {
+				Object builder = ofVirtualMethod.invoke(null, new Object[0]);
+				builder = nameMethod.invoke(builder, new Object[]{name});
+				return (Thread) unstartedMethod.invoke(builder, new Object[]{r});
+			}
+			catch (Exception e) {
+				// Should never happen
+				e.printStackTrace();
+			}
+		}
+		return null;
+	}
+
+	/**
+	 @return true if <code>t</code> is a virtual thread
+	 */
+	public static boolean isVirtual(Thread t) {
+		if (supported && t != null) {
+			try {
+				return ((Boolean) isVirtualMethod.invoke(t, new Object[0])).booleanValue();
+			}
+			catch (Exception e) {
+				// Should never happen
+			}
+		}
+		return false;
+	}
+}
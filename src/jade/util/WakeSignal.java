@@ -0,0 +1,132 @@
+/*****************************************************************
+ JADE - Java Agent DEvelopment Framework is a framework to develop
+ multi-agent systems in compliance with the FIPA specifications.
+ Copyright (C) 2000 CSELT S.p.A.
+
+ GNU Lesser General Public License
+
+ This library is free software; you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public
+ License as published by the Free Software Foundation,
+ version 2.1 of the License.
+
+ This library is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ Lesser General Public License for more details.
+
+ You should have received a copy of the GNU Lesser General Public
+ License along with this library; if not, write to the
+ Free Software Foundation, Inc., 59 Temple Place - Suite 330,
+ Boston, MA  02111-1307, USA.
+ *****************************************************************/
+
+package jade.util;
+
+//#APIDOC_EXCLUDE_FILE
+
+//#J2ME_EXCLUDE_BEGIN
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+//#J2ME_EXCLUDE_END
+
+/**
+ A wake-up signal threads can wait for without holding any monitor.
+ Each call to <code>signal()</code> increments a counter. A thread that
+ needs to wait for a condition (e.g. a message in a queue) first reads
+ the counter by means of <code>getCount()</code>, then checks the condition
+ and finally calls <code>await()</code> passing the value it read: if
+ <code>signal()</code> was called in the meanwhile <code>await()</code>
+ returns immediately, so that no wake-up can be lost.
+ <br>
+ In J2SE the signal is based on a <code>ReentrantLock</code>: a virtual
+ thread waiting for it is unmounted from its carrier thread instead of
+ pinning it as it happens when waiting on a monitor.
+ */
+public class WakeSignal {
+	//#J2ME_EXCLUDE_BEGIN
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition signalled = lock.newCondition();
+	//#J2ME_EXCLUDE_END
+	private long count = 0;
+
+	/**
+	 @return The number of times this signal has been signalled so far
+	 */
+	public long getCount() {
+		//#J2ME_EXCLUDE_BEGIN
+		lock.lock();
+		try {
+			return count;
+		}
+		finally {
+			lock.unlock();
+		}
+		//#J2ME_EXCLUDE_END
+		/*#J2ME_INCLUDE_BEGIN
+		synchronized (this) {
+			return count;
+		}
+		#J2ME_INCLUDE_END*/
+	}
+
+	/**
+	 Wake up all threads waiting for this signal
+	 */
+	public void signal() {
+		//#J2ME_EXCLUDE_BEGIN
+		lock.lock();
+		try {
+			count++;
+			signalled.signalAll();
+		}
+		finally {
+			lock.unlock();
+		}
+		//#J2ME_EXCLUDE_END
+		/*#J2ME_INCLUDE_BEGIN
+		synchronized (this) {
+			count++;
+			notifyAll();
+		}
+		#J2ME_INCLUDE_END*/
+	}
+
+	/**
+	 Wait until this signal is signalled unless it was already signalled
+	 after <code>getCount()</code> returned <code>cnt</code>.
+	 As with <code>Object.wait()</code>, spurious wake-ups are possible.
+	 @param cnt The value returned by <code>getCount()</code> before
+	 checking the condition to wait for
+	 @param millis The maximum time to wait in milliseconds. 0 means forever
+	 @return true if the signal was signalled since <code>getCount()</code> returned <code>cnt</code>
+	 */
+	public boolean await(long cnt, long millis) throws InterruptedException {
+		//#J2ME_EXCLUDE_BEGIN
+		lock.lockInterruptibly();
+		try {
+			if (count == cnt) {
+				if (millis > 0) {
+					signalled.await(millis, TimeUnit.MILLISECONDS);
+				}
+				else {
+					signalled.await();
+				}
+			}
+			return count != cnt;
+		}
+		finally {
+			lock.unlock();
+		}
+		//#J2ME_EXCLUDE_END
+		/*#J2ME_INCLUDE_BEGIN
+		synchronized (this) {
+			if (count == cnt) {
+				wait(millis);
+			}
+			return count != cnt;
+		}
+		#J2ME_INCLUDE_END*/
+	}
+}